@@ -0,0 +1,108 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2016, TeleStax Inc. and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+package org.jdiameter.benchmark;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.jdiameter.api.Avp;
+import org.jdiameter.api.AvpDataException;
+import org.jdiameter.api.AvpSet;
+import org.jdiameter.client.api.IMessage;
+import org.jdiameter.client.api.parser.IMessageParser;
+import org.jdiameter.client.api.parser.ParseException;
+import org.jdiameter.client.impl.parser.MessageParser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * AVP lookups on the top level set of a message, either built locally or decoded from the wire.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AvpSetBenchmark {
+
+  @Param({"CCR", "ULA", "AAR"})
+  public String fixture;
+
+  @Param({"true", "false"})
+  public boolean decoded;
+
+  private AvpSet avps;
+  private int lastCode;
+  private int vendorCode;
+
+  @Setup
+  public void setup() throws ParseException, AvpDataException {
+    IMessageParser parser = new MessageParser();
+    IMessage message = MessageFixtures.create(parser, fixture);
+    if (decoded) {
+      ByteBuffer encoded = parser.encodeMessage(message);
+      message = parser.createMessage(encoded);
+    }
+    avps = message.getAvps();
+    Avp last = avps.getAvpByIndex(avps.size() - 1);
+    lastCode = last.getCode();
+    // every fixture carries at least one 3GPP AVP at top level
+    for (Avp a : avps) {
+      if (a.getVendorId() == MessageFixtures.VENDOR_3GPP) {
+        vendorCode = a.getCode();
+      }
+    }
+  }
+
+  @Benchmark
+  public Avp getFirst() {
+    return avps.getAvp(Avp.SESSION_ID);
+  }
+
+  @Benchmark
+  public Avp getLast() {
+    return avps.getAvp(lastCode);
+  }
+
+  @Benchmark
+  public Avp getMissing() {
+    return avps.getAvp(Avp.ROUTE_RECORD);
+  }
+
+  @Benchmark
+  public Avp getVendorSpecific() {
+    return avps.getAvp(vendorCode, MessageFixtures.VENDOR_3GPP);
+  }
+
+  @Benchmark
+  public AvpSet getAll() {
+    return avps.getAvps(lastCode);
+  }
+}
@@ -0,0 +1,69 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2016, TeleStax Inc. and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+package org.jdiameter.benchmark;
+
+import org.jdiameter.api.BaseSession;
+
+/**
+ * Plain non-replicable session, holds only what {@link BaseSession} exposes.
+ */
+final class BenchmarkSession implements BaseSession {
+
+  private final String sessionId;
+  private final long creationTime = System.currentTimeMillis();
+
+  BenchmarkSession(String sessionId) {
+    this.sessionId = sessionId;
+  }
+
+  @Override
+  public long getCreationTime() {
+    return creationTime;
+  }
+
+  @Override
+  public long getLastAccessedTime() {
+    return creationTime;
+  }
+
+  @Override
+  public boolean isValid() {
+    return true;
+  }
+
+  @Override
+  public void release() {
+  }
+
+  @Override
+  public boolean isAppSession() {
+    return false;
+  }
+
+  @Override
+  public boolean isReplicable() {
+    return false;
+  }
+
+  @Override
+  public String getSessionId() {
+    return sessionId;
+  }
+}
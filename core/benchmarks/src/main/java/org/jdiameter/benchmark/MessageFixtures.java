@@ -0,0 +1,291 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2016, TeleStax Inc. and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+package org.jdiameter.benchmark;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.Date;
+
+import org.jdiameter.api.Avp;
+import org.jdiameter.api.AvpSet;
+import org.jdiameter.client.api.IMessage;
+import org.jdiameter.client.api.parser.IMessageParser;
+
+/**
+ * Builds request/answer pairs shaped like real traffic for the Gy (CCR/CCA), S6a (ULR/ULA) and Rx (AAR/AAA)
+ * applications, so codec benchmarks see realistic AVP counts, nesting depth and value types.
+ */
+final class MessageFixtures {
+
+  static final String ORIGIN_HOST = "client.example.org";
+  static final String ORIGIN_REALM = "example.org";
+  static final String DESTINATION_HOST = "server.example.net";
+  static final String DESTINATION_REALM = "example.net";
+
+  static final long VENDOR_3GPP = 10415;
+
+  static final int CC_COMMAND = 272;
+  static final long CC_APPLICATION = 4;
+  static final int UL_COMMAND = 316;
+  static final long S6A_APPLICATION = 16777251;
+  static final int AA_COMMAND = 265;
+  static final long RX_APPLICATION = 16777236;
+
+  // RFC 4005 AVP codes
+  private static final int CALLED_STATION_ID = 30;
+
+  // 3GPP TS 29.272 (S6a) AVP codes
+  private static final int RAT_TYPE = 1032;
+  private static final int ULR_FLAGS = 1405;
+  private static final int ULA_FLAGS = 1406;
+  private static final int VISITED_PLMN_ID = 1407;
+  private static final int SUBSCRIPTION_DATA = 1400;
+  private static final int NETWORK_ACCESS_MODE = 1417;
+  private static final int CONTEXT_IDENTIFIER = 1423;
+  private static final int SUBSCRIBER_STATUS = 1424;
+  private static final int ALL_APN_CONFIG_INC_IND = 1428;
+  private static final int APN_CONFIGURATION_PROFILE = 1429;
+  private static final int APN_CONFIGURATION = 1430;
+  private static final int AMBR = 1435;
+  private static final int PDN_TYPE = 1456;
+  private static final int SERVICE_SELECTION = 493;
+  private static final int MAX_REQUESTED_BANDWIDTH_DL = 515;
+  private static final int MAX_REQUESTED_BANDWIDTH_UL = 516;
+
+  // 3GPP TS 29.214 (Rx) AVP codes
+  private static final int FRAMED_IP_ADDRESS = 8;
+  private static final int AF_APPLICATION_IDENTIFIER = 504;
+  private static final int AF_CHARGING_IDENTIFIER = 505;
+  private static final int FLOW_DESCRIPTION = 507;
+  private static final int FLOW_NUMBER = 509;
+  private static final int FLOW_USAGE = 512;
+  private static final int SPECIFIC_ACTION = 513;
+  private static final int MEDIA_COMPONENT_DESCRIPTION = 517;
+  private static final int MEDIA_COMPONENT_NUMBER = 518;
+  private static final int MEDIA_SUB_COMPONENT = 519;
+  private static final int MEDIA_TYPE = 520;
+
+  private MessageFixtures() {
+  }
+
+  /**
+   * Builds the named fixture, one of CCR, CCA, ULR, ULA, AAR or AAA.
+   */
+  static IMessage create(IMessageParser parser, String name) {
+    if ("CCR".equals(name)) {
+      return createCCR(parser);
+    }
+    else if ("CCA".equals(name)) {
+      return createCCA(parser);
+    }
+    else if ("ULR".equals(name)) {
+      return createULR(parser);
+    }
+    else if ("ULA".equals(name)) {
+      return createULA(parser);
+    }
+    else if ("AAR".equals(name)) {
+      return createAAR(parser);
+    }
+    else if ("AAA".equals(name)) {
+      return createAAA(parser);
+    }
+    throw new IllegalArgumentException("Unknown fixture: " + name);
+  }
+
+  static IMessage createCCR(IMessageParser parser) {
+    IMessage message = createRequest(parser, CC_COMMAND, CC_APPLICATION, "gy");
+    AvpSet avps = message.getAvps();
+    avps.addAvp(Avp.AUTH_APPLICATION_ID, CC_APPLICATION, true, false, true);
+    avps.addAvp(Avp.SERVICE_CONTEXT_ID, "32251@3gpp.org", true, false, false);
+    avps.addAvp(Avp.CC_REQUEST_TYPE, 2, true, false);
+    avps.addAvp(Avp.CC_REQUEST_NUMBER, 3L, true, false, true);
+    avps.addAvp(Avp.EVENT_TIMESTAMP, new Date(1476000000000L), true, false);
+    addSubscriptionId(avps);
+    for (int i = 0; i < 2; i++) {
+      AvpSet mscc = avps.addGroupedAvp(Avp.MULTIPLE_SERVICES_CREDIT_CONTROL, true, false);
+      mscc.addAvp(Avp.REQUESTED_SERVICE_UNIT, new byte[0], true, false);
+      AvpSet used = mscc.addGroupedAvp(Avp.USED_SERVICE_UNIT, true, false);
+      used.addAvp(Avp.CC_TIME, 300L, true, false, true);
+      used.addAvp(Avp.CC_TOTAL_OCTETS, 52428800L + i, true, false);
+      used.addAvp(Avp.CC_INPUT_OCTETS, 10485760L, true, false);
+      used.addAvp(Avp.CC_OUTPUT_OCTETS, 41943040L + i, true, false);
+      mscc.addAvp(Avp.SERVICE_IDENTIFIER_CCA, 1000L + i, true, false, true);
+      mscc.addAvp(Avp.RATING_GROUP, 100L + i, true, false, true);
+    }
+    AvpSet service = avps.addGroupedAvp(Avp.SERVICE_INFORMATION, VENDOR_3GPP, true, false);
+    AvpSet ps = service.addGroupedAvp(Avp.PS_INFORMATION, VENDOR_3GPP, true, false);
+    ps.addAvp(Avp.TGPP_CHARGING_ID, new byte[] {0x0A, 0x1B, 0x2C, 0x3D}, VENDOR_3GPP, true, false);
+    ps.addAvp(Avp.TGPP_RAT_TYPE, new byte[] {0x06}, VENDOR_3GPP, true, false);
+    ps.addAvp(CALLED_STATION_ID, "internet", true, false, false);
+    return message;
+  }
+
+  static IMessage createCCA(IMessageParser parser) {
+    IMessage message = createAnswer(parser, CC_COMMAND, CC_APPLICATION, "gy");
+    AvpSet avps = message.getAvps();
+    avps.addAvp(Avp.AUTH_APPLICATION_ID, CC_APPLICATION, true, false, true);
+    avps.addAvp(Avp.CC_REQUEST_TYPE, 2, true, false);
+    avps.addAvp(Avp.CC_REQUEST_NUMBER, 3L, true, false, true);
+    for (int i = 0; i < 2; i++) {
+      AvpSet mscc = avps.addGroupedAvp(Avp.MULTIPLE_SERVICES_CREDIT_CONTROL, true, false);
+      AvpSet granted = mscc.addGroupedAvp(Avp.GRANTED_SERVICE_UNIT, true, false);
+      granted.addAvp(Avp.CC_TOTAL_OCTETS, 104857600L, true, false);
+      mscc.addAvp(Avp.SERVICE_IDENTIFIER_CCA, 1000L + i, true, false, true);
+      mscc.addAvp(Avp.RATING_GROUP, 100L + i, true, false, true);
+      mscc.addAvp(Avp.VALIDITY_TIME, 3600L, true, false, true);
+      mscc.addAvp(Avp.RESULT_CODE, 2001L, true, false, true);
+    }
+    return message;
+  }
+
+  static IMessage createULR(IMessageParser parser) {
+    IMessage message = createRequest(parser, UL_COMMAND, S6A_APPLICATION, "s6a");
+    AvpSet avps = message.getAvps();
+    addVendorSpecificApplicationId(avps, S6A_APPLICATION);
+    avps.addAvp(Avp.AUTH_SESSION_STATE, 1, true, false);
+    avps.addAvp(Avp.USER_NAME, "001010123456789", true, false, false);
+    addSupportedFeatures(avps);
+    avps.addAvp(RAT_TYPE, 1004, VENDOR_3GPP, true, false);
+    avps.addAvp(ULR_FLAGS, 34L, VENDOR_3GPP, true, false, true);
+    avps.addAvp(VISITED_PLMN_ID, new byte[] {0x00, (byte) 0xF1, 0x10}, VENDOR_3GPP, true, false);
+    return message;
+  }
+
+  static IMessage createULA(IMessageParser parser) {
+    IMessage message = createAnswer(parser, UL_COMMAND, S6A_APPLICATION, "s6a");
+    AvpSet avps = message.getAvps();
+    addVendorSpecificApplicationId(avps, S6A_APPLICATION);
+    avps.addAvp(Avp.AUTH_SESSION_STATE, 1, true, false);
+    addSupportedFeatures(avps);
+    avps.addAvp(ULA_FLAGS, 1L, VENDOR_3GPP, true, false, true);
+    AvpSet data = avps.addGroupedAvp(SUBSCRIPTION_DATA, VENDOR_3GPP, true, false);
+    data.addAvp(Avp.MSISDN, new byte[] {0x21, 0x43, 0x65, (byte) 0x87, 0x09}, VENDOR_3GPP, true, false);
+    data.addAvp(SUBSCRIBER_STATUS, 0, VENDOR_3GPP, true, false);
+    data.addAvp(NETWORK_ACCESS_MODE, 2, VENDOR_3GPP, true, false);
+    addAmbr(data, 50000000L, 100000000L);
+    AvpSet profile = data.addGroupedAvp(APN_CONFIGURATION_PROFILE, VENDOR_3GPP, true, false);
+    profile.addAvp(CONTEXT_IDENTIFIER, 1L, VENDOR_3GPP, true, false, true);
+    profile.addAvp(ALL_APN_CONFIG_INC_IND, 0, VENDOR_3GPP, true, false);
+    String[] apns = {"internet", "ims", "mms"};
+    for (int i = 0; i < apns.length; i++) {
+      AvpSet apn = profile.addGroupedAvp(APN_CONFIGURATION, VENDOR_3GPP, true, false);
+      apn.addAvp(CONTEXT_IDENTIFIER, i + 1L, VENDOR_3GPP, true, false, true);
+      apn.addAvp(PDN_TYPE, 2, VENDOR_3GPP, true, false);
+      apn.addAvp(SERVICE_SELECTION, apns[i], true, false, false);
+      addAmbr(apn, 20000000L, 40000000L);
+    }
+    return message;
+  }
+
+  static IMessage createAAR(IMessageParser parser) {
+    IMessage message = createRequest(parser, AA_COMMAND, RX_APPLICATION, "rx");
+    AvpSet avps = message.getAvps();
+    avps.addAvp(Avp.AUTH_APPLICATION_ID, RX_APPLICATION, true, false, true);
+    avps.addAvp(AF_APPLICATION_IDENTIFIER, new byte[] {'I', 'M', 'S', ' ', 'S', 'e', 'r', 'v', 'i', 'c', 'e', 's'}, VENDOR_3GPP, true, false);
+    avps.addAvp(AF_CHARGING_IDENTIFIER, new byte[] {'a', 'f', '-', '1', '2', '3', '4', '5', '6', '7'}, VENDOR_3GPP, true, false);
+    for (int m = 1; m <= 2; m++) {
+      AvpSet media = avps.addGroupedAvp(MEDIA_COMPONENT_DESCRIPTION, VENDOR_3GPP, true, false);
+      media.addAvp(MEDIA_COMPONENT_NUMBER, (long) m, VENDOR_3GPP, true, false, true);
+      media.addAvp(MEDIA_TYPE, m == 1 ? 0 : 1, VENDOR_3GPP, true, false);
+      media.addAvp(MAX_REQUESTED_BANDWIDTH_UL, 64000L, VENDOR_3GPP, true, false, true);
+      media.addAvp(MAX_REQUESTED_BANDWIDTH_DL, 64000L, VENDOR_3GPP, true, false, true);
+      for (int f = 1; f <= 2; f++) {
+        AvpSet sub = media.addGroupedAvp(MEDIA_SUB_COMPONENT, VENDOR_3GPP, true, false);
+        sub.addAvp(FLOW_NUMBER, (long) f, VENDOR_3GPP, true, false, true);
+        sub.addAvp(FLOW_DESCRIPTION, "permit out 17 from 10.0.0.1 4000" + f + " to 10.0.0.2 5000" + f, VENDOR_3GPP, true, false, true);
+        sub.addAvp(FLOW_DESCRIPTION, "permit in 17 from 10.0.0.2 5000" + f + " to 10.0.0.1 4000" + f, VENDOR_3GPP, true, false, true);
+        sub.addAvp(FLOW_USAGE, 0, VENDOR_3GPP, true, false);
+      }
+    }
+    addSubscriptionId(avps);
+    avps.addAvp(SPECIFIC_ACTION, 1, VENDOR_3GPP, true, false);
+    avps.addAvp(SPECIFIC_ACTION, 2, VENDOR_3GPP, true, false);
+    try {
+      avps.addAvp(FRAMED_IP_ADDRESS, InetAddress.getByAddress(new byte[] {10, 0, 0, 1}), true, false);
+    }
+    catch (UnknownHostException e) {
+      throw new IllegalStateException(e);
+    }
+    return message;
+  }
+
+  static IMessage createAAA(IMessageParser parser) {
+    IMessage message = createAnswer(parser, AA_COMMAND, RX_APPLICATION, "rx");
+    AvpSet avps = message.getAvps();
+    avps.addAvp(Avp.AUTH_APPLICATION_ID, RX_APPLICATION, true, false, true);
+    avps.addAvp(Avp.AUTH_SESSION_STATE, 0, true, false);
+    addSupportedFeatures(avps);
+    return message;
+  }
+
+  private static IMessage createRequest(IMessageParser parser, int command, long application, String tag) {
+    IMessage message = parser.createEmptyMessage(command, application);
+    message.setRequest(true);
+    message.setProxiable(true);
+    message.setHopByHopIdentifier(0x1234);
+    message.setEndToEndIdentifier(0x5678);
+    AvpSet avps = message.getAvps();
+    avps.addAvp(Avp.SESSION_ID, ORIGIN_HOST + ";1476000000;" + tag + ";42", true, false, false);
+    avps.addAvp(Avp.ORIGIN_HOST, ORIGIN_HOST, true, false, true);
+    avps.addAvp(Avp.ORIGIN_REALM, ORIGIN_REALM, true, false, true);
+    avps.addAvp(Avp.DESTINATION_REALM, DESTINATION_REALM, true, false, true);
+    return message;
+  }
+
+  private static IMessage createAnswer(IMessageParser parser, int command, long application, String tag) {
+    IMessage message = parser.createEmptyMessage(command, application);
+    message.setRequest(false);
+    message.setProxiable(true);
+    message.setHopByHopIdentifier(0x1234);
+    message.setEndToEndIdentifier(0x5678);
+    AvpSet avps = message.getAvps();
+    avps.addAvp(Avp.SESSION_ID, ORIGIN_HOST + ";1476000000;" + tag + ";42", true, false, false);
+    avps.addAvp(Avp.RESULT_CODE, 2001L, true, false, true);
+    avps.addAvp(Avp.ORIGIN_HOST, DESTINATION_HOST, true, false, true);
+    avps.addAvp(Avp.ORIGIN_REALM, DESTINATION_REALM, true, false, true);
+    return message;
+  }
+
+  private static void addSubscriptionId(AvpSet avps) {
+    AvpSet subscription = avps.addGroupedAvp(Avp.SUBSCRIPTION_ID, true, false);
+    subscription.addAvp(Avp.SUBSCRIPTION_ID_TYPE, 0, true, false);
+    subscription.addAvp(Avp.SUBSCRIPTION_ID_DATA, "491701234567", true, false, false);
+  }
+
+  private static void addVendorSpecificApplicationId(AvpSet avps, long application) {
+    AvpSet vsai = avps.addGroupedAvp(Avp.VENDOR_SPECIFIC_APPLICATION_ID, true, false);
+    vsai.addAvp(Avp.VENDOR_ID, VENDOR_3GPP, true, false, true);
+    vsai.addAvp(Avp.AUTH_APPLICATION_ID, application, true, false, true);
+  }
+
+  private static void addSupportedFeatures(AvpSet avps) {
+    AvpSet features = avps.addGroupedAvp(Avp.SUPPORTED_FEATURES, VENDOR_3GPP, false, false);
+    features.addAvp(Avp.VENDOR_ID, VENDOR_3GPP, true, false, true);
+    features.addAvp(Avp.FEATURE_LIST_ID, 1L, VENDOR_3GPP, false, false, true);
+    features.addAvp(Avp.FEATURE_LIST, 0x0000001FL, VENDOR_3GPP, false, false, true);
+  }
+
+  private static void addAmbr(AvpSet avps, long uplink, long downlink) {
+    AvpSet ambr = avps.addGroupedAvp(AMBR, VENDOR_3GPP, true, false);
+    ambr.addAvp(MAX_REQUESTED_BANDWIDTH_UL, uplink, VENDOR_3GPP, true, false, true);
+    ambr.addAvp(MAX_REQUESTED_BANDWIDTH_DL, downlink, VENDOR_3GPP, true, false, true);
+  }
+}
@@ -0,0 +1,105 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2016, TeleStax Inc. and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+package org.jdiameter.benchmark;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.jdiameter.api.Avp;
+import org.jdiameter.api.AvpDataException;
+import org.jdiameter.client.api.IMessage;
+import org.jdiameter.client.api.parser.IMessageParser;
+import org.jdiameter.client.api.parser.ParseException;
+import org.jdiameter.client.impl.parser.MessageParser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Decoding and encoding of whole messages, as done for every frame received from or sent to a peer.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MessageParserBenchmark {
+
+  @Param({"CCR", "CCA", "ULR", "ULA", "AAR", "AAA"})
+  public String fixture;
+
+  private IMessageParser parser;
+  private IMessage message;
+  private ByteBuffer encoded;
+  private ByteBuffer out;
+
+  @Setup
+  public void setup() throws ParseException {
+    parser = new MessageParser();
+    message = MessageFixtures.create(parser, fixture);
+    encoded = parser.encodeMessage(message);
+    out = ByteBuffer.allocateDirect(parser.getMessageLength(message));
+  }
+
+  @Benchmark
+  public IMessage decode() throws AvpDataException {
+    return parser.createMessage(encoded.duplicate());
+  }
+
+  /**
+   * Decode plus the AVPs the stack itself reads from every received message.
+   */
+  @Benchmark
+  public String decodeAndDispatch() throws AvpDataException {
+    IMessage received = parser.createMessage(encoded.duplicate());
+    received.getAvps().getAvp(Avp.ORIGIN_HOST).getDiameterIdentity();
+    received.getSingleApplicationId();
+    return received.getSessionId();
+  }
+
+  @Benchmark
+  public ByteBuffer encode() throws ParseException {
+    return parser.encodeMessage(message);
+  }
+
+  @Benchmark
+  public ByteBuffer encodeIntoBuffer() throws ParseException {
+    out.clear();
+    parser.encodeMessage(message, out);
+    return out;
+  }
+
+  /**
+   * Relay path: a received message is sent on unchanged.
+   */
+  @Benchmark
+  public ByteBuffer decodeAndEncode() throws AvpDataException, ParseException {
+    return parser.encodeMessage(parser.createMessage(encoded.duplicate()));
+  }
+}
@@ -0,0 +1,170 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2016, TeleStax Inc. and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+package org.jdiameter.benchmark;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.jdiameter.api.Avp;
+import org.jdiameter.api.PeerState;
+import org.jdiameter.api.URI;
+import org.jdiameter.client.api.IMessage;
+import org.jdiameter.client.api.IRequest;
+import org.jdiameter.client.api.controller.IPeer;
+import org.jdiameter.client.api.controller.IPeerTable;
+import org.jdiameter.client.api.parser.IMessageParser;
+import org.jdiameter.client.api.router.IRouter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Peer selection by {@link IRouter#getPeer(IMessage, IPeerTable)} for requests routed by realm or by host and for
+ * answers routed back through the hop-by-hop table. The peers of <code>benchmark-config.xml</code> are replaced by
+ * stand-ins reporting an open connection, so selection runs its full path without any network.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RouterBenchmark {
+
+  private static final String[] PEERS = {"127.0.0.2", "127.0.0.3", "127.0.0.4", "127.0.0.5"};
+
+  private StackFixture stack;
+  private IRouter router;
+  private IPeerTable peerTable;
+
+  private IMessage requestByRealm;
+  private IMessage requestByHost;
+  private IMessage answer;
+
+  @Setup
+  public void setup() throws Exception {
+    stack = new StackFixture();
+    router = stack.getComponent(IRouter.class);
+    IMessageParser parser = stack.getComponent(IMessageParser.class);
+
+    final Map<String, IPeer> peers = new HashMap<String, IPeer>();
+    for (String host : PEERS) {
+      peers.put(host, createPeer("aaa://" + host + ":3868"));
+    }
+    final IPeer loadBalancePeer = peers.get(PEERS[0]);
+    peerTable = (IPeerTable) Proxy.newProxyInstance(IPeerTable.class.getClassLoader(), new Class<?>[] {IPeerTable.class},
+        new InvocationHandler() {
+          @Override
+          public Object invoke(Object proxy, Method method, Object[] args) {
+            if ("getPeer".equals(method.getName()) && args != null && args[0] instanceof String) {
+              return peers.get(args[0]);
+            }
+            else if ("getLoadBalancePeer".equals(method.getName())) {
+              return loadBalancePeer;
+            }
+            return defaultValue(proxy, method, args);
+          }
+        });
+
+    requestByRealm = MessageFixtures.createCCR(parser);
+    requestByHost = MessageFixtures.createCCR(parser);
+    requestByHost.getAvps().addAvp(Avp.DESTINATION_HOST, PEERS[0], true, false, true);
+    router.registerRequestRouteInfo((IRequest) requestByRealm);
+    answer = MessageFixtures.createCCA(parser);
+  }
+
+  @TearDown
+  public void tearDown() {
+    stack.destroy();
+  }
+
+  @Benchmark
+  public IPeer requestByRealm() throws Exception {
+    return router.getPeer(requestByRealm, peerTable);
+  }
+
+  @Benchmark
+  public IPeer requestByHost() throws Exception {
+    return router.getPeer(requestByHost, peerTable);
+  }
+
+  @Benchmark
+  public IPeer answer() throws Exception {
+    return router.getPeer(answer, peerTable);
+  }
+
+  private static IPeer createPeer(final String uri) throws Exception {
+    final URI peerUri = new URI(uri);
+    return (IPeer) Proxy.newProxyInstance(IPeer.class.getClassLoader(), new Class<?>[] {IPeer.class}, new InvocationHandler() {
+      @Override
+      public Object invoke(Object proxy, Method method, Object[] args) {
+        String name = method.getName();
+        if ("getState".equals(name)) {
+          return PeerState.OKAY;
+        }
+        else if ("hasValidConnection".equals(name)) {
+          return Boolean.TRUE;
+        }
+        else if ("getUri".equals(name)) {
+          return peerUri;
+        }
+        else if ("getRating".equals(name)) {
+          return 1;
+        }
+        else if ("toString".equals(name)) {
+          return uri;
+        }
+        return defaultValue(proxy, method, args);
+      }
+    });
+  }
+
+  private static Object defaultValue(Object proxy, Method method, Object[] args) {
+    if ("hashCode".equals(method.getName())) {
+      return System.identityHashCode(proxy);
+    }
+    else if ("equals".equals(method.getName())) {
+      return proxy == args[0];
+    }
+    Class<?> type = method.getReturnType();
+    if (type == boolean.class) {
+      return Boolean.FALSE;
+    }
+    else if (type == int.class) {
+      return 0;
+    }
+    else if (type == long.class) {
+      return 0L;
+    }
+    return null;
+  }
+}
@@ -0,0 +1,103 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2016, TeleStax Inc. and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+package org.jdiameter.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.jdiameter.api.BaseSession;
+import org.jdiameter.common.api.data.ISessionDatasource;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Session add/get/remove on the session datasource configured for the stack, with a given number of sessions
+ * already stored.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SessionDatasourceBenchmark {
+
+  private static final int CHURN = 1024;
+
+  @Param({"1000", "100000"})
+  public int sessions;
+
+  private StackFixture stack;
+  private ISessionDatasource datasource;
+  private String[] storedIds;
+  private BaseSession[] churn;
+  private int next;
+
+  @Setup
+  public void setup() throws Exception {
+    stack = new StackFixture();
+    datasource = stack.getComponent(ISessionDatasource.class);
+    storedIds = new String[sessions];
+    for (int i = 0; i < sessions; i++) {
+      BenchmarkSession session = new BenchmarkSession(MessageFixtures.ORIGIN_HOST + ";1476000000;" + i);
+      datasource.addSession(session);
+      storedIds[i] = session.getSessionId();
+    }
+    churn = new BaseSession[CHURN];
+    for (int i = 0; i < CHURN; i++) {
+      churn[i] = new BenchmarkSession(MessageFixtures.ORIGIN_HOST + ";1476000001;" + i);
+    }
+  }
+
+  @TearDown
+  public void tearDown() {
+    stack.destroy();
+  }
+
+  @Benchmark
+  public BaseSession get() {
+    String id = storedIds[next++ % storedIds.length];
+    return datasource.getSession(id);
+  }
+
+  @Benchmark
+  public boolean exists() {
+    String id = storedIds[next++ % storedIds.length];
+    return datasource.exists(id);
+  }
+
+  @Benchmark
+  public BaseSession addGetRemove() {
+    BaseSession session = churn[next++ & (CHURN - 1)];
+    datasource.addSession(session);
+    BaseSession found = datasource.getSession(session.getSessionId());
+    datasource.removeSession(session.getSessionId());
+    return found;
+  }
+}
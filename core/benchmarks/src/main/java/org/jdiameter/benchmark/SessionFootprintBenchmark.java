@@ -0,0 +1,116 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2016, TeleStax Inc. and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+
+package org.jdiameter.benchmark;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.concurrent.TimeUnit;
+
+import org.jdiameter.api.Answer;
+import org.jdiameter.api.NetworkReqListener;
+import org.jdiameter.api.Request;
+import org.jdiameter.common.api.data.ISessionDatasource;
+import org.jdiameter.common.impl.data.LocalDataSource;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Heap retained by {@link LocalDataSource} per stored session, with a listener set as app sessions do. Each
+ * invocation fills a fresh datasource, sessions and their ids are created beforehand so only the storage is
+ * measured. Retained bytes per session are printed after each iteration, the score is the fill time.
+ * <p>
+ * Run with e.g. <code>java -jar jdiameter-benchmarks-*-jar-with-dependencies.jar SessionFootprintBenchmark</code>,
+ * 10M sessions need the heap given below.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(value = 1, jvmArgsAppend = {"-Xms6g", "-Xmx6g"})
+public class SessionFootprintBenchmark {
+
+  private static final NetworkReqListener LISTENER = new NetworkReqListener() {
+    @Override
+    public Answer processRequest(Request request) {
+      return null;
+    }
+  };
+
+  @Param({"1000000", "10000000"})
+  public int sessions;
+
+  private BenchmarkSession[] stored;
+  private ISessionDatasource datasource;
+  private long baseline;
+
+  @Setup(Level.Trial)
+  public void setup() {
+    stored = new BenchmarkSession[sessions];
+    for (int i = 0; i < sessions; i++) {
+      stored[i] = new BenchmarkSession(MessageFixtures.ORIGIN_HOST + ";1476000000;" + i);
+    }
+  }
+
+  @Setup(Level.Iteration)
+  public void setupIteration() {
+    datasource = null;
+    baseline = usedHeap();
+    datasource = new LocalDataSource();
+  }
+
+  @TearDown(Level.Iteration)
+  public void tearDownIteration() {
+    long retained = usedHeap() - baseline;
+    // datasource must stay reachable until heap is measured
+    System.out.printf("%n%d sessions in %s, %.1f bytes per session%n", sessions, datasource.getClass().getSimpleName(),
+        (double) retained / sessions);
+  }
+
+  @Benchmark
+  public ISessionDatasource fill() {
+    for (BenchmarkSession session : stored) {
+      datasource.addSession(session);
+      datasource.setSessionListener(session.getSessionId(), LISTENER);
+    }
+    return datasource;
+  }
+
+  private static long usedHeap() {
+    MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+    // single request is only a hint, a few rounds get heap close to live data
+    for (int i = 0; i < 3; i++) {
+      System.gc();
+    }
+    return memory.getHeapMemoryUsage().getUsed();
+  }
+}
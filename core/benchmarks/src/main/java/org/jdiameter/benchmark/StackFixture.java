@@ -0,0 +1,52 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2016, TeleStax Inc. and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+package org.jdiameter.benchmark;
+
+import java.io.InputStream;
+
+import org.jdiameter.client.impl.StackImpl;
+import org.jdiameter.client.impl.helpers.XMLConfiguration;
+
+/**
+ * Client stack initialized from <code>benchmark-config.xml</code> and never started, it only provides the
+ * components (router, timer facility, ...) wired the same way a running stack wires them.
+ */
+final class StackFixture {
+
+  private final StackImpl stack = new StackImpl();
+
+  StackFixture() throws Exception {
+    InputStream in = StackFixture.class.getResourceAsStream("/benchmark-config.xml");
+    try {
+      stack.init(new XMLConfiguration(in));
+    }
+    finally {
+      in.close();
+    }
+  }
+
+  <T> T getComponent(Class<T> type) {
+    return stack.getAssemblerFacility().getComponentInstance(type);
+  }
+
+  void destroy() {
+    stack.destroy();
+  }
+}
@@ -0,0 +1,73 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2016, TeleStax Inc. and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+package org.jdiameter.benchmark;
+
+import java.io.Serializable;
+import java.util.concurrent.TimeUnit;
+
+import org.jdiameter.common.api.timer.ITimerFacility;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Scheduling and cancelling application session timers, as done for Tx/Tcc style timers on every request/answer.
+ * Timers are far enough in the future to never fire during a run.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TimerFacilityBenchmark {
+
+  private static final String SESSION_ID = MessageFixtures.ORIGIN_HOST + ";1476000000;timer";
+  private static final long DELAY = TimeUnit.HOURS.toMillis(1);
+
+  private StackFixture stack;
+  private ITimerFacility timerFacility;
+
+  @Setup
+  public void setup() throws Exception {
+    stack = new StackFixture();
+    timerFacility = stack.getComponent(ITimerFacility.class);
+  }
+
+  @TearDown
+  public void tearDown() {
+    stack.destroy();
+  }
+
+  @Benchmark
+  public Serializable scheduleAndCancel() {
+    Serializable handle = timerFacility.schedule(SESSION_ID, "TIMER_TX", DELAY);
+    timerFacility.cancel(handle);
+    return handle;
+  }
+}
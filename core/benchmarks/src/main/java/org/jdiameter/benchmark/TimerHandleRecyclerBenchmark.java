@@ -0,0 +1,113 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2016, TeleStax Inc. and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+package org.jdiameter.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.pool.BasePoolableObjectFactory;
+import org.apache.commons.pool.impl.GenericObjectPool;
+import org.jdiameter.common.impl.concurrent.Recycler;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Borrowing and returning timer handles, comparing the commons-pool {@link GenericObjectPool} formerly used by
+ * LocalTimerFacilityImpl (same sizing) with the {@link Recycler} now used and with plain allocation.
+ * Runs with 4 threads by default, use "-t 1" for the uncontended case.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(4)
+@Fork(1)
+public class TimerHandleRecyclerBenchmark {
+
+  private final GenericObjectPool pool = new GenericObjectPool(new BasePoolableObjectFactory() {
+    @Override
+    public Object makeObject() throws Exception {
+      return new Handle();
+    }
+
+    @Override
+    public void passivateObject(Object obj) throws Exception {
+      ((Handle) obj).clear();
+    }
+  }, 100000, GenericObjectPool.WHEN_EXHAUSTED_GROW, 10, 20000);
+
+  private final Recycler<Handle> recycler = new Recycler<Handle>(20000) {
+    @Override
+    protected Handle newObject() {
+      return new Handle();
+    }
+
+    @Override
+    protected void passivate(Handle handle) {
+      handle.clear();
+    }
+  };
+
+  @Benchmark
+  public Handle commonsPool() throws Exception {
+    Handle handle = (Handle) pool.borrowObject();
+    handle.sessionId = "session";
+    handle.timerName = "TIMER_TX";
+    pool.returnObject(handle);
+    return handle;
+  }
+
+  @Benchmark
+  public Handle recycler() {
+    Handle handle = recycler.get();
+    handle.sessionId = "session";
+    handle.timerName = "TIMER_TX";
+    recycler.recycle(handle);
+    return handle;
+  }
+
+  @Benchmark
+  public Handle allocate() {
+    Handle handle = new Handle();
+    handle.sessionId = "session";
+    handle.timerName = "TIMER_TX";
+    return handle;
+  }
+
+  static final class Handle {
+    String sessionId;
+    String timerName;
+    Object future;
+
+    void clear() {
+      sessionId = null;
+      timerName = null;
+      future = null;
+    }
+  }
+}
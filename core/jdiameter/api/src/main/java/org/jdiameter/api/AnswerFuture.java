@@ -0,0 +1,45 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2016, TeleStax Inc. and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+package org.jdiameter.api;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Event listener which completes itself with the answer, or exceptionally with
+ * {@link TimeoutException} when the request times out. It is invoked directly by the
+ * stack thread which received the answer or fired the timeout, so dependent stages
+ * not given an executor run on that thread and should not block.
+ *
+ * @param <R> type of request
+ * @param <A> type of answer
+ */
+public class AnswerFuture<R extends Message, A extends Message> extends CompletableFuture<A> implements EventListener<R, A> {
+
+  @Override
+  public void receivedSuccessMessage(R request, A answer) {
+    complete(answer);
+  }
+
+  @Override
+  public void timeoutExpired(R request) {
+    completeExceptionally(new TimeoutException("Request timed out"));
+  }
+}
@@ -42,6 +42,7 @@
 
 package org.jdiameter.api;
 
+import java.util.concurrent.CompletionStage;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 
@@ -139,4 +140,40 @@ public interface RawSession extends BaseSession, Wrapper {
   Future<Message> send(Message message, long timeOut, TimeUnit timeUnit)
       throws InternalException, IllegalDiameterStateException, RouteException, OverloadException;
 
-}
\ No newline at end of file
+  /**
+   * Sends request without blocking, with default timeout. Returned stage completes with the answer when it
+   * arrives, or exceptionally with {@link java.util.concurrent.TimeoutException} on timeout, or with the
+   * exception which prevented sending.
+   * @param request diameter request
+   * @return stage completed by answer
+   */
+  default CompletionStage<Message> sendAsync(Message request) {
+    AnswerFuture<Message, Message> future = new AnswerFuture<>();
+    try {
+      send(request, future);
+    }
+    catch (Exception e) {
+      future.completeExceptionally(e);
+    }
+    return future;
+  }
+
+  /**
+   * Sends request without blocking, with defined timeout. See {@link #sendAsync(Message)}.
+   * @param request diameter request
+   * @param timeOut value of timeout
+   * @param timeUnit type of timeOut value
+   * @return stage completed by answer
+   */
+  default CompletionStage<Message> sendAsync(Message request, long timeOut, TimeUnit timeUnit) {
+    AnswerFuture<Message, Message> future = new AnswerFuture<>();
+    try {
+      send(request, future, timeOut, timeUnit);
+    }
+    catch (Exception e) {
+      future.completeExceptionally(e);
+    }
+    return future;
+  }
+
+}
\ No newline at end of file
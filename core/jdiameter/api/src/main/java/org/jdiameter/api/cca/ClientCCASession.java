@@ -42,11 +42,14 @@
 
 package org.jdiameter.api.cca;
 
+import java.util.concurrent.CompletionStage;
+
 import org.jdiameter.api.IllegalDiameterStateException;
 import org.jdiameter.api.InternalException;
 import org.jdiameter.api.OverloadException;
 import org.jdiameter.api.RouteException;
 import org.jdiameter.api.auth.events.ReAuthAnswer;
+import org.jdiameter.api.cca.events.JCreditControlAnswer;
 import org.jdiameter.api.cca.events.JCreditControlRequest;
 
 
@@ -69,6 +72,14 @@ public interface ClientCCASession extends CCASession {
    **/
   void sendCreditControlRequest(JCreditControlRequest request) throws InternalException, IllegalDiameterStateException, RouteException, OverloadException;
 
+  /**
+   * Send credit-control request to server without blocking. Answer is still delivered to session listener,
+   * returned stage completes after it, once session state is updated.
+   * @param request Credit-Control-Request event instance
+   * @return stage completed by Credit-Control-Answer, or exceptionally on timeout or send failure
+   **/
+  CompletionStage<JCreditControlAnswer> sendCreditControlRequestAsync(JCreditControlRequest request);
+
   /**
    * Send re-authentication answer to server
    * @param answer Re-Auth-Answer event instance
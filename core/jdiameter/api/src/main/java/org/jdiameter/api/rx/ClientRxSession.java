@@ -42,15 +42,19 @@
 
 package org.jdiameter.api.rx;
 
+import java.util.concurrent.CompletionStage;
+
 import org.jdiameter.api.IllegalDiameterStateException;
 import org.jdiameter.api.InternalException;
 import org.jdiameter.api.OverloadException;
 import org.jdiameter.api.RouteException;
 import org.jdiameter.api.app.AppSession;
 import org.jdiameter.api.app.StateMachine;
+import org.jdiameter.api.rx.events.RxAAAnswer;
 import org.jdiameter.api.rx.events.RxAARequest;
 import org.jdiameter.api.rx.events.RxAbortSessionAnswer;
 import org.jdiameter.api.rx.events.RxReAuthAnswer;
+import org.jdiameter.api.rx.events.RxSessionTermAnswer;
 import org.jdiameter.api.rx.events.RxSessionTermRequest;
 
 /**
@@ -69,6 +73,10 @@ public interface ClientRxSession extends AppSession, StateMachine {
   void sendSessionTermRequest(final RxSessionTermRequest request) throws InternalException, IllegalDiameterStateException, RouteException,
   OverloadException;
 
+  CompletionStage<RxAAAnswer> sendAARequestAsync(final RxAARequest request);
+
+  CompletionStage<RxSessionTermAnswer> sendSessionTermRequestAsync(final RxSessionTermRequest request);
+
   void sendReAuthAnswer(final RxReAuthAnswer answer) throws InternalException, IllegalDiameterStateException, RouteException, OverloadException;
 
   void sendAbortSessionAnswer(final RxAbortSessionAnswer answer) throws InternalException, IllegalDiameterStateException, RouteException, OverloadException;
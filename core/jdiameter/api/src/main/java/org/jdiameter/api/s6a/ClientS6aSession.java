@@ -42,19 +42,25 @@
 
 package org.jdiameter.api.s6a;
 
+import java.util.concurrent.CompletionStage;
+
 import org.jdiameter.api.IllegalDiameterStateException;
 import org.jdiameter.api.InternalException;
 import org.jdiameter.api.OverloadException;
 import org.jdiameter.api.RouteException;
 import org.jdiameter.api.app.AppSession;
 import org.jdiameter.api.app.StateMachine;
+import org.jdiameter.api.s6a.events.JAuthenticationInformationAnswer;
 import org.jdiameter.api.s6a.events.JAuthenticationInformationRequest;
 import org.jdiameter.api.s6a.events.JCancelLocationAnswer;
 import org.jdiameter.api.s6a.events.JDeleteSubscriberDataAnswer;
 import org.jdiameter.api.s6a.events.JInsertSubscriberDataAnswer;
+import org.jdiameter.api.s6a.events.JNotifyAnswer;
 import org.jdiameter.api.s6a.events.JNotifyRequest;
+import org.jdiameter.api.s6a.events.JPurgeUEAnswer;
 import org.jdiameter.api.s6a.events.JPurgeUERequest;
 import org.jdiameter.api.s6a.events.JResetAnswer;
+import org.jdiameter.api.s6a.events.JUpdateLocationAnswer;
 import org.jdiameter.api.s6a.events.JUpdateLocationRequest;
 
 /**
@@ -108,6 +114,39 @@ public interface ClientS6aSession extends AppSession, StateMachine {
    */
   void sendUpdateLocationRequest(JUpdateLocationRequest request) throws InternalException, IllegalDiameterStateException, RouteException, OverloadException;
 
+  /**
+   * Send Authentication-Information-Request to server without blocking. Answer is still delivered
+   * to session listener, returned stage completes after it.
+   *
+   * @param request Authentication-Information-Request event instance
+   * @return stage completed by answer, or exceptionally on timeout or send failure
+   */
+  CompletionStage<JAuthenticationInformationAnswer> sendAuthenticationInformationRequestAsync(JAuthenticationInformationRequest request);
+
+  /**
+   * Send Purge-UE-Request to server without blocking.
+   *
+   * @param request Purge-UE-Request event instance
+   * @return stage completed by answer, or exceptionally on timeout or send failure
+   */
+  CompletionStage<JPurgeUEAnswer> sendPurgeUERequestAsync(JPurgeUERequest request);
+
+  /**
+   * Send Notify-Request to server without blocking.
+   *
+   * @param request Notify-Request event instance
+   * @return stage completed by answer, or exceptionally on timeout or send failure
+   */
+  CompletionStage<JNotifyAnswer> sendNotifyRequestAsync(JNotifyRequest request);
+
+  /**
+   * Send Update-Location-Request to server without blocking.
+   *
+   * @param request Update-Location-Request event instance
+   * @return stage completed by answer, or exceptionally on timeout or send failure
+   */
+  CompletionStage<JUpdateLocationAnswer> sendUpdateLocationRequestAsync(JUpdateLocationRequest request);
+
   /**
    * Send Cancel-Location-Answer to server
    *
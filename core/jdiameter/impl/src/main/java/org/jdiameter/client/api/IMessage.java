@@ -92,6 +92,18 @@ public interface IMessage extends IRequest, IAnswer {
    */
   void setState(int newState);
 
+  /**
+   * Set time the message was passed to the connection, as given by System.nanoTime()
+   * @param nanoTime time the message was sent
+   */
+  void setSentTime(long nanoTime);
+
+  /**
+   * Return time the message was passed to the connection, as given by System.nanoTime()
+   * @return time the message was sent or 0 if it was not sent
+   */
+  long getSentTime();
+
   /**
    * Return header applicationId
    * @return header applicationId
@@ -51,6 +51,7 @@ import org.jdiameter.client.api.fsm.EventTypes;
 import org.jdiameter.client.api.io.IConnectionListener;
 import org.jdiameter.client.api.io.TransportException;
 import org.jdiameter.common.api.statistic.IStatistic;
+import org.jdiameter.common.api.statistic.IStatisticRecord;
 
 /**
  * This interface provide additional methods for Peer interface
@@ -94,6 +95,13 @@ public interface IPeer extends Peer {
    */
   IMessage[] remAllMessage();
 
+  /**
+   * Return count of requests sent to peer and still waiting for answer or timeout
+   *
+   * @return count of pending requests
+   */
+  int getPendingRequests();
+
   /**
    * Put message to peer fsm
    *
@@ -163,6 +171,14 @@ public interface IPeer extends Peer {
    */
   IStatistic getStatistic();
 
+  /**
+   * Return record of peer statistic, resolved once when statistic is created
+   *
+   * @param counter type of record
+   * @return record instance or null if peer statistic does not contain it
+   */
+  IStatisticRecord getCounter(IStatisticRecord.Counters counter);
+
   /**
    * Return if peer is connected
    *
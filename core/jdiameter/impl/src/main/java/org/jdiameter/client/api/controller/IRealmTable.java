@@ -43,6 +43,7 @@
 package org.jdiameter.client.api.controller;
 
 import java.util.Collection;
+import java.util.List;
 
 import org.jdiameter.api.ApplicationId;
 import org.jdiameter.api.InternalException;
@@ -81,6 +82,23 @@ public interface IRealmTable extends RealmTable {
   void removeLocalApplicationId(ApplicationId a);
 
   void addLocalRealm(String localRealm, String fqdn);
+
+  /**
+   * Returns peers of given realm which are in OKAY state. Result is cached per (realm, application id) until a peer
+   * changes state or peer table or realm table is modified, so it must not be altered. A connection can drop with no
+   * change of state, so the connection of the peer selected from it is still to be checked.
+   *
+   * @param realm realm matched for the message
+   * @param peerTable peer table used to resolve realm peer names
+   * @return list of available peers, possibly empty
+   */
+  List<IPeer> getAvailablePeers(IRealm realm, IPeerTable peerTable);
+
+  /**
+   * Drops cached route resolutions, e.g. when peers are added to or removed from peer table.
+   */
+  void invalidateRoutes();
+
   /**
    * Method which accepts IAgentConfiguration to avoid decode, encode, decode sequences
    * @param name
@@ -58,6 +58,7 @@ public class FsmEvent implements StateEvent {
   private EventTypes type;
   private Object value;
   private final long createdTime = System.currentTimeMillis();
+  private final long createdNanoTime = System.nanoTime();
 
   /**
    * Create instance of class
@@ -129,6 +130,10 @@ public class FsmEvent implements StateEvent {
     return createdTime;
   }
 
+  public long getCreatedNanoTime() {
+    return createdNanoTime;
+  }
+
   @Override
   public <E> E encodeType(Class<E> eClass) {
     return (E) type;
@@ -50,6 +50,7 @@ import org.jdiameter.api.Message;
 import org.jdiameter.api.OverloadException;
 import org.jdiameter.client.api.IMessage;
 import org.jdiameter.client.api.io.TransportException;
+import org.jdiameter.common.api.statistic.ILatencyStatistic;
 
 /**
  * This interface describe operations of FSM context object
@@ -199,4 +200,10 @@ public interface IContext {
    * Creates statistics for context
    */
   void createStatistics();
+
+  /**
+   * Return latency statistic of parent peer
+   * @return latency statistic or null if statistics are not created
+   */
+  ILatencyStatistic getLatencyStatistic();
 }
@@ -129,4 +129,19 @@ public interface IMessageParser {
    */
   ByteBuffer encodeMessage(IMessage message) throws ParseException;
 
+  /**
+   * Compute size of encoded message, including header and padding of all (grouped) avps
+   * @param message diameter message
+   * @return number of bytes encodeMessage will write
+   */
+  int getMessageLength(IMessage message);
+
+  /**
+   * Encode message at the current position of the buffer, advancing it
+   * @param message diameter message
+   * @param out buffer with at least getMessageLength(message) bytes remaining
+   * @throws ParseException
+   */
+  void encodeMessage(IMessage message, ByteBuffer out) throws ParseException;
+
 }
@@ -130,4 +130,26 @@ public interface IRouter  {
    */
   boolean updateRoute(IRequest message) throws RouteException, AvpDataException;
 
+  /**
+   * Called when answer is received for request sent to peer. Time the request was sent is given by
+   * {@link IMessage#getSentTime()}, so routers may balance on answer latency.
+   * @param peer peer the request was sent to
+   * @param request answered request
+   * @param answer received answer
+   */
+  void requestAnswered(IPeer peer, IMessage request, IMessage answer);
+
+  /**
+   * Called when request sent to peer timed out before answer was received.
+   * @param peer peer the request was sent to
+   * @param request request which timed out
+   */
+  void requestTimedOut(IPeer peer, IMessage request);
+
+  /**
+   * Called when peer is removed from the peer table, so routers may drop what they keep about it.
+   * @param peer removed peer
+   */
+  void peerRemoved(IPeer peer);
+
 }
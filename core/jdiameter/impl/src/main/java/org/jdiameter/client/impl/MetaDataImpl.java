@@ -408,6 +408,11 @@ public class MetaDataImpl implements IMetaData {
       return new IMessage[0];
     }
 
+    @Override
+    public int getPendingRequests() {
+      return 0;
+    }
+
     @Override
     public boolean handleMessage(EventTypes type, IMessage message, String key) throws TransportException, OverloadException, InternalException {
       return false;
@@ -124,10 +124,8 @@ public class SessionFactoryImpl implements ISessionFactory {
     if (stack.getState() == StackState.IDLE) {
       throw new InternalException("Illegal state of stack");
     }
-    SessionImpl session = new SessionImpl(stack);
-    if (sessionId != null && sessionId.length() > 0) {
-      session.sessionId = sessionId;
-    }
+    // do not generate Session-Id only to drop it
+    SessionImpl session = sessionId != null && sessionId.length() > 0 ? new SessionImpl(stack, sessionId) : new SessionImpl(stack);
     // FIXME: store this! Properly handle in ISessiondata
     this.dataSource.addSession(session);
     return session;
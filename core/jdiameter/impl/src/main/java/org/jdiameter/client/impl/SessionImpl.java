@@ -82,6 +82,11 @@ public class SessionImpl extends BaseSessionImpl implements ISession {
     }
   }
 
+  SessionImpl(IContainer container, String sessionId) {
+    setContainer(container);
+    this.sessionId = sessionId;
+  }
+
   void setContainer(IContainer container) {
     this.container = container;
     this.parser = container.getAssemblerFacility().getComponentInstance(IMessageParser.class);
@@ -46,6 +46,9 @@ import static org.jdiameter.client.impl.helpers.ExtensionPoint.ControllerLayer;
 import static org.jdiameter.client.impl.helpers.ExtensionPoint.StackLayer;
 import static org.jdiameter.client.impl.helpers.ExtensionPoint.TransportLayer;
 import static org.jdiameter.client.impl.helpers.Parameters.Assembler;
+import static org.jdiameter.client.impl.helpers.Parameters.MessageTimerWheel;
+import static org.jdiameter.client.impl.helpers.Parameters.TimerWheelSize;
+import static org.jdiameter.client.impl.helpers.Parameters.TimerWheelTickDuration;
 import static org.jdiameter.common.api.concurrent.IConcurrentFactory.ScheduledExecServices.ProcessingMessageTimer;
 
 import java.io.IOException;
@@ -83,8 +86,11 @@ import org.jdiameter.client.api.controller.IPeerTable;
 import org.jdiameter.client.impl.helpers.Parameters;
 import org.jdiameter.common.api.concurrent.IConcurrentFactory;
 import org.jdiameter.common.api.data.ISessionDatasource;
+import org.jdiameter.common.api.statistic.ILatencyStatistic;
+import org.jdiameter.common.api.statistic.IStatisticManager;
 import org.jdiameter.common.api.statistic.IStatisticProcessor;
 import org.jdiameter.common.api.timer.ITimerFacility;
+import org.jdiameter.common.impl.timer.HashedWheelTimer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -110,6 +116,8 @@ public class StackImpl implements IContainer, StackImplMBean {
    * Use for processing request time-out tasks (for all active peers)
    */
   protected ScheduledExecutorService scheduledFacility;
+  // keeps the request timeouts when configured, scheduledFacility then only runs the expired ones
+  protected HashedWheelTimer messageTimer;
 
   @Override
   @SuppressWarnings("unchecked")
@@ -209,6 +217,7 @@ public class StackImpl implements IContainer, StackImplMBean {
       }
 
       scheduledFacility = concurrentFactory.getScheduledExecutorService(ProcessingMessageTimer.name());
+      createMessageTimer();
       assembler.getComponentInstance(ISessionDatasource.class).start();
       assembler.getComponentInstance(IStatisticProcessor.class).start();
       assembler.getComponentInstance(ITimerFacility.class);
@@ -229,6 +238,7 @@ public class StackImpl implements IContainer, StackImplMBean {
         throw new IllegalDiameterStateException();
       }
       scheduledFacility = concurrentFactory.getScheduledExecutorService(ProcessingMessageTimer.name());
+      createMessageTimer();
       assembler.getComponentInstance(IStatisticProcessor.class).start();
       assembler.getComponentInstance(ISessionDatasource.class).start();
       assembler.getComponentInstance(ITimerFacility.class);
@@ -338,6 +348,9 @@ public class StackImpl implements IContainer, StackImplMBean {
             peerManager.stopped();
           }
           // Clear all timeout tasks
+          if (messageTimer != null) {
+            messageTimer.shutdownNow();
+          }
           if (scheduledFacility != null) {
             concurrentFactory.shutdownNow(scheduledFacility);
           }
@@ -373,6 +386,9 @@ public class StackImpl implements IContainer, StackImplMBean {
       if (assembler != null) {
         assembler.destroy();
       }
+      if (messageTimer != null) {
+        messageTimer.shutdownNow();
+      }
       if (scheduledFacility != null) {
         concurrentFactory.shutdownNow(scheduledFacility);
       }
@@ -483,7 +499,19 @@ public class StackImpl implements IContainer, StackImplMBean {
 
   @Override
   public ScheduledExecutorService getScheduledFacility() {
-    return scheduledFacility;
+    return messageTimer != null ? messageTimer : scheduledFacility;
+  }
+
+  private void createMessageTimer() {
+    if (config.getBooleanValue(MessageTimerWheel.ordinal(), (Boolean) MessageTimerWheel.defValue())) {
+      messageTimer = new HashedWheelTimer("MessageTimer", concurrentFactory, scheduledFacility,
+          config.getIntValue(TimerWheelTickDuration.ordinal(), (Integer) TimerWheelTickDuration.defValue()), TimeUnit.MILLISECONDS,
+          config.getIntValue(TimerWheelSize.ordinal(), (Integer) TimerWheelSize.defValue()),
+          assembler.getComponentInstance(IStatisticManager.class));
+    }
+    else {
+      messageTimer = null;
+    }
   }
 
   @Override
@@ -532,6 +560,21 @@ public class StackImpl implements IContainer, StackImplMBean {
     }
   }
 
+  @Override
+  public String latencyStatistic() {
+    IStatisticManager statisticManager = assembler != null ? assembler.getComponentInstance(IStatisticManager.class) : null;
+    if (statisticManager == null) {
+      return "not set";
+    }
+    StringBuilder sb = new StringBuilder();
+    for (ILatencyStatistic statistic : statisticManager.getLatencyStatistic()) {
+      if (statistic.isEnabled()) {
+        sb.append(statistic);
+      }
+    }
+    return sb.toString();
+  }
+
   @Override
   public void stop(int disconnectCause) {
     try {
@@ -78,6 +78,13 @@ public interface StackImplMBean {
    */
   String peerList();
 
+  /**
+   * Return answer time, FSM queue wait time and listener time percentiles
+   * per peer, application id and command code
+   * @return latency percentiles, in microseconds
+   */
+  String latencyStatistic();
+
   /**
    * Return true if stack is started
    * @return true if stack is started
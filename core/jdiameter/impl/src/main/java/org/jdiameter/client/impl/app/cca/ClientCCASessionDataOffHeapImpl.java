@@ -0,0 +1,156 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2016, TeleStax Inc. and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+package org.jdiameter.client.impl.app.cca;
+
+import java.io.Serializable;
+
+import org.jdiameter.api.Request;
+import org.jdiameter.api.cca.ClientCCASession;
+import org.jdiameter.common.api.app.cca.ClientCCASessionState;
+import org.jdiameter.common.impl.data.AppSessionDataOffHeapImpl;
+import org.jdiameter.common.impl.data.OffHeapSessionStore;
+
+/**
+ * Client Credit-Control session data kept in {@link OffHeapSessionStore}.
+ */
+public class ClientCCASessionDataOffHeapImpl extends AppSessionDataOffHeapImpl implements IClientCCASessionData {
+
+  // record layout
+  private static final int FLAGS = 0;
+  private static final int STATE = 1;
+  private static final int GATHERED_REQUESTED_ACTION = 4;
+  private static final int GATHERED_CCFH = 8;
+  private static final int GATHERED_DDFH = 12;
+  public static final int DATA_SIZE = 16;
+
+  private static final int EVENT_BASED = 0x01;
+  private static final int REQUEST_TYPE_SET = 0x02;
+
+  private static final int TX_TIMER_ID = 1;
+  private static final int TX_TIMER_REQUEST = 2;
+  private static final int BUFFER = 3;
+  public static final int REFERENCE_SLOTS = 4;
+
+  private static final ClientCCASessionState[] STATES = ClientCCASessionState.values();
+
+  public ClientCCASessionDataOffHeapImpl(String sessionId, OffHeapSessionStore store) {
+    super(sessionId, store);
+    if (store.getAppSessionIface() != ClientCCASession.class) {
+      throw new IllegalArgumentException("Store holds data of " + store.getAppSessionIface());
+    }
+    if (super.create()) {
+      setEventBased(true);
+      setClientCCASessionState(ClientCCASessionState.IDLE);
+      setGatheredRequestedAction(NON_INITIALIZED);
+      setGatheredCCFH(NON_INITIALIZED);
+      setGatheredDDFH(NON_INITIALIZED);
+    }
+  }
+
+  @Override
+  public boolean isEventBased() {
+    return getFlag(FLAGS, EVENT_BASED);
+  }
+
+  @Override
+  public void setEventBased(boolean isEventBased) {
+    setFlag(FLAGS, EVENT_BASED, isEventBased);
+  }
+
+  @Override
+  public boolean isRequestTypeSet() {
+    return getFlag(FLAGS, REQUEST_TYPE_SET);
+  }
+
+  @Override
+  public void setRequestTypeSet(boolean requestTypeSet) {
+    setFlag(FLAGS, REQUEST_TYPE_SET, requestTypeSet);
+  }
+
+  @Override
+  public ClientCCASessionState getClientCCASessionState() {
+    return STATES[store.getByte(record(), STATE)];
+  }
+
+  @Override
+  public void setClientCCASessionState(ClientCCASessionState state) {
+    store.putByte(record(), STATE, (byte) state.ordinal());
+  }
+
+  @Override
+  public Serializable getTxTimerId() {
+    return (Serializable) store.getReference(record(), TX_TIMER_ID);
+  }
+
+  @Override
+  public void setTxTimerId(Serializable txTimerId) {
+    store.setReference(record(), TX_TIMER_ID, txTimerId);
+  }
+
+  @Override
+  public Request getTxTimerRequest() {
+    return (Request) store.getReference(record(), TX_TIMER_REQUEST);
+  }
+
+  @Override
+  public void setTxTimerRequest(Request txTimerRequest) {
+    store.setReference(record(), TX_TIMER_REQUEST, txTimerRequest);
+  }
+
+  @Override
+  public Request getBuffer() {
+    return (Request) store.getReference(record(), BUFFER);
+  }
+
+  @Override
+  public void setBuffer(Request buffer) {
+    store.setReference(record(), BUFFER, buffer);
+  }
+
+  @Override
+  public int getGatheredRequestedAction() {
+    return store.getInt(record(), GATHERED_REQUESTED_ACTION);
+  }
+
+  @Override
+  public void setGatheredRequestedAction(int gatheredRequestedAction) {
+    store.putInt(record(), GATHERED_REQUESTED_ACTION, gatheredRequestedAction);
+  }
+
+  @Override
+  public int getGatheredCCFH() {
+    return store.getInt(record(), GATHERED_CCFH);
+  }
+
+  @Override
+  public void setGatheredCCFH(int gatheredCCFH) {
+    store.putInt(record(), GATHERED_CCFH, gatheredCCFH);
+  }
+
+  @Override
+  public int getGatheredDDFH() {
+    return store.getInt(record(), GATHERED_DDFH);
+  }
+
+  @Override
+  public void setGatheredDDFH(int gatheredDDFH) {
+    store.putInt(record(), GATHERED_DDFH, gatheredDDFH);
+  }
+}
@@ -47,6 +47,9 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeoutException;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 
@@ -106,6 +109,8 @@ public class ClientCCASessionImpl extends AppCCASessionImpl implements ClientCCA
   protected ICCAMessageFactory factory;
   protected ClientCCASessionListener listener;
   protected IClientCCASessionContext context;
+  // given by session factory, also to an instance created again from session data
+  private final StateChangeListener<AppSession> factoryStateListener;
 
 
   protected static final String TX_TIMER_NAME = "CCA_CLIENT_TX_TIMER";
@@ -166,6 +171,7 @@ public class ClientCCASessionImpl extends AppCCASessionImpl implements ClientCCA
     this.authAppIds = fct.getApplicationIds();
     this.listener = lst;
     this.factory = fct;
+    this.factoryStateListener = stLst;
     super.addStateChangeNotification(stLst);
 
   }
@@ -185,6 +191,11 @@ public class ClientCCASessionImpl extends AppCCASessionImpl implements ClientCCA
     this.handleEvent(new Event(true, request, null));
   }
 
+  @Override
+  public CompletionStage<JCreditControlAnswer> sendCreditControlRequestAsync(JCreditControlRequest request) {
+    return sendAsync(request, () -> sendCreditControlRequest(request));
+  }
+
   @Override
   public void sendReAuthAnswer(ReAuthAnswer answer) throws InternalException, IllegalDiameterStateException, RouteException, OverloadException {
     this.handleEvent(new Event(Event.Type.SEND_RAA, null, answer));
@@ -582,12 +593,17 @@ public class ClientCCASessionImpl extends AppCCASessionImpl implements ClientCCA
   @Override
   public void timeoutExpired(Request request) {
     if (request.getCommandCode() == JCreditControlAnswer.code) {
+      // taken first, handling the timeout may release the session which fails stages still pending
+      CompletableFuture<AppAnswerEvent> stage = takeAsyncRequest(request);
       try {
         handleSendFailure(null, null, request);
       }
       catch (Exception e) {
         logger.debug("Failure processing timeout message for request", e);
       }
+      if (stage != null) {
+        stage.completeExceptionally(new TimeoutException("Credit-Control-Request timed out"));
+      }
     }
   }
 
@@ -675,6 +691,35 @@ public class ClientCCASessionImpl extends AppCCASessionImpl implements ClientCCA
     }
   }
 
+  @Override
+  public boolean isEvictable() {
+    // queued events and state change listeners added later are kept by this instance only
+    if (!eventQueue.isEmpty()) {
+      return false;
+    }
+    for (StateChangeListener stateListener : stateListeners) {
+      if (stateListener != factoryStateListener) {
+        return false;
+      }
+    }
+    // running Tx waits for an answer to this instance
+    return this.sessionData.getTxTimerId() == null && super.isEvictable();
+  }
+
+  @Override
+  public boolean evict(Runnable eviction) {
+    // instance processing an event is not idle
+    if (!sendAndStateLock.tryLock()) {
+      return false;
+    }
+    try {
+      return super.evict(eviction);
+    }
+    finally {
+      sendAndStateLock.unlock();
+    }
+  }
+
   protected void handleSendFailure(Exception e, Event.Type eventType, Message request) throws Exception {
     logger.debug("Failed to send message, type: {} message: {}, failure: {}", new Object[]{eventType, request, e != null ? e.getLocalizedMessage() : ""});
     try {
@@ -778,6 +823,10 @@ public class ClientCCASessionImpl extends AppCCASessionImpl implements ClientCCA
     }
     finally {
       this.sendAndStateLock.unlock();
+      if (e != null) {
+        // request was not sent, also when it is buffered for retransmission
+        failAsyncRequest(request, e);
+      }
     }
   }
 
@@ -1326,10 +1375,24 @@ public class ClientCCASessionImpl extends AppCCASessionImpl implements ClientCCA
       try {
         switch (request.getCommandCode()) {
           case JCreditControlAnswer.code:
-            JCreditControlRequest _request = factory.createCreditControlRequest(request);
-            JCreditControlAnswer _answer = factory.createCreditControlAnswer(answer);
-            extractFHAVPs(null, _answer );
-            handleEvent(new Event(false, _request, _answer));
+            // taken first, a final answer releases the session which fails stages still pending
+            CompletableFuture<AppAnswerEvent> stage = takeAsyncRequest(request);
+            try {
+              JCreditControlRequest _request = factory.createCreditControlRequest(request);
+              JCreditControlAnswer _answer = factory.createCreditControlAnswer(answer);
+              extractFHAVPs(null, _answer );
+              handleEvent(new Event(false, _request, _answer));
+              // completed once the state machine is done with the answer, whichever transition it took
+              if (stage != null) {
+                stage.complete(_answer);
+              }
+            }
+            catch (Exception e) {
+              if (stage != null) {
+                stage.completeExceptionally(e);
+              }
+              throw e;
+            }
             break;
 
           default:
@@ -48,6 +48,9 @@ import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeoutException;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 
@@ -198,6 +201,16 @@ public class ClientRxSessionImpl extends AppRxSessionImpl implements ClientRxSes
     }
   }
 
+  @Override
+  public CompletionStage<RxAAAnswer> sendAARequestAsync(RxAARequest request) {
+    return sendAsync(request, () -> sendAARequest(request));
+  }
+
+  @Override
+  public CompletionStage<RxSessionTermAnswer> sendSessionTermRequestAsync(RxSessionTermRequest request) {
+    return sendAsync(request, () -> sendSessionTermRequest(request));
+  }
+
   @Override
   public void sendReAuthAnswer(RxReAuthAnswer answer) throws InternalException, IllegalDiameterStateException, RouteException, OverloadException {
     this.handleEvent(new Event(Event.Type.SEND_RAA, null, answer));
@@ -567,6 +580,7 @@ public class ClientRxSessionImpl extends AppRxSessionImpl implements ClientRxSes
     //                logger.debug("Failure processing timeout message for request", e);
     //            }
     //        }
+    failAsyncRequest(request, new TimeoutException("Request timed out"));
   }
 
   protected void setState(ClientRxSessionState newState) {
@@ -623,6 +637,10 @@ public class ClientRxSessionImpl extends AppRxSessionImpl implements ClientRxSes
     //finally {
     //  dispatch();
     //}
+    if (e != null) {
+      // request was not sent
+      failAsyncRequest(request, e);
+    }
   }
 
   protected void handleFailureMessage(final AppAnswerEvent event, final AppRequestEvent request, final Event.Type eventType) {
@@ -793,24 +811,37 @@ public class ClientRxSessionImpl extends AppRxSessionImpl implements ClientRxSes
 
     @Override
     public void run() {
+      // taken first, a failed answer releases the session which fails stages still pending
+      CompletableFuture<AppAnswerEvent> stage = takeAsyncRequest(request);
       try {
+        AppAnswerEvent appAnswer;
         switch (request.getCommandCode()) {
           case RxAAAnswer.code:
             final RxAARequest myAARequest = factory.createAARequest(request);
             final RxAAAnswer myAAAnswer = factory.createAAAnswer(answer);
+            appAnswer = myAAAnswer;
             handleEvent(new Event(false, myAARequest, myAAAnswer));
             break;
           case RxSessionTermAnswer.code:
             final RxSessionTermRequest mySTRequest = factory.createSessionTermRequest(request);
             final RxSessionTermAnswer mySTAnswer = factory.createSessionTermAnswer(answer);
+            appAnswer = mySTAnswer;
             handleEvent(new Event(false, mySTRequest, mySTAnswer));
             break;
           default:
-            listener.doOtherEvent(session, new AppRequestEventImpl(request), new AppAnswerEventImpl(answer));
+            appAnswer = new AppAnswerEventImpl(answer);
+            listener.doOtherEvent(session, new AppRequestEventImpl(request), appAnswer);
             break;
         }
+        // completed once the state machine is done with the answer
+        if (stage != null) {
+          stage.complete(appAnswer);
+        }
       }
       catch (Exception e) {
+        if (stage != null) {
+          stage.completeExceptionally(e);
+        }
         logger.debug("Failure processing success message", e);
       }
     }
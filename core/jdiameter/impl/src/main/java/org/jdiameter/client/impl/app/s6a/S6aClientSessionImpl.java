@@ -42,6 +42,10 @@
 
 package org.jdiameter.client.impl.app.s6a;
 
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeoutException;
+
 import org.jdiameter.api.Answer;
 import org.jdiameter.api.EventListener;
 import org.jdiameter.api.IllegalDiameterStateException;
@@ -50,6 +54,7 @@ import org.jdiameter.api.NetworkReqListener;
 import org.jdiameter.api.OverloadException;
 import org.jdiameter.api.Request;
 import org.jdiameter.api.RouteException;
+import org.jdiameter.api.app.AppAnswerEvent;
 import org.jdiameter.api.app.AppEvent;
 import org.jdiameter.api.app.StateChangeListener;
 import org.jdiameter.api.app.StateEvent;
@@ -156,6 +161,26 @@ public class S6aClientSessionImpl extends S6aSession implements ClientS6aSession
     send(Event.Type.SEND_MESSAGE, request, null);
   }
 
+  @Override
+  public CompletionStage<JAuthenticationInformationAnswer> sendAuthenticationInformationRequestAsync(JAuthenticationInformationRequest request) {
+    return sendAsync(request, () -> sendAuthenticationInformationRequest(request));
+  }
+
+  @Override
+  public CompletionStage<JPurgeUEAnswer> sendPurgeUERequestAsync(JPurgeUERequest request) {
+    return sendAsync(request, () -> sendPurgeUERequest(request));
+  }
+
+  @Override
+  public CompletionStage<JNotifyAnswer> sendNotifyRequestAsync(JNotifyRequest request) {
+    return sendAsync(request, () -> sendNotifyRequest(request));
+  }
+
+  @Override
+  public CompletionStage<JUpdateLocationAnswer> sendUpdateLocationRequestAsync(JUpdateLocationRequest request) {
+    return sendAsync(request, () -> sendUpdateLocationRequest(request));
+  }
+
   @Override
   public void sendCancelLocationAnswer(JCancelLocationAnswer answer)
       throws InternalException, IllegalDiameterStateException, RouteException, OverloadException {
@@ -200,12 +225,17 @@ public class S6aClientSessionImpl extends S6aSession implements ClientS6aSession
    */
   @Override
   public void timeoutExpired(Request request) {
+    // taken first, timed out session is released which fails stages still pending
+    CompletableFuture<AppAnswerEvent> stage = takeAsyncRequest(request);
     try {
       handleEvent(new Event(Event.Type.TIMEOUT_EXPIRES, new AppRequestEventImpl(request), null));
     }
     catch (Exception e) {
       logger.debug("Failed to process timeout message", e);
     }
+    if (stage != null) {
+      stage.completeExceptionally(new TimeoutException("Request timed out"));
+    }
   }
 
   protected void send(Event.Type type, AppEvent request, AppEvent answer) throws InternalException {
@@ -487,32 +517,45 @@ public class S6aClientSessionImpl extends S6aSession implements ClientS6aSession
 
     @Override
     public void run() {
+      // taken first, the answer terminates the session which fails stages still pending
+      CompletableFuture<AppAnswerEvent> stage = takeAsyncRequest(request);
       try {
+        AppAnswerEvent appAnswer;
         switch (answer.getCommandCode()) {
           case JUpdateLocationAnswer.code:
-            handleEvent(new Event(Event.Type.RECEIVE_ULA, messageFactory.createUpdateLocationRequest(request),
-                messageFactory.createUpdateLocationAnswer(answer)));
+            appAnswer = messageFactory.createUpdateLocationAnswer(answer);
+            handleEvent(new Event(Event.Type.RECEIVE_ULA, messageFactory.createUpdateLocationRequest(request), appAnswer));
             break;
 
           case JAuthenticationInformationAnswer.code:
-            handleEvent(new Event(Event.Type.RECEIVE_AIA, messageFactory.createAuthenticationInformationRequest(request),
-                messageFactory.createAuthenticationInformationAnswer(answer)));
+            appAnswer = messageFactory.createAuthenticationInformationAnswer(answer);
+            handleEvent(new Event(Event.Type.RECEIVE_AIA, messageFactory.createAuthenticationInformationRequest(request), appAnswer));
             break;
 
           case JPurgeUEAnswer.code:
-            handleEvent(new Event(Event.Type.RECEIVE_PUA, messageFactory.createPurgeUERequest(request), messageFactory.createPurgeUEAnswer(answer)));
+            appAnswer = messageFactory.createPurgeUEAnswer(answer);
+            handleEvent(new Event(Event.Type.RECEIVE_PUA, messageFactory.createPurgeUERequest(request), appAnswer));
             break;
 
           case JNotifyAnswer.code:
-            handleEvent(new Event(Event.Type.RECEIVE_NOA, messageFactory.createNotifyRequest(request), messageFactory.createNotifyAnswer(answer)));
+            appAnswer = messageFactory.createNotifyAnswer(answer);
+            handleEvent(new Event(Event.Type.RECEIVE_NOA, messageFactory.createNotifyRequest(request), appAnswer));
             break;
 
           default:
-            listener.doOtherEvent(session, new AppRequestEventImpl(request), new AppAnswerEventImpl(answer));
+            appAnswer = new AppAnswerEventImpl(answer);
+            listener.doOtherEvent(session, new AppRequestEventImpl(request), appAnswer);
             break;
         }
+        // completed once the state machine is done with the answer
+        if (stage != null) {
+          stage.complete(appAnswer);
+        }
       }
       catch (Exception e) {
+        if (stage != null) {
+          stage.completeExceptionally(e);
+        }
         logger.debug("Failed to process success message", e);
       }
     }
@@ -86,6 +86,7 @@ import java.util.Map;
 import java.util.Random;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 
 import org.jdiameter.api.ApplicationId;
@@ -125,7 +126,9 @@ import org.jdiameter.client.api.router.IRouter;
 import org.jdiameter.client.impl.AbstractStateChangeListener;
 import org.jdiameter.client.impl.DictionarySingleton;
 import org.jdiameter.common.api.concurrent.IConcurrentFactory;
+import org.jdiameter.common.api.concurrent.ISessionOrderedExecutor;
 import org.jdiameter.common.api.data.ISessionDatasource;
+import org.jdiameter.common.api.statistic.ILatencyStatistic;
 import org.jdiameter.common.api.statistic.IStatistic;
 import org.jdiameter.common.api.statistic.IStatisticManager;
 import org.jdiameter.common.api.statistic.IStatisticRecord;
@@ -162,6 +165,8 @@ public class PeerImpl extends AbstractPeer implements IPeer {
   protected IRouter router;
   // XXX: FT/HA // protected Map<String, NetworkReqListener> slc;
   protected final Map<Long, IMessage> peerRequests = new ConcurrentHashMap<Long, IMessage>();
+  // size of peerRequests, kept apart so routers can read it on every request
+  protected final AtomicInteger pendingRequests = new AtomicInteger();
   protected final Dictionary dictionary = DictionarySingleton.getDictionary();
   // FSM layer
   protected IStateMachine fsm;
@@ -171,6 +176,8 @@ public class PeerImpl extends AbstractPeer implements IPeer {
 
   //session store and data
   protected ISessionDatasource sessionDataSource;
+  // runs request listeners off the FSM thread, null to run them inline
+  protected ISessionOrderedExecutor listenerExecutor;
 
   // Transport layer
   protected IConnection connection;
@@ -195,7 +202,7 @@ public class PeerImpl extends AbstractPeer implements IPeer {
           request.setReTransmitted(true);
           request.setState(IMessage.STATE_NOT_SENT);
           try {
-            peerRequests.remove(request.getHopByHopIdentifier());
+            removeRequest(request.getHopByHopIdentifier());
             table.sendMessage(request);
           }
           catch (Throwable exc) {
@@ -278,6 +285,7 @@ public class PeerImpl extends AbstractPeer implements IPeer {
     this.metaData = metaData;
     // XXX: FT/HA // this.slc = table.getSessionReqListeners();
     this.sessionDataSource = sessionDataSource;
+    this.listenerExecutor = concurrentFactory != null ? concurrentFactory.getListenerExecutor() : null;
 
     int port = remotePeer.getPort();
     InetAddress remoteAddress;
@@ -557,19 +565,42 @@ public class PeerImpl extends AbstractPeer implements IPeer {
 
   @Override
   public void addMessage(IMessage message) {
-    peerRequests.put(message.getHopByHopIdentifier(), message);
+    if (peerRequests.put(message.getHopByHopIdentifier(), message) == null) {
+      pendingRequests.incrementAndGet();
+    }
   }
 
   @Override
   public void remMessage(IMessage message) {
-    peerRequests.remove(message.getHopByHopIdentifier());
+    // only called when request timed out
+    if (removeRequest(message.getHopByHopIdentifier()) != null) {
+      router.requestTimedOut(this, message);
+    }
   }
 
   @Override
   public IMessage[] remAllMessage() {
-    IMessage[] m = peerRequests.values().toArray(new IMessage[peerRequests.size()]);
-    peerRequests.clear();
-    return m;
+    List<IMessage> m = new ArrayList<IMessage>(peerRequests.size());
+    for (Long hopByHopId : peerRequests.keySet()) {
+      IMessage request = removeRequest(hopByHopId);
+      if (request != null) {
+        m.add(request);
+      }
+    }
+    return m.toArray(new IMessage[m.size()]);
+  }
+
+  @Override
+  public int getPendingRequests() {
+    return pendingRequests.get();
+  }
+
+  protected IMessage removeRequest(long hopByHopId) {
+    IMessage request = peerRequests.remove(hopByHopId);
+    if (request != null) {
+      pendingRequests.decrementAndGet();
+    }
+    return request;
   }
 
   @Override
@@ -700,16 +731,12 @@ public class PeerImpl extends AbstractPeer implements IPeer {
     try {
       logger.debug("Sending response indicating we could not process request");
       sendMessage((IMessage) request);
-      if (statistic.isEnabled()) {
-        statistic.getRecordByName(IStatisticRecord.Counters.SysGenResponse.name()).inc();
-      }
+      incCounter(IStatisticRecord.Counters.SysGenResponse);
     }
     catch (Exception e) {
       logger.debug("Unable to send answer", e);
     }
-    if (statistic.isEnabled()) {
-      statistic.getRecordByName(IStatisticRecord.Counters.NetGenRejectedRequest.name()).inc();
-    }
+    incCounter(IStatisticRecord.Counters.NetGenRejectedRequest);
   }
 
 
@@ -807,6 +834,9 @@ public class PeerImpl extends AbstractPeer implements IPeer {
 
       // Send to network
       message.setState(IMessage.STATE_SENT);
+      if (message.isRequest()) {
+        message.setSentTime(System.nanoTime());
+      }
       logger.debug("Calling connection to send message [{}] to peer [{}] over the network", message, getUri());
       connection.sendMessage(message);
       logger.debug("Connection sent message [{}] to peer [{}] over the network", message, getUri());
@@ -977,6 +1007,21 @@ public class PeerImpl extends AbstractPeer implements IPeer {
       return rc;
     }
 
+    protected void processSessionRequest(NetworkReqListener listener, IMessage message) {
+      long startTime = isLatencyEnabled() ? System.nanoTime() : 0;
+      IMessage answer = (IMessage) listener.processRequest(message);
+      recordLatency(ILatencyStatistic.Latency.ListenerTime, message, startTime);
+      if (answer != null) {
+        try {
+          sendMessage(answer);
+          incCounter(IStatisticRecord.Counters.AppGenResponse);
+        }
+        catch (Exception e) {
+          logger.warn("Unable to send immediate answer {}", answer);
+        }
+      }
+    }
+
     @Override
     public boolean receiveMessage(IMessage message) {
       logger.debug("Receiving message in client.");
@@ -994,28 +1039,30 @@ public class PeerImpl extends AbstractPeer implements IPeer {
           if (listener != null) {
             router.registerRequestRouteInfo(message);
 
-            IMessage answer = (IMessage) listener.processRequest(message);
-            if (answer != null) {
-              try {
-                sendMessage(answer);
-                if (statistic.isEnabled()) {
-                  statistic.getRecordByName(IStatisticRecord.Counters.AppGenResponse.name()).inc();
+            if (listenerExecutor != null) {
+              final NetworkReqListener sessionListener = listener;
+              final IMessage request = message;
+              listenerExecutor.execute(avpSessionId, new Runnable() {
+                @Override
+                public void run() {
+                  try {
+                    processSessionRequest(sessionListener, request);
+                  }
+                  catch (Exception e) {
+                    logger.warn("Error during processing message by session listener", e);
+                  }
                 }
-              }
-              catch (Exception e) {
-                logger.warn("Unable to send immediate answer {}", answer);
-              }
+              });
             }
-
-            if (statistic.isEnabled()) {
-              statistic.getRecordByName(IStatisticRecord.Counters.NetGenRequest.name()).inc();
+            else {
+              processSessionRequest(listener, message);
             }
+
+            incCounter(IStatisticRecord.Counters.NetGenRequest);
             isProcessed = true;
           }
           else {
-            if (statistic.isEnabled()) {
-              statistic.getRecordByName(IStatisticRecord.Counters.NetGenRejectedRequest.name()).inc();
-            }
+            incCounter(IStatisticRecord.Counters.NetGenRejectedRequest);
           }
         }
       }
@@ -1023,10 +1070,12 @@ public class PeerImpl extends AbstractPeer implements IPeer {
         logger.debug("Message is an answer");
 
         //TODO: check REALMs here?
-        IMessage request = peerRequests.remove(message.getHopByHopIdentifier());
+        IMessage request = removeRequest(message.getHopByHopIdentifier());
         if (request != null && !request.isTimeOut()) {
           request.clearTimer();
           request.setState(IMessage.STATE_ANSWERED);
+          recordLatency(ILatencyStatistic.Latency.AnswerTime, request, request.getSentTime());
+          router.requestAnswered(PeerImpl.this, request, message);
           Avp avpResCode = message.getAvps().getAvp(RESULT_CODE);
           if (isRedirectAnswer(avpResCode, message)) {
             message.setListener(request.getEventListener());
@@ -1037,30 +1086,24 @@ public class PeerImpl extends AbstractPeer implements IPeer {
 
           if (message != null) {
             if (request.getEventListener() != null) {
+              long startTime = isLatencyEnabled() ? System.nanoTime() : 0;
               request.getEventListener().receivedSuccessMessage(request, message);
+              recordLatency(ILatencyStatistic.Latency.ListenerTime, message, startTime);
             }
             else {
               logger.debug("Unable to call answer listener for request {} because listener is not set", message);
-              if (statistic.isEnabled()) {
-                statistic.getRecordByName(IStatisticRecord.Counters.NetGenRejectedResponse.name()).inc();
-              }
+              incCounter(IStatisticRecord.Counters.NetGenRejectedResponse);
             }
 
             isProcessed = true;
-            if (statistic.isEnabled()) {
-              statistic.getRecordByName(IStatisticRecord.Counters.NetGenResponse.name()).inc();
-            }
+            incCounter(IStatisticRecord.Counters.NetGenResponse);
           }
           else {
-            if (statistic.isEnabled()) {
-              statistic.getRecordByName(IStatisticRecord.Counters.NetGenRejectedResponse.name()).inc();
-            }
+            incCounter(IStatisticRecord.Counters.NetGenRejectedResponse);
           }
         }
         else {
-          if (statistic.isEnabled()) {
-            statistic.getRecordByName(IStatisticRecord.Counters.NetGenRejectedResponse.name()).inc();
-          }
+          incCounter(IStatisticRecord.Counters.NetGenRejectedResponse);
         }
       }
       return isProcessed;
@@ -1128,6 +1171,11 @@ public class PeerImpl extends AbstractPeer implements IPeer {
     public void createStatistics() {
       createPeerStatistics();
     }
+
+    @Override
+    public ILatencyStatistic getLatencyStatistic() {
+      return latencyStatistic;
+    }
   }
 
-}
\ No newline at end of file
+}
\ No newline at end of file
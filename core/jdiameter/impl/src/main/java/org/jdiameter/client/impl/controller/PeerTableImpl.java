@@ -239,28 +239,20 @@ public class PeerTableImpl implements IPeerTable {
       else {
         logger.debug("Message was submitted to be sent, now adding statistics");
         if (message.isRequest()) {
-          if (peer.getStatistic().isEnabled()) {
-            peer.getStatistic().getRecordByName(IStatisticRecord.Counters.AppGenRequest.name()).inc();
-          }
+          incCounter(peer, IStatisticRecord.Counters.AppGenRequest);
         }
         else {
-          if (peer.getStatistic().isEnabled()) {
-            peer.getStatistic().getRecordByName(IStatisticRecord.Counters.AppGenResponse.name()).inc();
-          }
+          incCounter(peer, IStatisticRecord.Counters.AppGenResponse);
         }
       }
     }
     catch (Exception e) {
       logger.error("Can not send message", e);
       if (message.isRequest()) {
-        if (peer.getStatistic().isEnabled()) {
-          peer.getStatistic().getRecordByName(IStatisticRecord.Counters.AppGenRejectedRequest.name()).inc();
-        }
+        incCounter(peer, IStatisticRecord.Counters.AppGenRejectedRequest);
       }
       else {
-        if (peer.getStatistic().isEnabled()) {
-          peer.getStatistic().getRecordByName(IStatisticRecord.Counters.AppGenRejectedResponse.name()).inc();
-        }
+        incCounter(peer, IStatisticRecord.Counters.AppGenRejectedResponse);
       }
 
       if (e instanceof AvpNotAllowedException) {
@@ -272,6 +264,13 @@ public class PeerTableImpl implements IPeerTable {
     }
   }
 
+  private static void incCounter(IPeer peer, IStatisticRecord.Counters counter) {
+    IStatisticRecord record = peer.getCounter(counter);
+    if (record != null) {
+      record.inc();
+    }
+  }
+
   @Override
   public void addSessionReqListener(String sessionId, NetworkReqListener listener) {
     // XXX: FT/HA // sessionReqListeners.put(sessionId, listener);
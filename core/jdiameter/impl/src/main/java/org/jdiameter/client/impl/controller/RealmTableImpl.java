@@ -43,17 +43,22 @@
 package org.jdiameter.client.impl.controller;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.jdiameter.api.ApplicationId;
 import org.jdiameter.api.Avp;
 import org.jdiameter.api.InternalException;
 import org.jdiameter.api.LocalAction;
+import org.jdiameter.api.PeerState;
 import org.jdiameter.api.Realm;
 import org.jdiameter.api.Statistic;
 import org.jdiameter.client.api.IAnswer;
@@ -61,8 +66,11 @@ import org.jdiameter.client.api.IAssembler;
 import org.jdiameter.client.api.IContainer;
 import org.jdiameter.client.api.IMessage;
 import org.jdiameter.client.api.IRequest;
+import org.jdiameter.client.api.controller.IPeer;
+import org.jdiameter.client.api.controller.IPeerTable;
 import org.jdiameter.client.api.controller.IRealm;
 import org.jdiameter.client.api.controller.IRealmTable;
+import org.jdiameter.client.impl.AbstractStateChangeListener;
 import org.jdiameter.server.api.agent.IAgent;
 import org.jdiameter.server.api.agent.IAgentConfiguration;
 import org.jdiameter.server.api.agent.IProxy;
@@ -90,6 +98,20 @@ public class RealmTableImpl implements IRealmTable {
 
   protected IAssembler assembler;
 
+  // realm (name + app id) -> peers in OKAY state, valid only while version matches routeVersion
+  protected ConcurrentHashMap<IRealm, RouteEntry> routeCache = new ConcurrentHashMap<IRealm, RouteEntry>();
+  protected AtomicLong routeVersion = new AtomicLong();
+
+  // registered on every resolved peer, FSM ignores duplicates so it is safe to add on each rebuild
+  private final AbstractStateChangeListener<Object> routeInvalidator = new AbstractStateChangeListener<Object>() {
+    @Override
+    @SuppressWarnings("rawtypes")
+    public void stateChanged(Enum oldState, Enum newState) {
+      // listeners are called once the new state is the current one, so a rebuild sees it
+      invalidateRoutes();
+    }
+  };
+
   public RealmTableImpl(IContainer con) {
     this.assembler = con.getAssemblerFacility();
   }
@@ -155,6 +177,7 @@ public class RealmTableImpl implements IRealmTable {
     RealmSet set = this.realmNameToRealmSet.get(realmName);
 
     if (set != null) {
+      invalidateRoutes();
       Realm r = set.getRealm(appId);
       set.removeRealm(appId);
       if (set.size() == 0 && !realmName.equals(this.localRealmName)) {
@@ -174,6 +197,7 @@ public class RealmTableImpl implements IRealmTable {
   @Override
   public Collection<Realm> removeRealm(String realmName) {
     RealmSet set = null;
+    invalidateRoutes();
     if (realmName.equals(this.localRealmName)) {
       set = this.realmNameToRealmSet.get(realmName);
     }
@@ -277,6 +301,7 @@ public class RealmTableImpl implements IRealmTable {
         return true;
       }
     });
+    invalidateRoutes();
   }
 
   /**
@@ -288,6 +313,7 @@ public class RealmTableImpl implements IRealmTable {
     Realm realm = rs.getRealm(appId);
     if (realm.isDynamic()) {
       rs.removeRealm(appId);
+      invalidateRoutes();
     }
   }
 
@@ -300,6 +326,47 @@ public class RealmTableImpl implements IRealmTable {
     this.localRealmName = localRealm;
     this.localHost = fqdn;
     getRealmSet(localRealm, true /* adds realm if not present  */);
+    invalidateRoutes();
+  }
+
+  @Override
+  public List<IPeer> getAvailablePeers(IRealm realm, IPeerTable peerTable) {
+    RouteEntry entry = routeCache.get(realm);
+    long version = routeVersion.get();
+    if (entry != null && entry.version == version) {
+      return entry.peers;
+    }
+
+    // version is read before peers are checked, and the invalidator is registered before the state is read,
+    // so a concurrent state change or change of peer table makes this entry stale at once
+    String[] peerNames = realm.getPeerNames();
+    ArrayList<IPeer> availablePeers = new ArrayList<IPeer>(peerNames.length);
+    for (String peerName : peerNames) {
+      IPeer peer = peerTable.getPeer(peerName);
+      if (peer == null) {
+        continue;
+      }
+      peer.addStateChangeListener(routeInvalidator);
+      // ammendonca: added peer state check.. should not be needed but
+      // hasValidConnection is returning true for disconnected peers in *FTFlowTests
+      if (peer.getState(PeerState.class) == PeerState.OKAY) {
+        availablePeers.add(peer);
+      }
+    }
+
+    entry = new RouteEntry(version, availablePeers.toArray(new IPeer[availablePeers.size()]));
+    routeCache.put(realm, entry);
+    if (logger.isDebugEnabled()) {
+      logger.debug("Resolved route for realm [{}] application [{}], available peers {} from list {}",
+          new Object[] {realm.getName(), realm.getApplicationId(), entry.peers, Arrays.asList(peerNames)});
+    }
+    return entry.peers;
+  }
+
+  @Override
+  public void invalidateRoutes() {
+    routeVersion.incrementAndGet();
+    routeCache.clear();
   }
 
   // -------------------- helper methods --------------------
@@ -328,6 +395,7 @@ public class RealmTableImpl implements IRealmTable {
     RealmSet rs = getRealmSet(realm.getName(), true);
     rs.addRealm(realm);
     allRealmsSet.add(realm.getName());
+    invalidateRoutes();
   }
 
   protected RealmSet getRealmSet(String pKey, boolean create) {
@@ -339,6 +407,17 @@ public class RealmTableImpl implements IRealmTable {
     return rs;
   }
 
+  protected static class RouteEntry {
+
+    protected final long version;
+    protected final List<IPeer> peers;
+
+    public RouteEntry(long version, IPeer[] peers) {
+      this.version = version;
+      this.peers = Collections.unmodifiableList(Arrays.asList(peers));
+    }
+  }
+
   private class RealmSet {
 
     // TODO: use two lists and iterate over index?
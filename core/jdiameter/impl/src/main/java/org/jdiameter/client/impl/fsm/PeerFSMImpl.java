@@ -51,11 +51,19 @@ import static org.jdiameter.client.impl.helpers.Parameters.IacTimeOut;
 import static org.jdiameter.client.impl.helpers.Parameters.PeerFSMThreadCount;
 import static org.jdiameter.client.impl.helpers.Parameters.QueueSize;
 import static org.jdiameter.client.impl.helpers.Parameters.RecTimeOut;
+import static org.jdiameter.common.api.concurrent.IConcurrentFactory.ScheduledExecServices.ApplicationSession;
+import static org.jdiameter.common.api.concurrent.IConcurrentFactory.ScheduledExecServices.PeerFSM;
+import static org.jdiameter.common.api.concurrent.IConcurrentFactory.ScheduledExecServices.PeerIO;
 
 import java.util.Random;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
@@ -77,6 +85,7 @@ import org.jdiameter.client.api.fsm.IContext;
 import org.jdiameter.client.api.fsm.IStateMachine;
 import org.jdiameter.client.impl.DictionarySingleton;
 import org.jdiameter.common.api.concurrent.IConcurrentFactory;
+import org.jdiameter.common.api.statistic.ILatencyStatistic;
 import org.jdiameter.common.api.statistic.IStatistic;
 import org.jdiameter.common.api.statistic.IStatisticManager;
 import org.jdiameter.common.api.statistic.IStatisticRecord;
@@ -106,6 +115,9 @@ public class PeerFSMImpl implements IStateMachine {
   //PCB made FSM queue multi-threaded
   private static int FSM_THREAD_COUNT = 3;
 
+  // max number of events one drain of the shared executor processes before yielding to other peers
+  private static final int DRAIN_BATCH_SIZE = 64;
+
   protected final StateEvent timeOutEvent = new FsmEvent(EventTypes.TIMEOUT_EVENT);
   protected Random random = new Random();
 
@@ -124,6 +136,43 @@ public class PeerFSMImpl implements IStateMachine {
   protected boolean mustRun = false;
   protected AtomicInteger numberOfThreadsRunning = new AtomicInteger(0);
 
+  // shared executor processing the events and timeouts of all peers, null when this FSM runs its own threads
+  protected ScheduledExecutorService fsmExecutor;
+  // shared executor connecting and writing for all peers, so that a drain never blocks on the network
+  protected Executor ioExecutor;
+  private final AtomicBoolean draining = new AtomicBoolean(false);
+  private final Runnable drainTask = new Runnable() {
+    @Override
+    public void run() {
+      drainQueue();
+    }
+  };
+  private final ConcurrentLinkedQueue<PeerIo> ioQueue = new ConcurrentLinkedQueue<PeerIo>();
+  private final AtomicBoolean ioRunning = new AtomicBoolean(false);
+  private final Runnable ioTask = new Runnable() {
+    @Override
+    public void run() {
+      runIo();
+    }
+  };
+  // shared executor passing received messages to the application, so that a slow listener does not hold up the FSMs
+  protected Executor receiveExecutor;
+  private final ConcurrentLinkedQueue<IMessage> receivedMessages = new ConcurrentLinkedQueue<IMessage>();
+  private final AtomicBoolean receiving = new AtomicBoolean(false);
+  private final Runnable receiveTask = new Runnable() {
+    @Override
+    public void run() {
+      runReceive();
+    }
+  };
+  // connect or control message the events of this peer wait for
+  private volatile PeerIo pendingIo;
+  private final ConcurrentLinkedQueue<PeerIo> failedWrites = new ConcurrentLinkedQueue<PeerIo>();
+  // number of state switches, a failed write is only handled in the state it was issued in
+  private int transitions;
+  private volatile TimeoutCheck timeoutCheck;
+  private volatile boolean timeoutDue;
+
   public PeerFSMImpl(IContext aContext, IConcurrentFactory concurrentFactory, Configuration config, IStatisticManager statisticFactory) {
     this.context = aContext;
     this.statisticFactory = statisticFactory;
@@ -135,6 +184,11 @@ public class PeerFSMImpl implements IStateMachine {
     loadTimeOuts(config);
     this.concurrentFactory = concurrentFactory;
     FSM_THREAD_COUNT = config.getIntValue(PeerFSMThreadCount.ordinal(), (Integer) PeerFSMThreadCount.defValue());
+    if (FSM_THREAD_COUNT <= 0) {
+      this.fsmExecutor = concurrentFactory.getScheduledExecutorService(PeerFSM.name());
+      this.ioExecutor = concurrentFactory.getScheduledExecutorService(PeerIO.name());
+      this.receiveExecutor = concurrentFactory.getScheduledExecutorService(ApplicationSession.name());
+    }
     runQueueProcessing();
   }
 
@@ -158,6 +212,8 @@ public class PeerFSMImpl implements IStateMachine {
         return;
       }
       eventQueue.clear();
+      failedWrites.clear();
+      timeoutDue = false;
       mustRun = true;
 
       IStatisticRecord queueSize = statisticFactory.newCounterRecord(IStatisticRecord.Counters.QueueSize, new IStatisticRecord.IntegerValueHolder() {
@@ -203,6 +259,13 @@ public class PeerFSMImpl implements IStateMachine {
       queueStat = statisticFactory.newStatistic(context.getPeerDescription(), IStatistic.Groups.PeerFSM, queueSize, messagePrcAverageTime);
       logger.debug("Finished Initializing QueueStat @ Thread[{}]", Thread.currentThread().getName());
 
+      if (fsmExecutor != null) {
+        // events are processed by the shared executor as they are queued, see drainQueue()
+        numberOfThreadsRunning.set(1);
+        logger.debug("Peer FSM [{}] is processed by the shared executor", context.getPeerDescription());
+        return;
+      }
+
       Runnable fsmQueueProcessor = new Runnable() {
         @Override
         public void run() {
@@ -226,10 +289,7 @@ public class PeerFSMImpl implements IStateMachine {
             // lock.lock();
             try {
               if (event != null) {
-                if (event instanceof FsmEvent && queueStat != null && queueStat.isEnabled()) {
-                  timeSumm.inc(System.currentTimeMillis() - ((FsmEvent) event).getCreatedTime());
-                  timeCount.inc();
-                }
+                updateQueueStatistic(event);
                 logger.debug("Process event [{}]. Peer State is [{}]", event, state);
                 getStates()[state.ordinal()].processEvent(event);
               }
@@ -262,10 +322,7 @@ public class PeerFSMImpl implements IStateMachine {
           //PCB added logging
           logger.debug("FSM Thread {} is exiting", Thread.currentThread().getName());
           //this happens when peer FSM is down, lets remove stat
-          statisticFactory.removeStatistic(queueStat);
-          logger.debug("Setting QueueStat to null @ Thread [{}]", Thread.currentThread().getName());
-          queueStat = null;
-          logger.debug("Done Setting QueueStat to null @ Thread [{}]", Thread.currentThread().getName());
+          removeQueueStatistic();
           int runningNowAfterStop = numberOfThreadsRunning.decrementAndGet();
           logger.debug("Stopping ... [{}] FSM threads are running", runningNowAfterStop);
         }
@@ -282,6 +339,378 @@ public class PeerFSMImpl implements IStateMachine {
     }
   }
 
+  private void updateQueueStatistic(StateEvent event) {
+    if (event instanceof FsmEvent) {
+      FsmEvent fsmEvent = (FsmEvent) event;
+      if (queueStat != null && queueStat.isEnabled()) {
+        timeSumm.inc(System.currentTimeMillis() - fsmEvent.getCreatedTime());
+        timeCount.inc();
+      }
+      ILatencyStatistic latencyStatistic = context.getLatencyStatistic();
+      if (latencyStatistic != null && latencyStatistic.isEnabled() && fsmEvent.getData() instanceof IMessage) {
+        IMessage message = fsmEvent.getMessage();
+        latencyStatistic.record(ILatencyStatistic.Latency.QueueWaitTime, message.getApplicationId(), message.getCommandCode(),
+            System.nanoTime() - fsmEvent.getCreatedNanoTime());
+      }
+    }
+  }
+
+  private void removeQueueStatistic() {
+    statisticFactory.removeStatistic(queueStat);
+    logger.debug("Setting QueueStat to null @ Thread [{}]", Thread.currentThread().getName());
+    queueStat = null;
+    logger.debug("Done Setting QueueStat to null @ Thread [{}]", Thread.currentThread().getName());
+  }
+
+  /**
+   * Submits the drain of the event queue to the shared executor, unless it is already submitted or running.
+   * Only one drain runs at a time, so events of this peer are still processed one by one and in order.
+   * A drain does not block, connects and writes are handed over to the I/O executor, see {@link #io(PeerIo)}.
+   */
+  private void scheduleDrain() {
+    if (draining.compareAndSet(false, true)) {
+      try {
+        fsmExecutor.execute(drainTask);
+      }
+      catch (RejectedExecutionException e) {
+        draining.set(false);
+        logger.debug("Peer FSM drain rejected, executor is shut down", e);
+      }
+    }
+  }
+
+  private void drainQueue() {
+    try {
+      for (int i = 0; i < DRAIN_BATCH_SIZE && mustRun; i++) {
+        PeerIo io = pendingIo;
+        if (io != null) {
+          if (!io.completed) {
+            // drained again once the I/O has completed
+            break;
+          }
+          pendingIo = null;
+          completeIo(io);
+          continue;
+        }
+        io = failedWrites.poll();
+        if (io != null) {
+          if (io.transitions == transitions) {
+            completeIo(io);
+          }
+          continue;
+        }
+        if (timeoutDue) {
+          checkTimeout();
+          continue;
+        }
+        StateEvent event = eventQueue.poll();
+        if (event == null) {
+          break;
+        }
+        if (logger.isDebugEnabled()) {
+          logger.debug("Got Event [{}] from Queue", event);
+        }
+        try {
+          updateQueueStatistic(event);
+          logger.debug("Process event [{}]. Peer State is [{}]", event, state);
+          getStates()[state.ordinal()].processEvent(event);
+        }
+        catch (Exception e) {
+          logger.debug("Error during processing FSM event", e);
+        }
+      }
+      if (!mustRun && numberOfThreadsRunning.get() > 0) {
+        //this happens when peer FSM is down, lets remove stat
+        removeQueueStatistic();
+        numberOfThreadsRunning.set(0);
+      }
+    }
+    finally {
+      draining.set(false);
+    }
+    // events queued while finishing, or more than one batch
+    if (mustRun && isDrainDue()) {
+      scheduleDrain();
+    }
+  }
+
+  private boolean isDrainDue() {
+    PeerIo io = pendingIo;
+    if (io != null) {
+      return io.completed;
+    }
+    return timeoutDue || !failedWrites.isEmpty() || !eventQueue.isEmpty();
+  }
+
+  private void completeIo(PeerIo io) {
+    try {
+      io.complete();
+    }
+    catch (Exception e) {
+      logger.debug("Error during processing FSM I/O completion", e);
+    }
+  }
+
+  /**
+   * Submits the I/O of this peer to the shared I/O executor, unless it is already submitted or running.
+   * Only one runs at a time, so connects and writes of this peer happen in the order they were issued.
+   */
+  private void scheduleIo() {
+    if (ioRunning.compareAndSet(false, true)) {
+      try {
+        ioExecutor.execute(ioTask);
+      }
+      catch (RejectedExecutionException e) {
+        ioRunning.set(false);
+        logger.debug("Peer I/O rejected, executor is shut down", e);
+        // fail it rather than having the FSM wait for it
+        PeerIo io;
+        while ((io = ioQueue.poll()) != null) {
+          io.failure = e;
+          io.finish();
+        }
+      }
+    }
+  }
+
+  private void runIo() {
+    try {
+      for (int i = 0; i < DRAIN_BATCH_SIZE; i++) {
+        PeerIo io = ioQueue.poll();
+        if (io == null) {
+          break;
+        }
+        io.perform();
+        io.finish();
+      }
+    }
+    finally {
+      ioRunning.set(false);
+    }
+    if (!ioQueue.isEmpty()) {
+      scheduleIo();
+    }
+  }
+
+  /**
+   * Connects or writes, then continues processing the event. With the shared executors the I/O runs on the
+   * I/O executor and the other events of this peer wait, without holding a thread, until it has been continued.
+   */
+  protected void io(PeerIo io) {
+    if (ioExecutor == null) {
+      io.perform();
+      io.complete();
+    }
+    else {
+      io.gated = true;
+      pendingIo = io;
+      ioQueue.offer(io);
+      scheduleIo();
+    }
+  }
+
+  /**
+   * Writes a message. With the shared executors the events of this peer do not wait for it, a failure is
+   * handled before the next event, unless the state has changed since the write was issued.
+   */
+  protected void write(PeerIo io) {
+    if (ioExecutor == null) {
+      io.perform();
+      io.complete();
+    }
+    else {
+      io.transitions = transitions;
+      ioQueue.offer(io);
+      scheduleIo();
+    }
+  }
+
+  /**
+   * Passes a received message to the application. With the shared executors it is passed on by the application
+   * session executor, one message of this peer at a time and in the order received, so that listeners and answer
+   * callbacks never run on, nor hold up, the FSM executor.
+   */
+  protected void receive(IMessage message) {
+    if (receiveExecutor == null) {
+      context.receiveMessage(message);
+    }
+    else {
+      receivedMessages.offer(message);
+      scheduleReceive();
+    }
+  }
+
+  private void scheduleReceive() {
+    if (receiving.compareAndSet(false, true)) {
+      try {
+        receiveExecutor.execute(receiveTask);
+      }
+      catch (RejectedExecutionException e) {
+        receiving.set(false);
+        logger.debug("Peer message delivery rejected, executor is shut down", e);
+        receivedMessages.clear();
+      }
+    }
+  }
+
+  private void runReceive() {
+    try {
+      for (int i = 0; i < DRAIN_BATCH_SIZE; i++) {
+        IMessage message = receivedMessages.poll();
+        if (message == null) {
+          break;
+        }
+        try {
+          context.receiveMessage(message);
+        }
+        catch (Exception e) {
+          logger.debug("Error during processing received message", e);
+        }
+      }
+    }
+    finally {
+      receiving.set(false);
+    }
+    if (!receivedMessages.isEmpty()) {
+      scheduleReceive();
+    }
+  }
+
+  /**
+   * Connect or write of this peer, and the processing which depends on its outcome.
+   */
+  protected abstract class PeerIo {
+
+    private boolean gated;
+    private int transitions;
+    private volatile Throwable failure;
+    private volatile boolean completed;
+
+    /**
+     * Connects or writes, on the I/O executor if there is one.
+     */
+    protected abstract void execute() throws Exception;
+
+    /**
+     * Continues processing once the I/O succeeded.
+     */
+    protected void done() throws Exception {
+    }
+
+    /**
+     * Continues processing once the I/O, or {@link #done()}, failed.
+     */
+    protected abstract void failed(Throwable e);
+
+    private void perform() {
+      try {
+        execute();
+      }
+      catch (Throwable e) {
+        failure = e;
+      }
+    }
+
+    private void finish() {
+      if (gated) {
+        completed = true;
+        scheduleDrain();
+      }
+      else if (failure != null) {
+        failedWrites.offer(this);
+        scheduleDrain();
+      }
+    }
+
+    private void complete() {
+      if (failure == null) {
+        try {
+          done();
+          return;
+        }
+        catch (Throwable e) {
+          failure = e;
+        }
+      }
+      failed(failure);
+    }
+  }
+
+  /**
+   * Arms the timer. With the shared executor a check is scheduled for the deadline, unless one is already pending
+   * for an earlier time, then the timer is checked again.
+   */
+  private void startTimer(long deadline) {
+    timer = deadline;
+    if (fsmExecutor != null) {
+      TimeoutCheck check = timeoutCheck;
+      if (check == null || check.deadline > deadline) {
+        if (check != null) {
+          check.cancel();
+        }
+        check = new TimeoutCheck(deadline);
+        timeoutCheck = check;
+        check.schedule();
+      }
+    }
+  }
+
+  private void checkTimeout() {
+    timeoutDue = false;
+    timeoutCheck = null;
+    if (timer != 0) {
+      if (timer <= System.currentTimeMillis()) {
+        timer = 0;
+        if (state != DOWN) { //without this check this event is fired in DOWN state.... it should not be.
+          logger.debug("Processing timeout event");
+          try {
+            getStates()[state.ordinal()].processEvent(timeOutEvent);
+          }
+          catch (Exception e) {
+            logger.debug("Error during processing FSM timeout", e);
+          }
+        }
+      }
+      else {
+        // timer was restarted since the check has been scheduled
+        startTimer(timer);
+      }
+    }
+  }
+
+  private class TimeoutCheck implements Runnable {
+
+    private final long deadline;
+    private ScheduledFuture<?> future;
+
+    TimeoutCheck(long deadline) {
+      this.deadline = deadline;
+    }
+
+    void schedule() {
+      try {
+        future = fsmExecutor.schedule(this, Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+      }
+      catch (RejectedExecutionException e) {
+        logger.debug("Peer FSM timer rejected, executor is shut down", e);
+      }
+    }
+
+    void cancel() {
+      if (future != null) {
+        future.cancel(false);
+      }
+    }
+
+    @Override
+    public void run() {
+      if (timeoutCheck == this) {
+        timeoutDue = true;
+        scheduleDrain();
+      }
+    }
+  }
+
   @Override
   public double getQueueInfo() {
     return eventQueue.size() * 1.0 / predefSize;
@@ -308,18 +737,20 @@ public class PeerFSMImpl implements IStateMachine {
   }
 
   protected void switchToNextState(FsmState newState) {
+    FsmState oldState = state;
+    getStates()[oldState.ordinal()].exitAction();
+    if (logger.isDebugEnabled()) {
+      logger.debug("{} FSM switch state: {} -> {}", new Object[] {context.getPeerDescription(), oldState, newState});
+    }
+    state = newState;
+    transitions++;
     // Fix for Issue #3026 (http://code.google.com/p/mobicents/issues/detail?id=3026)
-    // notify only when it's a new public state
-    if (newState.getPublicState() != state.getPublicState()) {
+    // notify only when it's a new public state, listeners are called once it is the current one
+    if (newState.getPublicState() != oldState.getPublicState()) {
       for (StateChangeListener l : listeners) {
-        l.stateChanged(state.getPublicState(), newState.getPublicState());
+        l.stateChanged(oldState.getPublicState(), newState.getPublicState());
       }
     }
-    getStates()[state.ordinal()].exitAction();
-    if (logger.isDebugEnabled()) {
-      logger.debug("{} FSM switch state: {} -> {}", new Object[] {context.getPeerDescription(), state, newState});
-    }
-    state = newState;
     getStates()[state.ordinal()].entryAction();
   }
 
@@ -365,7 +796,13 @@ public class PeerFSMImpl implements IStateMachine {
         //  }
         //}
       }
-      rc = eventQueue.offer(event, IAC_TIMEOUT, TimeUnit.MILLISECONDS);
+      if (fsmExecutor != null) {
+        // may be called while draining this very queue, so it must not wait for room
+        rc = eventQueue.offer(event);
+      }
+      else {
+        rc = eventQueue.offer(event, IAC_TIMEOUT, TimeUnit.MILLISECONDS);
+      }
     }
     catch (InterruptedException e) {
       logger.debug("Can not put event '" + event.toString() + "' to FSM " + this.toString(), e);
@@ -374,6 +811,9 @@ public class PeerFSMImpl implements IStateMachine {
     if (!rc) {
       throw new OverloadException("FSM overloaded");
     }
+    if (fsmExecutor != null) {
+      scheduleDrain();
+    }
     return true;
   }
 
@@ -381,7 +821,7 @@ public class PeerFSMImpl implements IStateMachine {
   //private static long lastLogged;
 
   protected void setInActiveTimer() {
-    timer = IAC_TIMEOUT - 2 * 1000 + random.nextInt(5) * 1000 + System.currentTimeMillis();
+    startTimer(IAC_TIMEOUT - 2 * 1000 + random.nextInt(5) * 1000 + System.currentTimeMillis());
   }
 
   @Override
@@ -411,7 +851,7 @@ public class PeerFSMImpl implements IStateMachine {
 
     protected void doEndConnection() {
       if (context.isRestoreConnection()) {
-        timer = REC_TIMEOUT + System.currentTimeMillis();
+        setTimer(REC_TIMEOUT);
         switchToNextState(REOPEN);
       }
       else {
@@ -428,7 +868,7 @@ public class PeerFSMImpl implements IStateMachine {
     }
 
     protected void setTimer(long value) {
-      timer = value + System.currentTimeMillis();
+      startTimer(value + System.currentTimeMillis());
     }
 
     protected String key(StateEvent event) {
@@ -462,86 +902,122 @@ public class PeerFSMImpl implements IStateMachine {
             public boolean processEvent(StateEvent event) {
               switch (event.encodeType(EventTypes.class)) {
                 case DISCONNECT_EVENT:
-                  timer = REC_TIMEOUT + System.currentTimeMillis();
+                  setTimer(REC_TIMEOUT);
                   switchToNextState(FsmState.REOPEN);
                   break;
                 case TIMEOUT_EVENT:
-                  try {
-                    context.sendDwrMessage();
-                    setTimer(DWA_TIMEOUT);
-                    if (watchdogSent) {
-                      switchToNextState(FsmState.SUSPECT);
+                  io(new PeerIo() {
+                    @Override
+                    protected void execute() throws Exception {
+                      context.sendDwrMessage();
                     }
-                    else {
-                      watchdogSent = true;
+
+                    @Override
+                    protected void done() {
+                      setTimer(DWA_TIMEOUT);
+                      if (watchdogSent) {
+                        switchToNextState(FsmState.SUSPECT);
+                      }
+                      else {
+                        watchdogSent = true;
+                      }
                     }
-                  }
-                  catch (Throwable e) {
-                    logger.debug("Can not send DWR", e);
-                    doDisconnect();
-                    setTimer(REC_TIMEOUT);
-                    switchToNextState(FsmState.REOPEN);
-                  }
+
+                    @Override
+                    protected void failed(Throwable e) {
+                      logger.debug("Can not send DWR", e);
+                      doDisconnect();
+                      setTimer(REC_TIMEOUT);
+                      switchToNextState(FsmState.REOPEN);
+                    }
+                  });
                   break;
                 case STOP_EVENT:
-                  try {
-                    if (event.getData() == null) {
-                      context.sendDprMessage(DisconnectCause.REBOOTING);
+                  final Integer disconnectCause = (Integer) event.getData();
+                  io(new PeerIo() {
+                    @Override
+                    protected void execute() throws Exception {
+                      context.sendDprMessage(disconnectCause == null ? DisconnectCause.REBOOTING : disconnectCause);
                     }
-                    else {
-                      Integer disconnectCause = (Integer) event.getData();
-                      context.sendDprMessage(disconnectCause);
+
+                    @Override
+                    protected void done() {
+                      setTimer(DPA_TIMEOUT);
+                      switchToNextState(FsmState.STOPPING);
                     }
-                    setTimer(DPA_TIMEOUT);
-                    switchToNextState(FsmState.STOPPING);
-                  }
-                  catch (Throwable e) {
-                    logger.debug("Can not send DPR", e);
-                    doDisconnect();
-                    switchToNextState(FsmState.DOWN);
-                  }
+
+                    @Override
+                    protected void failed(Throwable e) {
+                      logger.debug("Can not send DPR", e);
+                      doDisconnect();
+                      switchToNextState(FsmState.DOWN);
+                    }
+                  });
                   break;
                 case RECEIVE_MSG_EVENT:
                   setInActiveTimer();
-                  context.receiveMessage(message(event));
+                  receive(message(event));
                   break;
                 case DPR_EVENT:
-                  try {
-                    int code = context.processDprMessage(message(event));
-                    context.sendDpaMessage(message(event), code, null);
-                  }
-                  catch (Throwable e) {
-                    logger.debug("Can not send DPA", e);
-                  }
-                  doDisconnect();
-                  switchToNextState(FsmState.DOWN);
+                  final IMessage dpr = message(event);
+                  io(new PeerIo() {
+                    @Override
+                    protected void execute() throws Exception {
+                      int code = context.processDprMessage(dpr);
+                      context.sendDpaMessage(dpr, code, null);
+                    }
+
+                    @Override
+                    protected void done() {
+                      doDisconnect();
+                      switchToNextState(FsmState.DOWN);
+                    }
+
+                    @Override
+                    protected void failed(Throwable e) {
+                      logger.debug("Can not send DPA", e);
+                      done();
+                    }
+                  });
                   break;
                 case DWR_EVENT:
                   setInActiveTimer();
-                  try {
-                    int code = context.processDwrMessage(message(event));
-                    context.sendDwaMessage(message(event), code, null);
-                  }
-                  catch (Throwable e) {
-                    logger.debug("Can not send DWA", e);
-                    doDisconnect();
-                    switchToNextState(FsmState.DOWN);
-                  }
+                  final IMessage dwr = message(event);
+                  io(new PeerIo() {
+                    @Override
+                    protected void execute() throws Exception {
+                      int code = context.processDwrMessage(dwr);
+                      context.sendDwaMessage(dwr, code, null);
+                    }
+
+                    @Override
+                    protected void failed(Throwable e) {
+                      logger.debug("Can not send DWA", e);
+                      doDisconnect();
+                      switchToNextState(FsmState.DOWN);
+                    }
+                  });
                   break;
                 case DWA_EVENT:
                   setInActiveTimer();
                   watchdogSent = false;
                   break;
                 case SEND_MSG_EVENT:
-                  try {
-                    context.sendMessage(message(event));
-                  }
-                  catch (Throwable e) {
-                    logger.debug("Can not send message", e);
-                    doDisconnect();
-                    setTimer(REC_TIMEOUT);
-                    switchToNextState(FsmState.REOPEN);
-                  }
+                  final IMessage message = message(event);
+                  write(new PeerIo() {
+                    @Override
+                    protected void execute() throws Exception {
+                      context.sendMessage(message);
+                    }
+
+                    @Override
+                    protected void failed(Throwable e) {
+                      logger.debug("Can not send message", e);
+                      doDisconnect();
+                      setTimer(REC_TIMEOUT);
+                      switchToNextState(FsmState.REOPEN);
+                    }
+                  });
                   break;
                 default:
                   logger.debug("Unknown event type: {} in state {}", event.encodeType(EventTypes.class), state);
@@ -564,51 +1040,76 @@ public class PeerFSMImpl implements IStateMachine {
                   switchToNextState(FsmState.REOPEN);
                   break;
                 case STOP_EVENT:
-                  try {
-                    if (event.getData() == null) {
-                      context.sendDprMessage(DisconnectCause.REBOOTING);
+                  final Integer disconnectCause = (Integer) event.getData();
+                  io(new PeerIo() {
+                    @Override
+                    protected void execute() throws Exception {
+                      context.sendDprMessage(disconnectCause == null ? DisconnectCause.REBOOTING : disconnectCause);
                     }
-                    else {
-                      Integer disconnectCause = (Integer) event.getData();
-                      context.sendDprMessage(disconnectCause);
+
+                    @Override
+                    protected void done() {
+                      setInActiveTimer();
+                      switchToNextState(FsmState.STOPPING);
                     }
-                    setInActiveTimer();
-                    switchToNextState(FsmState.STOPPING);
-                  }
-                  catch (Throwable e) {
-                    logger.debug("Can not send DPR", e);
-                    doDisconnect();
-                    switchToNextState(FsmState.DOWN);
-                  }
+
+                    @Override
+                    protected void failed(Throwable e) {
+                      logger.debug("Can not send DPR", e);
+                      doDisconnect();
+                      switchToNextState(FsmState.DOWN);
+                    }
+                  });
                   break;
                 case DPR_EVENT:
-                  try {
-                    int code = context.processDprMessage(message(event));
-                    context.sendDpaMessage(message(event), code, null);
-                  }
-                  catch (Throwable e) {
-                    logger.debug("Can not send DPA", e);
-                  }
-                  doDisconnect();
-                  switchToNextState(FsmState.DOWN);
+                  final IMessage dpr = message(event);
+                  io(new PeerIo() {
+                    @Override
+                    protected void execute() throws Exception {
+                      int code = context.processDprMessage(dpr);
+                      context.sendDpaMessage(dpr, code, null);
+                    }
+
+                    @Override
+                    protected void done() {
+                      doDisconnect();
+                      switchToNextState(FsmState.DOWN);
+                    }
+
+                    @Override
+                    protected void failed(Throwable e) {
+                      logger.debug("Can not send DPA", e);
+                      done();
+                    }
+                  });
                   break;
                 case DWA_EVENT:
                   switchToNextState(FsmState.OKAY);
                   break;
                 case DWR_EVENT:
-                  try {
-                    int code = context.processDwrMessage(message(event));
-                    context.sendDwaMessage(message(event), code, null);
-                    switchToNextState(FsmState.OKAY);
-                  }
-                  catch (Throwable e) {
-                    logger.debug("Can not send DWA", e);
-                    doDisconnect();
-                    switchToNextState(FsmState.DOWN);
-                  }
+                  final IMessage dwr = message(event);
+                  io(new PeerIo() {
+                    @Override
+                    protected void execute() throws Exception {
+                      int code = context.processDwrMessage(dwr);
+                      context.sendDwaMessage(dwr, code, null);
+                    }
+
+                    @Override
+                    protected void done() {
+                      switchToNextState(FsmState.OKAY);
+                    }
+
+                    @Override
+                    protected void failed(Throwable e) {
+                      logger.debug("Can not send DWA", e);
+                      doDisconnect();
+                      switchToNextState(FsmState.DOWN);
+                    }
+                  });
                   break;
                 case RECEIVE_MSG_EVENT:
-                  context.receiveMessage(message(event));
+                  receive(message(event));
                   switchToNextState(FsmState.OKAY);
                   break;
                 case SEND_MSG_EVENT:
@@ -635,18 +1136,27 @@ public class PeerFSMImpl implements IStateMachine {
             public boolean processEvent(StateEvent event) {
               switch (event.encodeType(EventTypes.class)) {
                 case START_EVENT:
-                  try {
-                    context.createStatistics();
-                    context.connect();
-                    context.sendCerMessage();
-                    setTimer(CEA_TIMEOUT);
-                    switchToNextState(FsmState.INITIAL);
-                  }
-                  catch (Throwable e) {
-                    logger.debug("Connect error", e);
-                    setTimer(REC_TIMEOUT);
-                    switchToNextState(FsmState.REOPEN);
-                  }
+                  io(new PeerIo() {
+                    @Override
+                    protected void execute() throws Exception {
+                      context.createStatistics();
+                      context.connect();
+                      context.sendCerMessage();
+                    }
+
+                    @Override
+                    protected void done() {
+                      setTimer(CEA_TIMEOUT);
+                      switchToNextState(FsmState.INITIAL);
+                    }
+
+                    @Override
+                    protected void failed(Throwable e) {
+                      logger.debug("Connect error", e);
+                      setTimer(REC_TIMEOUT);
+                      switchToNextState(FsmState.REOPEN);
+                    }
+                  });
                   break;
                 case SEND_MSG_EVENT:
                   throw new RuntimeException("Connection is down");
@@ -665,24 +1175,38 @@ public class PeerFSMImpl implements IStateMachine {
             public boolean processEvent(StateEvent event) {
               switch (event.encodeType(EventTypes.class)) {
                 case CONNECT_EVENT:
-                  try {
-                    context.sendCerMessage();
-                    setTimer(CEA_TIMEOUT);
-                    switchToNextState(FsmState.INITIAL);
-                  }
-                  catch (Throwable e) {
-                    logger.debug("Can not send CER", e);
-                    setTimer(REC_TIMEOUT);
-                  }
+                  io(new PeerIo() {
+                    @Override
+                    protected void execute() throws Exception {
+                      context.sendCerMessage();
+                    }
+
+                    @Override
+                    protected void done() {
+                      setTimer(CEA_TIMEOUT);
+                      switchToNextState(FsmState.INITIAL);
+                    }
+
+                    @Override
+                    protected void failed(Throwable e) {
+                      logger.debug("Can not send CER", e);
+                      setTimer(REC_TIMEOUT);
+                    }
+                  });
                   break;
                 case TIMEOUT_EVENT:
-                  try {
-                    context.connect();
-                  }
-                  catch (Exception e) {
-                    logger.debug("Timeout processed. Can not connect to {}", context.getPeerDescription());
-                    setTimer(REC_TIMEOUT);
-                  }
+                  io(new PeerIo() {
+                    @Override
+                    protected void execute() throws Exception {
+                      context.connect();
+                    }
+
+                    @Override
+                    protected void failed(Throwable e) {
+                      logger.debug("Timeout processed. Can not connect to {}", context.getPeerDescription());
+                      setTimer(REC_TIMEOUT);
+                    }
+                  });
                   break;
                 case STOP_EVENT:
                   clearTimer();
@@ -753,7 +1277,7 @@ public class PeerFSMImpl implements IStateMachine {
                   switchToNextState(FsmState.DOWN);
                   break;
                 case RECEIVE_MSG_EVENT:
-                  context.receiveMessage(message(event));
+                  receive(message(event));
                   break;
                 case SEND_MSG_EVENT:
                   throw new RuntimeException("Stack now is stopping");
@@ -125,10 +125,72 @@ public class Parameters extends Ordinal {
   public static final Parameters RecTimeOut = new Parameters("RecTimeOut", Long.class, 10000L);
 
   /**
-   * Peer FSM Thread Count property
+   * Peer FSM Thread Count property (0 means events of all peers are processed by the shared PeerFSM executor)
    */
   public static final Parameters PeerFSMThreadCount = new Parameters("PeerFSMThreadCount", Integer.class, 3);
 
+  /**
+   * Run network request listener callbacks on virtual threads, if supported by the JVM (JDK 21+)
+   */
+  public static final Parameters UseVirtualThreads = new Parameters("UseVirtualThreads", Boolean.class, false);
+
+  /**
+   * Time in milliseconds after which session without activity is dropped from heap by OffHeapSessionDatasource,
+   * its state stays off-heap and session is created again on next use.
+   */
+  public static final Parameters OffHeapSessionIdleTimeout = new Parameters("OffHeapSessionIdleTimeout", Long.class, 60000L);
+
+  /**
+   * TCP Selector Thread Count property (0 means number of available processors)
+   */
+  public static final Parameters TCPSelectorThreadCount = new Parameters("TCPSelectorThreadCount", Integer.class, 0);
+
+  /**
+   * Netty I/O Thread Count property (0 means number of available processors)
+   */
+  public static final Parameters NettyIoThreadCount = new Parameters("NettyIoThreadCount", Integer.class, 0);
+
+  /**
+   * Netty Handler Thread Count property (0 means number of available processors, negative means messages are handled on the I/O threads)
+   */
+  public static final Parameters NettyHandlerThreadCount = new Parameters("NettyHandlerThreadCount", Integer.class, 0);
+
+  /**
+   * Use native epoll transport for Netty when available property
+   */
+  public static final Parameters NettyUseEpoll = new Parameters("NettyUseEpoll", Boolean.class, true);
+
+  /**
+   * Maximum number of outbound messages gathered into one socket write or flush property
+   */
+  public static final Parameters WriteBatchSize = new Parameters("WriteBatchSize", Integer.class, 32);
+
+  /**
+   * Maximum delay in microseconds of a Netty flush while gathering outbound messages property
+   * (0 means flush once per event loop iteration)
+   */
+  public static final Parameters WriteBatchDelay = new Parameters("WriteBatchDelay", Long.class, 0L);
+
+  /**
+   * Maximum size in bytes of a received message property, larger ones close the connection
+   */
+  public static final Parameters MaxMessageSize = new Parameters("MaxMessageSize", Integer.class, 1048576);
+
+  /**
+   * Tick duration in milliseconds of hashed wheel timers property
+   */
+  public static final Parameters TimerWheelTickDuration = new Parameters("TimerWheelTickDuration", Integer.class, 10);
+
+  /**
+   * Number of buckets of hashed wheel timers property
+   */
+  public static final Parameters TimerWheelSize = new Parameters("TimerWheelSize", Integer.class, 512);
+
+  /**
+   * Keep request timeouts in a hashed wheel timer instead of the ProcessingMessageTimer executor property
+   */
+  public static final Parameters MessageTimerWheel = new Parameters("MessageTimerWheel", Boolean.class, false);
+
   /**
    * Orig_host avp set as URI into CER message
    */
@@ -373,6 +435,11 @@ public class Parameters extends Ordinal {
    */
   public static final Parameters ConcurrentEntityPoolSize = new Parameters("ConcurrentEntityPoolSize", Integer.class, 4);
 
+  /**
+   * Concurrent entity runs tasks of one session in order on one of pool size lanes
+   */
+  public static final Parameters ConcurrentEntitySessionAffinity = new Parameters("ConcurrentEntitySessionAffinity", Boolean.class, false);
+
   /**
    * Dictionary root
    */
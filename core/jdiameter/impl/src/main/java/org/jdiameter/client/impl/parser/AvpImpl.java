@@ -42,8 +42,11 @@
 
 package org.jdiameter.client.impl.parser;
 
+import java.io.IOException;
+import java.io.ObjectOutputStream;
 import java.net.InetAddress;
 import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
 import java.net.UnknownServiceException;
 import java.util.Date;
 
@@ -75,6 +78,16 @@ class AvpImpl implements Avp {
   byte[] rawData = new byte[0];
   AvpSet groupedData;
 
+  // View into the received frame, used while rawData has not been materialized (rawData == null)
+  transient ByteBuffer frame;
+  transient int frameOffset;
+  transient int frameLength;
+
+  // Decoded leading 4 or 8 payload bytes of fixed width types, fixedWidth is 0 until decoded. AVPs created from
+  // a value keep only these (rawData == null, frame == null) and never allocate a payload array unless asked for it
+  transient long fixedBits;
+  transient volatile int fixedWidth;
+
   private static final Logger logger = LoggerFactory.getLogger(AvpImpl.class);
 
   AvpImpl(int code, int flags, long vnd, byte[] data) {
@@ -88,16 +101,45 @@ class AvpImpl implements Avp {
     rawData  = data;
   }
 
+  AvpImpl(int code, int flags, long vnd, ByteBuffer frame, int offset, int length) {
+    this(code, flags, vnd, null);
+    this.frame = frame;
+    this.frameOffset = offset;
+    this.frameLength = length;
+  }
+
+  AvpImpl(int code, int flags, long vnd, long bits, int width) {
+    this(code, flags, vnd, null);
+    this.fixedBits = bits;
+    this.fixedWidth = width;
+  }
+
   AvpImpl(Avp avp) {
     avpCode     = avp.getCode();
     vendorID    = avp.getVendorId();
     isMandatory = avp.isMandatory();
     isEncrypted = avp.isEncrypted();
     isVendorSpecific = avp.isVendorId();
+    if (avp instanceof AvpImpl) {
+      // a frame view is not shared but materialized below, so that the copy does not keep the received message
+      AvpImpl other = (AvpImpl) avp;
+      int otherWidth = other.fixedWidth;
+      if (other.rawData == null && other.frame == null && otherWidth != 0) {
+        rawData = null;
+        fixedBits = other.fixedBits;
+        fixedWidth = otherWidth;
+        return;
+      }
+    }
     try {
       rawData = avp.getRaw();
       if (rawData == null || rawData.length == 0) {
-        groupedData = avp.getGrouped();
+        // decoded grouped AVP, its children may be frame views as well
+        AvpSetImpl grouped = new AvpSetImpl();
+        for (Avp child : avp.getGrouped()) {
+          grouped.addAvp(new AvpImpl(child));
+        }
+        groupedData = grouped;
       }
     }
     catch (AvpDataException e) {
@@ -137,18 +179,18 @@ class AvpImpl implements Avp {
 
   @Override
   public byte[] getRaw() throws AvpDataException {
-    return rawData;
+    return raw();
   }
 
   @Override
   public byte[] getOctetString() throws AvpDataException {
-    return rawData;
+    return raw();
   }
 
   @Override
   public String getUTF8String() throws AvpDataException {
     try {
-      return parser.bytesToUtf8String(rawData);
+      return parser.bytesToUtf8String(raw());
     }
     catch (Exception e) {
       throw new AvpDataException(e, this);
@@ -157,70 +199,38 @@ class AvpImpl implements Avp {
 
   @Override
   public int getInteger32() throws AvpDataException {
-    try {
-      return parser.bytesToInt(rawData);
-    }
-    catch (Exception e) {
-      throw new AvpDataException(e, this);
-    }
+    return (int) fixed(ElementParser.INT32_SIZE);
   }
 
   @Override
   public long getInteger64() throws AvpDataException {
-    try {
-      return parser.bytesToLong(rawData);
-    }
-    catch (Exception e) {
-      throw new AvpDataException(e, this);
-    }
+    return fixed(ElementParser.INT64_SIZE);
   }
 
   @Override
   public long getUnsigned32() throws AvpDataException {
-    try {
-      byte[] u32ext = new byte[8];
-      System.arraycopy(rawData, 0, u32ext, 4, 4);
-      return parser.bytesToLong(u32ext);
-    }
-    catch (Exception e) {
-      throw new AvpDataException(e, this);
-    }
+    return fixed(ElementParser.INT32_SIZE) & 0xFFFFFFFFL;
   }
 
   @Override
   public long getUnsigned64() throws AvpDataException {
-    try {
-      return parser.bytesToLong(rawData);
-    }
-    catch (Exception e) {
-      throw new AvpDataException(e, this);
-    }
+    return fixed(ElementParser.INT64_SIZE);
   }
 
   @Override
   public float getFloat32() throws AvpDataException {
-    try {
-      return parser.bytesToFloat(rawData);
-    }
-    catch (Exception e) {
-      throw new AvpDataException(e, this);
-    }
+    return Float.intBitsToFloat((int) fixed(ElementParser.INT32_SIZE));
   }
 
   @Override
   public double getFloat64() throws AvpDataException {
-    try {
-      return parser.bytesToDouble(rawData);
-    }
-    catch (Exception e) {
-      throw new AvpDataException(e, this);
-    }
+    return Double.longBitsToDouble(fixed(ElementParser.INT64_SIZE));
   }
 
   @Override
   public InetAddress getAddress() throws AvpDataException {
     try {
-      return parser.bytesToAddress(rawData);
+      return parser.bytesToAddress(raw());
     }
     catch (Exception e) {
       throw new AvpDataException(e, this);
@@ -229,18 +239,13 @@ class AvpImpl implements Avp {
 
   @Override
   public Date getTime() throws AvpDataException {
-    try {
-      return parser.bytesToDate(rawData);
-    }
-    catch (Exception e) {
-      throw new AvpDataException(e, this);
-    }
+    return new Date(ElementParser.timeToMillis((int) fixed(ElementParser.INT32_SIZE)));
   }
 
   @Override
   public String getDiameterIdentity() throws AvpDataException {
     try {
-      return parser.bytesToOctetString(rawData);
+      return parser.bytesToOctetString(raw());
     }
     catch (Exception e) {
       throw new AvpDataException(e, this);
@@ -250,7 +255,7 @@ class AvpImpl implements Avp {
   @Override
   public URI getDiameterURI() throws AvpDataException {
     try {
-      return new URI(parser.bytesToOctetString(rawData));
+      return new URI(parser.bytesToOctetString(raw()));
     }
     catch (URISyntaxException e) {
       throw new AvpDataException(e, this);
@@ -264,8 +269,14 @@ class AvpImpl implements Avp {
   public AvpSet getGrouped() throws AvpDataException {
     try {
       if (groupedData == null) {
-        groupedData = parser.decodeAvpSet(rawData);
+        if (rawData == null) {
+          groupedData = parser.decodeAvpSet(frame, frameOffset, frameOffset + frameLength);
+        }
+        else {
+          groupedData = parser.decodeAvpSet(rawData);
+        }
         rawData = new byte[0];
+        frame = null;
       }
       return groupedData;
     }
@@ -286,7 +297,104 @@ class AvpImpl implements Avp {
 
   @Override
   public byte[] getRawData() {
-    return (rawData == null || rawData.length == 0) ? parser.encodeAvpSet(groupedData) : rawData;
+    byte[] data = raw();
+    return (data.length == 0 && groupedData != null) ? parser.encodeAvpSet(groupedData) : data;
+  }
+
+  /**
+   * Returns the leading <code>width</code> payload bytes (4 or 8) as a big-endian value. They are read in place
+   * from the frame view or raw data on first access and kept, the payload does not change once the AVP exists.
+   */
+  private long fixed(int width) throws AvpDataException {
+    int decoded = fixedWidth;
+    if (decoded < width) {
+      byte[] data = rawData;
+      int length = data != null ? data.length : frameLength;
+      if (length < width) {
+        throw new AvpDataException("Not enough data for " + width + " byte value: " + length, this);
+      }
+      // decode as much as the payload holds, so both 32 and 64 bit getters are served from it
+      decoded = length >= ElementParser.INT64_SIZE ? ElementParser.INT64_SIZE : ElementParser.INT32_SIZE;
+      if (data != null) {
+        fixedBits = decoded == ElementParser.INT64_SIZE ? ElementParser.getInt64(data, 0) : ElementParser.getInt32(data, 0);
+      }
+      else {
+        fixedBits = decoded == ElementParser.INT64_SIZE ? frame.getLong(frameOffset) : frame.getInt(frameOffset);
+      }
+      fixedWidth = decoded;
+    }
+    long bits = fixedBits;
+    return width == decoded ? bits : bits >>> 32;
+  }
+
+  /**
+   * Returns payload bytes, copying them out of the frame view or encoding the fixed width value on first access.
+   */
+  private byte[] raw() {
+    byte[] data = rawData;
+    if (data == null && frame == null) {
+      data = new byte[fixedWidth];
+      if (data.length == ElementParser.INT64_SIZE) {
+        ElementParser.putInt64(data, 0, fixedBits);
+      }
+      else {
+        ElementParser.putInt32(data, 0, (int) fixedBits);
+      }
+      rawData = data;
+    }
+    else if (data == null) {
+      data = new byte[frameLength];
+      if (frame.hasArray()) {
+        System.arraycopy(frame.array(), frame.arrayOffset() + frameOffset, data, 0, frameLength);
+      }
+      else {
+        ByteBuffer view = frame.duplicate();
+        view.position(frameOffset);
+        view.get(data);
+      }
+      rawData = data;
+    }
+    return data;
+  }
+
+  /**
+   * Returns payload size without materializing it.
+   */
+  int getPayloadLength() {
+    byte[] data = rawData;
+    if (data != null) {
+      return data.length;
+    }
+    return frame != null ? frameLength : fixedWidth;
+  }
+
+  /**
+   * Writes payload at the current position of the buffer, straight from the frame view if not materialized.
+   */
+  void writePayload(ByteBuffer out) {
+    byte[] data = rawData;
+    if (data != null) {
+      out.put(data);
+    }
+    else if (frame == null) {
+      if (fixedWidth == ElementParser.INT64_SIZE) {
+        out.putLong(fixedBits);
+      }
+      else {
+        out.putInt((int) fixedBits);
+      }
+    }
+    else {
+      ByteBuffer view = frame.duplicate();
+      view.limit(frameOffset + frameLength);
+      view.position(frameOffset);
+      out.put(view);
+    }
+  }
+
+  private void writeObject(ObjectOutputStream out) throws IOException {
+    raw();
+    out.defaultWriteObject();
   }
 
   // Caching toString.. Avp shouldn't be modified once created.
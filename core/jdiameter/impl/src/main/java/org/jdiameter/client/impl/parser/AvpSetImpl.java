@@ -53,6 +53,7 @@ package org.jdiameter.client.impl.parser;
 import java.net.InetAddress;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
 import java.util.Iterator;
 import java.util.List;
@@ -77,14 +78,33 @@ class AvpSetImpl implements AvpSet {
   private static final long serialVersionUID = 1L;
   private static final ElementParser parser = new ElementParser();
 
-  List<Avp> avps = new ArrayList<Avp>();
+  /**
+   * Sets with at least this many AVPs get a lookup index, smaller ones are scanned.
+   */
+  private static final int INDEX_THRESHOLD = 8;
+
+  private static final AvpSetImpl EMPTY = new AvpSetImpl(Collections.<Avp>emptyList());
+
+  List<Avp> avps = new AvpList();
+
+  // Built on first lookup, considered stale as soon as avps is structurally modified
+  private transient AvpIndex index;
 
   AvpSetImpl() {
 
   }
 
+  private AvpSetImpl(List<Avp> avps) {
+    this.avps = avps;
+  }
+
   @Override
   public Avp getAvp(int avpCode) {
+    AvpIndex idx = getIndex();
+    if (idx != null) {
+      int pos = idx.first(avpCode);
+      return pos < 0 ? null : this.avps.get(pos);
+    }
     for (Avp avp : this.avps) {
       if (avp.getCode() == avpCode) {
         return avp;
@@ -100,6 +120,16 @@ class AvpSetImpl implements AvpSet {
 
   @Override
   public Avp getAvp(int avpCode, long vendorId) {
+    AvpIndex idx = getIndex();
+    if (idx != null) {
+      for (int pos = idx.first(avpCode); pos >= 0; pos = idx.next[pos]) {
+        Avp avp = this.avps.get(pos);
+        if (avp.getVendorId() == vendorId) {
+          return avp;
+        }
+      }
+      return null;
+    }
     for (Avp avp : this.avps) {
       if (avp.getCode() == avpCode && avp.getVendorId() == vendorId) {
         return avp;
@@ -108,30 +138,106 @@ class AvpSetImpl implements AvpSet {
     return null;
   }
 
+  /**
+   * Returns read-only set with matching AVPs, its mutators throw {@link UnsupportedOperationException}.
+   */
   @Override
   public AvpSet getAvps(int avpCode) {
-    AvpSet result = new AvpSetImpl();
-    for (Avp avp : this.avps) {
-      if (avp.getCode() == avpCode) {
-        result.addAvp(avp);
+    Avp first = null;
+    List<Avp> result = null;
+    AvpIndex idx = getIndex();
+    if (idx != null) {
+      for (int pos = idx.first(avpCode); pos >= 0; pos = idx.next[pos]) {
+        Avp avp = this.avps.get(pos);
+        if (first == null) {
+          first = avp;
+        }
+        else {
+          result = collect(result, first, avp);
+        }
       }
     }
-    return result;
+    else {
+      for (Avp avp : this.avps) {
+        if (avp.getCode() == avpCode) {
+          if (first == null) {
+            first = avp;
+          }
+          else {
+            result = collect(result, first, avp);
+          }
+        }
+      }
+    }
+    return readOnly(first, result);
   }
 
-
-
+  /**
+   * Returns read-only set with matching AVPs, its mutators throw {@link UnsupportedOperationException}.
+   */
   @Override
   public AvpSet getAvps(int avpCode, long vendorId) {
-    AvpSet result = new AvpSetImpl();
-    for (Avp avp : this.avps) {
-      if (avp.getCode() == avpCode && avp.getVendorId() == vendorId) {
-        result.addAvp(avp);
+    Avp first = null;
+    List<Avp> result = null;
+    AvpIndex idx = getIndex();
+    if (idx != null) {
+      for (int pos = idx.first(avpCode); pos >= 0; pos = idx.next[pos]) {
+        Avp avp = this.avps.get(pos);
+        if (avp.getVendorId() == vendorId) {
+          if (first == null) {
+            first = avp;
+          }
+          else {
+            result = collect(result, first, avp);
+          }
+        }
       }
     }
+    else {
+      for (Avp avp : this.avps) {
+        if (avp.getCode() == avpCode && avp.getVendorId() == vendorId) {
+          if (first == null) {
+            first = avp;
+          }
+          else {
+            result = collect(result, first, avp);
+          }
+        }
+      }
+    }
+    return readOnly(first, result);
+  }
+
+  private static List<Avp> collect(List<Avp> result, Avp first, Avp avp) {
+    if (result == null) {
+      result = new ArrayList<Avp>(4);
+      result.add(first);
+    }
+    result.add(avp);
     return result;
   }
 
+  private static AvpSet readOnly(Avp first, List<Avp> result) {
+    if (first == null) {
+      return EMPTY;
+    }
+    return new AvpSetImpl(result == null ? Collections.singletonList(first) : Collections.unmodifiableList(result));
+  }
+
+  private AvpIndex getIndex() {
+    List<Avp> list = this.avps;
+    if (list.size() < INDEX_THRESHOLD || !(list instanceof AvpList)) {
+      return null;
+    }
+    int modCount = ((AvpList) list).getModCount();
+    AvpIndex idx = this.index;
+    if (idx == null || idx.modCount != modCount) {
+      idx = new AvpIndex(list, modCount);
+      this.index = idx;
+    }
+    return idx;
+  }
+
   @Override
   public AvpSet removeAvp(int avpCode) {
     return removeAvp(avpCode, 0);
@@ -169,7 +275,7 @@ class AvpSetImpl implements AvpSet {
 
   @Override
   public Avp addAvp(int avpCode, long value, boolean asUnsigned) {
-    Avp res = new AvpImpl(avpCode, 0, 0, asUnsigned ? parser.intU32ToBytes(value) : parser.int64ToBytes(value));
+    Avp res = new AvpImpl(avpCode, 0, 0, value, asUnsigned ? ElementParser.INT32_SIZE : ElementParser.INT64_SIZE);
     this.avps.add(res);
     return res;
   }
@@ -177,7 +283,7 @@ class AvpSetImpl implements AvpSet {
   @Override
   public Avp addAvp(int avpCode, long value, boolean mFlag, boolean pFlag, boolean asUnsigned) {
     int flags = ((mFlag ? 0x40 : 0) | (pFlag ? 0x20 : 0));
-    Avp res = new AvpImpl(avpCode, flags , 0, asUnsigned ? parser.intU32ToBytes(value) : parser.int64ToBytes(value));
+    Avp res = new AvpImpl(avpCode, flags , 0, value, asUnsigned ? ElementParser.INT32_SIZE : ElementParser.INT64_SIZE);
     this.avps.add(res);
     return res;
   }
@@ -185,7 +291,7 @@ class AvpSetImpl implements AvpSet {
   @Override
   public Avp addAvp(int avpCode, long value, long vndId, boolean mFlag, boolean pFlag, boolean asUnsigned) {
     int flags = ((vndId != 0 ? 0x80 : 0) | (mFlag ? 0x40 : 0) | (pFlag ? 0x20 : 0));
-    Avp res = new AvpImpl(avpCode, flags, vndId, asUnsigned ? parser.intU32ToBytes(value) : parser.int64ToBytes(value));
+    Avp res = new AvpImpl(avpCode, flags, vndId, value, asUnsigned ? ElementParser.INT32_SIZE : ElementParser.INT64_SIZE);
     this.avps.add(res);
     return res;
   }
@@ -202,7 +308,7 @@ class AvpSetImpl implements AvpSet {
 
   @Override
   public Avp insertAvp(int index, int avpCode, long value, boolean asUnsigned) {
-    Avp res = new AvpImpl(avpCode, 0, 0, asUnsigned ? parser.intU32ToBytes(value) : parser.int64ToBytes(value));
+    Avp res = new AvpImpl(avpCode, 0, 0, value, asUnsigned ? ElementParser.INT32_SIZE : ElementParser.INT64_SIZE);
     this.avps.add(index, res);
     return res;
   }
@@ -210,7 +316,7 @@ class AvpSetImpl implements AvpSet {
   @Override
   public Avp insertAvp(int index, int avpCode, long value, boolean mFlag, boolean pFlag, boolean asUnsigned) {
     int flags = ((mFlag ? 0x40 : 0) | (pFlag ? 0x20 : 0));
-    Avp res = new AvpImpl(avpCode, flags , 0, asUnsigned ? parser.intU32ToBytes(value) : parser.int64ToBytes(value));
+    Avp res = new AvpImpl(avpCode, flags , 0, value, asUnsigned ? ElementParser.INT32_SIZE : ElementParser.INT64_SIZE);
     this.avps.add(index, res);
     return res;
   }
@@ -218,7 +324,7 @@ class AvpSetImpl implements AvpSet {
   @Override
   public Avp insertAvp(int index, int avpCode, long value, long vndId, boolean mFlag, boolean pFlag, boolean asUnsigned) {
     int flags = ((vndId != 0 ? 0x80 : 0) | (mFlag ? 0x40 : 0) | (pFlag ? 0x20 : 0));
-    Avp res = new AvpImpl(avpCode, flags, vndId, asUnsigned ? parser.intU32ToBytes(value) : parser.int64ToBytes(value));
+    Avp res = new AvpImpl(avpCode, flags, vndId, value, asUnsigned ? ElementParser.INT32_SIZE : ElementParser.INT64_SIZE);
     this.avps.add(res);
     return res;
   }
@@ -279,7 +385,7 @@ class AvpSetImpl implements AvpSet {
 
   @Override
   public Avp addAvp(int avpCode, int value) {
-    Avp res = new AvpImpl(avpCode, 0, 0, parser.int32ToBytes(value));
+    Avp res = new AvpImpl(avpCode, 0, 0, value, ElementParser.INT32_SIZE);
     this.avps.add(res);
     return res;
   }
@@ -287,7 +393,7 @@ class AvpSetImpl implements AvpSet {
   @Override
   public Avp addAvp(int avpCode, int value, boolean mFlag, boolean pFlag) {
     int flags = ((mFlag ? 0x40 : 0) | (pFlag ? 0x20 : 0));
-    Avp res = new AvpImpl(avpCode, flags, 0, parser.int32ToBytes(value));
+    Avp res = new AvpImpl(avpCode, flags, 0, value, ElementParser.INT32_SIZE);
     this.avps.add(res);
     return res;
   }
@@ -295,14 +401,14 @@ class AvpSetImpl implements AvpSet {
   @Override
   public Avp addAvp(int avpCode, int value, long vndId, boolean mFlag, boolean pFlag) {
     int flags = ((vndId != 0 ? 0x80 : 0) | (mFlag ? 0x40 : 0) | (pFlag ? 0x20 : 0));
-    Avp res = new AvpImpl(avpCode, flags, vndId, parser.int32ToBytes(value));
+    Avp res = new AvpImpl(avpCode, flags, vndId, value, ElementParser.INT32_SIZE);
     this.avps.add(res);
     return res;
   }
 
   @Override
   public Avp addAvp(int avpCode, long value) {
-    Avp res = new AvpImpl(avpCode, 0, 0, parser.int64ToBytes(value) );
+    Avp res = new AvpImpl(avpCode, 0, 0, value, ElementParser.INT64_SIZE);
     this.avps.add(res);
     return res;
   }
@@ -310,7 +416,7 @@ class AvpSetImpl implements AvpSet {
   @Override
   public Avp addAvp(int avpCode, long value, boolean mFlag, boolean pFlag) {
     int flags = ((mFlag ? 0x40 : 0) | (pFlag ? 0x20 : 0));
-    Avp res = new AvpImpl(avpCode, flags, 0, parser.int64ToBytes(value) );
+    Avp res = new AvpImpl(avpCode, flags, 0, value, ElementParser.INT64_SIZE);
     this.avps.add(res);
     return res;
   }
@@ -318,14 +424,14 @@ class AvpSetImpl implements AvpSet {
   @Override
   public Avp addAvp(int avpCode, long value, long vndId, boolean mFlag, boolean pFlag) {
     int flags = ((vndId != 0 ? 0x80 : 0) | (mFlag ? 0x40 : 0) | (pFlag ? 0x20 : 0));
-    Avp res = new AvpImpl(avpCode, flags, vndId, parser.int64ToBytes(value) );
+    Avp res = new AvpImpl(avpCode, flags, vndId, value, ElementParser.INT64_SIZE);
     this.avps.add(res);
     return res;
   }
 
   @Override
   public Avp addAvp(int avpCode, float value) {
-    Avp res = new AvpImpl(avpCode, 0, 0, parser.float32ToBytes(value));
+    Avp res = new AvpImpl(avpCode, 0, 0, Float.floatToIntBits(value), ElementParser.INT32_SIZE);
     this.avps.add(res);
     return res;
   }
@@ -333,7 +439,7 @@ class AvpSetImpl implements AvpSet {
   @Override
   public Avp addAvp(int avpCode, float value, boolean mFlag, boolean pFlag) {
     int flags = ((mFlag ? 0x40 : 0) | (pFlag ? 0x20 : 0));
-    Avp res = new AvpImpl(avpCode, flags, 0, parser.float32ToBytes(value));
+    Avp res = new AvpImpl(avpCode, flags, 0, Float.floatToIntBits(value), ElementParser.INT32_SIZE);
     this.avps.add(res);
     return res;
   }
@@ -341,14 +447,14 @@ class AvpSetImpl implements AvpSet {
   @Override
   public Avp addAvp(int avpCode, float value, long vndId, boolean mFlag, boolean pFlag) {
     int flags = ((vndId != 0 ? 0x80 : 0) | (mFlag ? 0x40 : 0) | (pFlag ? 0x20 : 0));
-    Avp res = new AvpImpl(avpCode, flags, vndId, parser.float32ToBytes(value));
+    Avp res = new AvpImpl(avpCode, flags, vndId, Float.floatToIntBits(value), ElementParser.INT32_SIZE);
     this.avps.add(res);
     return res;
   }
 
   @Override
   public Avp addAvp(int avpCode, double value) {
-    Avp res = new AvpImpl(avpCode, 0, 0, parser.float64ToBytes(value));
+    Avp res = new AvpImpl(avpCode, 0, 0, Double.doubleToLongBits(value), ElementParser.INT64_SIZE);
     this.avps.add(res);
     return res;
 
@@ -357,7 +463,7 @@ class AvpSetImpl implements AvpSet {
   @Override
   public Avp addAvp(int avpCode, double value, boolean mFlag, boolean pFlag) {
     int flags = ((mFlag ? 0x40 : 0) | (pFlag ? 0x20 : 0));
-    Avp res = new AvpImpl(avpCode, flags, 0, parser.float64ToBytes(value));
+    Avp res = new AvpImpl(avpCode, flags, 0, Double.doubleToLongBits(value), ElementParser.INT64_SIZE);
     this.avps.add(res);
     return res;
   }
@@ -365,7 +471,7 @@ class AvpSetImpl implements AvpSet {
   @Override
   public Avp addAvp(int avpCode, double value, long vndId, boolean mFlag, boolean pFlag) {
     int flags = ((vndId != 0 ? 0x80 : 0) | (mFlag ? 0x40 : 0) | (pFlag ? 0x20 : 0));
-    Avp res = new AvpImpl(avpCode, flags, vndId, parser.float64ToBytes(value));
+    Avp res = new AvpImpl(avpCode, flags, vndId, Double.doubleToLongBits(value), ElementParser.INT64_SIZE);
     this.avps.add(res);
     return res;
   }
@@ -468,7 +574,7 @@ class AvpSetImpl implements AvpSet {
 
   @Override
   public Avp addAvp(int avpCode, Date value) {
-    Avp res = new AvpImpl(avpCode, 0, 0, parser.dateToBytes(value));
+    Avp res = new AvpImpl(avpCode, 0, 0, ElementParser.millisToTime(value.getTime()), ElementParser.INT32_SIZE);
     this.avps.add(res);
     return res;
 
@@ -477,7 +583,7 @@ class AvpSetImpl implements AvpSet {
   @Override
   public Avp addAvp(int avpCode, Date value, boolean mFlag, boolean pFlag) {
     int flags = ((mFlag ? 0x40 : 0) | (pFlag ? 0x20 : 0));
-    Avp res = new AvpImpl(avpCode, flags, 0, parser.dateToBytes(value));
+    Avp res = new AvpImpl(avpCode, flags, 0, ElementParser.millisToTime(value.getTime()), ElementParser.INT32_SIZE);
     this.avps.add(res);
     return res;
   }
@@ -485,7 +591,7 @@ class AvpSetImpl implements AvpSet {
   @Override
   public Avp addAvp(int avpCode, Date value, long vndId, boolean mFlag, boolean pFlag) {
     int flags = ((vndId != 0 ? 0x80 : 0) | (mFlag ? 0x40 : 0) | (pFlag ? 0x20 : 0));
-    Avp res = new AvpImpl(avpCode, flags, vndId, parser.dateToBytes(value));
+    Avp res = new AvpImpl(avpCode, flags, vndId, ElementParser.millisToTime(value.getTime()), ElementParser.INT32_SIZE);
     this.avps.add(res);
     return res;
   }
@@ -542,7 +648,7 @@ class AvpSetImpl implements AvpSet {
 
   @Override
   public Avp insertAvp(int index, int avpCode, int value) {
-    Avp res = new AvpImpl(avpCode, 0, 0, parser.int32ToBytes(value));
+    Avp res = new AvpImpl(avpCode, 0, 0, value, ElementParser.INT32_SIZE);
     this.avps.add(index, res);
     return res;
   }
@@ -550,7 +656,7 @@ class AvpSetImpl implements AvpSet {
   @Override
   public Avp insertAvp(int index, int avpCode, int value, boolean mFlag, boolean pFlag) {
     int flags = ((mFlag ? 0x40 : 0) | (pFlag ? 0x20 : 0));
-    Avp res = new AvpImpl(avpCode, flags, 0, parser.int32ToBytes(value));
+    Avp res = new AvpImpl(avpCode, flags, 0, value, ElementParser.INT32_SIZE);
     this.avps.add(index, res);
     return res;
   }
@@ -558,14 +664,14 @@ class AvpSetImpl implements AvpSet {
   @Override
   public Avp insertAvp(int index, int avpCode, int value, long vndId, boolean mFlag, boolean pFlag) {
     int flags = ((vndId != 0 ? 0x80 : 0) | (mFlag ? 0x40 : 0) | (pFlag ? 0x20 : 0));
-    Avp res = new AvpImpl(avpCode, flags, vndId, parser.int32ToBytes(value));
+    Avp res = new AvpImpl(avpCode, flags, vndId, value, ElementParser.INT32_SIZE);
     this.avps.add(index, res);
     return res;
   }
 
   @Override
   public Avp insertAvp(int index, int avpCode, long value) {
-    Avp res = new AvpImpl(avpCode, 0, 0, parser.int64ToBytes(value));
+    Avp res = new AvpImpl(avpCode, 0, 0, value, ElementParser.INT64_SIZE);
     this.avps.add(index, res);
     return res;
   }
@@ -573,7 +679,7 @@ class AvpSetImpl implements AvpSet {
   @Override
   public Avp insertAvp(int index, int avpCode, long value, boolean mFlag, boolean pFlag) {
     int flags = ((mFlag ? 0x40 : 0) | (pFlag ? 0x20 : 0));
-    Avp res = new AvpImpl(avpCode, flags, 0, parser.int64ToBytes(value));
+    Avp res = new AvpImpl(avpCode, flags, 0, value, ElementParser.INT64_SIZE);
     this.avps.add(index, res);
     return res;
   }
@@ -581,14 +687,14 @@ class AvpSetImpl implements AvpSet {
   @Override
   public Avp insertAvp(int index, int avpCode, long value, long vndId, boolean mFlag, boolean pFlag) {
     int flags = ((vndId != 0 ? 0x80 : 0) | (mFlag ? 0x40 : 0) | (pFlag ? 0x20 : 0));
-    Avp res = new AvpImpl(avpCode, flags, vndId, parser.int64ToBytes(value));
+    Avp res = new AvpImpl(avpCode, flags, vndId, value, ElementParser.INT64_SIZE);
     this.avps.add(index, res);
     return res;
   }
 
   @Override
   public Avp insertAvp(int index, int avpCode, float value) {
-    Avp res = new AvpImpl(avpCode, 0, 0, parser.float32ToBytes(value));
+    Avp res = new AvpImpl(avpCode, 0, 0, Float.floatToIntBits(value), ElementParser.INT32_SIZE);
     this.avps.add(index, res);
     return res;
   }
@@ -596,7 +702,7 @@ class AvpSetImpl implements AvpSet {
   @Override
   public Avp insertAvp(int index, int avpCode, float value, boolean mFlag, boolean pFlag) {
     int flags = ((mFlag ? 0x40 : 0) | (pFlag ? 0x20 : 0));
-    Avp res = new AvpImpl(avpCode, flags, 0, parser.float32ToBytes(value));
+    Avp res = new AvpImpl(avpCode, flags, 0, Float.floatToIntBits(value), ElementParser.INT32_SIZE);
     this.avps.add(index, res);
     return res;
   }
@@ -604,14 +710,14 @@ class AvpSetImpl implements AvpSet {
   @Override
   public Avp insertAvp(int index, int avpCode, float value, long vndId, boolean mFlag, boolean pFlag) {
     int flags = ((vndId != 0 ? 0x80 : 0) | (mFlag ? 0x40 : 0) | (pFlag ? 0x20 : 0));
-    Avp res = new AvpImpl(avpCode, flags, vndId, parser.float32ToBytes(value));
+    Avp res = new AvpImpl(avpCode, flags, vndId, Float.floatToIntBits(value), ElementParser.INT32_SIZE);
     this.avps.add(index, res);
     return res;
   }
 
   @Override
   public Avp insertAvp(int index, int avpCode, double value) {
-    Avp res = new AvpImpl(avpCode, 0, 0, parser.float64ToBytes(value));
+    Avp res = new AvpImpl(avpCode, 0, 0, Double.doubleToLongBits(value), ElementParser.INT64_SIZE);
     this.avps.add(index, res);
     return res;
   }
@@ -619,7 +725,7 @@ class AvpSetImpl implements AvpSet {
   @Override
   public Avp insertAvp(int index, int avpCode, double value, boolean mFlag, boolean pFlag) {
     int flags = ((mFlag ? 0x40 : 0) | (pFlag ? 0x20 : 0));
-    Avp res = new AvpImpl(avpCode, flags, 0, parser.float64ToBytes(value));
+    Avp res = new AvpImpl(avpCode, flags, 0, Double.doubleToLongBits(value), ElementParser.INT64_SIZE);
     this.avps.add(index, res);
     return res;
   }
@@ -627,7 +733,7 @@ class AvpSetImpl implements AvpSet {
   @Override
   public Avp insertAvp(int index, int avpCode, double value, long vndId, boolean mFlag, boolean pFlag) {
     int flags = ((vndId != 0 ? 0x80 : 0) | (mFlag ? 0x40 : 0) | (pFlag ? 0x20 : 0));
-    Avp res = new AvpImpl(avpCode, flags, vndId, parser.float64ToBytes(value));
+    Avp res = new AvpImpl(avpCode, flags, vndId, Double.doubleToLongBits(value), ElementParser.INT64_SIZE);
     this.avps.add(index, res);
     return res;
   }
@@ -731,7 +837,7 @@ class AvpSetImpl implements AvpSet {
 
   @Override
   public Avp insertAvp(int index, int avpCode, Date value) {
-    Avp res = new AvpImpl(avpCode, 0, 0, parser.dateToBytes(value));
+    Avp res = new AvpImpl(avpCode, 0, 0, ElementParser.millisToTime(value.getTime()), ElementParser.INT32_SIZE);
     this.avps.add(index, res);
     return res;
   }
@@ -739,7 +845,7 @@ class AvpSetImpl implements AvpSet {
   @Override
   public Avp insertAvp(int index, int avpCode, Date value, boolean mFlag, boolean pFlag) {
     int flags = ((mFlag ? 0x40 : 0) | (pFlag ? 0x20 : 0));
-    Avp res = new AvpImpl(avpCode, flags, 0, parser.dateToBytes(value));
+    Avp res = new AvpImpl(avpCode, flags, 0, ElementParser.millisToTime(value.getTime()), ElementParser.INT32_SIZE);
     this.avps.add(index, res);
     return res;
   }
@@ -747,7 +853,7 @@ class AvpSetImpl implements AvpSet {
   @Override
   public Avp insertAvp(int index, int avpCode, Date value, long vndId, boolean mFlag, boolean pFlag) {
     int flags = ((vndId != 0 ? 0x80 : 0) | (mFlag ? 0x40 : 0) | (pFlag ? 0x20 : 0));
-    Avp res = new AvpImpl(avpCode, flags, vndId, parser.dateToBytes(value));
+    Avp res = new AvpImpl(avpCode, flags, vndId, ElementParser.millisToTime(value.getTime()), ElementParser.INT32_SIZE);
     this.avps.add(index, res);
     return res;
   }
@@ -787,6 +893,63 @@ class AvpSetImpl implements AvpSet {
     return this.avps.iterator();
   }
 
+  /**
+   * List which exposes its modification count, so a stale index can be detected without hooking every mutator.
+   */
+  static class AvpList extends ArrayList<Avp> {
+
+    private static final long serialVersionUID = 1L;
+
+    int getModCount() {
+      return modCount;
+    }
+  }
+
+  /**
+   * Open addressing table from AVP code to the first position holding that code, further positions
+   * with the same code are chained (in order) through next[]. Immutable once built, so it can be
+   * shared by concurrent readers.
+   */
+  static final class AvpIndex {
+
+    final int modCount;
+    final int[] codes;
+    final int[] heads;
+    final int[] next;
+    private final int mask;
+
+    AvpIndex(List<Avp> avps, int modCount) {
+      this.modCount = modCount;
+      int size = avps.size();
+      int capacity = Integer.highestOneBit(size * 2 - 1) << 1;
+      this.mask = capacity - 1;
+      this.codes = new int[capacity];
+      this.heads = new int[capacity];
+      this.next = new int[size];
+      Arrays.fill(heads, -1);
+      // walk backwards so that chains end up in ascending order
+      for (int pos = size - 1; pos >= 0; pos--) {
+        int code = avps.get(pos).getCode();
+        int slot = slot(code);
+        codes[slot] = code;
+        next[pos] = heads[slot];
+        heads[slot] = pos;
+      }
+    }
+
+    int first(int code) {
+      return heads[slot(code)];
+    }
+
+    private int slot(int code) {
+      int slot = (code * 0x9E3779B9) >>> 16 & mask;
+      while (heads[slot] >= 0 && codes[slot] != code) {
+        slot = (slot + 1) & mask;
+      }
+      return slot;
+    }
+  }
+
   @Override
   public String toString() {
     return new StringBuffer("AvpSetImpl [avps=").append(avps).append("]@").append(super.hashCode()).toString();
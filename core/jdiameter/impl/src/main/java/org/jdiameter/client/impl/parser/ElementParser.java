@@ -42,14 +42,11 @@
 
 package org.jdiameter.client.impl.parser;
 
-import java.io.ByteArrayInputStream;
-import java.io.DataInputStream;
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
 import java.net.Inet4Address;
 import java.net.InetAddress;
 import java.nio.ByteBuffer;
-import java.util.Arrays;
 import java.util.Date;
 
 import org.jdiameter.api.Avp;
@@ -78,36 +75,80 @@ public class ElementParser implements IElementParser {
   private static final int INT_INET4 = 1;
   private static final int INT_INET6 = 2;
 
-  private static final int INT32_SIZE = 4;
-  private static final int INT64_SIZE = 8;
+  static final int INT32_SIZE = 4;
+  static final int INT64_SIZE = 8;
 
-  @Override
-  public int bytesToInt(byte[] rawData) throws AvpDataException {
+  /**
+   * Reads a big-endian 32 bit value at the given offset of the array.
+   */
+  static int getInt32(byte[] data, int offset) {
     // http://stackoverflow.com/a/9581858
     return
-        (rawData[0] & 0xFF) << 24 |
-        (rawData[1] & 0xFF) << 16 |
-        (rawData[2] & 0xFF) << 8 |
-        (rawData[3] & 0xFF) << 0;
+        (data[offset] & 0xFF) << 24 |
+        (data[offset + 1] & 0xFF) << 16 |
+        (data[offset + 2] & 0xFF) << 8 |
+        (data[offset + 3] & 0xFF) << 0;
+  }
+
+  /**
+   * Reads a big-endian 64 bit value at the given offset of the array.
+   */
+  static long getInt64(byte[] data, int offset) {
+    // http://stackoverflow.com/a/1026804
+    return (data[offset] & 0xFFL) << 56
+        | (data[offset + 1] & 0xFFL) << 48
+        | (data[offset + 2] & 0xFFL) << 40
+        | (data[offset + 3] & 0xFFL) << 32
+        | (data[offset + 4] & 0xFFL) << 24
+        | (data[offset + 5] & 0xFFL) << 16
+        | (data[offset + 6] & 0xFFL) << 8
+        | (data[offset + 7] & 0xFFL) << 0;
+  }
+
+  /**
+   * Writes a big-endian 32 bit value at the given offset of the array.
+   */
+  static void putInt32(byte[] data, int offset, int value) {
+    data[offset] = (byte) (value >> 24 & 0xFF);
+    data[offset + 1] = (byte) (value >> 16 & 0xFF);
+    data[offset + 2] = (byte) (value >>  8 & 0xFF);
+    data[offset + 3] = (byte) (value >>  0 & 0xFF);
+  }
+
+  /**
+   * Writes a big-endian 64 bit value at the given offset of the array.
+   */
+  static void putInt64(byte[] data, int offset, long value) {
+    putInt32(data, offset, (int) (value >>> 32));
+    putInt32(data, offset + 4, (int) value);
+  }
+
+  /**
+   * Converts the unsigned 32 bit NTP seconds of a Time AVP to Java milliseconds.
+   */
+  static long timeToMillis(int ntpSeconds) {
+    return ((ntpSeconds & 0xFFFFFFFFL) - SECOND_SHIFT) * 1000L;
+  }
+
+  /**
+   * Converts Java milliseconds to the 32 bit NTP seconds of a Time AVP.
+   */
+  static int millisToTime(long millis) {
+    return (int) ((millis / 1000L) + SECOND_SHIFT);
+  }
+
+  @Override
+  public int bytesToInt(byte[] rawData) throws AvpDataException {
+    return getInt32(rawData, 0);
   }
 
   @Override
   public long bytesToLong(byte[] rawData) throws AvpDataException {
-    // http://stackoverflow.com/a/1026804
-    return (rawData[0] & 0xFFL) << 56
-        | (rawData[1] & 0xFFL) << 48
-        | (rawData[2] & 0xFFL) << 40
-        | (rawData[3] & 0xFFL) << 32
-        | (rawData[4] & 0xFFL) << 24
-        | (rawData[5] & 0xFFL) << 16
-        | (rawData[6] & 0xFFL) << 8
-        | (rawData[7] & 0xFFL) << 0;
+    return getInt64(rawData, 0);
   }
 
   public long bytesToUnsignedInt32(byte[] rawData) throws AvpDataException {
-    byte[] u32ext = new byte[INT64_SIZE];
-    System.arraycopy(rawData, 0, u32ext, 4, 4);
-    return bytesToLong(u32ext);
+    return getInt32(rawData, 0) & 0xFFFFFFFFL;
   }
 
   @Override
@@ -144,9 +185,7 @@ public class ElementParser implements IElementParser {
   @Override
   public Date bytesToDate(byte[] rawData) throws AvpDataException {
     try {
-      byte[] tmp = new byte[8];
-      System.arraycopy(rawData, 0 , tmp, 4, 4);
-      return new Date(((bytesToLong(tmp) - SECOND_SHIFT) * 1000L));
+      return new Date(timeToMillis(getInt32(rawData, 0)));
     }
     catch (Exception e) {
       throw new AvpDataException(e);
@@ -171,30 +210,19 @@ public class ElementParser implements IElementParser {
   @Override
   public byte [] int32ToBytes(int value) {
     byte[] bytes = new byte[INT32_SIZE];
-    bytes[0] = (byte)(value >> 24 & 0xFF);
-    bytes[1] = (byte)(value >> 16 & 0xFF);
-    bytes[2] = (byte)(value >>  8 & 0xFF);
-    bytes[3] = (byte)(value >>  0 & 0xFF);
+    putInt32(bytes, 0, value);
     return bytes;
   }
 
   @Override
   public byte [] intU32ToBytes(long value) {
-    byte[] bytes = int64ToBytes(value);
-    return new byte[]{bytes[4], bytes[5], bytes[6], bytes[7]};
+    return int32ToBytes((int) value);
   }
 
   @Override
   public byte [] int64ToBytes(long value) {
     byte[] bytes = new byte[INT64_SIZE];
-    bytes[0] = (byte)(value >> 56 & 0xFF);
-    bytes[1] = (byte)(value >> 48 & 0xFF);
-    bytes[2] = (byte)(value >> 40 & 0xFF);
-    bytes[3] = (byte)(value >> 32 & 0xFF);
-    bytes[4] = (byte)(value >> 24 & 0xFF);
-    bytes[5] = (byte)(value >> 16 & 0xFF);
-    bytes[6] = (byte)(value >>  8 & 0xFF);
-    bytes[7] = (byte)(value >>  0 & 0xFF);
+    putInt64(bytes, 0, value);
     return bytes;
   }
 
@@ -245,9 +273,7 @@ public class ElementParser implements IElementParser {
 
   @Override
   public byte[] dateToBytes(Date date) {
-    byte[] data = new byte[4];
-    System.arraycopy(int64ToBytes((date.getTime() / 1000L) + SECOND_SHIFT), 4, data, 0, 4);
-    return data;
+    return int32ToBytes(millisToTime(date.getTime()));
   }
 
   @Override
@@ -273,108 +299,108 @@ public class ElementParser implements IElementParser {
    * @throws AvpDataException
    */
   public AvpSetImpl decodeAvpSet(byte[] buffer, int shift) throws IOException, AvpDataException {
+    return this.decodeAvpSet(ByteBuffer.wrap(buffer), shift, buffer.length);
+  }
+
+  /**
+   * Decodes AVPs found between <code>offset</code> and <code>end</code> of the buffer. AVP payloads are not
+   * copied, each AVP keeps an offset/length view into the buffer and only materializes its bytes when asked
+   * for them, so the buffer must not be modified afterwards.
+   *
+   * @param buffer buffer holding the received frame (heap or direct)
+   * @param offset absolute position of the first AVP header
+   * @param end absolute position right after the last AVP
+   * @return set with decoded AVPs
+   * @throws AvpDataException if the AVP lengths do not fit the buffer
+   */
+  public AvpSetImpl decodeAvpSet(ByteBuffer buffer, int offset, int end) throws AvpDataException {
     AvpSetImpl avps = new AvpSetImpl();
-    int tmp, counter = shift;
-    DataInputStream in = new DataInputStream(new ByteArrayInputStream(buffer, shift, buffer.length /* - shift ? */));
+    int counter = offset;
 
-    while (counter < buffer.length) {
-      int code = in.readInt();
-      tmp = in.readInt();
+    while (counter < end) {
+      if (counter + 8 > end) {
+        throw new AvpDataException("Not enough data in buffer!");
+      }
+      int code = buffer.getInt(counter);
+      int tmp = buffer.getInt(counter + 4);
       int flags = (tmp >> 24) & 0xFF;
       int length  = tmp & 0xFFFFFF;
-      if (length < 0 || counter + length > buffer.length) {
+      // Determine header L = 4(code) +1(flags) +3(length) [+4(vendor)]
+      int headerLength = (flags & 0x80) != 0 ? 12 : 8;
+      if (length < headerLength || counter + length > end) {
         throw new AvpDataException("Not enough data in buffer!");
       }
       long vendor = 0;
-      if ((flags & 0x80) != 0) {
-        vendor = in.readInt();
+      if (headerLength == 12) {
+        vendor = buffer.getInt(counter + 8);
       }
-      // Determine body L = length - 4(code) -1(flags) -3(length) [-4(vendor)]
-      byte[] rawData = new byte[length - (8 + (vendor == 0 ? 0 : 4))];
-      in.read(rawData);
-      // skip remaining.
-      // TODO: Do we need to padd everything? Or on send stack should properly fill byte[] ... ?
-      if (length % 4 != 0) {
-        for (int i; length % 4 != 0; length += i) {
-          i = (int) in.skip((4 - length % 4));
-        }
-      }
-      AvpImpl avp = new AvpImpl(code, (short) flags, (int) vendor, rawData);
+      AvpImpl avp = new AvpImpl(code, (short) flags, (int) vendor, buffer, counter + headerLength, length - headerLength);
       avps.addAvp(avp);
-      counter += length;
+      // skip remaining padding
+      counter += (length + 3) & ~3;
     }
     return avps;
   }
 
   public byte[] encodeAvpSet(AvpSet avps) {
-    //ByteArrayOutputStream out = new ByteArrayOutputStream();
-    DynamicByteArray dba = new DynamicByteArray(0);
+    ByteBuffer buffer = ByteBuffer.allocate(getAvpSetLength(avps));
     try {
-      //DataOutputStream data = new DataOutputStream(out);
-      for (Avp a : avps) {
-        if (a instanceof AvpImpl) {
-          AvpImpl aImpl = (AvpImpl) a;
-          if (aImpl.rawData.length == 0 && aImpl.groupedData != null) {
-            aImpl.rawData = encodeAvpSet(a.getGrouped());
-          }
-          //data.write(newEncodeAvp(aImpl));
-          dba.add(encodeAvp(aImpl));
-        }
-      }
+      encodeAvpSet(avps, buffer);
     }
     catch (Exception e) {
-      e.printStackTrace();
       logger.debug("Error during encode avps", e);
     }
-    return dba.getResult();
+    return buffer.array();
   }
 
-  protected class DynamicByteArray {
-
-    private byte[] array;
-    private int size;
-
-    public DynamicByteArray(int cap) {
-      array = new byte[cap > 0 ? cap : 256];
-      size = 0;
-    }
-
-    public int get(int pos) {
-      if (pos >= size) {
-        throw new ArrayIndexOutOfBoundsException();
+  /**
+   * Computes the encoded size of the AVPs, including headers, padding and the content of grouped AVPs.
+   *
+   * @param avps set of AVPs
+   * @return number of bytes {@link #encodeAvpSet(AvpSet, ByteBuffer)} will write
+   */
+  public int getAvpSetLength(AvpSet avps) {
+    int length = 0;
+    for (Avp a : avps) {
+      if (a instanceof AvpImpl) {
+        length += getAvpLength((AvpImpl) a);
       }
-      return array[pos];
     }
+    return length;
+  }
 
-    public void add(byte[] bytes) {
-      if (size + bytes.length > array.length) {
-        byte[] newarray = new byte[array.length + bytes.length * 2];
-        System.arraycopy(array, 0, newarray, 0, size);
-        array = newarray;
-      }
-      System.arraycopy(bytes, 0, array, size, bytes.length);
-      size += bytes.length;
-    }
+  /**
+   * Computes the encoded size of a single AVP, including header and padding.
+   *
+   * @param avp AVP to measure
+   * @return number of bytes {@link #encodeAvp(AvpImpl, ByteBuffer)} will write
+   */
+  public int getAvpLength(AvpImpl avp) {
+    int payloadSize = isGroupedPending(avp) ? getAvpSetLength(avp.groupedData) : avp.getPayloadLength();
+    return (avp.getVendorId() != 0 ? 12 : 8) + ((payloadSize + 3) & ~3);
+  }
 
-    public byte[] getResult() {
-      return Arrays.copyOfRange(array, 0, size);
+  /**
+   * Writes AVPs at the current position of the buffer, advancing it. Grouped AVPs are written in place,
+   * their length is filled in once their content is known.
+   *
+   * @param avps set of AVPs
+   * @param out buffer with at least {@link #getAvpSetLength(AvpSet)} bytes remaining
+   * @throws AvpDataException if the content of a grouped AVP can not be retrieved
+   */
+  public void encodeAvpSet(AvpSet avps, ByteBuffer out) throws AvpDataException {
+    for (Avp a : avps) {
+      if (a instanceof AvpImpl) {
+        encodeAvp((AvpImpl) a, out);
+      }
     }
   }
 
   public byte[] encodeAvp(AvpImpl avp) {
     try {
-      int payloadSize = avp.getRaw().length;
-      boolean hasVendorId = avp.getVendorId() != 0;
-      int origLength = payloadSize + 8 + (hasVendorId ? 4 : 0);
-      int tmp = payloadSize % 4;
-      int paddingSize = tmp > 0 ? (4 - tmp) : 0;
-
-      byte[] bCode = this.int32ToBytes(avp.getCode());
-      int flags = (byte) ((hasVendorId ? 0x80 : 0) |
-          (avp.isMandatory() ? 0x40 : 0) | (avp.isEncrypted() ? 0x20 : 0));
-      byte[] bFlags = this.int32ToBytes(((flags << 24) & 0xFF000000) + origLength);
-      byte[] bVendor = hasVendorId ? int32ToBytes((int) avp.getVendorId()) : new byte[0];
-      return concat(origLength + paddingSize, bCode, bFlags, bVendor, avp.getRaw());
+      ByteBuffer buffer = ByteBuffer.allocate(getAvpLength(avp));
+      encodeAvp(avp, buffer);
+      return buffer.array();
     }
     catch (Exception e) {
       logger.debug("Error during encode avp", e);
@@ -382,19 +408,39 @@ public class ElementParser implements IElementParser {
     }
   }
 
-  private byte[] concat(int length, byte[]... arrays) {
-    if (length == 0) {
-      for (byte[] array : arrays) {
-        length += array.length;
-      }
+  /**
+   * Writes a single AVP, including header and padding, at the current position of the buffer, advancing it.
+   *
+   * @param avp AVP to write
+   * @param out buffer with at least {@link #getAvpLength(AvpImpl)} bytes remaining
+   * @throws AvpDataException if the content of a grouped AVP can not be retrieved
+   */
+  public void encodeAvp(AvpImpl avp, ByteBuffer out) throws AvpDataException {
+    boolean hasVendorId = avp.getVendorId() != 0;
+    int flags = (byte) ((hasVendorId ? 0x80 : 0) |
+        (avp.isMandatory() ? 0x40 : 0) | (avp.isEncrypted() ? 0x20 : 0));
+    int start = out.position();
+    out.putInt(avp.getCode());
+    // length is filled in below, once the payload is written
+    out.putInt(0);
+    if (hasVendorId) {
+      out.putInt((int) avp.getVendorId());
     }
-    byte[] result = new byte[length];
-    int pos = 0;
-    for (byte[] array : arrays) {
-      System.arraycopy(array, 0, result, pos, array.length);
-      pos += array.length;
+    if (isGroupedPending(avp)) {
+      encodeAvpSet(avp.getGrouped(), out);
     }
-    return result;
+    else {
+      avp.writePayload(out);
+    }
+    int origLength = out.position() - start;
+    out.putInt(start + 4, ((flags << 24) & 0xFF000000) + origLength);
+    for (int i = origLength; i % 4 != 0; i++) {
+      out.put((byte) 0);
+    }
+  }
+
+  private boolean isGroupedPending(AvpImpl avp) {
+    return avp.groupedData != null && avp.getPayloadLength() == 0;
   }
 
   protected ByteBuffer prepareBuffer(byte [] bytes, int len) throws AvpDataException  {
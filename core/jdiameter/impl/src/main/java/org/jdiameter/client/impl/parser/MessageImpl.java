@@ -91,6 +91,7 @@ public class MessageImpl implements IMessage {
   transient IPeer peer;
   transient TimerTask timerTask;
   transient IEventListener listener;
+  transient long sentTime;
 
   // Cached result for getApplicationIdAvps() method. It is called extensively and takes some time.
   // Potential place for dirt, but Application IDs don't change during message life time.
@@ -123,13 +124,13 @@ public class MessageImpl implements IMessage {
    * @param avpSet
    */
   MessageImpl(int commandCode, long applicationId, short flags, long hopByHopId, long endToEndId, AvpSetImpl avpSet) {
-    this(commandCode, applicationId);
+    // don't delegate to this(commandCode, applicationId), decoded messages need neither a new E2E id nor an empty set
+    this.commandCode = commandCode;
+    this.applicationId = applicationId;
     this.flags = flags;
     this.hopByHopId = hopByHopId;
     this.endToEndId = endToEndId;
-    if (avpSet != null) {
-      this.avpSet = avpSet;
-    }
+    this.avpSet = avpSet != null ? avpSet : new AvpSetImpl();
   }
 
   //  /**
@@ -523,6 +524,16 @@ public class MessageImpl implements IMessage {
     state = newState;
   }
 
+  @Override
+  public void setSentTime(long nanoTime) {
+    sentTime = nanoTime;
+  }
+
+  @Override
+  public long getSentTime() {
+    return sentTime;
+  }
+
   @Override
   public void createTimer(ScheduledExecutorService scheduledFacility, long timeOut, TimeUnit timeUnit) {
     timerTask = new TimerTask(this);
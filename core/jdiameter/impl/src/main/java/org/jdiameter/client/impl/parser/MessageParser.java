@@ -47,10 +47,6 @@ import static org.jdiameter.api.Avp.AUTH_APPLICATION_ID;
 import static org.jdiameter.api.Avp.SESSION_ID;
 import static org.jdiameter.api.Avp.VENDOR_SPECIFIC_APPLICATION_ID;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
-import java.io.DataInputStream;
-import java.io.DataOutputStream;
 import java.nio.ByteBuffer;
 import java.util.concurrent.TimeUnit;
 
@@ -88,32 +84,43 @@ public class MessageParser extends ElementParser implements IMessageParser {
 
   @Override
   public IMessage createMessage(byte[] message) throws AvpDataException {
+    return createMessage(ByteBuffer.wrap(message));
+  }
+
+  /**
+   * Decodes message found between position and limit of the buffer. Header is read eagerly while AVPs keep
+   * offset/length views into the buffer, so AVP payloads are copied only if {@link Avp#getRaw()} (or any
+   * typed getter) is called. The buffer may be heap or direct, but must not be modified afterwards.
+   */
+  @Override
+  public IMessage createMessage(ByteBuffer data) throws AvpDataException {
     // Read header
     try {
+      int offset = data.position();
+      int length = data.remaining();
+      if (length < 20) {
+        throw new Exception("Not enough data for header: " + length);
+      }
       long tmp;
-      DataInputStream in = new DataInputStream(new ByteArrayInputStream(message));
-      tmp = in.readInt();
+      tmp = data.getInt(offset);
       short version = (short) (tmp >> 24);
       if (version != 1) {
         throw new Exception("Illegal value of version " + version);
       }
 
-      if (message.length != (tmp & 0x00FFFFFF)) {
+      if (length != (tmp & 0x00FFFFFF)) {
         //throw new ParseException("Wrong length of data: " + (tmp & 0x00FFFFFF));
         throw new Exception("Wrong length of data: " + (tmp & 0x00FFFFFF));
       }
 
-      tmp = in.readInt();
+      tmp = data.getInt(offset + 4);
       short flags        = (short) ((tmp >> 24) & 0xFF);
       int commandCode    = (int) (tmp & 0xFFFFFF);
-      long applicationId = ((long) in.readInt() << 32) >>> 32;
-      long hopByHopId    = ((long) in.readInt() << 32) >>> 32;
-      long endToEndId    = ((long) in.readInt() << 32) >>> 32;
+      long applicationId = ((long) data.getInt(offset + 8) << 32) >>> 32;
+      long hopByHopId    = ((long) data.getInt(offset + 12) << 32) >>> 32;
+      long endToEndId    = ((long) data.getInt(offset + 16) << 32) >>> 32;
       // Read body
-      // byte[] body = new byte[message.length - 20];
-      // System.arraycopy(message, 20, body, 0, body.length);
-      // AvpSetImpl avpSet = decodeAvpSet(body);
-      AvpSetImpl avpSet = decodeAvpSet(message, 20);
+      AvpSetImpl avpSet = decodeAvpSet(data, offset + 20, offset + length);
 
       return new MessageImpl(commandCode, applicationId, flags, hopByHopId, endToEndId, avpSet);
     }
@@ -122,12 +129,6 @@ public class MessageParser extends ElementParser implements IMessageParser {
     }
   }
 
-  @Override
-  public IMessage createMessage(ByteBuffer data) throws AvpDataException {
-    byte[] message = data.array();
-    return createMessage(message);
-  }
-
   @Override
   public <T> T createMessage(Class<?> iface, ByteBuffer data) throws AvpDataException {
     if (iface == IMessage.class) {
@@ -252,44 +253,33 @@ public class MessageParser extends ElementParser implements IMessageParser {
 
   @Override
   public ByteBuffer encodeMessage(IMessage message) throws ParseException {
-    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    ByteBuffer buffer = ByteBuffer.allocate(getMessageLength(message));
+    encodeMessage(message, buffer);
+    buffer.flip();
+    return buffer;
+  }
+
+  @Override
+  public int getMessageLength(IMessage message) {
+    return 20 + getAvpSetLength(message.getAvps());
+  }
+
+  @Override
+  public void encodeMessage(IMessage message, ByteBuffer out) throws ParseException {
     try {
-      byte[] rawData = encodeAvpSet(message.getAvps());
-      DataOutputStream data = new DataOutputStream(out);
-      // Wasting processor time, are we ?
-      // int tmp = (1 << 24) & 0xFF000000;
-      int tmp = (1 << 24);
-      tmp += 20 + rawData.length;
-      data.writeInt(tmp);
-      // Again, unneeded operation ?
-      // tmp = (message.getFlags() << 24) & 0xFF000000;
-      tmp = (message.getFlags() << 24);
-      tmp += message.getCommandCode();
-      data.writeInt(tmp);
-      data.write(toBytes(message.getHeaderApplicationId()));
-      data.write(toBytes(message.getHopByHopIdentifier()));
-      data.write(toBytes(message.getEndToEndIdentifier()));
-      data.write(rawData);
+      int start = out.position();
+      // length is filled in below, once the AVPs are written
+      out.putInt(0);
+      out.putInt((message.getFlags() << 24) + message.getCommandCode());
+      out.putInt((int) message.getHeaderApplicationId());
+      out.putInt((int) message.getHopByHopIdentifier());
+      out.putInt((int) message.getEndToEndIdentifier());
+      encodeAvpSet(message.getAvps(), out);
+      out.putInt(start, (1 << 24) + (out.position() - start));
     }
     catch (Exception e) {
-      //logger.debug("Error during encode message", e);
       throw new ParseException("Failed to encode message.", e);
     }
-    try {
-      return prepareBuffer(out.toByteArray(), out.size());
-    }
-    catch (AvpDataException ade) {
-      throw new ParseException(ade);
-    }
-  }
-
-  private byte[] toBytes(long value) {
-    byte[] data = new byte[4];
-    data[0] = (byte) ((value >> 24) & 0xFF);
-    data[1] = (byte) ((value >> 16) & 0xFF);
-    data[2] = (byte) ((value >> 8) & 0xFF);
-    data[3] = (byte) ((value) & 0xFF);
-    return data;
   }
 
   @Override
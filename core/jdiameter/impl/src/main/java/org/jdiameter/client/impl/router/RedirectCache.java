@@ -0,0 +1,342 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2016, TeleStax Inc. and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+package org.jdiameter.client.impl.router;
+
+import static org.jdiameter.client.impl.router.RouterImpl.ALL_APPLICATION;
+import static org.jdiameter.client.impl.router.RouterImpl.ALL_HOST;
+import static org.jdiameter.client.impl.router.RouterImpl.ALL_REALM;
+import static org.jdiameter.client.impl.router.RouterImpl.ALL_SESSION;
+import static org.jdiameter.client.impl.router.RouterImpl.ALL_USER;
+import static org.jdiameter.client.impl.router.RouterImpl.REALM_AND_APPLICATION;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.jdiameter.api.ApplicationId;
+import org.jdiameter.common.api.statistic.IStatistic;
+import org.jdiameter.common.api.statistic.IStatisticManager;
+import org.jdiameter.common.api.statistic.IStatisticRecord;
+
+/**
+ * Cache of redirect answers, keyed by the scope given in Redirect-Host-Usage. Each usage has its own map, so a
+ * request is matched with at most one lookup per usage, most specific usage first: session, user, host, realm and
+ * application, realm and finally application. Entries live for Redirect-Max-Cache-Time. They are removed by a task
+ * on the expiry scheduler, the router's own timer wheel, and are also checked for expiry on lookup, so the cache
+ * stays correct without a scheduler. The task of an entry is cancelled when the entry is replaced or removed. The
+ * scheduler must drop cancelled tasks, as the wheel does on its next tick, or they hold their entries until their
+ * deadline.
+ */
+public class RedirectCache {
+
+  private final int maxSize;
+  private final AtomicInteger size = new AtomicInteger();
+  // indexed by Redirect-Host-Usage value
+  private final ConcurrentHashMap<Object, Entry>[] entries;
+
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+  private volatile ScheduledExecutorService expiryScheduler;
+
+  private IStatisticManager statisticManager;
+  private IStatistic statistic;
+
+  /**
+   * @param maxSize max number of entries, further redirects are not cached
+   * @param statisticManager registers the hit statistic, may be null
+   */
+  @SuppressWarnings({ "unchecked", "rawtypes" })
+  public RedirectCache(int maxSize, IStatisticManager statisticManager) {
+    this.maxSize = maxSize;
+    this.entries = new ConcurrentHashMap[ALL_USER + 1];
+    for (int usage = ALL_SESSION; usage <= ALL_USER; usage++) {
+      entries[usage] = new ConcurrentHashMap<Object, Entry>();
+    }
+    if (statisticManager != null) {
+      this.statisticManager = statisticManager;
+      this.statistic = statisticManager.newStatistic("RedirectCache", IStatistic.Groups.Router,
+          statisticManager.newCounterRecord(IStatisticRecord.Counters.RedirectCacheHits, new IStatisticRecord.LongValueHolder() {
+            @Override
+            public long getValueAsLong() {
+              return getHits();
+            }
+
+            @Override
+            public String getValueAsString() {
+              return String.valueOf(getValueAsLong());
+            }
+          }),
+          statisticManager.newCounterRecord(IStatisticRecord.Counters.RedirectCacheMisses, new IStatisticRecord.LongValueHolder() {
+            @Override
+            public long getValueAsLong() {
+              return getMisses();
+            }
+
+            @Override
+            public String getValueAsString() {
+              return String.valueOf(getValueAsLong());
+            }
+          }),
+          statisticManager.newCounterRecord(IStatisticRecord.Counters.RedirectCacheSize, new IStatisticRecord.IntegerValueHolder() {
+            @Override
+            public int getValueAsInt() {
+              return size();
+            }
+
+            @Override
+            public String getValueAsString() {
+              return String.valueOf(getValueAsInt());
+            }
+          }));
+    }
+  }
+
+  /**
+   * @param expiryScheduler runs the expiry tasks of entries put from now on, may be null
+   */
+  public void setExpiryScheduler(ScheduledExecutorService expiryScheduler) {
+    this.expiryScheduler = expiryScheduler;
+  }
+
+  /**
+   * @param realm destination realm
+   * @param applicationId application id
+   * @return key of {@link RouterImpl#REALM_AND_APPLICATION} entries
+   */
+  public static Object realmAndApplicationKey(String realm, ApplicationId applicationId) {
+    return Arrays.asList(realm, applicationId);
+  }
+
+  /**
+   * Cache redirect hosts, replacing any entry with same usage and key.
+   *
+   * @param usage value of Redirect-Host-Usage, other than DONT_CACHE
+   * @param key session id, realm, application id, host or user name, as usage determines
+   * @param hosts redirect hosts
+   * @param cacheTime value of Redirect-Max-Cache-Time, in seconds
+   * @return the cached entry or null if cache is full
+   */
+  public Entry put(int usage, Object key, String[] hosts, long cacheTime) {
+    if (usage < ALL_SESSION || usage > ALL_USER) {
+      throw new IllegalArgumentException("Incorrect redirect host usage: " + usage);
+    }
+    if (key == null || hosts == null || hosts.length == 0) {
+      throw new IllegalArgumentException("Incorrect redirection key or hosts.");
+    }
+    ConcurrentHashMap<Object, Entry> map = entries[usage];
+    if (size.get() >= maxSize && !map.containsKey(key)) {
+      removeExpired();
+      if (size.get() >= maxSize) {
+        return null;
+      }
+    }
+    final Entry entry = new Entry(usage, key, hosts, System.nanoTime() + TimeUnit.SECONDS.toNanos(cacheTime));
+    Entry replaced = map.put(key, entry);
+    if (replaced == null) {
+      size.incrementAndGet();
+    }
+    else {
+      replaced.cancelExpiry();
+    }
+    ScheduledExecutorService scheduler = expiryScheduler;
+    if (scheduler != null) {
+      try {
+        entry.expiryTask = scheduler.schedule(new Runnable() {
+          @Override
+          public void run() {
+            remove(entry);
+          }
+        }, cacheTime, TimeUnit.SECONDS);
+        // replaced or removed before its task was set
+        if (map.get(key) != entry) {
+          entry.cancelExpiry();
+        }
+      }
+      catch (RejectedExecutionException e) {
+        // removed on lookup
+      }
+    }
+    return entry;
+  }
+
+  /**
+   * Return entry matching request, most specific usage first. Any argument may be null.
+   *
+   * @return matching entry or null if there is none
+   */
+  public Entry get(String sessionId, String userName, String destHost, String destRealm, ApplicationId applicationId) {
+    if (size.get() == 0) {
+      return null;
+    }
+    long now = System.nanoTime();
+    Entry entry = get(ALL_SESSION, sessionId, now);
+    if (entry == null) {
+      entry = get(ALL_USER, userName, now);
+    }
+    if (entry == null) {
+      entry = get(ALL_HOST, destHost, now);
+    }
+    if (entry == null && destRealm != null && applicationId != null) {
+      entry = get(REALM_AND_APPLICATION, realmAndApplicationKey(destRealm, applicationId), now);
+    }
+    if (entry == null) {
+      entry = get(ALL_REALM, destRealm, now);
+    }
+    if (entry == null) {
+      entry = get(ALL_APPLICATION, applicationId, now);
+    }
+    if (entry != null) {
+      hits.add(1);
+    }
+    else {
+      misses.add(1);
+    }
+    return entry;
+  }
+
+  private Entry get(int usage, Object key, long now) {
+    ConcurrentHashMap<Object, Entry> map = entries[usage];
+    if (key == null || map.isEmpty()) {
+      return null;
+    }
+    Entry entry = map.get(key);
+    if (entry != null && entry.isExpired(now)) {
+      remove(entry);
+      return null;
+    }
+    return entry;
+  }
+
+  private void remove(Entry entry) {
+    if (entries[entry.usage].remove(entry.key, entry)) {
+      size.decrementAndGet();
+      entry.cancelExpiry();
+    }
+  }
+
+  private void removeExpired() {
+    long now = System.nanoTime();
+    for (int usage = ALL_SESSION; usage <= ALL_USER; usage++) {
+      for (Entry entry : entries[usage].values()) {
+        if (entry.isExpired(now)) {
+          remove(entry);
+        }
+      }
+    }
+  }
+
+  /**
+   * Remove all entries.
+   */
+  public void clear() {
+    for (int usage = ALL_SESSION; usage <= ALL_USER; usage++) {
+      for (Entry entry : entries[usage].values()) {
+        remove(entry);
+      }
+    }
+  }
+
+  /**
+   * @return number of entries, including expired ones not removed yet
+   */
+  public int size() {
+    return size.get();
+  }
+
+  /**
+   * @return number of requests matched by an entry
+   */
+  public long getHits() {
+    return hits.sum();
+  }
+
+  /**
+   * @return number of requests not matched while cache held entries
+   */
+  public long getMisses() {
+    return misses.sum();
+  }
+
+  /**
+   * Clear cache and remove its statistic.
+   */
+  public void destroy() {
+    clear();
+    expiryScheduler = null;
+    if (statistic != null) {
+      statisticManager.removeStatistic(statistic);
+      statistic = null;
+    }
+  }
+
+  /**
+   * Cached redirect
+   */
+  public static final class Entry {
+
+    private final int usage;
+    private final Object key;
+    private final String[] hosts;
+    private final long expiryTime;
+    // removal task on the expiry scheduler, null without one
+    private volatile ScheduledFuture<?> expiryTask;
+
+    Entry(int usage, Object key, String[] hosts, long expiryTime) {
+      this.usage = usage;
+      this.key = key;
+      this.hosts = hosts;
+      this.expiryTime = expiryTime;
+    }
+
+    public int getUsageType() {
+      return usage;
+    }
+
+    public String[] getRedirectHosts() {
+      return hosts;
+    }
+
+    public String getRedirectHost() {
+      return hosts[hosts.length - 1];
+    }
+
+    boolean isExpired(long now) {
+      return now - expiryTime >= 0;
+    }
+
+    void cancelExpiry() {
+      ScheduledFuture<?> task = expiryTask;
+      if (task != null) {
+        expiryTask = null;
+        task.cancel(false);
+      }
+    }
+
+    @Override
+    public String toString() {
+      return "Entry {" + "usage=" + usage + ", key=" + key + ", hosts=" + Arrays.toString(hosts) + '}';
+    }
+  }
+}
@@ -0,0 +1,242 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2016, TeleStax Inc. and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+package org.jdiameter.client.impl.router;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+
+/**
+ * Table of routing information of received requests, used to route their answers back. It is an open addressing
+ * table of fixed capacity which never blocks callers. A request is identified by its hop-by-hop and end-to-end
+ * identifiers and its session id, as identifiers may repeat across peers; all three are compared on lookup. Entries
+ * older than the entry timeout are dropped lazily, and when all slots probed for a new entry hold live entries the
+ * oldest of them is evicted.
+ */
+public class RequestRouteTable {
+
+  // slots probed for a key, starting at its hash
+  private static final int PROBE_LIMIT = 8;
+
+  private final AtomicReferenceArray<Entry> slots;
+  private final int mask;
+  private final long entryTimeout;
+
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+  private final LongAdder evictions = new LongAdder();
+
+  /**
+   * @param size expected number of entries, table holds twice as many slots rounded up to a power of two
+   * @param entryTimeout time after which entry is dropped
+   * @param unit unit of entry timeout
+   */
+  public RequestRouteTable(int size, long entryTimeout, TimeUnit unit) {
+    if (size <= 0 || size > 1 << 29) {
+      throw new IllegalArgumentException("Size must be between 1 and 2^29: " + size);
+    }
+    if (entryTimeout <= 0) {
+      throw new IllegalArgumentException("Entry timeout must be greater than 0: " + entryTimeout);
+    }
+    int capacity = Integer.highestOneBit(size) << 1;
+    if (capacity < size << 1) {
+      capacity <<= 1;
+    }
+    capacity = Math.max(capacity, PROBE_LIMIT);
+    this.slots = new AtomicReferenceArray<Entry>(capacity);
+    this.mask = capacity - 1;
+    this.entryTimeout = unit.toNanos(entryTimeout);
+  }
+
+  /**
+   * Store route information, replacing any entry of the same request.
+   *
+   * @param hopByHopId hop-by-hop identifier of request
+   * @param endToEndId end-to-end identifier of request
+   * @param sessionId session id of request, may be null
+   * @param host origin host of request
+   * @param realm origin realm of request
+   */
+  public void put(long hopByHopId, long endToEndId, String sessionId, String host, String realm) {
+    long now = System.nanoTime();
+    Entry entry = new Entry(hopByHopId, endToEndId, sessionId, host, realm, now);
+    int index = index(hopByHopId, endToEndId, sessionId);
+    while (true) {
+      int oldestSlot = -1;
+      Entry oldest = null;
+      for (int i = 0; i < PROBE_LIMIT; i++) {
+        int slot = (index + i) & mask;
+        Entry current = slots.get(slot);
+        if (current == null || current.matches(hopByHopId, endToEndId, sessionId) || isExpired(current, now)) {
+          if (slots.compareAndSet(slot, current, entry)) {
+            return;
+          }
+          // lost a race for this slot, look at it again
+          i--;
+          continue;
+        }
+        if (oldest == null || current.createTime - oldest.createTime < 0) {
+          oldestSlot = slot;
+          oldest = current;
+        }
+      }
+      if (slots.compareAndSet(oldestSlot, oldest, entry)) {
+        evictions.add(1);
+        return;
+      }
+    }
+  }
+
+  /**
+   * @param hopByHopId hop-by-hop identifier of request
+   * @param endToEndId end-to-end identifier of request
+   * @param sessionId session id of request, may be null
+   * @return route information of request or null if there is none
+   */
+  public Entry get(long hopByHopId, long endToEndId, String sessionId) {
+    long now = System.nanoTime();
+    int index = index(hopByHopId, endToEndId, sessionId);
+    for (int i = 0; i < PROBE_LIMIT; i++) {
+      int slot = (index + i) & mask;
+      Entry current = slots.get(slot);
+      if (current != null && current.matches(hopByHopId, endToEndId, sessionId)) {
+        if (isExpired(current, now)) {
+          slots.compareAndSet(slot, current, null);
+          break;
+        }
+        hits.add(1);
+        return current;
+      }
+    }
+    misses.add(1);
+    return null;
+  }
+
+  /**
+   * @param hopByHopId hop-by-hop identifier of request
+   * @param endToEndId end-to-end identifier of request
+   * @param sessionId session id of request, may be null
+   * @return removed route information of request or null if there was none
+   */
+  public Entry remove(long hopByHopId, long endToEndId, String sessionId) {
+    int index = index(hopByHopId, endToEndId, sessionId);
+    Entry removed = null;
+    for (int i = 0; i < PROBE_LIMIT; i++) {
+      int slot = (index + i) & mask;
+      Entry current = slots.get(slot);
+      if (current != null && current.matches(hopByHopId, endToEndId, sessionId) && slots.compareAndSet(slot, current, null)
+          && removed == null) {
+        removed = current;
+      }
+    }
+    return removed;
+  }
+
+  /**
+   * Remove all entries. Entries put concurrently may remain.
+   */
+  public void clear() {
+    for (int i = 0; i < slots.length(); i++) {
+      slots.set(i, null);
+    }
+  }
+
+  /**
+   * @return number of slots
+   */
+  public int getCapacity() {
+    return slots.length();
+  }
+
+  /**
+   * @return number of lookups which found an entry
+   */
+  public long getHits() {
+    return hits.sum();
+  }
+
+  /**
+   * @return number of lookups which did not find an entry
+   */
+  public long getMisses() {
+    return misses.sum();
+  }
+
+  /**
+   * @return number of entries dropped before their timeout to make room for new ones
+   */
+  public long getEvictions() {
+    return evictions.sum();
+  }
+
+  private boolean isExpired(Entry entry, long now) {
+    return now - entry.createTime > entryTimeout;
+  }
+
+  private int index(long hopByHopId, long endToEndId, String sessionId) {
+    long hash = (endToEndId << 32 | (hopByHopId & 0xFFFFFFFFL)) * 0x9E3779B97F4A7C15L;
+    if (sessionId != null) {
+      hash ^= sessionId.hashCode() * 0xC2B2AE3D27D4EB4FL;
+    }
+    return (int) (hash ^ (hash >>> 32)) & mask;
+  }
+
+  /**
+   * Route information of one request
+   */
+  public static final class Entry {
+
+    private final long hopByHopId;
+    private final long endToEndId;
+    private final String sessionId;
+    private final String host;
+    private final String realm;
+    private final long createTime;
+
+    Entry(long hopByHopId, long endToEndId, String sessionId, String host, String realm, long createTime) {
+      this.hopByHopId = hopByHopId;
+      this.endToEndId = endToEndId;
+      this.sessionId = sessionId;
+      this.host = host;
+      this.realm = realm;
+      this.createTime = createTime;
+    }
+
+    boolean matches(long hopByHopId, long endToEndId, String sessionId) {
+      return this.hopByHopId == hopByHopId && this.endToEndId == endToEndId
+          && (this.sessionId == null ? sessionId == null : this.sessionId.equals(sessionId));
+    }
+
+    public String getHost() {
+      return host;
+    }
+
+    public String getRealm() {
+      return realm;
+    }
+
+    @Override
+    public String toString() {
+      return "Entry {" + "hopByHopId=" + hopByHopId + ", endToEndId=" + endToEndId + ", sessionId=" + sessionId + ", host=" + host +
+          ", realm=" + realm + '}';
+    }
+  }
+}
@@ -63,15 +63,9 @@ import java.io.IOException;
 import java.net.URISyntaxException;
 import java.net.UnknownServiceException;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
 //PCB added for thread safe
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReadWriteLock;
-import java.util.concurrent.locks.ReentrantLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.TimeUnit;
 
 import org.jdiameter.api.ApplicationId;
 import org.jdiameter.api.Avp;
@@ -83,7 +77,6 @@ import org.jdiameter.api.InternalException;
 import org.jdiameter.api.LocalAction;
 import org.jdiameter.api.Message;
 import org.jdiameter.api.MetaData;
-import org.jdiameter.api.PeerState;
 import org.jdiameter.api.RouteException;
 import org.jdiameter.api.URI;
 import org.jdiameter.client.api.IAnswer;
@@ -99,6 +92,10 @@ import org.jdiameter.client.impl.helpers.AppConfiguration;
 import org.jdiameter.client.impl.helpers.Parameters;
 import org.jdiameter.client.impl.parser.MessageImpl;
 import org.jdiameter.common.api.concurrent.IConcurrentFactory;
+import org.jdiameter.common.api.statistic.IStatistic;
+import org.jdiameter.common.api.statistic.IStatisticManager;
+import org.jdiameter.common.api.statistic.IStatisticRecord;
+import org.jdiameter.common.impl.timer.HashedWheelTimer;
 import org.jdiameter.server.api.agent.IAgentConfiguration;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -126,8 +123,10 @@ public class RouterImpl implements IRouter {
   protected IRealmTable realmTable;
   // Redirection feature
   public final int REDIRECT_TABLE_SIZE = 1024;
-  //TODO: index it differently.
-  protected List<RedirectEntry> redirectTable = new ArrayList<RedirectEntry>(REDIRECT_TABLE_SIZE);
+  protected RedirectCache redirectCache;
+  // expires redirect entries, a cancelled task leaves the wheel on the next tick rather than at its deadline
+  protected HashedWheelTimer redirectTimer;
+  private static final int REDIRECT_TIMER_WHEEL_SIZE = 512;
   protected IConcurrentFactory concurrentFactory;
 
   protected IContainer container;
@@ -136,10 +135,9 @@ public class RouterImpl implements IRouter {
   public static int REQUEST_TABLE_SIZE = 10 * 1024;
   public static int REQUEST_TABLE_CLEAR_SIZE = 2 * 1024;
 
-  protected Lock requestEntryTableLock = new ReentrantLock();
-  protected ReadWriteLock redirectTableLock = new ReentrantReadWriteLock();
   //PCB added
-  protected Map<String, AnswerEntry> requestEntryMap;
+  protected RequestRouteTable requestTable;
+  protected IStatistic requestTableStatistic;
   //protected List<Long> requestSortedEntryTable = new ArrayList<Long>();
   protected boolean isStopped = true;
 
@@ -150,6 +148,11 @@ public class RouterImpl implements IRouter {
     this.container = container;
     logger.debug("Constructor for RouterImpl: Calling loadConfiguration");
     loadConfiguration(config);
+    IStatisticManager statisticManager = container != null ? container.getAssemblerFacility().getComponentInstance(IStatisticManager.class) : null;
+    if (requestTable != null) {
+      createRequestTableStatistic(statisticManager);
+    }
+    this.redirectCache = new RedirectCache(REDIRECT_TABLE_SIZE, statisticManager);
   }
 
   protected void loadConfiguration(Configuration config) {
@@ -169,19 +172,21 @@ public class RouterImpl implements IRouter {
     if (config.getChildren(RequestTable.ordinal()) != null) {
       AppConfiguration requestTableConfig = (AppConfiguration) config.getChildren(org.jdiameter.server.impl.helpers.Parameters.RequestTable.ordinal())[0];
       int tSize = requestTableConfig.getIntValue(RequestTableSize.ordinal(),(Integer) RequestTableSize.defValue());
+      // clear size is no longer used, table evicts old entries by itself
       int tClearSize = requestTableConfig.getIntValue(RequestTableClearSize.ordinal(),(Integer) RequestTableClearSize.defValue());
-      if (tSize > 0 && tClearSize >= tSize) {
-        logger.warn("Configuration entry RequestTable, attribute 'clear_size' [{}] should not be greater than 'size' [{}]. Adjusting.", tSize, tClearSize);
-        while (tClearSize >= tSize) {
-          tSize *= 10;
-        }
-      }
       REQUEST_TABLE_SIZE = tSize;
       REQUEST_TABLE_CLEAR_SIZE = tClearSize;
     }
-    //PCB added thread safety
-    this.requestEntryMap = new ConcurrentHashMap<String, AnswerEntry>(REQUEST_TABLE_SIZE);
-    logger.debug("Configured Request Table with size[{}] and clear size[{}].", REQUEST_TABLE_SIZE, REQUEST_TABLE_CLEAR_SIZE);
+    // with size 0 or less the routing info is kept in the answers, see getRequestRouteInfo
+    if (REQUEST_TABLE_SIZE > 0) {
+      // requests not answered within message timeout have timed out at their origin, no point in keeping their route
+      long entryTimeout = config.getLongValue(Parameters.MessageTimeOut.ordinal(), (Long) Parameters.MessageTimeOut.defValue());
+      if (entryTimeout <= 0) {
+        entryTimeout = (Long) Parameters.MessageTimeOut.defValue();
+      }
+      this.requestTable = new RequestRouteTable(REQUEST_TABLE_SIZE, entryTimeout, TimeUnit.MILLISECONDS);
+      logger.debug("Configured Request Table with size[{}] and entry timeout[{}] ms.", REQUEST_TABLE_SIZE, entryTimeout);
+    }
 
     //add realms based on realm table.
     if (config.getChildren(RealmTable.ordinal()) != null) {
@@ -234,6 +239,7 @@ public class RouterImpl implements IRouter {
                 }
               }
               this.realmTable.addRealm(name, appId, locAction, agentConfImpl, isDynamic, expirationTime, hosts);
+              loadRealmConfiguration(name, c);
             }
             catch (Exception e) {
               logger.warn("Unable to append realm entry", e);
@@ -244,92 +250,63 @@ public class RouterImpl implements IRouter {
     }
   }
 
+  /**
+   * Called for each realm entry once it is added to realm table, so that subclasses can read their own realm attributes.
+   * Note that it is called from constructor.
+   *
+   * @param realmName name of the realm
+   * @param realmConfig realm entry configuration
+   */
+  protected void loadRealmConfiguration(String realmName, Configuration realmConfig) {
+  }
+
   @Override
   public void registerRequestRouteInfo(IRequest request) {
     logger.debug("Entering registerRequestRouteInfo");
-    if (REQUEST_TABLE_SIZE == 0) {
+    RequestRouteTable table = requestTable;
+    if (table == null) {
       return; // we don't have anything to do as we are storing routing info at answer message
     }
 
     try {
-      // PCB removed lock
-      // requestEntryTableLock.writeLock().lock();
-      long hopByHopId = request.getHopByHopIdentifier();
       Avp hostAvp = request.getAvps().getAvp(Avp.ORIGIN_HOST);
       Avp realmAvp = request.getAvps().getAvp(Avp.ORIGIN_REALM);
-      AnswerEntry entry = new AnswerEntry(hopByHopId, hostAvp != null ? hostAvp.getDiameterIdentity() : null,
-          realmAvp != null ? realmAvp.getDiameterIdentity() : null);
-
-      int s = requestEntryMap.size();
-      // PCB added logging
-      logger.debug("RequestRoute map size is [{}]", s);
-
-      //PCB added
-      if (s > REQUEST_TABLE_CLEAR_SIZE) {
-        try {
-          requestEntryTableLock.lock();
-          s = requestEntryMap.size();
-          logger.debug("After 'lock', RequestRoute map size is [{}]", s);
-          // The double-check with a gap is in case while about to clear the map, it drops below REQUEST_TABLE_SIZE due to a
-          // response being sent, and then the lock might not be in effect for another thread
-          // Hence lock at REQUEST_TABLE_CLEAR_SIZE and clear at REQUEST_TABLE_SIZE so that all threads would be locked not
-          // just the first to reach REQUEST_TABLE_SIZE
-          if (s > REQUEST_TABLE_SIZE) {
-            // Going to clear it out and suffer the consequences of some messages possibly not being routed back the clients..
-            logger.warn("RequestRoute map size is [{}]. There's probably a leak. Cleaning up after a short wait...", s);
-            // Lets do our best to avoid lost messages by locking table from writes (as this is the only code writing to it),
-            // sleeping for a while for responses to be sent and then clearing it
-            Thread.sleep(5000);
-            logger.warn("RequestRoute map size is now [{}] after sleeping. Clearing it!", requestEntryMap.size());
-            requestEntryMap.clear();
-          }
-        }
-        catch (Exception e) {
-          logger.warn("Failure trying to clear RequestRoute map", e);
-        }
-        finally {
-          requestEntryTableLock.unlock();
-        }
+      if (logger.isDebugEnabled()) {
+        logger.debug("Adding request [{}] to RequestRoute table for routing answers back to the requesting peer", routingKey(request));
       }
-
-      String messageKey = makeRoutingKey(request);
-      logger.debug("Adding request key [{}] to RequestRoute map for routing answers back to the requesting peer", messageKey);
-      requestEntryMap.put(messageKey, entry);
-      // requestSortedEntryTable.add(hopByHopId);
+      // PCB - Made better routing algorithm that should not grow all the time
+      // hop-by-hop and end-to-end identifiers may repeat across peers, so session id is part of the key
+      table.put(request.getHopByHopIdentifier(), request.getEndToEndIdentifier(), request.getSessionId(),
+          hostAvp != null ? hostAvp.getDiameterIdentity() : null, realmAvp != null ? realmAvp.getDiameterIdentity() : null);
     }
     catch (Exception e) {
       logger.warn("Unable to store route info", e);
     }
-    finally {
-      // requestEntryTableLock.writeLock().unlock();
-    }
   }
 
-  // PCB - Made better routing algorithm that should not grow all the time
-  private String makeRoutingKey(Message message) {
-    String sessionId = message.getSessionId();
-    return new StringBuilder(sessionId != null ? sessionId : "null").append(message.getEndToEndIdentifier())
-        .append(message.getHopByHopIdentifier()).toString();
+  private String routingKey(Message message) {
+    return message.getHopByHopIdentifier() + "/" + message.getEndToEndIdentifier() + "/" + message.getSessionId();
   }
 
   @Override
   public String[] getRequestRouteInfo(IMessage message) {
-    if (REQUEST_TABLE_SIZE == 0) {
+    RequestRouteTable table = requestTable;
+    if (table == null) {
       return ((MessageImpl) message).getRoutingInfo(); // using answer stored routing info
     }
 
     // using request table
-    String messageKey = makeRoutingKey(message);
-    AnswerEntry ans = requestEntryMap.get(messageKey);
+    RequestRouteTable.Entry ans = table.get(message.getHopByHopIdentifier(), message.getEndToEndIdentifier(), message.getSessionId());
     if (ans != null) {
       if (logger.isDebugEnabled()) {
-        logger.debug("getRequestRouteInfo found host [{}] and realm [{}] for Message key Id [{}]", new Object[]{ans.getHost(), ans.getRealm(), messageKey});
+        logger.debug("getRequestRouteInfo found host [{}] and realm [{}] for Message key Id [{}]",
+            new Object[]{ans.getHost(), ans.getRealm(), routingKey(message)});
       }
       return new String[] {ans.getHost(), ans.getRealm()};
     }
     else {
       if (logger.isWarnEnabled()) {
-        logger.warn("Could not find route info for message key [{}]. Table size is [{}]", messageKey, requestEntryMap.size());
+        logger.warn("Could not find route info for message key [{}]. Table capacity is [{}]", routingKey(message), table.getCapacity());
       }
       return null;
     }
@@ -338,12 +315,53 @@ public class RouterImpl implements IRouter {
   //PCB added
   @Override
   public void garbageCollectRequestRouteInfo(IMessage message) {
-    if (REQUEST_TABLE_SIZE == 0) {
+    RequestRouteTable table = requestTable;
+    if (table == null) {
       return; // we don't have anything to do as we are storing routing info at answer message
     }
 
-    String messageKey = makeRoutingKey(message);
-    requestEntryMap.remove(messageKey);
+    table.remove(message.getHopByHopIdentifier(), message.getEndToEndIdentifier(), message.getSessionId());
+  }
+
+  private void createRequestTableStatistic(IStatisticManager statisticManager) {
+    if (statisticManager == null) {
+      return;
+    }
+    final RequestRouteTable table = requestTable;
+    this.requestTableStatistic = statisticManager.newStatistic("RequestTable", IStatistic.Groups.Router,
+        statisticManager.newCounterRecord(IStatisticRecord.Counters.RequestTableHits, new IStatisticRecord.LongValueHolder() {
+          @Override
+          public long getValueAsLong() {
+            return table.getHits();
+          }
+
+          @Override
+          public String getValueAsString() {
+            return String.valueOf(getValueAsLong());
+          }
+        }),
+        statisticManager.newCounterRecord(IStatisticRecord.Counters.RequestTableMisses, new IStatisticRecord.LongValueHolder() {
+          @Override
+          public long getValueAsLong() {
+            return table.getMisses();
+          }
+
+          @Override
+          public String getValueAsString() {
+            return String.valueOf(getValueAsLong());
+          }
+        }),
+        statisticManager.newCounterRecord(IStatisticRecord.Counters.RequestTableEvictions, new IStatisticRecord.LongValueHolder() {
+          @Override
+          public long getValueAsLong() {
+            return table.getEvictions();
+          }
+
+          @Override
+          public String getValueAsString() {
+            return String.valueOf(getValueAsLong());
+          }
+        }));
   }
 
   @Override
@@ -434,43 +452,22 @@ public class RouterImpl implements IRouter {
     else {
       logger.debug("Finding peer by destination host avp [host={}] did not find anything. Now going to try finding one by destination realm [{}]",
           destHost, destRealm);
-      String[] peers = matchedRealm.getPeerNames();
-      if (peers == null || peers.length == 0) {
+      // Collect peers, cached by realm table until a peer changes state
+      List<IPeer> availablePeers = realmTable.getAvailablePeers(matchedRealm, manager);
+      if (availablePeers.isEmpty() && matchedRealm.getPeerNames().length == 0) {
         throw new RouteException("Unable to find context by route information [" + destRealm + " ," + destHost + "]");
       }
 
-      // Collect peers
-      ArrayList<IPeer> availablePeers = new ArrayList<IPeer>(5);
-      logger.debug("Looping through peers in realm [{}]", destRealm);
-      for (String peerName : peers) {
-        IPeer localPeer = manager.getPeer(peerName);
-        if (logger.isDebugEnabled()) {
-          logger.debug("Checking peer [{}] for name [{}]", new Object[]{localPeer, peerName});
-        }
-        // ammendonca: added peer state check.. should not be needed but
-        // hasValidConnection is returning true for disconnected peers in *FTFlowTests
-        if (localPeer != null && localPeer.getState(PeerState.class) == PeerState.OKAY) {
-          if (localPeer.hasValidConnection()) {
-            if (logger.isDebugEnabled()) {
-              logger.debug("Found available peer to add to available peer list with uri [{}] with a valid connection", localPeer.getUri().toString());
-            }
-            availablePeers.add(localPeer);
-          }
-          else {
-            if (logger.isDebugEnabled()) {
-              logger.debug("Found a peer with uri [{}] with no valid connection", localPeer.getUri());
-            }
-          }
-        }
-      }
-
       if (logger.isDebugEnabled()) {
-        logger.debug("Performing Realm routing. Realm [{}] has the following peers available [{}] from list [{}]",
-            new Object[] {destRealm, availablePeers, Arrays.asList(peers)});
+        logger.debug("Performing Realm routing. Realm [{}] has the following peers available [{}]", destRealm, availablePeers);
       }
 
       // Balancing
       IPeer peer = selectPeer(availablePeers);
+      if (peer != null && !peer.hasValidConnection()) {
+        // a connection can drop with no change of state, peers without one are left out for this request
+        peer = selectPeer(getConnectedPeers(availablePeers));
+      }
       if (peer == null) {
         throw new RouteException("Unable to find valid connection to peer[" + destHost + "] in realm[" + destRealm + "]");
       }
@@ -484,6 +481,18 @@ public class RouterImpl implements IRouter {
     }
   }
 
+  @Override
+  public void requestAnswered(IPeer peer, IMessage request, IMessage answer) {
+  }
+
+  @Override
+  public void requestTimedOut(IPeer peer, IMessage request) {
+  }
+
+  @Override
+  public void peerRemoved(IPeer peer) {
+  }
+
   @Override
   public IRealmTable getRealmTable() {
     return this.realmTable;
@@ -524,51 +533,44 @@ public class RouterImpl implements IRouter {
         if (redirectCacheMaxTimeAvp != null) {
           redirectCacheTime = redirectCacheMaxTimeAvp.getUnsigned32();
         }
-        String primaryKey = null;
-        ApplicationId secondaryKey = null;
+        Object key = null;
         switch (redirectUsage) {
           case ALL_SESSION:
-            primaryKey = request.getSessionId();
+            key = request.getSessionId();
             break;
           case ALL_REALM:
-            primaryKey = destinationRealm;
+            key = destinationRealm;
             break;
           case REALM_AND_APPLICATION:
-            primaryKey = destinationRealm;
-            secondaryKey = ((IMessage) request).getSingleApplicationId();
+            ApplicationId appId = ((IMessage) request).getSingleApplicationId();
+            if (appId != null) {
+              key = RedirectCache.realmAndApplicationKey(destinationRealm, appId);
+            }
             break;
           case ALL_APPLICATION:
-            secondaryKey = ((IMessage) request).getSingleApplicationId();
+            key = ((IMessage) request).getSingleApplicationId();
             break;
           case ALL_HOST:
             Avp destinationHostAvp = request.getAvps().getAvp(Avp.DESTINATION_HOST);
             if (destinationHostAvp == null) {
               throw new RouteException("Request to be routed has no Destination-Host AVP!"); // sanity check... if user messes with us
             }
-            primaryKey = destinationHostAvp.getDiameterIdentity();
+            key = destinationHostAvp.getDiameterIdentity();
             break;
           case ALL_USER:
             Avp userNameAvp = answer.getAvps().getAvp(Avp.USER_NAME);
             if (userNameAvp == null) {
               throw new RouteException("Request to be routed has no User-Name AVP!"); // sanity check... if user messes with us
             }
-            primaryKey = userNameAvp.getUTF8String();
+            key = userNameAvp.getUTF8String();
             break;
         }
-        //
-        if (redirectTable.size() > REDIRECT_TABLE_SIZE) {
-          try {
-            //yes, possible that this will trigger this procedure twice, but thats worst than locking always.
-            redirectTableLock.writeLock().lock();
-            trimRedirectTable();
-          }
-          finally {
-            redirectTableLock.writeLock().unlock();
-          }
+        // nothing to cache without hosts or key, and Redirect-Max-Cache-Time of zero means no caching
+        RedirectCache.Entry e = null;
+        if (key != null && redirectHosts != null && redirectHosts.length > 0 && redirectCacheTime > 0) {
+          e = redirectCache.put(redirectUsage, key, redirectHosts, redirectCacheTime);
         }
-        if (REDIRECT_TABLE_SIZE > redirectTable.size()) {
-          RedirectEntry e = new RedirectEntry(primaryKey, secondaryKey, redirectCacheTime, redirectUsage, redirectHosts, destinationRealm);
-          redirectTable.add(e);
+        if (e != null) {
           //redirectProcessing(answer, destRealm.getOctetString(), destHost !=null ? destHost.getOctetString():null);
           //we dont have to elect?
           updateRoute(request, e.getRedirectHost());
@@ -602,24 +604,6 @@ public class RouterImpl implements IRouter {
     }
   }
 
-  /**
-   *
-   */
-  private void trimRedirectTable() {
-    for (int index = 0; index < redirectTable.size(); index++) {
-      try {
-        if (redirectTable.get(index).getExpiredTime() <= System.currentTimeMillis()) {
-          redirectTable.remove(index);
-          index--; //a trick :)
-        }
-      }
-      catch (Exception e) {
-        logger.debug("Error in redirect task cleanup.", e);
-        break;
-      }
-    }
-  }
-
   /**
    * @param request
    * @param destHost
@@ -643,7 +627,9 @@ public class RouterImpl implements IRouter {
     String destRealm = destRealmAvp.getDiameterIdentity();
     String destHost = destHostAvp != null ? destHostAvp.getDiameterIdentity() : null;
 
-    boolean matchedEntry = false;
+    if (redirectCache.size() == 0) {
+      return false;
+    }
     String userName = null;
     // get Session id
     String sessionId = message.getSessionId();
@@ -655,46 +641,13 @@ public class RouterImpl implements IRouter {
     if (avpUserName != null) {
       userName = avpUserName.getUTF8String();
     }
-    // Processing table
-    try {
-      redirectTableLock.readLock().lock();
-
-      for (int index = 0; index < redirectTable.size(); index++) {
-        RedirectEntry e = redirectTable.get(index);
-        switch (e.getUsageType()) {
-          case ALL_SESSION: // Usage type: ALL SESSION
-            matchedEntry = sessionId != null && e.primaryKey != null & sessionId.equals(e.primaryKey);
-            break;
-          case ALL_REALM: // Usage type: ALL REALM
-            matchedEntry = destRealm != null && e.primaryKey != null & destRealm.equals(e.primaryKey);
-            break;
-          case REALM_AND_APPLICATION: // Usage type: REALM AND APPLICATION
-            matchedEntry = destRealm != null & appId != null & e.primaryKey != null & e.secondaryKey != null & destRealm.equals(e.primaryKey)
-              & appId.equals(e.secondaryKey);
-            break;
-          case ALL_APPLICATION: // Usage type: ALL APPLICATION
-            matchedEntry = appId != null & e.secondaryKey != null & appId.equals(e.secondaryKey);
-            break;
-          case ALL_HOST: // Usage type: ALL HOST
-            matchedEntry = destHost != null & e.primaryKey != null & destHost.equals(e.primaryKey);
-            break;
-          case ALL_USER: // Usage type: ALL USER
-            matchedEntry = userName != null & e.primaryKey != null & userName.equals(e.primaryKey);
-            break;
-        }
-        // Update message redirect information
-        if (matchedEntry) {
-          String newDestHost = e.getRedirectHost();
-          //String newDestRealm = getRealmForPeer(destHost);
-          //setRouteInfo(message, destRealm, newDestHost);
-          updateRoute(message, newDestHost);
-          logger.debug("Redirect message from host={}; to new-host={}, realm={} ", new Object[] { destHost, newDestHost, destRealm});
-          return true;
-        }
-      }
-    }
-    finally {
-      redirectTableLock.readLock().unlock();
+    RedirectCache.Entry e = redirectCache.get(sessionId, userName, destHost, destRealm, appId);
+    // Update message redirect information
+    if (e != null) {
+      String newDestHost = e.getRedirectHost();
+      updateRoute(message, newDestHost);
+      logger.debug("Redirect message from host={}; to new-host={}, realm={} ", new Object[] { destHost, newDestHost, destRealm});
+      return true;
     }
     return false;
   }
@@ -706,6 +659,12 @@ public class RouterImpl implements IRouter {
   @Override
   public void start() {
     if (isStopped) {
+      if (container != null && concurrentFactory != null) {
+        // Redirect-Max-Cache-Time is given in seconds
+        redirectTimer = new HashedWheelTimer("RedirectTimer", concurrentFactory, container.getScheduledFacility(), 1, TimeUnit.SECONDS,
+            REDIRECT_TIMER_WHEEL_SIZE, null);
+        redirectCache.setExpiryScheduler(redirectTimer);
+      }
       //redirectScheduler = concurrentFactory.getScheduledExecutorService(RedirectMessageTimer.name());
       //redirectEntryHandler = redirectScheduler.scheduleAtFixedRate(redirectTask, 1, 1, TimeUnit.SECONDS);
       isStopped = false;
@@ -718,11 +677,16 @@ public class RouterImpl implements IRouter {
     // if (redirectEntryHandler != null) {
     //  redirectEntryHandler.cancel(true);
     //}
-    if (redirectTable != null) {
-      redirectTable.clear();
+    if (redirectCache != null) {
+      redirectCache.setExpiryScheduler(null);
+      redirectCache.clear();
+    }
+    if (redirectTimer != null) {
+      redirectTimer.shutdown();
+      redirectTimer = null;
     }
-    if (requestEntryMap != null) {
-      requestEntryMap.clear();
+    if (requestTable != null) {
+      requestTable.clear();
     }
     //PCB removed
     //if (requestSortedEntryTable != null) {
@@ -746,8 +710,25 @@ public class RouterImpl implements IRouter {
 
     //redirectEntryHandler = null;
     //redirectScheduler = null;
-    redirectTable = null;
-    requestEntryMap = null;
+    if (redirectCache != null) {
+      redirectCache.destroy();
+      redirectCache = null;
+    }
+    requestTable = null;
+    if (requestTableStatistic != null) {
+      container.getAssemblerFacility().getComponentInstance(IStatisticManager.class).removeStatistic(requestTableStatistic);
+      requestTableStatistic = null;
+    }
+  }
+
+  private static List<IPeer> getConnectedPeers(List<IPeer> availablePeers) {
+    List<IPeer> connectedPeers = new ArrayList<IPeer>(availablePeers.size());
+    for (IPeer peer : availablePeers) {
+      if (peer.hasValidConnection()) {
+        connectedPeers.add(peer);
+      }
+    }
+    return connectedPeers;
   }
 
   protected IPeer selectPeer(List<IPeer> availablePeers) {
@@ -831,131 +812,4 @@ public class RouterImpl implements IRouter {
   //        }
   //        return null;
   //    }
-
-  protected class RedirectEntry {
-
-    final long createTime = System.currentTimeMillis();
-
-    String primaryKey;
-    ApplicationId secondaryKey;
-    long liveTime;
-    int usageType;
-    String[] hosts;
-    String destinationRealm;
-
-    public RedirectEntry(String key1, ApplicationId key2, long time, int usage, String[] aHosts, String destinationRealm) throws InternalError {
-      // Check arguments
-      if (key1 == null && key2 == null) {
-        throw new InternalError("Incorrect redirection key.");
-      }
-      if (aHosts == null || aHosts.length == 0) {
-        throw new InternalError("Incorrect redirection hosts.");
-      }
-      // Set values
-      this.primaryKey = key1;
-      this.secondaryKey = key2;
-      this.liveTime = time * 1000;
-      this.usageType = usage;
-      this.hosts = aHosts;
-      this.destinationRealm = destinationRealm;
-    }
-
-    public int getUsageType() {
-      return usageType;
-    }
-
-    public String[] getRedirectHosts() {
-      return hosts;
-    }
-
-    public String getRedirectHost() {
-      return hosts[hosts.length - 1];
-    }
-
-    public long getExpiredTime() {
-      return createTime + liveTime;
-    }
-
-    @Override
-    public int hashCode() {
-      int result = (primaryKey != null ? primaryKey.hashCode() : 0);
-      result = 31 * result + (secondaryKey != null ? secondaryKey.hashCode() : 0);
-      result = 31 * result + (int) (liveTime ^ (liveTime >>> 32));
-      result = 31 * result + usageType;
-      result = 31 * result + (hosts != null ? hosts.hashCode() : 0);
-      return result;
-    }
-
-    @Override
-    public boolean equals(Object other) {
-      if (other == this) {
-        return true;
-      }
-
-      if (other instanceof RedirectEntry) {
-        RedirectEntry that = (RedirectEntry) other;
-        return liveTime == that.liveTime && usageType == that.usageType &&
-            Arrays.equals(hosts, that.hosts) && !(primaryKey != null ? !primaryKey.equals(that.primaryKey) : that.primaryKey != null) &&
-            !(secondaryKey != null ? !secondaryKey.equals(that.secondaryKey) : that.secondaryKey != null);
-      }
-      else {
-        return false;
-      }
-    }
-  }
-
-  protected class AnswerEntry {
-
-    final long createTime = System.nanoTime();
-    Long hopByHopId;
-    String host, realm;
-
-    public AnswerEntry(Long hopByHopId) {
-      this.hopByHopId = hopByHopId;
-    }
-
-    public AnswerEntry(Long hopByHopId, String host, String realm) throws InternalError {
-      this.hopByHopId = hopByHopId;
-      this.host = host;
-      this.realm = realm;
-    }
-
-    public long getCreateTime() {
-      return createTime;
-    }
-
-    public Long getHopByHopId() {
-      return hopByHopId;
-    }
-
-    public String getHost() {
-      return host;
-    }
-
-    public String getRealm() {
-      return realm;
-    }
-
-    @Override
-    public int hashCode() {
-      return super.hashCode();
-    }
-
-    @Override
-    public boolean equals(Object o) {
-      if (this == o) {
-        return true;
-      }
-      if (o == null || getClass() != o.getClass()) {
-        return false;
-      }
-      AnswerEntry that = (AnswerEntry) o;
-      return hopByHopId == that.hopByHopId;
-    }
-
-    @Override
-    public String toString() {
-      return "AnswerEntry {" + "createTime=" + createTime + ", hopByHopId=" + hopByHopId + '}';
-    }
-  }
 }
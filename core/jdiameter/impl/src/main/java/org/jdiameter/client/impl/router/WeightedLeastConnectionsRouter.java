@@ -134,7 +134,7 @@ public class WeightedLeastConnectionsRouter extends RouterImpl {
       return availablePeers.iterator().next();
     }
 
-    for (int m = 0; m < peerSize; peerSize++) {
+    for (int m = 0; m < peerSize; m++) {
       IPeer peerM = availablePeers.get(m);
       if (peerM.getRating() > 0) {
         for (int i = m + 1; i < peerSize; i++) {
@@ -173,9 +173,8 @@ public class WeightedLeastConnectionsRouter extends RouterImpl {
     }
 
     // Requests per second initiated by Local Peer + Request initiated by Remote peer
-    String uri = peer.getUri() == null ? "local" : peer.getUri().toString();
-    long requests = getRecord(IStatisticRecord.Counters.AppGenRequestPerSecond.name()+'.'+uri, stats)
-        + getRecord(IStatisticRecord.Counters.NetGenRequestPerSecond.name()+'.'+uri, stats);
+    long requests = getRecord(peer, IStatisticRecord.Counters.AppGenRequestPerSecond)
+        + getRecord(peer, IStatisticRecord.Counters.NetGenRequestPerSecond);
 
     // There are likely more requests than responses active
     long connections = Math.max(0, requests);
@@ -187,6 +186,24 @@ public class WeightedLeastConnectionsRouter extends RouterImpl {
     return connections;
   }
 
+  /**
+   * Return value of statistics record of given peer
+   *
+   * @param peer    peer instance
+   * @param counter record to retrieve
+   * @return
+   */
+  protected long getRecord(IPeer peer, IStatisticRecord.Counters counter) {
+    IStatisticRecord statsRecord = peer.getCounter(counter);
+    if (statsRecord == null) {
+      if (logger.isDebugEnabled()) {
+        logger.debug("Warning: no record for {} of {}, available: {}", new Object[] {counter, peer, Arrays.toString(peer.getStatistic().getRecords())});
+      }
+      return 0;
+    }
+    return statsRecord.getValueAsLong();
+  }
+
   /**
    * Return statistics record value from given {@link IStatistic}
    *
@@ -0,0 +1,103 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2016, TeleStax Inc. and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+package org.jdiameter.client.impl.router;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jdiameter.api.Configuration;
+import org.jdiameter.api.MetaData;
+import org.jdiameter.api.PeerState;
+import org.jdiameter.client.api.IContainer;
+import org.jdiameter.client.api.controller.IPeer;
+import org.jdiameter.client.api.controller.IRealmTable;
+import org.jdiameter.common.api.concurrent.IConcurrentFactory;
+
+/**
+ * Weighted least outstanding requests router implementation<br/><br/>
+ *
+ * Picks the peer with the least requests waiting for answer in relation to its rating, as given by
+ * {@link IPeer#getPendingRequests()}. Unlike {@link WeightedLeastConnectionsRouter} it reacts to load
+ * immediately and does not require statistics to be enabled.
+ * In the client configuration, please use the following settings:
+ *
+ * <pre>
+ * &lt;Extensions&gt;
+ *   &lt;RouterEngine value="org.jdiameter.client.impl.router.WeightedLeastOutstandingRequestsRouter" /&gt;
+ * &lt;/Extensions&gt;
+ * </pre>
+ */
+public class WeightedLeastOutstandingRequestsRouter extends RouterImpl {
+
+  // start of scan, rotated so that peers with equal load take turns
+  private final AtomicInteger nextPeer = new AtomicInteger();
+
+  protected WeightedLeastOutstandingRequestsRouter(IRealmTable table, Configuration config) {
+    super(null, null, table, config, null);
+  }
+
+  public WeightedLeastOutstandingRequestsRouter(IContainer container, IConcurrentFactory concurrentFactory,
+                                                IRealmTable realmTable, Configuration config, MetaData aMetaData) {
+    super(container, concurrentFactory, realmTable, config, aMetaData);
+  }
+
+  /**
+   * Return peer with least ratio of pending requests to rating. A request about to be sent is counted
+   * as pending, so rating also decides among idle peers. Peers with rating of zero are only used if
+   * no other peer is available.
+   *
+   * @param availablePeers list of peers that are in {@link PeerState#OKAY OKAY} state
+   * @return the selected peer according to algorithm
+   */
+  @Override
+  public IPeer selectPeer(List<IPeer> availablePeers) {
+    int peerSize = availablePeers != null ? availablePeers.size() : 0;
+
+    // Return none if empty, or first if only one member found
+    if (peerSize <= 0) {
+      return null;
+    }
+    if (peerSize == 1) {
+      return availablePeers.get(0);
+    }
+
+    int start = (nextPeer.getAndIncrement() & Integer.MAX_VALUE) % peerSize;
+    IPeer selected = null;
+    long selectedLoad = 0;
+    long selectedRating = 0;
+    for (int i = 0; i < peerSize; i++) {
+      IPeer peer = availablePeers.get((start + i) % peerSize);
+      int rating = peer.getRating();
+      if (rating <= 0) {
+        continue;
+      }
+      long load = peer.getPendingRequests() + 1L;
+      // load / rating < selectedLoad / selectedRating, without division
+      if (selected == null || load * selectedRating < selectedLoad * rating) {
+        selected = peer;
+        selectedLoad = load;
+        selectedRating = rating;
+      }
+    }
+
+    // Return first peer if none has positive rating
+    return selected != null ? selected : availablePeers.get(start);
+  }
+}
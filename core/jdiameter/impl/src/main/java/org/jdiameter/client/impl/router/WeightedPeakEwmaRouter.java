@@ -0,0 +1,343 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2016, TeleStax Inc. and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+package org.jdiameter.client.impl.router;
+
+import static org.jdiameter.server.impl.helpers.Parameters.RealmEntryErrorPenalty;
+import static org.jdiameter.server.impl.helpers.Parameters.RealmEntryLatencyDecayTime;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jdiameter.api.Configuration;
+import org.jdiameter.api.MetaData;
+import org.jdiameter.api.PeerState;
+import org.jdiameter.client.api.IContainer;
+import org.jdiameter.client.api.IMessage;
+import org.jdiameter.client.api.controller.IPeer;
+import org.jdiameter.client.api.controller.IRealmTable;
+import org.jdiameter.common.api.concurrent.IConcurrentFactory;
+import org.jdiameter.common.api.statistic.IStatistic;
+import org.jdiameter.common.api.statistic.IStatisticManager;
+import org.jdiameter.common.api.statistic.IStatisticRecord;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Weighted peak EWMA router implementation<br/><br/>
+ *
+ * Keeps exponentially weighted moving averages of answer latency and of error rate of each peer and picks the
+ * peer with the least cost in relation to its rating. Cost is the latency average, multiplied by the number of
+ * pending requests plus one and raised by the error rate times the error penalty. Latency average is peak
+ * sensitive: a sample above the average replaces it at once, while lower samples pull it down gradually, so a
+ * degraded peer is avoided as soon as it slows down and wins traffic back as it recovers. Answers with the error
+ * bit set and timed out requests count as errors. Averages decay towards zero while a peer gets no answers, so an
+ * avoided peer is tried again after a while, and a peer without answers yet is preferred while it has no pending
+ * requests.<br/><br/>
+ *
+ * Decay time, in milliseconds, and error penalty are set per realm and apply to the peers of that realm:
+ *
+ * <pre>
+ * &lt;Realm name="..." peers="..." local_action="LOCAL" dynamic="false" exp_time="1"
+ *        latency_decay_time="10000" error_penalty="10.0"&gt;
+ * ...
+ * &lt;Extensions&gt;
+ *   &lt;RouterEngine value="org.jdiameter.client.impl.router.WeightedPeakEwmaRouter" /&gt;
+ * &lt;/Extensions&gt;
+ * </pre>
+ *
+ * Averages of each peer are reported through statistics of the {@link IStatistic.Groups#Router Router} group.
+ */
+public class WeightedPeakEwmaRouter extends RouterImpl {
+
+  private static final Logger logger = LoggerFactory.getLogger(WeightedPeakEwmaRouter.class);
+
+  // weight of error rate average before a sample, at most, so that every answer moves it by a tenth or more
+  private static final double MAX_ERROR_WEIGHT = 0.9;
+  // latency in milliseconds assumed for a peer with pending requests but no answers yet
+  private static final double UNSAMPLED_LATENCY = 1e9;
+
+  // filled while RouterImpl constructor loads configuration, so must not be initialized here
+  private Map<String, RealmSettings> realmSettings;
+
+  private final ConcurrentHashMap<IPeer, PeerLatency> latencies = new ConcurrentHashMap<IPeer, PeerLatency>();
+  // start of scan, rotated so that peers with equal cost take turns
+  private final AtomicInteger nextPeer = new AtomicInteger();
+  private final IStatisticManager statisticManager;
+
+  protected WeightedPeakEwmaRouter(IRealmTable table, Configuration config, IStatisticManager statisticManager) {
+    super(null, null, table, config, null);
+    this.statisticManager = statisticManager;
+  }
+
+  public WeightedPeakEwmaRouter(IContainer container, IConcurrentFactory concurrentFactory,
+                                IRealmTable realmTable, Configuration config, MetaData aMetaData) {
+    super(container, concurrentFactory, realmTable, config, aMetaData);
+    this.statisticManager = container.getAssemblerFacility().getComponentInstance(IStatisticManager.class);
+  }
+
+  @Override
+  protected void loadRealmConfiguration(String realmName, Configuration realmConfig) {
+    if (realmSettings == null) {
+      realmSettings = new ConcurrentHashMap<String, RealmSettings>();
+    }
+    long decayTime = realmConfig.getLongValue(RealmEntryLatencyDecayTime.ordinal(), (Long) RealmEntryLatencyDecayTime.defValue());
+    if (decayTime <= 0) {
+      logger.warn("Realm [{}] attribute 'latency_decay_time' [{}] must be positive. Using default.", realmName, decayTime);
+      decayTime = (Long) RealmEntryLatencyDecayTime.defValue();
+    }
+    double errorPenalty = realmConfig.getDoubleValue(RealmEntryErrorPenalty.ordinal(), (Double) RealmEntryErrorPenalty.defValue());
+    if (errorPenalty < 0) {
+      logger.warn("Realm [{}] attribute 'error_penalty' [{}] must not be negative. Using default.", realmName, errorPenalty);
+      errorPenalty = (Double) RealmEntryErrorPenalty.defValue();
+    }
+    realmSettings.put(realmName, new RealmSettings(TimeUnit.MILLISECONDS.toNanos(decayTime), errorPenalty));
+  }
+
+  /**
+   * @param realmName name of the realm
+   * @return decay time of averages in nanoseconds for peers of the realm
+   */
+  protected long getLatencyDecayTime(String realmName) {
+    RealmSettings settings = realmName != null && realmSettings != null ? realmSettings.get(realmName) : null;
+    return settings != null ? settings.decayTime : TimeUnit.MILLISECONDS.toNanos((Long) RealmEntryLatencyDecayTime.defValue());
+  }
+
+  /**
+   * @param realmName name of the realm
+   * @return error penalty for peers of the realm
+   */
+  protected double getErrorPenalty(String realmName) {
+    RealmSettings settings = realmName != null && realmSettings != null ? realmSettings.get(realmName) : null;
+    return settings != null ? settings.errorPenalty : (Double) RealmEntryErrorPenalty.defValue();
+  }
+
+  @Override
+  public void requestAnswered(IPeer peer, IMessage request, IMessage answer) {
+    long sentTime = request.getSentTime();
+    if (sentTime != 0) {
+      long now = System.nanoTime();
+      addSample(peer, now - sentTime, answer.isError(), now);
+    }
+  }
+
+  @Override
+  public void requestTimedOut(IPeer peer, IMessage request) {
+    long sentTime = request.getSentTime();
+    if (sentTime != 0) {
+      long now = System.nanoTime();
+      addSample(peer, now - sentTime, true, now);
+    }
+  }
+
+  /**
+   * Update averages of peer
+   *
+   * @param peer peer which answered
+   * @param latency time from sending request to its answer or timeout, in nanoseconds
+   * @param error true if answer is an error or request timed out
+   * @param now current time as given by System.nanoTime()
+   */
+  protected void addSample(IPeer peer, long latency, boolean error, long now) {
+    PeerLatency peerLatency = latencies.get(peer);
+    if (peerLatency == null) {
+      peerLatency = new PeerLatency();
+      PeerLatency old = latencies.putIfAbsent(peer, peerLatency);
+      if (old != null) {
+        peerLatency = old;
+      }
+      else if (statisticManager != null) {
+        peerLatency.statistic = createStatistic(peer, peerLatency);
+      }
+    }
+    peerLatency.update(latency / 1000000.0, error, now, getLatencyDecayTime(peer.getRealmName()));
+  }
+
+  /**
+   * @param peer peer
+   * @return average answer time of peer in milliseconds, 0 if no answer was received yet
+   */
+  public double getAnswerTime(IPeer peer) {
+    PeerLatency peerLatency = latencies.get(peer);
+    return peerLatency != null ? peerLatency.getLatency(System.nanoTime(), getLatencyDecayTime(peer.getRealmName())) : 0;
+  }
+
+  /**
+   * @param peer peer
+   * @return average rate of errors and timeouts of peer, between 0 and 1
+   */
+  public double getErrorRate(IPeer peer) {
+    PeerLatency peerLatency = latencies.get(peer);
+    return peerLatency != null ? peerLatency.getErrorRate(System.nanoTime(), getLatencyDecayTime(peer.getRealmName())) : 0;
+  }
+
+  /**
+   * Return peer with least cost, that is average latency multiplied by pending requests plus one and by error
+   * penalty, in relation to its rating. Peers with rating of zero are only used if no other peer is available.
+   *
+   * @param availablePeers list of peers that are in {@link PeerState#OKAY OKAY} state
+   * @return the selected peer according to algorithm
+   */
+  @Override
+  public IPeer selectPeer(List<IPeer> availablePeers) {
+    int peerSize = availablePeers != null ? availablePeers.size() : 0;
+
+    // Return none if empty, or first if only one member found
+    if (peerSize <= 0) {
+      return null;
+    }
+    if (peerSize == 1) {
+      return availablePeers.get(0);
+    }
+
+    long now = System.nanoTime();
+    int start = (nextPeer.getAndIncrement() & Integer.MAX_VALUE) % peerSize;
+    IPeer selected = null;
+    double selectedCost = 0;
+    for (int i = 0; i < peerSize; i++) {
+      IPeer peer = availablePeers.get((start + i) % peerSize);
+      int rating = peer.getRating();
+      if (rating <= 0) {
+        continue;
+      }
+      int pending = peer.getPendingRequests();
+      PeerLatency peerLatency = latencies.get(peer);
+      double cost;
+      if (peerLatency != null) {
+        String realmName = peer.getRealmName();
+        long decayTime = getLatencyDecayTime(realmName);
+        cost = peerLatency.getLatency(now, decayTime) * (pending + 1)
+            * (1 + getErrorPenalty(realmName) * peerLatency.getErrorRate(now, decayTime)) / rating;
+      }
+      else {
+        cost = pending > 0 ? UNSAMPLED_LATENCY * (pending + 1) / rating : 0;
+      }
+      if (selected == null || cost < selectedCost) {
+        selected = peer;
+        selectedCost = cost;
+      }
+    }
+
+    // Return first peer if none has positive rating
+    return selected != null ? selected : availablePeers.get(start);
+  }
+
+  @Override
+  public void peerRemoved(IPeer peer) {
+    PeerLatency peerLatency = latencies.remove(peer);
+    if (peerLatency != null && peerLatency.statistic != null) {
+      statisticManager.removeStatistic(peerLatency.statistic);
+    }
+  }
+
+  @Override
+  public void destroy() {
+    super.destroy();
+    if (statisticManager != null) {
+      for (PeerLatency peerLatency : latencies.values()) {
+        if (peerLatency.statistic != null) {
+          statisticManager.removeStatistic(peerLatency.statistic);
+        }
+      }
+    }
+    latencies.clear();
+  }
+
+  private IStatistic createStatistic(final IPeer peer, final PeerLatency peerLatency) {
+    return statisticManager.newStatistic(peer.getUri().toString(), IStatistic.Groups.Router,
+        statisticManager.newCounterRecord(IStatisticRecord.Counters.AnswerTimeEwma, new IStatisticRecord.DoubleValueHolder() {
+          @Override
+          public double getValueAsDouble() {
+            return peerLatency.getLatency(System.nanoTime(), getLatencyDecayTime(peer.getRealmName()));
+          }
+
+          @Override
+          public String getValueAsString() {
+            return String.valueOf(getValueAsDouble());
+          }
+        }),
+        statisticManager.newCounterRecord(IStatisticRecord.Counters.ErrorRateEwma, new IStatisticRecord.DoubleValueHolder() {
+          @Override
+          public double getValueAsDouble() {
+            return peerLatency.getErrorRate(System.nanoTime(), getLatencyDecayTime(peer.getRealmName()));
+          }
+
+          @Override
+          public String getValueAsString() {
+            return String.valueOf(getValueAsDouble());
+          }
+        }));
+  }
+
+  private static final class RealmSettings {
+
+    // in nanoseconds
+    private final long decayTime;
+    private final double errorPenalty;
+
+    RealmSettings(long decayTime, double errorPenalty) {
+      this.decayTime = decayTime;
+      this.errorPenalty = errorPenalty;
+    }
+  }
+
+  /**
+   * Moving averages of one peer. Both decay with time since last sample, as if samples of zero were received.
+   * Error rate also moves by at least a tenth on every sample, so peers answering errors quickly are avoided soon.
+   */
+  private static final class PeerLatency {
+
+    // in milliseconds
+    private double latency;
+    private double errorRate;
+    private long lastSample;
+    private boolean sampled;
+    private volatile IStatistic statistic;
+
+    synchronized void update(double sample, boolean error, long now, long decayTime) {
+      if (!sampled) {
+        latency = sample;
+        errorRate = error ? 1 : 0;
+        sampled = true;
+      }
+      else {
+        double weight = weight(now, decayTime);
+        latency = sample > latency ? sample : latency * weight + sample * (1 - weight);
+        double errorWeight = Math.min(weight, MAX_ERROR_WEIGHT);
+        errorRate = errorRate * errorWeight + (error ? 1 - errorWeight : 0);
+      }
+      lastSample = now;
+    }
+
+    synchronized double getLatency(long now, long decayTime) {
+      return latency * weight(now, decayTime);
+    }
+
+    synchronized double getErrorRate(long now, long decayTime) {
+      return errorRate * weight(now, decayTime);
+    }
+
+    private double weight(long now, long decayTime) {
+      return Math.exp(-Math.max(now - lastSample, 0) / (double) decayTime);
+    }
+  }
+}
@@ -0,0 +1,184 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2016, TeleStax Inc. and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+package org.jdiameter.client.impl.transport;
+
+import static org.jdiameter.client.impl.helpers.Parameters.MaxMessageSize;
+import static org.jdiameter.client.impl.helpers.Parameters.NettyHandlerThreadCount;
+import static org.jdiameter.client.impl.helpers.Parameters.NettyIoThreadCount;
+import static org.jdiameter.client.impl.helpers.Parameters.NettyUseEpoll;
+import static org.jdiameter.client.impl.helpers.Parameters.WriteBatchDelay;
+import static org.jdiameter.client.impl.helpers.Parameters.WriteBatchSize;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import org.jdiameter.api.Configuration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.ServerChannel;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.epoll.EpollServerSocketChannel;
+import io.netty.channel.epoll.EpollSocketChannel;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.util.concurrent.DefaultEventExecutorGroup;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import io.netty.util.concurrent.EventExecutorGroup;
+
+/**
+ * Event loops shared by all Netty client connections and network guards of one stack.
+ * The runtime is created when the first user acquires it and shut down once the last
+ * one releases it; stacks are told apart by their configuration instance.
+ */
+public final class NettyTransportRuntime {
+
+  private static final Logger logger = LoggerFactory.getLogger(NettyTransportRuntime.class);
+
+  private static final Map<Configuration, NettyTransportRuntime> runtimes = new IdentityHashMap<Configuration, NettyTransportRuntime>();
+
+  private final Configuration config;
+  private final EventLoopGroup ioGroup;
+  private final EventExecutorGroup handlerGroup;
+  private final Class<? extends SocketChannel> socketChannelClass;
+  private final Class<? extends ServerChannel> serverChannelClass;
+  private final int writeBatchSize;
+  private final long writeBatchDelay;
+  private final int maxMessageSize;
+  private int references;
+
+  private NettyTransportRuntime(Configuration config) {
+    this.config = config;
+    int ioThreads = getIntValue(config, NettyIoThreadCount.ordinal(), (Integer) NettyIoThreadCount.defValue());
+    if (ioThreads <= 0) {
+      ioThreads = Runtime.getRuntime().availableProcessors();
+    }
+    boolean useEpoll = config != null ?
+        config.getBooleanValue(NettyUseEpoll.ordinal(), (Boolean) NettyUseEpoll.defValue()) : (Boolean) NettyUseEpoll.defValue();
+    if (useEpoll && Epoll.isAvailable()) {
+      ioGroup = new EpollEventLoopGroup(ioThreads, new DefaultThreadFactory("NettyIO", true));
+      socketChannelClass = EpollSocketChannel.class;
+      serverChannelClass = EpollServerSocketChannel.class;
+    }
+    else {
+      ioGroup = new NioEventLoopGroup(ioThreads, new DefaultThreadFactory("NettyIO", true));
+      socketChannelClass = NioSocketChannel.class;
+      serverChannelClass = NioServerSocketChannel.class;
+    }
+    // listeners may block, e.g. on the peer FSM queue, so they are kept off the I/O threads unless asked for
+    int handlerThreads = getIntValue(config, NettyHandlerThreadCount.ordinal(), (Integer) NettyHandlerThreadCount.defValue());
+    if (handlerThreads == 0) {
+      handlerThreads = Runtime.getRuntime().availableProcessors();
+    }
+    writeBatchSize = getIntValue(config, WriteBatchSize.ordinal(), (Integer) WriteBatchSize.defValue());
+    writeBatchDelay = config != null ?
+        config.getLongValue(WriteBatchDelay.ordinal(), (Long) WriteBatchDelay.defValue()) : (Long) WriteBatchDelay.defValue();
+    maxMessageSize = getIntValue(config, MaxMessageSize.ordinal(), (Integer) MaxMessageSize.defValue());
+    handlerGroup = handlerThreads > 0 ? new DefaultEventExecutorGroup(handlerThreads, new DefaultThreadFactory("NettyHandler", true)) : null;
+    logger.debug("Started Netty transport runtime with [{}] {} I/O threads and [{}] handler threads",
+        new Object[] {ioThreads, socketChannelClass == EpollSocketChannel.class ? "epoll" : "nio", handlerThreads});
+  }
+
+  private static int getIntValue(Configuration config, int key, int defValue) {
+    return config != null ? config.getIntValue(key, defValue) : defValue;
+  }
+
+  /**
+   * Returns the runtime of the stack owning the configuration, starting it if needed.
+   * Every call must be matched by a {@link #release()}.
+   *
+   * @param config stack configuration
+   * @return shared runtime
+   */
+  public static synchronized NettyTransportRuntime acquire(Configuration config) {
+    NettyTransportRuntime runtime = runtimes.get(config);
+    if (runtime == null) {
+      runtime = new NettyTransportRuntime(config);
+      runtimes.put(config, runtime);
+    }
+    runtime.references++;
+    return runtime;
+  }
+
+  /**
+   * Gives back a runtime obtained from {@link #acquire(Configuration)}. The event loops are
+   * shut down, without waiting for them, when no user is left.
+   */
+  public void release() {
+    synchronized (NettyTransportRuntime.class) {
+      if (--references > 0) {
+        return;
+      }
+      runtimes.remove(config);
+    }
+    logger.debug("Stopping Netty transport runtime");
+    ioGroup.shutdownGracefully();
+    if (handlerGroup != null) {
+      handlerGroup.shutdownGracefully();
+    }
+  }
+
+  /**
+   * @return group serving both accepted and connected channels
+   */
+  public EventLoopGroup getIoGroup() {
+    return ioGroup;
+  }
+
+  /**
+   * @return group running message handlers, or null if they run on the I/O threads
+   */
+  public EventExecutorGroup getHandlerGroup() {
+    return handlerGroup;
+  }
+
+  public Class<? extends SocketChannel> getSocketChannelClass() {
+    return socketChannelClass;
+  }
+
+  public Class<? extends ServerChannel> getServerChannelClass() {
+    return serverChannelClass;
+  }
+
+  /**
+   * @return maximum number of messages written to a channel before it is flushed
+   */
+  public int getWriteBatchSize() {
+    return writeBatchSize;
+  }
+
+  /**
+   * @return maximum delay of a flush in microseconds, 0 to flush once per event loop iteration
+   */
+  public long getWriteBatchDelay() {
+    return writeBatchDelay;
+  }
+
+  /**
+   * @return maximum size in bytes of a received message
+   */
+  public int getMaxMessageSize() {
+    return maxMessageSize;
+  }
+}
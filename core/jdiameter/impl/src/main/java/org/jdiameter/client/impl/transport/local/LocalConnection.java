@@ -0,0 +1,338 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2016, TeleStax Inc. and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+package org.jdiameter.client.impl.transport.local;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.jdiameter.api.AvpDataException;
+import org.jdiameter.api.InternalException;
+import org.jdiameter.api.OverloadException;
+import org.jdiameter.client.api.IMessage;
+import org.jdiameter.client.api.io.IConnection;
+import org.jdiameter.client.api.io.IConnectionListener;
+import org.jdiameter.client.api.io.TransportError;
+import org.jdiameter.client.api.io.TransportException;
+import org.jdiameter.client.api.parser.IMessageParser;
+import org.jdiameter.common.api.concurrent.IConcurrentFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * One end of an in-process connection. Sent messages are encoded as for a socket and queued to the other end,
+ * whose delivery thread decodes them and passes them to its listeners in order.
+ */
+public class LocalConnection implements IConnection {
+
+  private static final Logger logger = LoggerFactory.getLogger(LocalConnection.class);
+
+  /**
+   * Number of messages an end holds for delivery before senders get an {@link OverloadException}, it takes the
+   * place of socket buffers.
+   */
+  public static final int RECEIVE_QUEUE_CAPACITY = 65536;
+
+  private enum Signal {
+    CONNECTED, DISCONNECTED
+  }
+
+  private final long createdTime;
+  private final IConcurrentFactory concurrentFactory;
+  private final IMessageParser parser;
+  private final InetSocketAddress remoteAddress;
+  private InetSocketAddress localAddress;
+
+  // Received messages and signals waiting for the delivery thread, a new one is used for each link
+  private volatile Delivery inbound = new Delivery();
+  private volatile LocalConnection remote;
+  private final AtomicBoolean connected = new AtomicBoolean();
+
+  // Events delivered while no listener was attached
+  private final List<Object> buffer = new ArrayList<Object>();
+  private final ConcurrentLinkedQueue<IConnectionListener> listeners = new ConcurrentLinkedQueue<IConnectionListener>();
+  private final Lock lock = new ReentrantLock();
+
+  // Cached value for connection key
+  private String cachedKey = null;
+
+  public LocalConnection(IConcurrentFactory concurrentFactory, IMessageParser parser, InetSocketAddress localAddress,
+      InetSocketAddress remoteAddress) {
+    this.createdTime = System.currentTimeMillis();
+    this.concurrentFactory = concurrentFactory;
+    this.parser = parser;
+    this.localAddress = localAddress;
+    this.remoteAddress = remoteAddress;
+  }
+
+  @Override
+  public long getCreatedTime() {
+    return createdTime;
+  }
+
+  @Override
+  public void connect() throws TransportException {
+    if (connected.get()) {
+      return;
+    }
+    LocalTransport.Acceptor acceptor = LocalTransport.lookup(remoteAddress);
+    if (acceptor == null) {
+      throw new TransportException("Connection refused: " + remoteAddress, TransportError.NetWorkError);
+    }
+    if (localAddress.getPort() == 0) {
+      localAddress = new InetSocketAddress(localAddress.getAddress(), LocalTransport.nextEphemeralPort());
+    }
+    LocalConnection accepted = acceptor.accept(remoteAddress, localAddress);
+    accepted.link(this);
+    link(accepted);
+    inbound.queue.offer(Signal.CONNECTED);
+  }
+
+  private void link(LocalConnection other) {
+    Delivery delivery = new Delivery();
+    inbound = delivery;
+    remote = other;
+    connected.set(true);
+    concurrentFactory.getThread("LocalConnection", delivery).start();
+  }
+
+  @Override
+  public void disconnect() throws InternalError {
+    logger.debug("In disconnect for [{}]", this.getKey());
+    if (connected.compareAndSet(true, false)) {
+      inbound.close();
+      LocalConnection other = remote;
+      if (other != null) {
+        other.disconnect();
+      }
+    }
+  }
+
+  @Override
+  public void sendMessage(IMessage message) throws TransportException, OverloadException {
+    LocalConnection other = remote;
+    if (!connected.get() || other == null) {
+      throw new TransportException("Cannot send message: connection is closed", TransportError.FailedSendMessage);
+    }
+    ByteBuffer data;
+    try {
+      data = parser.encodeMessage(message);
+    }
+    catch (Exception e) {
+      throw new TransportException("Cannot send message: ", TransportError.FailedSendMessage, e);
+    }
+    if (!other.receive(data)) {
+      throw new OverloadException("Receive queue of connection [" + other.getKey() + "] is full");
+    }
+  }
+
+  private boolean receive(ByteBuffer data) {
+    return inbound.queue.offer(data);
+  }
+
+  @Override
+  public void release() throws IOException {
+    logger.debug("In release for [{}]", this.getKey());
+    disconnect();
+    lock.lock();
+    try {
+      buffer.clear();
+      listeners.clear();
+    }
+    finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public boolean isNetworkInitiated() {
+    return false;
+  }
+
+  @Override
+  public boolean isConnected() {
+    return connected.get();
+  }
+
+  @Override
+  public InetAddress getRemoteAddress() {
+    return remoteAddress.getAddress();
+  }
+
+  @Override
+  public int getRemotePort() {
+    return remoteAddress.getPort();
+  }
+
+  @Override
+  public void addConnectionListener(IConnectionListener listener) {
+    lock.lock();
+    try {
+      listeners.add(listener);
+      for (Object event : buffer) {
+        logger.debug("Processing event from buffer");
+        dispatch(event);
+      }
+      buffer.clear();
+    }
+    finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public void remAllConnectionListener() {
+    lock.lock();
+    try {
+      logger.debug("Removing all listeners on [{}]", this.getKey());
+      listeners.clear();
+    }
+    finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public void remConnectionListener(IConnectionListener listener) {
+    lock.lock();
+    try {
+      logger.debug("Removing listener [{}] on [{}]", listener.getClass().getName(), this.getKey());
+      listeners.remove(listener);
+    }
+    finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public boolean isWrapperFor(Class<?> aClass) throws InternalException {
+    return false;
+  }
+
+  @Override
+  public <T> T unwrap(Class<T> aClass) throws InternalException {
+    return null;
+  }
+
+  @Override
+  public String getKey() {
+    if (this.cachedKey == null) {
+      this.cachedKey = new StringBuffer("aaa://").append(getRemoteAddress().getHostName()).append(":").append(getRemotePort()).toString();
+    }
+
+    return this.cachedKey;
+  }
+
+  private void onEvent(Object event) {
+    lock.lock();
+    try {
+      if (listeners.isEmpty()) {
+        if (buffer.size() < RECEIVE_QUEUE_CAPACITY) {
+          buffer.add(event);
+        }
+        else {
+          logger.debug("No listener on connection [{}] and buffer is full, dropping event", this.getKey());
+        }
+      }
+      else {
+        dispatch(event);
+      }
+    }
+    finally {
+      lock.unlock();
+    }
+  }
+
+  private void dispatch(Object event) {
+    if (event == Signal.CONNECTED) {
+      for (IConnectionListener listener : listeners) {
+        listener.connectionOpened(getKey());
+      }
+    }
+    else if (event == Signal.DISCONNECTED) {
+      for (IConnectionListener listener : listeners) {
+        listener.connectionClosed(getKey(), null);
+      }
+    }
+    else {
+      IMessage message;
+      try {
+        message = parser.createMessage((ByteBuffer) event);
+      }
+      catch (AvpDataException e) {
+        for (IConnectionListener listener : listeners) {
+          listener.internalError(getKey(), null, new TransportException("Avp Data Exception:", TransportError.ReceivedBrokenMessage, e));
+        }
+        return;
+      }
+      for (IConnectionListener listener : listeners) {
+        listener.messageReceived(getKey(), message);
+      }
+    }
+  }
+
+  /**
+   * Drains the queue of one link until its disconnect signal.
+   */
+  private class Delivery implements Runnable {
+
+    private final LinkedBlockingQueue<Object> queue = new LinkedBlockingQueue<Object>(RECEIVE_QUEUE_CAPACITY);
+    private volatile boolean closed;
+
+    /**
+     * Ends the link once the messages already received are delivered, as a FIN would. If the queue is
+     * full the signal is not queued, the delivery thread ends the link once it finds the queue empty.
+     */
+    void close() {
+      closed = true;
+      queue.offer(Signal.DISCONNECTED);
+    }
+
+    @Override
+    public void run() {
+      Object event = null;
+      while (event != Signal.DISCONNECTED) {
+        try {
+          event = queue.poll();
+          if (event == null) {
+            // set before the signal is offered, so an empty queue is never waited on after it
+            event = closed ? Signal.DISCONNECTED : queue.take();
+          }
+          onEvent(event);
+        }
+        catch (InterruptedException e) {
+          logger.debug("Delivery thread of connection [{}] interrupted", getKey());
+          return;
+        }
+        catch (Exception e) {
+          logger.warn("Listener of connection [" + getKey() + "] failed to process event", e);
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,96 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2016, TeleStax Inc. and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+package org.jdiameter.client.impl.transport.local;
+
+import java.net.InetSocketAddress;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jdiameter.client.api.io.TransportError;
+import org.jdiameter.client.api.io.TransportException;
+
+/**
+ * JVM wide registry of in-process listening addresses, it takes the place of the socket layer for
+ * {@link LocalConnection}s. Stacks of the same JVM reach each other through it by the addresses and ports of their
+ * configuration, as they would over the network.
+ */
+public final class LocalTransport {
+
+  /**
+   * Accepting side of a bound address.
+   */
+  public interface Acceptor {
+
+    /**
+     * Creates the accepting end of a new connection.
+     *
+     * @param localAddress address the connecting end connects to
+     * @param remoteAddress address of the connecting end
+     * @return not yet connected end, it is linked to the connecting end by the caller
+     */
+    LocalConnection accept(InetSocketAddress localAddress, InetSocketAddress remoteAddress);
+  }
+
+  private static final int EPHEMERAL_PORT_START = 49152;
+  private static final int EPHEMERAL_PORT_MASK = 0x3FFF;
+
+  private static final ConcurrentMap<InetSocketAddress, Acceptor> acceptors = new ConcurrentHashMap<InetSocketAddress, Acceptor>();
+  private static final AtomicInteger ephemeralPort = new AtomicInteger();
+
+  private LocalTransport() {
+  }
+
+  /**
+   * Starts accepting connections on the address.
+   *
+   * @throws TransportException if another acceptor is bound to it
+   */
+  public static void bind(InetSocketAddress address, Acceptor acceptor) throws TransportException {
+    if (acceptors.putIfAbsent(address, acceptor) != null) {
+      throw new TransportException("Address already in use: " + address, TransportError.NetWorkError);
+    }
+  }
+
+  /**
+   * Stops accepting connections on the address, if it is still bound to the acceptor.
+   */
+  public static void unbind(InetSocketAddress address, Acceptor acceptor) {
+    acceptors.remove(address, acceptor);
+  }
+
+  /**
+   * Returns the acceptor bound to the address, or to the wildcard address on the same port.
+   */
+  static Acceptor lookup(InetSocketAddress address) {
+    Acceptor acceptor = acceptors.get(address);
+    if (acceptor == null) {
+      acceptor = acceptors.get(new InetSocketAddress(address.getPort()));
+    }
+    return acceptor;
+  }
+
+  /**
+   * Returns a port for connecting ends that were not given one, from the IANA dynamic range.
+   */
+  static int nextEphemeralPort() {
+    return EPHEMERAL_PORT_START + (ephemeralPort.getAndIncrement() & EPHEMERAL_PORT_MASK);
+  }
+}
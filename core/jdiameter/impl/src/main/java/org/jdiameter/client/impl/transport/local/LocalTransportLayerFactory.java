@@ -0,0 +1,76 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2016, TeleStax Inc. and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+package org.jdiameter.client.impl.transport.local;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+
+import org.jdiameter.api.Configuration;
+import org.jdiameter.api.InternalException;
+import org.jdiameter.client.api.io.IConnection;
+import org.jdiameter.client.api.io.IConnectionListener;
+import org.jdiameter.client.api.io.ITransportLayerFactory;
+import org.jdiameter.client.api.io.TransportException;
+import org.jdiameter.client.api.parser.IMessageParser;
+import org.jdiameter.common.api.concurrent.DummyConcurrentFactory;
+import org.jdiameter.common.api.concurrent.IConcurrentFactory;
+
+/**
+ * Transport factory connecting stacks of the same JVM through {@link LocalConnection}s instead of sockets.
+ * Messages are still encoded and decoded, so everything above the socket layer runs as in production. Selected with
+ * <code>&lt;TransportFactory value="org.jdiameter.client.impl.transport.local.LocalTransportLayerFactory"/&gt;</code>
+ * in the <code>Extensions</code> section of the configuration.
+ */
+public class LocalTransportLayerFactory implements ITransportLayerFactory {
+
+  protected IMessageParser parser;
+  protected Configuration config = null;
+
+  public LocalTransportLayerFactory(Configuration config, IMessageParser parser) {
+    this.config = config;
+    this.parser = parser;
+  }
+
+  @Override
+  public IConnection createConnection(InetAddress remoteAddress, IConcurrentFactory factory, int remotePort, InetAddress localAddress, int localPort,
+      String ref) throws TransportException {
+    factory = factory == null ? new DummyConcurrentFactory() : factory;
+    localAddress = localAddress == null ? InetAddress.getLoopbackAddress() : localAddress;
+    return new LocalConnection(factory, parser, new InetSocketAddress(localAddress, localPort), new InetSocketAddress(remoteAddress, remotePort));
+  }
+
+  @Override
+  public IConnection createConnection(InetAddress remoteAddress, IConcurrentFactory factory, int remotePort, InetAddress localAddress, int localPort,
+      IConnectionListener listener, String ref) throws TransportException {
+    IConnection connection = createConnection(remoteAddress, factory, remotePort, localAddress, localPort, ref);
+    connection.addConnectionListener(listener);
+    return connection;
+  }
+
+  @Override
+  public boolean isWrapperFor(Class<?> aClass) throws InternalException {
+    return false;
+  }
+
+  @Override
+  public <T> T unwrap(Class<T> aClass) throws InternalException {
+    return null;
+  }
+}
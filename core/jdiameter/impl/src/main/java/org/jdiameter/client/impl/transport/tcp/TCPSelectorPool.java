@@ -0,0 +1,233 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2016, TeleStax Inc. and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+package org.jdiameter.client.impl.transport.tcp;
+
+import static org.jdiameter.client.impl.helpers.Parameters.TCPSelectorThreadCount;
+import static org.jdiameter.common.api.concurrent.IConcurrentFactory.ScheduledExecServices.TCPDelivery;
+
+import java.io.IOException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jdiameter.api.Configuration;
+import org.jdiameter.common.api.concurrent.IConcurrentFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Fixed set of selector threads shared by the {@link TCPTransportClient} instances of one stack.
+ * A connection is bound to one selector, picked round robin, for as long as it is registered.
+ * Selector threads only read and frame, received messages are passed on by the fixed size
+ * {@code TCPDelivery} pool of the concurrent factory, so that a listener blocking on one connection
+ * holds one of its threads instead of a selector.
+ * <p>
+ * The pool is started when the first connection of the stack acquires it and stopped once the
+ * last one releases it; stacks are told apart by their concurrent factory instance.
+ */
+final class TCPSelectorPool {
+
+  private static final Logger logger = LoggerFactory.getLogger(TCPSelectorPool.class);
+
+  private static final Map<IConcurrentFactory, TCPSelectorPool> pools = new IdentityHashMap<IConcurrentFactory, TCPSelectorPool>();
+
+  private final IConcurrentFactory concurrentFactory;
+  private final SelectorLoop[] loops;
+  private final ExecutorService deliveryExecutor;
+  private final AtomicInteger next = new AtomicInteger();
+  private int references;
+
+  private TCPSelectorPool(int size, IConcurrentFactory concurrentFactory) throws IOException {
+    this.concurrentFactory = concurrentFactory;
+    loops = new SelectorLoop[size];
+    try {
+      for (int i = 0; i < size; i++) {
+        loops[i] = new SelectorLoop(Selector.open());
+      }
+    }
+    catch (IOException e) {
+      for (SelectorLoop loop : loops) {
+        if (loop != null) {
+          loop.selector.close();
+        }
+      }
+      throw e;
+    }
+    for (SelectorLoop loop : loops) {
+      Thread thread = concurrentFactory.getThread("TCPSelector", loop);
+      thread.setDaemon(true);
+      thread.start();
+    }
+    // fixed size pool of the stack, shared by all connections, each one runs at most one delivery task at a time
+    deliveryExecutor = concurrentFactory.getScheduledExecutorService(TCPDelivery.name());
+    logger.debug("Started [{}] TCP selector threads", size);
+  }
+
+  /**
+   * Returns the pool of the stack owning the concurrent factory, starting it if needed.
+   * The size is taken from the configuration of the first caller of the stack.
+   * Every call must be matched by a {@link #release()}.
+   *
+   * @param config stack configuration, may be null
+   * @param concurrentFactory concurrent factory of the stack, creates the pool threads
+   * @return the pool of the stack
+   * @throws IOException if a selector can not be opened
+   */
+  static synchronized TCPSelectorPool acquire(Configuration config, IConcurrentFactory concurrentFactory) throws IOException {
+    TCPSelectorPool pool = pools.get(concurrentFactory);
+    if (pool == null) {
+      int size = config != null ?
+          config.getIntValue(TCPSelectorThreadCount.ordinal(), (Integer) TCPSelectorThreadCount.defValue()) :
+            (Integer) TCPSelectorThreadCount.defValue();
+      if (size <= 0) {
+        size = Runtime.getRuntime().availableProcessors();
+      }
+      pool = new TCPSelectorPool(size, concurrentFactory);
+      pools.put(concurrentFactory, pool);
+    }
+    pool.references++;
+    return pool;
+  }
+
+  /**
+   * Gives back a pool obtained from {@link #acquire(Configuration, IConcurrentFactory)}. The selector
+   * threads are stopped when no connection is left. The delivery pool belongs to the concurrent factory
+   * and is shut down with the stack, so deliveries already handed over still complete.
+   */
+  void release() {
+    synchronized (TCPSelectorPool.class) {
+      if (--references > 0) {
+        return;
+      }
+      pools.remove(concurrentFactory);
+    }
+    logger.debug("Stopping TCP selector threads");
+    for (SelectorLoop loop : loops) {
+      loop.stop();
+    }
+  }
+
+  /**
+   * Registers the channel for reading on one of the selectors. Once registered, the client is
+   * notified of readable data through {@link TCPTransportClient#onReadable(SelectionKey)}.
+   *
+   * @param channel non blocking, connected channel
+   * @param client transport owning the channel
+   */
+  void register(final SocketChannel channel, final TCPTransportClient client) {
+    final SelectorLoop loop = loops[(next.getAndIncrement() & Integer.MAX_VALUE) % loops.length];
+    loop.execute(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          client.onRegistered(channel.register(loop.selector, SelectionKey.OP_READ, client));
+        }
+        catch (ClosedChannelException e) {
+          logger.debug("Channel was closed before registration on selector");
+          client.onRegistered(null);
+        }
+      }
+    });
+  }
+
+  /**
+   * Runs the task on the selector thread the key is registered with.
+   *
+   * @param key selection key obtained on registration
+   * @param task task to run
+   */
+  void execute(SelectionKey key, Runnable task) {
+    for (SelectorLoop loop : loops) {
+      if (loop.selector == key.selector()) {
+        loop.execute(task);
+        return;
+      }
+    }
+  }
+
+  /**
+   * Runs the task on the {@code TCPDelivery} pool of the concurrent factory. Callers make sure that at most one task per connection
+   * is handed over at a time, so that messages of a connection are passed on in order.
+   *
+   * @param task task to run
+   */
+  void deliver(Runnable task) {
+    deliveryExecutor.execute(task);
+  }
+
+  private static class SelectorLoop implements Runnable {
+
+    private final Selector selector;
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<Runnable>();
+    private volatile boolean running = true;
+
+    SelectorLoop(Selector selector) {
+      this.selector = selector;
+    }
+
+    void execute(Runnable task) {
+      tasks.add(task);
+      selector.wakeup();
+    }
+
+    void stop() {
+      running = false;
+      selector.wakeup();
+    }
+
+    @Override
+    public void run() {
+      while (running) {
+        try {
+          selector.select();
+          Runnable task;
+          while ((task = tasks.poll()) != null) {
+            task.run();
+          }
+          Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+          while (it.hasNext()) {
+            SelectionKey key = it.next();
+            it.remove();
+            if (key.isValid() && key.isReadable()) {
+              ((TCPTransportClient) key.attachment()).onReadable(key);
+            }
+          }
+        }
+        catch (Throwable e) {
+          logger.error("Error in TCP selector loop", e);
+        }
+      }
+      try {
+        selector.close();
+      }
+      catch (IOException e) {
+        logger.debug("Error while closing selector", e);
+      }
+    }
+  }
+}
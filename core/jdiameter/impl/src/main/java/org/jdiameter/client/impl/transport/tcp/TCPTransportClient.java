@@ -42,23 +42,26 @@
 
 package org.jdiameter.client.impl.transport.tcp;
 
+import static org.jdiameter.client.impl.helpers.Parameters.MaxMessageSize;
+import static org.jdiameter.client.impl.helpers.Parameters.WriteBatchSize;
+
 import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.net.Socket;
-import java.nio.BufferOverflowException;
-import java.nio.BufferUnderflowException;
 import java.nio.ByteBuffer;
-import java.nio.channels.AsynchronousCloseException;
-import java.nio.channels.ClosedByInterruptException;
 import java.nio.channels.SelectionKey;
-import java.nio.channels.Selector;
 import java.nio.channels.SocketChannel;
 import java.nio.channels.spi.SelectorProvider;
-import java.util.Iterator;
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 
 import org.jdiameter.api.AvpDataException;
+import org.jdiameter.api.Configuration;
 import org.jdiameter.client.api.io.NotInitializedException;
 import org.jdiameter.common.api.concurrent.IConcurrentFactory;
 import org.slf4j.Logger;
@@ -70,19 +73,37 @@ import org.slf4j.LoggerFactory;
  * @author <a href="mailto:baranowb@gmail.com"> Bartosz Baranowski </a>
  * @author <a href="mailto:brainslog@gmail.com"> Alexandre Mendonca </a>
  */
-public class TCPTransportClient implements Runnable {
+public class TCPTransportClient {
 
   private TCPClientConnection parentConnection;
+  private Configuration config;
   private IConcurrentFactory concurrentFactory;
 
-  public static final int DEFAULT_BUFFER_SIZE  = 1024;
-  public static final int DEFAULT_STORAGE_SIZE = 2048;
+  public static final int DEFAULT_STORAGE_SIZE = 16384;
+  // received messages waiting for delivery above which the connection is no longer read from
+  private static final int MAX_INBOUND = 64;
+  // stands for the disconnection in the inbound queue, so that it is reported after the last message
+  private static final ByteBuffer DISCONNECTED = ByteBuffer.allocate(0);
+
+  protected volatile boolean stop = false;
 
-  protected boolean stop = false;
-  protected Thread selfThread;
+  // pool of the stack, held from start() until the registration is cancelled
+  private volatile TCPSelectorPool selectorPool;
+  // key of the current registration with the shared selectors, only cleared on the selector thread
+  private volatile SelectionKey selectionKey;
+  // whether reading is suspended until the inbound queue is drained, only changed on the selector thread
+  private volatile boolean readSuspended;
 
-  protected int bufferSize = DEFAULT_BUFFER_SIZE;
-  protected ByteBuffer buffer = ByteBuffer.allocate(this.bufferSize);
+  // messages read on the selector thread, passed on in order by at most one delivery task at a time
+  private final Queue<ByteBuffer> inbound = new ConcurrentLinkedQueue<ByteBuffer>();
+  private final AtomicInteger inboundSize = new AtomicInteger();
+  private final AtomicBoolean delivering = new AtomicBoolean();
+  private final Runnable deliveryTask = new Runnable() {
+    @Override
+    public void run() {
+      deliverInbound();
+    }
+  };
 
   protected InetSocketAddress destAddress;
   protected InetSocketAddress origAddress;
@@ -90,8 +111,19 @@ public class TCPTransportClient implements Runnable {
   protected SocketChannel socketChannel;
   protected Lock lock = new ReentrantLock();
 
+  // messages waiting to be written by whichever sender holds the lock
+  private final Queue<ByteBuffer> pending = new ConcurrentLinkedQueue<ByteBuffer>();
+  // buffers of one gathering write, only used under the lock
+  private ByteBuffer[] writeBatch = new ByteBuffer[(Integer) WriteBatchSize.defValue()];
+
+  // Received frames are copied out of the storage into buffers of their own. Decoded AVPs are views of their
+  // frame for the whole life of the message, which has no release, so a pooled chunk could never be reused.
+  // Once full, the incomplete tail is moved to the start of the storage.
   protected int storageSize = DEFAULT_STORAGE_SIZE;
   protected ByteBuffer storage = ByteBuffer.allocate(storageSize);
+  // start of the first byte not yet passed on as part of a frame
+  private int frameStart;
+  private int maxMessageSize = (Integer) MaxMessageSize.defValue();
 
   private String socketDescription = null;
 
@@ -99,7 +131,6 @@ public class TCPTransportClient implements Runnable {
 
   //PCB - allow non blocking IO
   private static final boolean BLOCKING_IO = false;
-  private static final long SELECT_TIMEOUT = 500; // milliseconds
 
   public TCPTransportClient() {
   }
@@ -107,12 +138,18 @@ public class TCPTransportClient implements Runnable {
   /**
    * Default constructor
    *
-   * @param concurrentFactory factory for create threads
+   * @param config stack configuration, used to size the shared selector pool
+   * @param concurrentFactory factory for the threads of the shared selector pool
    * @param parenConnection connection created this transport
    */
-  TCPTransportClient(IConcurrentFactory concurrentFactory, TCPClientConnection parenConnection) {
+  TCPTransportClient(Configuration config, IConcurrentFactory concurrentFactory, TCPClientConnection parenConnection) {
     this.parentConnection = parenConnection;
+    this.config = config;
     this.concurrentFactory = concurrentFactory;
+    if (config != null) {
+      this.maxMessageSize = config.getIntValue(MaxMessageSize.ordinal(), (Integer) MaxMessageSize.defValue());
+      this.writeBatch = new ByteBuffer[Math.max(1, config.getIntValue(WriteBatchSize.ordinal(), (Integer) WriteBatchSize.defValue()))];
+    }
   }
 
   /**
@@ -161,101 +198,196 @@ public class TCPTransportClient implements Runnable {
     if (getParent() == null) {
       throw new NotInitializedException("No parent connection is set is set");
     }
-    if (selfThread == null || !selfThread.isAlive()) {
-      selfThread = concurrentFactory.getThread("TCPReader", this);
+    stop = false;
+    TCPSelectorPool pool;
+    try {
+      pool = TCPSelectorPool.acquire(config, concurrentFactory);
+    }
+    catch (IOException e) {
+      throw new NotInitializedException("Unable to open selector", e);
     }
+    selectorPool = pool;
+    pool.register(socketChannel, this);
+    logger.debug("Transport is started. Socket is [{}]", socketDescription);
+  }
 
-    if (!selfThread.isAlive()) {
-      selfThread.setDaemon(true);
-      selfThread.start();
+  /**
+   * Called on the selector thread once the channel is registered, or with null
+   * if the channel was closed before it could be registered.
+   */
+  void onRegistered(SelectionKey key) {
+    if (key == null) {
+      disconnect();
+      releasePool();
+      return;
+    }
+    selectionKey = key;
+    if (stop) {
+      close(key);
     }
   }
 
-  //PCB added logging
-  @Override
-  public void run() {
-    // Workaround for Issue #4 (http://code.google.com/p/jdiameter/issues/detail?id=4)
-    // BEGIN WORKAROUND // Give some time to initialization...
-    int sleepTime = 250;
-    logger.debug("Sleeping for {}ms before starting transport so that listeners can all be added and ready for messages", sleepTime);
+  /**
+   * Called on the selector thread when the channel has data. Bytes go straight into
+   * the storage buffer and every complete message in it is passed on to the parent.
+   */
+  void onReadable(SelectionKey key) {
     try {
-      Thread.sleep(sleepTime);
+      if (!storage.hasRemaining()) {
+        nextStorage(0);
+      }
+      int dataLength = ((SocketChannel) key.channel()).read(storage);
+      logger.debug("Just read [{}] bytes on [{}]", dataLength, socketDescription);
+      if (dataLength == -1) {
+        close(key);
+        return;
+      }
+      boolean messageReceived;
+      do {
+        messageReceived = seekMessage();
+      } while (messageReceived);
     }
-    catch (InterruptedException e) {
-      // ignore
+    catch (Throwable e) {
+      if (stop) {
+        logger.debug("Transport is closed");
+      }
+      else {
+        logger.error("Transport exception ", e);
+      }
+      close(key);
     }
-    logger.debug("Finished sleeping for {}ms. By now, MutablePeerTableImpl should have added its listener", sleepTime);
+  }
 
-    logger.debug("Transport is started. Socket is [{}]", socketDescription);
-    Selector selector = null;
+  private void close(SelectionKey key) {
+    // stop() and the selector thread may both ask for it, only the first one counts
+    if (key != selectionKey) {
+      return;
+    }
+    selectionKey = null;
+    readSuspended = false;
+    key.cancel();
     try {
-      selector = Selector.open();
-      socketChannel.register(selector, SelectionKey.OP_READ);
-      while (!stop) {
-        selector.select(SELECT_TIMEOUT);
-        Iterator<SelectionKey> it = selector.selectedKeys().iterator();
-        while (it.hasNext()) {
-          // Get the selection key
-          SelectionKey selKey = it.next();
-          // Remove it from the list to indicate that it is being processed
-          it.remove();
-          if (selKey.isValid() && selKey.isReadable()) {
-            // Get channel with bytes to read
-            SocketChannel sChannel = (SocketChannel) selKey.channel();
-            int dataLength = sChannel.read(buffer);
-            logger.debug("Just read [{}] bytes on [{}]", dataLength, socketDescription);
-            if (dataLength == -1) {
-              stop = true;
-              break;
-            }
-            buffer.flip();
-            byte[] data = new byte[buffer.limit()];
-            buffer.get(data);
-            append(data);
-            buffer.clear();
-          }
-        }
-      }
+      key.channel().close();
     }
-    catch (ClosedByInterruptException e) {
-      logger.error("Transport exception ", e);
+    catch (IOException e) {
+      logger.debug("Error while closing channel", e);
+    }
+    disconnect();
+    releasePool();
+  }
+
+  private void disconnect() {
+    // unsent messages go with the connection, their loss is reported to the peer FSM by the disconnection
+    pending.clear();
+    clearBuffer();
+    enqueue(DISCONNECTED);
+  }
+
+  private void releasePool() {
+    TCPSelectorPool pool = selectorPool;
+    if (pool != null) {
+      selectorPool = null;
+      pool.release();
     }
-    catch (AsynchronousCloseException e) {
-      logger.error("Transport is closed");
+  }
+
+  /**
+   * Called on the selector thread with a received message or the disconnection. Once too many
+   * messages wait for delivery the connection is no longer read from, until they are passed on.
+   */
+  private void enqueue(ByteBuffer frame) {
+    // counted before it is visible, so that the delivery task sees the suspension it may have to lift
+    if (inboundSize.incrementAndGet() >= MAX_INBOUND && !readSuspended && frame != DISCONNECTED) {
+      SelectionKey key = selectionKey;
+      if (key != null && key.isValid()) {
+        readSuspended = true;
+        key.interestOps(0);
+        logger.debug("Suspended reading from [{}] until received messages are delivered", socketDescription);
+      }
     }
-    catch (Throwable e) {
-      logger.error("Transport exception ", e);
+    inbound.add(frame);
+    if (delivering.compareAndSet(false, true)) {
+      selectorPool.deliver(deliveryTask);
     }
-    finally {
-      try {
-        clearBuffer();
-        if (selector != null) {
-          selector.close();
+  }
+
+  /**
+   * Passes on received messages, on a delivery thread, until none is left.
+   */
+  private void deliverInbound() {
+    do {
+      ByteBuffer frame;
+      while ((frame = inbound.poll()) != null) {
+        inboundSize.decrementAndGet();
+        try {
+          if (frame == DISCONNECTED) {
+            getParent().onDisconnect();
+            logger.info("Transport is stopped for socket [{}]", socketDescription);
+          }
+          else {
+            deliver(frame);
+          }
         }
-        if (socketChannel != null && socketChannel.isOpen()) {
-          socketChannel.close();
+        catch (Throwable e) {
+          logger.error("Error", e);
         }
-        getParent().onDisconnect();
-      }
-      catch (Exception e) {
-        logger.error("Error", e);
       }
-      stop = false;
-      logger.info("Read thread is stopped for socket [{}]", socketDescription);
+      delivering.set(false);
+    } while (!inbound.isEmpty() && delivering.compareAndSet(false, true));
+
+    final SelectionKey key = selectionKey;
+    final TCPSelectorPool pool = selectorPool;
+    if (readSuspended && key != null && pool != null) {
+      pool.execute(key, new Runnable() {
+        @Override
+        public void run() {
+          if (readSuspended && key == selectionKey && key.isValid()) {
+            readSuspended = false;
+            key.interestOps(SelectionKey.OP_READ);
+            logger.debug("Resumed reading from [{}]", socketDescription);
+          }
+        }
+      });
+    }
+  }
+
+  private void deliver(ByteBuffer data) {
+    try {
+      // make a message out of data and process it
+      logger.debug("Passing message on to parent");
+      getParent().onMessageReceived(data);
+      logger.debug("Finished passing message on to parent");
+    }
+    catch (AvpDataException e) {
+      logger.debug("Garbage was received. Discarding.");
+      getParent().onAvpDataException(e);
     }
   }
 
   public void stop() throws Exception {
     logger.debug("Stopping transport. Socket is [{}]", socketDescription);
     stop = true;
+    closeChannel();
+    logger.debug("Transport is stopped. Socket is [{}]", socketDescription);
+  }
+
+  /**
+   * Closes the channel and leaves the cleanup, which reports the disconnection, to the selector thread.
+   */
+  private void closeChannel() throws IOException {
     if (socketChannel != null && socketChannel.isOpen()) {
       socketChannel.close();
     }
-    if (selfThread != null) {
-      selfThread.join(100);
+    final SelectionKey key = selectionKey;
+    final TCPSelectorPool pool = selectorPool;
+    if (key != null && pool != null) {
+      pool.execute(key, new Runnable() {
+        @Override
+        public void run() {
+          close(key);
+        }
+      });
     }
-    clearBuffer();
-    logger.debug("Transport is stopped. Socket is [{}]", socketDescription);
   }
 
   public void release() throws Exception {
@@ -263,9 +395,28 @@ public class TCPTransportClient implements Runnable {
     destAddress = null;
   }
 
-  private void clearBuffer() throws IOException {
-    bufferSize = DEFAULT_BUFFER_SIZE;
-    buffer = ByteBuffer.allocate(bufferSize);
+  private void clearBuffer() {
+    storage = ByteBuffer.allocate(storageSize);
+    frameStart = 0;
+  }
+
+  /**
+   * Makes room after the pending bytes for at least the rest of a frame of the given length.
+   */
+  private void nextStorage(int frameLength) {
+    int needed = Math.max(Math.max(storageSize, frameLength), storage.position() - frameStart);
+    storage.limit(storage.position());
+    storage.position(frameStart);
+    if (storage.capacity() == needed) {
+      storage.compact();
+    }
+    else {
+      // grown for a large frame, or shrunk back once it has been passed on
+      ByteBuffer tmp = ByteBuffer.allocate(needed);
+      tmp.put(storage);
+      storage = tmp;
+    }
+    frameStart = 0;
   }
 
   public InetSocketAddress getDestAddress() {
@@ -291,33 +442,66 @@ public class TCPTransportClient implements Runnable {
   }
 
   public void sendMessage(ByteBuffer bytes) throws IOException {
+    int length = bytes.remaining();
     if (logger.isDebugEnabled()) {
-      logger.debug("About to send a byte buffer of size [{}] over the TCP nio socket [{}]", bytes.array().length, socketDescription);
+      logger.debug("About to send a byte buffer of size [{}] over the TCP nio socket [{}]", length, socketDescription);
     }
-    int rc = 0;
-    // PCB - removed locking
+    if (socketChannel == null || !socketChannel.isOpen()) {
+      throw new IOException("Connection closed");
+    }
+    pending.add(bytes);
     // ZhixiaoLuo: Fix #28, without the lock the data in the socketChannel will get mixed in multi-threads.
-    lock.lock();
-    try {
-      while (rc < bytes.array().length) {
-        rc += socketChannel.write(bytes);
+    // Senders finding the lock taken leave their message to the holder, which keeps writing until the
+    // queue is drained, so concurrent messages go out together in gathering writes.
+    while (!pending.isEmpty() && lock.tryLock()) {
+      try {
+        writePending();
+      }
+      catch (Exception e) {
+        logger.error("Unable to send message", e);
+        // messages of other senders may have been taken along or be partly written, the connection is
+        // closed so that their loss is reported to the peer FSM rather than them being dropped silently
+        try {
+          closeChannel();
+        }
+        catch (IOException ce) {
+          logger.debug("Error while closing channel", ce);
+        }
+        throw new IOException("Error while sending message: " + e);
+      }
+      finally {
+        lock.unlock();
       }
-    }
-    catch (Exception e) {
-      logger.error("Unable to send message", e);
-      throw new IOException("Error while sending message: " + e);
-    }
-    finally {
-      lock.unlock();
-    }
-    if (rc == -1) {
-      throw new IOException("Connection closed");
     }
     if (logger.isDebugEnabled()) {
-      logger.debug("Sent a byte buffer of size [{}] over the TCP nio socket [{}]", bytes.array().length, socketDescription);
+      logger.debug("Sent a byte buffer of size [{}] over the TCP nio socket [{}]", length, socketDescription);
     }
   }
 
+  private void writePending() throws IOException {
+    ByteBuffer[] batch = writeBatch;
+    int count;
+    do {
+      count = 0;
+      ByteBuffer next;
+      while (count < batch.length && (next = pending.poll()) != null) {
+        batch[count++] = next;
+      }
+      try {
+        int offset = 0;
+        while (offset < count) {
+          socketChannel.write(batch, offset, count - offset);
+          while (offset < count && !batch[offset].hasRemaining()) {
+            offset++;
+          }
+        }
+      }
+      finally {
+        Arrays.fill(batch, 0, count, null);
+      }
+    } while (count == batch.length);
+  }
+
   @Override
   public String toString() {
     StringBuffer buffer = new StringBuffer();
@@ -339,97 +523,50 @@ public class TCPTransportClient implements Runnable {
     return socketChannel != null && socketChannel.isOpen() && socketChannel.isConnected();
   }
 
-  /**
-   * Adds data to storage
-   *
-   * @param data data to add
-   */
-  private void append(byte[] data) {
-    if (storage.position() + data.length >= storage.capacity()) {
-      ByteBuffer tmp = ByteBuffer.allocate(storage.limit() + data.length * 2);
-      byte[] tmpData = new byte[storage.position()];
-      storage.flip();
-      storage.get(tmpData);
-      tmp.put(tmpData);
-      storage = tmp;
-      logger.warn("Increase storage size. Current size is {}", storage.array().length);
-    }
-
-    try {
-      storage.put(data);
-    }
-    catch (BufferOverflowException boe) {
-      logger.error("Buffer overflow occured", boe);
+  private boolean seekMessage() throws IOException {
+    // make sure we have at least the version and message length
+    int available = storage.position() - frameStart;
+    if (available < 4) {
+      return false;
     }
-    boolean messageReceived;
-    do {
-      messageReceived = seekMessage();
-    } while (messageReceived);
-  }
 
-  private boolean seekMessage() {
-    // make sure there's actual data written on the buffer
-    if (storage.position() == 0) {
+    // get first four bytes for version and message length
+    // 0                   1                   2                   3
+    // 0 1 2 3 4 5 6 7 8 9 0 1 2 3 4 5 6 7 8 9 0 1 2 3 4 5 6 7 8 9 0 1
+    // +-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+
+    // |    Version    |                 Message Length                |
+    // +-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+
+    int tmp = storage.getInt(frameStart);
+
+    // check that version is 1, as per RFC 3588 - Section 3:
+    // This Version field MUST be set to 1 to indicate Diameter Version 1
+    byte vers = (byte) (tmp >> 24);
+    // extract the message length, so we know how much to read
+    int messageLength = (tmp & 0xFFFFFF);
+    if (vers != 1 || messageLength < 20) {
+      // discard what we have, as the stream can not be resynchronized
+      frameStart = storage.position();
       return false;
     }
+    if (messageLength > maxMessageSize) {
+      throw new IOException("Message length " + messageLength + " exceeds maximum of " + maxMessageSize + " bytes");
+    }
 
-    storage.flip();
-    try {
-      // get first four bytes for version and message length
-      // 0                   1                   2                   3
-      // 0 1 2 3 4 5 6 7 8 9 0 1 2 3 4 5 6 7 8 9 0 1 2 3 4 5 6 7 8 9 0 1
-      // +-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+
-      // |    Version    |                 Message Length                |
-      // +-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+
-      int tmp = storage.getInt();
-      // reset position so we can now read whole message
-      storage.position(0);
-
-      // check that version is 1, as per RFC 3588 - Section 3:
-      // This Version field MUST be set to 1 to indicate Diameter Version 1
-      byte vers = (byte) (tmp >> 24);
-      if (vers != 1) {
-        // ZhixiaoLuo: fix #28, if unlucky storage.limit < data.length(1024), then always failed to do storage.put(data)
-        // ZhixiaoLuo: and get BufferOverflowException in append(data)
-        storage.clear();
-        return false;
-      }
-      // extract the message length, so we know how much to read
-      int messageLength = (tmp & 0xFFFFFF);
-
-      // verify that we do have the whole message in the storage
-      if (storage.limit() < messageLength) {
-        // we don't have it all.. let's restore buffer to receive more
-        storage.position(storage.limit());
-        storage.limit(storage.capacity());
-        logger.debug("Received partial message, waiting for remaining (expected: {} bytes, got {} bytes).", messageLength, storage.position());
-        return false;
-      }
-
-      // read the complete message
-      byte[] data = new byte[messageLength];
-      storage.get(data);
-      storage.compact();
-
-      try {
-        // make a message out of data and process it
-        logger.debug("Passing message on to parent");
-        getParent().onMessageReceived(ByteBuffer.wrap(data));
-        logger.debug("Finished passing message on to parent");
+    // verify that we do have the whole message in the storage
+    if (available < messageLength) {
+      if (storage.capacity() - frameStart < messageLength) {
+        // it will not fit, move it now rather than once the storage is full
+        nextStorage(messageLength);
       }
-      catch (AvpDataException e) {
-        logger.debug("Garbage was received. Discarding.");
-        storage.clear();
-        getParent().onAvpDataException(e);
-      }
-    }
-    catch (BufferUnderflowException bue) {
-      // we don't have enough data to read message length.. wait for more
-      storage.position(storage.limit());
-      storage.limit(storage.capacity());
-      logger.debug("Buffer underflow occured, waiting for more data.", bue);
+      logger.debug("Received partial message, waiting for remaining (expected: {} bytes, got {} bytes).", messageLength, available);
       return false;
     }
+
+    // pass on a copy of the complete message, its AVP views must outlive the compaction of the storage
+    byte[] data = new byte[messageLength];
+    System.arraycopy(storage.array(), frameStart, data, 0, messageLength);
+    frameStart += messageLength;
+    enqueue(ByteBuffer.wrap(data));
     return true;
   }
-}
\ No newline at end of file
+}
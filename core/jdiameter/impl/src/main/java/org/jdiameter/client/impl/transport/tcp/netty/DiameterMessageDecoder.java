@@ -21,12 +21,15 @@ package org.jdiameter.client.impl.transport.tcp.netty;
 
 import java.util.List;
 
+import static org.jdiameter.client.impl.helpers.Parameters.MaxMessageSize;
+
 import org.jdiameter.api.AvpDataException;
 import org.jdiameter.client.api.parser.IMessageParser;
 
 import io.netty.buffer.ByteBuf;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.handler.codec.ByteToMessageDecoder;
+import io.netty.handler.codec.TooLongFrameException;
 
 /**
  *
@@ -35,10 +38,16 @@ import io.netty.handler.codec.ByteToMessageDecoder;
 public class DiameterMessageDecoder extends ByteToMessageDecoder {
   protected final IMessageParser parser;
   protected final TCPClientConnection parentConnection;
+  protected final int maxMessageSize;
 
   public DiameterMessageDecoder(TCPClientConnection parentConnection, IMessageParser parser) {
+    this(parentConnection, parser, (Integer) MaxMessageSize.defValue());
+  }
+
+  public DiameterMessageDecoder(TCPClientConnection parentConnection, IMessageParser parser, int maxMessageSize) {
     this.parser = parser;
     this.parentConnection = parentConnection;
+    this.maxMessageSize = maxMessageSize;
   }
 
   @Override
@@ -51,6 +60,12 @@ public class DiameterMessageDecoder extends ByteToMessageDecoder {
       }
 
       int messageLength = (first & 0xFFFFFF);
+      if (messageLength > maxMessageSize) {
+        // do not buffer it, the stream can not be trusted any more
+        in.skipBytes(in.readableBytes());
+        ctx.close();
+        throw new TooLongFrameException("Message length " + messageLength + " exceeds maximum of " + maxMessageSize + " bytes");
+      }
       if (in.readableBytes() < messageLength) {
         return;
       }
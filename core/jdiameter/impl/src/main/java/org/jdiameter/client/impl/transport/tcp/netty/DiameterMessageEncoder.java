@@ -19,11 +19,12 @@
 
 package org.jdiameter.client.impl.transport.tcp.netty;
 
+import java.nio.ByteBuffer;
+
 import org.jdiameter.client.api.IMessage;
 import org.jdiameter.client.api.parser.IMessageParser;
 
 import io.netty.buffer.ByteBuf;
-import io.netty.buffer.Unpooled;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.handler.codec.MessageToByteEncoder;
 
@@ -40,7 +41,16 @@ public class DiameterMessageEncoder extends MessageToByteEncoder<IMessage> {
 
   @Override
   protected void encode(ChannelHandlerContext ctx, IMessage msg, ByteBuf out) throws Exception {
-    out.writeBytes(Unpooled.wrappedBuffer(parser.encodeMessage(msg)));
+    int length = parser.getMessageLength(msg);
+    out.ensureWritable(length);
+    if (out.nioBufferCount() == 1) {
+      // encode straight into the outbound buffer
+      ByteBuffer buffer = out.nioBuffer(out.writerIndex(), length);
+      parser.encodeMessage(msg, buffer);
+      out.writerIndex(out.writerIndex() + length);
+    } else {
+      out.writeBytes(parser.encodeMessage(msg));
+    }
   }
 
 }
@@ -0,0 +1,96 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2016, TeleStax Inc. and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+package org.jdiameter.client.impl.transport.tcp.netty;
+
+import java.util.concurrent.TimeUnit;
+
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelOutboundHandlerAdapter;
+import io.netty.channel.ChannelPromise;
+
+/**
+ * Coalesces flushes so that messages written in a burst leave in one socket write. A flush
+ * is passed on once {@code maxBatchSize} flushes are pending, otherwise it is deferred to the
+ * end of the current event loop iteration or, with a positive {@code maxDelay}, at most that
+ * many microseconds. A failed write closes the channel, as the messages flushed with it are
+ * lost too. All state is confined to the channel's event loop.
+ */
+public class FlushCoalescingHandler extends ChannelOutboundHandlerAdapter {
+  private final int maxBatchSize;
+  private final long maxDelay;
+
+  private ChannelHandlerContext ctx;
+  private int pendingFlushes;
+  private boolean flushScheduled;
+
+  private final Runnable flushTask = new Runnable() {
+    @Override
+    public void run() {
+      flushScheduled = false;
+      if (pendingFlushes > 0) {
+        flushNow(ctx);
+      }
+    }
+  };
+
+  public FlushCoalescingHandler(int maxBatchSize, long maxDelay) {
+    this.maxBatchSize = Math.max(1, maxBatchSize);
+    this.maxDelay = maxDelay;
+  }
+
+  @Override
+  public void handlerAdded(ChannelHandlerContext ctx) throws Exception {
+    this.ctx = ctx;
+  }
+
+  @Override
+  public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) throws Exception {
+    ctx.write(msg, promise.addListener(ChannelFutureListener.CLOSE_ON_FAILURE));
+  }
+
+  @Override
+  public void flush(ChannelHandlerContext ctx) throws Exception {
+    if (++pendingFlushes >= maxBatchSize) {
+      flushNow(ctx);
+    } else if (!flushScheduled) {
+      flushScheduled = true;
+      if (maxDelay > 0) {
+        ctx.executor().schedule(flushTask, maxDelay, TimeUnit.MICROSECONDS);
+      } else {
+        // runs after the writes already queued on the event loop
+        ctx.executor().execute(flushTask);
+      }
+    }
+  }
+
+  @Override
+  public void close(ChannelHandlerContext ctx, ChannelPromise promise) throws Exception {
+    if (pendingFlushes > 0) {
+      flushNow(ctx);
+    }
+    ctx.close(promise);
+  }
+
+  private void flushNow(ChannelHandlerContext ctx) {
+    pendingFlushes = 0;
+    ctx.flush();
+  }
+}
@@ -38,6 +38,7 @@ import org.jdiameter.client.api.io.IConnectionListener;
 import org.jdiameter.client.api.io.TransportError;
 import org.jdiameter.client.api.io.TransportException;
 import org.jdiameter.client.api.parser.IMessageParser;
+import org.jdiameter.client.impl.transport.NettyTransportRuntime;
 import org.jdiameter.common.api.concurrent.IConcurrentFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -67,7 +68,7 @@ public class TCPClientConnection implements IConnection {
   public TCPClientConnection(Configuration config, IConcurrentFactory concurrentFactory, InetAddress remoteAddress,
       int remotePort, InetAddress localAddress, int localPort, IMessageParser parser, String ref) {
     this.parser = parser;
-    this.client = new TCPTransportClient(this, parser, new InetSocketAddress(remoteAddress, remotePort),
+    this.client = new TCPTransportClient(this, parser, config, new InetSocketAddress(remoteAddress, remotePort),
         new InetSocketAddress(localAddress, localPort));
 
   }
@@ -80,8 +81,12 @@ public class TCPClientConnection implements IConnection {
   }
 
   public TCPClientConnection(Channel channel, IMessageParser parser) {
+    this(channel, parser, null);
+  }
+
+  public TCPClientConnection(Channel channel, IMessageParser parser, NettyTransportRuntime runtime) {
     this.parser = parser;
-    this.client = new TCPTransportClient(this, parser, channel);
+    this.client = new TCPTransportClient(this, parser, channel, runtime);
   }
 
   public long getCreatedTime() {
@@ -22,21 +22,20 @@ package org.jdiameter.client.impl.transport.tcp.netty;
 import java.io.IOException;
 import java.net.InetSocketAddress;
 
+import org.jdiameter.api.Configuration;
 import org.jdiameter.client.api.IMessage;
 import org.jdiameter.client.api.parser.IMessageParser;
+import org.jdiameter.client.impl.transport.NettyTransportRuntime;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import io.netty.bootstrap.Bootstrap;
 import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelInitializer;
 import io.netty.channel.ChannelOption;
 import io.netty.channel.ChannelPipeline;
-import io.netty.channel.EventLoopGroup;
-import io.netty.channel.nio.NioEventLoopGroup;
 import io.netty.channel.socket.SocketChannel;
-import io.netty.channel.socket.nio.NioSocketChannel;
-import io.netty.util.concurrent.DefaultEventExecutorGroup;
 import io.netty.util.concurrent.EventExecutorGroup;
 
 /**
@@ -44,8 +43,9 @@ import io.netty.util.concurrent.EventExecutorGroup;
  * @author <a href="mailto:jqayyum@gmail.com"> Jehanzeb Qayyum </a>
  */
 public class TCPTransportClient {
-  protected EventLoopGroup workerGroup;
-  protected EventExecutorGroup eventExecutorGroup = new DefaultEventExecutorGroup(1);
+  protected Configuration config;
+  protected NettyTransportRuntime runtime;
+  protected EventExecutorGroup eventExecutorGroup;
   protected Channel channel;
   protected TCPClientConnection parentConnection;
   protected InetSocketAddress destAddress;
@@ -70,7 +70,13 @@ public class TCPTransportClient {
 
   public TCPTransportClient(TCPClientConnection parentConnection, IMessageParser parser, InetSocketAddress destAddress,
       InetSocketAddress sourceAddress) {
+    this(parentConnection, parser, null, destAddress, sourceAddress);
+  }
+
+  public TCPTransportClient(TCPClientConnection parentConnection, IMessageParser parser, Configuration config,
+      InetSocketAddress destAddress, InetSocketAddress sourceAddress) {
     this(parentConnection, parser);
+    this.config = config;
 
     logger.debug("Client only connection");
 
@@ -89,15 +95,33 @@ public class TCPTransportClient {
   }
 
   public TCPTransportClient(TCPClientConnection parentConnection, IMessageParser parser, Channel channel) {
+    this(parentConnection, parser, channel, null);
+  }
+
+  /**
+   * Creates transport for a channel accepted by a network guard.
+   *
+   * @param runtime runtime of the guard, null to handle messages on the channel's event loop without flush coalescing
+   */
+  public TCPTransportClient(TCPClientConnection parentConnection, IMessageParser parser, Channel channel,
+      NettyTransportRuntime runtime) {
     this(parentConnection, parser);
     logger.debug("Server only connection");
+    if (runtime != null) {
+      this.eventExecutorGroup = runtime.getHandlerGroup();
+    }
 
     if (channel == null) {
       throw new IllegalArgumentException("Channel cannot be null");
     }
     this.channel = channel;
     ChannelPipeline pipeline = this.channel.pipeline();
-    pipeline.addLast("decoder", new DiameterMessageDecoder(parentConnection, parser));
+    if (runtime != null) {
+      pipeline.addLast("decoder", new DiameterMessageDecoder(parentConnection, parser, runtime.getMaxMessageSize()));
+      pipeline.addLast("flushCoalescer", new FlushCoalescingHandler(runtime.getWriteBatchSize(), runtime.getWriteBatchDelay()));
+    } else {
+      pipeline.addLast("decoder", new DiameterMessageDecoder(parentConnection, parser));
+    }
     pipeline.addLast("encoder", new DiameterMessageEncoder(parser));
     pipeline.addLast(eventExecutorGroup, "msgHandler", new DiameterMessageHandler(parentConnection));
 
@@ -111,14 +135,18 @@ public class TCPTransportClient {
       return;
     }
 
-    this.workerGroup = new NioEventLoopGroup();
-    Bootstrap bootstrap = new Bootstrap().group(workerGroup).channel(NioSocketChannel.class)
+    if (runtime == null) {
+      runtime = NettyTransportRuntime.acquire(config);
+      eventExecutorGroup = runtime.getHandlerGroup();
+    }
+    Bootstrap bootstrap = new Bootstrap().group(runtime.getIoGroup()).channel(runtime.getSocketChannelClass())
         .option(ChannelOption.SO_KEEPALIVE, true).option(ChannelOption.CONNECT_TIMEOUT_MILLIS, CONNECT_TIMEOUT)
         .handler(new ChannelInitializer<SocketChannel>() {
           @Override
           public void initChannel(SocketChannel ch) throws Exception {
             ChannelPipeline pipeline = ch.pipeline();
-            pipeline.addLast("decoder", new DiameterMessageDecoder(parentConnection, parser));
+            pipeline.addLast("decoder", new DiameterMessageDecoder(parentConnection, parser, runtime.getMaxMessageSize()));
+            pipeline.addLast("flushCoalescer", new FlushCoalescingHandler(runtime.getWriteBatchSize(), runtime.getWriteBatchDelay()));
             pipeline.addLast("encoder", new DiameterMessageEncoder(parser));
             pipeline.addLast(eventExecutorGroup, "msgHandler", new DiameterMessageHandler(parentConnection));
           }
@@ -134,42 +162,29 @@ public class TCPTransportClient {
     logger.debug("Stopping TCP Transport, [{}]", socketDescription);
     if (!isConnected()) {
       logger.debug("Already stoppped TCP Transport, [{}]", socketDescription);
-      return;
+    } else {
+      closeChannel();
+      logger.debug("Transport is stopped [{}]", socketDescription);
     }
-    closeChannel();
-    closeWorkerGroup();
-    closeEventExecutorGroup();
-    logger.debug("Transport is stopped [{}]", socketDescription);
+    releaseRuntime();
   }
 
-  private void closeEventExecutorGroup() {
-    if (eventExecutorGroup != null) {
-      try {
-        eventExecutorGroup.shutdownGracefully().sync();
-      } catch (InterruptedException e) {
-        logger.error("Error stopping socket " + socketDescription, e);
-      }
+  private void releaseRuntime() {
+    // event loops are shared, only client connections hold a reference
+    if (runtime != null) {
+      runtime.release();
+      runtime = null;
       eventExecutorGroup = null;
     }
   }
 
-  private void closeWorkerGroup() {
-    if (workerGroup != null) {
-      try {
-        workerGroup.shutdownGracefully().sync();
-      } catch (InterruptedException e) {
-        logger.error("Error stopping socket " + socketDescription, e);
-      }
-      workerGroup = null;
-    }
-  }
-
   private void closeChannel() {
     if (channel != null) {
-      try {
-        channel.closeFuture().sync();
-      } catch (InterruptedException e) {
-        logger.error("Error stopping socket " + socketDescription, e);
+      // event loops are shared, so the channel is not closed by shutting them down
+      ChannelFuture future = channel.close();
+      // the transport may be stopped from its own event loop, which must not wait on itself
+      if (!channel.eventLoop().inEventLoop()) {
+        future.awaitUninterruptibly();
       }
       channel = null;
     }
@@ -186,6 +201,7 @@ public class TCPTransportClient {
     if (!isConnected()) {
       throw new IllegalStateException("TCP transport is stopped on socket " + socketDescription);
     }
+    // the flush is coalesced with other pending ones by the flushCoalescer handler
     channel.writeAndFlush(message);
   }
 
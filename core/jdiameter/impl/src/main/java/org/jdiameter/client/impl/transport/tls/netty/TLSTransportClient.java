@@ -25,6 +25,7 @@ import java.net.InetSocketAddress;
 import org.jdiameter.api.Configuration;
 import org.jdiameter.client.api.IMessage;
 import org.jdiameter.client.api.parser.IMessageParser;
+import org.jdiameter.client.impl.transport.NettyTransportRuntime;
 import org.jdiameter.common.api.concurrent.IConcurrentFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -33,10 +34,7 @@ import io.netty.bootstrap.Bootstrap;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelInitializer;
 import io.netty.channel.ChannelPipeline;
-import io.netty.channel.EventLoopGroup;
-import io.netty.channel.nio.NioEventLoopGroup;
 import io.netty.channel.socket.SocketChannel;
-import io.netty.channel.socket.nio.NioSocketChannel;
 
 /**
  *
@@ -49,13 +47,14 @@ public class TLSTransportClient {
   private IConcurrentFactory concurrentFactory;
   private IMessageParser parser;
   private Configuration config;
+  private Configuration stackConfig;
 
   private InetSocketAddress destAddress;
   private InetSocketAddress origAddress;
   private String socketDescription = null;
 
   private Channel channel;
-  private EventLoopGroup workerGroup;
+  private NettyTransportRuntime runtime;
 
   private volatile TlsHandshakingState tlsHandshakingState = TlsHandshakingState.INIT;
 
@@ -73,7 +72,13 @@ public class TLSTransportClient {
 
   public TLSTransportClient(TLSClientConnection parenConnection, IConcurrentFactory concurrentFactory, IMessageParser parser,
       Configuration config, InetSocketAddress destAddress, InetSocketAddress origAddress) {
+    this(parenConnection, concurrentFactory, parser, config, null, destAddress, origAddress);
+  }
+
+  public TLSTransportClient(TLSClientConnection parenConnection, IConcurrentFactory concurrentFactory, IMessageParser parser,
+      Configuration config, Configuration stackConfig, InetSocketAddress destAddress, InetSocketAddress origAddress) {
     this(parenConnection, concurrentFactory, parser, config);
+    this.stackConfig = stackConfig;
 
     if (destAddress == null) {
       throw new IllegalArgumentException("Destination address is required");
@@ -114,9 +119,11 @@ public class TLSTransportClient {
       return;
     }
 
-    workerGroup = new NioEventLoopGroup();
+    if (runtime == null) {
+      runtime = NettyTransportRuntime.acquire(stackConfig);
+    }
     Bootstrap bootstrap = new Bootstrap();
-    bootstrap.group(workerGroup).channel(NioSocketChannel.class).handler(new ChannelInitializer<SocketChannel>() {
+    bootstrap.group(runtime.getIoGroup()).channel(runtime.getSocketChannelClass()).handler(new ChannelInitializer<SocketChannel>() {
       @Override
       protected void initChannel(SocketChannel channel) throws Exception {
         ChannelPipeline pipeline = channel.pipeline();
@@ -182,7 +189,7 @@ public class TLSTransportClient {
     //logger.debug("Stopping TLS Transport {}", socketDescription);
 
     closeChannel();
-    closeWorkerGroup();
+    releaseRuntime();
 
     //logger.debug("TLS Transport is stopped {}", socketDescription);
 
@@ -206,14 +213,10 @@ public class TLSTransportClient {
     }
   }
 
-  private void closeWorkerGroup() {
-    if (workerGroup != null && !workerGroup.isShuttingDown()) {
-      try {
-        workerGroup.shutdownGracefully().sync();
-      } catch (InterruptedException e) {
-        logger.error("Error stopping socket " + socketDescription, e);
-      }
-      workerGroup = null;
+  private void releaseRuntime() {
+    if (runtime != null) {
+      runtime.release();
+      runtime = null;
     }
   }
 
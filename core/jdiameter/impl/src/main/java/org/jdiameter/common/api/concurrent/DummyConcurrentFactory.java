@@ -92,6 +92,11 @@ public class DummyConcurrentFactory implements IConcurrentFactory {
   public void shutdownNow(ScheduledExecutorService service) {
   }
 
+  @Override
+  public ISessionOrderedExecutor getListenerExecutor() {
+    return null;
+  }
+
   @Override
   public IStatistic getStatistic() {
     return null;
@@ -63,7 +63,10 @@ public interface IConcurrentFactory {
     PeerOverloadTimer,
     ConnectionTimer,
     StatisticTimer,
-    ApplicationSession
+    ApplicationSession,
+    PeerFSM,
+    PeerIO,
+    TCPDelivery
   }
 
   // Thread
@@ -82,6 +85,14 @@ public interface IConcurrentFactory {
 
   void shutdownNow(ScheduledExecutorService service);
 
+  /**
+   * Returns executor which runs network request listeners on virtual threads, when enabled
+   * by configuration and supported by JVM. Requests of one session are passed to listeners in order.
+   *
+   * @return listener executor or null if listeners are run by peer threads
+   */
+  ISessionOrderedExecutor getListenerExecutor();
+
   // Common
   IStatistic getStatistic();
 
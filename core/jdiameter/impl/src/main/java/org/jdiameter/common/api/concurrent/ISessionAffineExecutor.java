@@ -0,0 +1,38 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2016, TeleStax Inc. and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+package org.jdiameter.common.api.concurrent;
+
+import java.util.concurrent.ScheduledExecutorService;
+
+/**
+ * Executor which runs tasks of one session in order, on one of its lanes.
+ * Tasks of different sessions run in parallel without sharing a queue.
+ */
+public interface ISessionAffineExecutor {
+
+  /**
+   * Returns executor bound to lane of given session. Tasks passed to its <code>execute</code>
+   * method run in submission order, one at a time; scheduled tasks are run by owning executor.
+   *
+   * @param sessionId session identifier
+   * @return executor for session
+   */
+  ScheduledExecutorService getSessionExecutor(String sessionId);
+}
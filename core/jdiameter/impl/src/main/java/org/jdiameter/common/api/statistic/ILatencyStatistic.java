@@ -0,0 +1,104 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2016, TeleStax Inc. and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+package org.jdiameter.common.api.statistic;
+
+/**
+ * Latency distributions of a peer, kept per application id and command code.
+ * A bounded number of pairs is kept, latencies of further pairs are recorded together under application id
+ * and command code -1.
+ *
+ * @see IStatisticManager#newLatencyStatistic(String)
+ */
+public interface ILatencyStatistic {
+
+  enum Latency {
+
+    AnswerTime("Time from sending request to receiving its answer"),
+    QueueWaitTime("Time message waited in peer FSM queue"),
+    ListenerTime("Time spent in application listener");
+
+    private String description;
+
+    Latency(String description) {
+      this.description = description;
+    }
+
+    public String getDescription() {
+      return description;
+    }
+  }
+
+  /**
+   * Return name of statistic
+   *
+   * @return name of statistic
+   */
+  String getName();
+
+  /**
+   * Return true if latencies are recorded
+   *
+   * @return true if latencies are recorded
+   */
+  boolean isEnabled();
+
+  /**
+   * Enable or disable recording
+   *
+   * @param e true to record latencies
+   */
+  void enable(boolean e);
+
+  /**
+   * Record latency of a message. Does not allocate once the application id and command code pair was seen.
+   *
+   * @param latency type of latency
+   * @param applicationId application id of message
+   * @param commandCode command code of message
+   * @param nanos latency in nanoseconds
+   */
+  void record(Latency latency, long applicationId, int commandCode, long nanos);
+
+  /**
+   * Return count of recorded latencies
+   *
+   * @param latency type of latency
+   * @param applicationId application id of message
+   * @param commandCode command code of message
+   * @return count of recorded latencies
+   */
+  long getCount(Latency latency, long applicationId, int commandCode);
+
+  /**
+   * Return latency at given percentile, in microseconds
+   *
+   * @param latency type of latency
+   * @param applicationId application id of message
+   * @param commandCode command code of message
+   * @param percentile percentile, e.g. 99.9
+   * @return latency in microseconds or 0 if nothing was recorded
+   */
+  long getValueAtPercentile(Latency latency, long applicationId, int commandCode, double percentile);
+
+  /**
+   * Clear all recorded latencies
+   */
+  void reset();
+}
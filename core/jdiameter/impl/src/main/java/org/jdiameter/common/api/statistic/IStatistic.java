@@ -58,7 +58,10 @@ public interface IStatistic extends Statistic {
     PeerFSM("Peer FSM statistic"),
     Network("Network statistic"),
     Concurrent(" Concurrent factory statistics"),
-    ScheduledExecService("ScheduledExecutorService statistic");
+    ScheduledExecService("ScheduledExecutorService statistic"),
+    Timer("Hashed wheel timer statistic"),
+    Latency("Latency statistic"),
+    Router("Router statistic");
 
     private String description;
 
@@ -67,6 +67,8 @@ public interface IStatisticManager {
 
   IStatistic newStatistic(String name, IStatistic.Groups group, IStatisticRecord... rec);
 
+  ILatencyStatistic newLatencyStatistic(String name);
+
   //IStatistic newStatistic(String name, String description, IStatisticRecord... rec);
 
   //void removePerSecondCounterRecord(String name, IStatisticRecord.Counters recordDescription);
@@ -79,6 +81,8 @@ public interface IStatisticManager {
 
   void removeStatistic(IStatistic stat);
 
+  void removeLatencyStatistic(ILatencyStatistic stat);
+
   // --- non factory methods, metadata access
   boolean isOn();
 
@@ -94,4 +98,6 @@ public interface IStatisticManager {
 
   List<IStatistic> getStatistic();
 
+  List<ILatencyStatistic> getLatencyStatistic();
+
 }
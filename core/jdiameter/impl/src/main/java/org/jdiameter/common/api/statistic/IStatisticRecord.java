@@ -86,7 +86,21 @@ public interface IStatisticRecord extends StatisticRecord {
     WaitTimeTask("Average waiting time for execution task"),
     BrokenTasks("Count of broken thread"),
     RejectedTasks("Count of rejected tasks"),
-    QueueSize("Peer FSM queue size");
+    QueueSize("Peer FSM queue size"),
+
+    ExpiredTimers("Count of expired timers"),
+    TimerLateness("Average lateness in milliseconds of expired timers"),
+    MaxTimerLateness("Max lateness in milliseconds of expired timers"),
+
+    AnswerTimeEwma("Moving average of answer time in milliseconds"),
+    ErrorRateEwma("Moving average of error and timeout rate"),
+
+    RequestTableHits("Count of answers routed by request table"),
+    RequestTableMisses("Count of answers not found in request table"),
+    RequestTableEvictions("Count of request table entries evicted before timeout"),
+    RedirectCacheHits("Count of requests routed by redirect cache"),
+    RedirectCacheMisses("Count of requests not matched while redirect cache held entries"),
+    RedirectCacheSize("Count of redirect cache entries");
 
     private String description;
 
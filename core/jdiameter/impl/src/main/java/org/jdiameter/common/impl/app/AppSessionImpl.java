@@ -42,18 +42,25 @@
 
 package org.jdiameter.common.impl.app;
 
-import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ScheduledExecutorService;
 
 import org.jdiameter.api.ApplicationId;
+import org.jdiameter.api.IllegalDiameterStateException;
+import org.jdiameter.api.Message;
 import org.jdiameter.api.Session;
+import org.jdiameter.api.app.AppAnswerEvent;
+import org.jdiameter.api.app.AppRequestEvent;
 import org.jdiameter.api.app.AppSession;
 import org.jdiameter.client.api.IAssembler;
 import org.jdiameter.client.api.ISessionFactory;
 import org.jdiameter.common.api.app.IAppSessionData;
 import org.jdiameter.common.api.concurrent.IConcurrentFactory;
+import org.jdiameter.common.api.concurrent.ISessionAffineExecutor;
 import org.jdiameter.common.api.timer.ITimerFacility;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -80,6 +87,17 @@ public abstract class AppSessionImpl implements AppSession {
 
   protected ITimerFacility timerFacility;
 
+  // stages returned by send*Async methods, by end-to-end identifier of request, created on first use
+  private volatile ConcurrentHashMap<Long, CompletableFuture<AppAnswerEvent>> pendingAnswers;
+
+  /**
+   * Sends request of an application, see {@link #sendAsync(AppRequestEvent, RequestSender)}.
+   */
+  @FunctionalInterface
+  protected interface RequestSender {
+    void send() throws Exception;
+  }
+
   public AppSessionImpl(ISessionFactory sf, IAppSessionData appSessionData) {
     if (sf == null) {
       throw new IllegalArgumentException("SessionFactory must not be null");
@@ -93,12 +111,14 @@ public abstract class AppSessionImpl implements AppSession {
       IAssembler assembler = ( this.sf).getContainer().getAssemblerFacility();
       this.scheduler = assembler.getComponentInstance(IConcurrentFactory.class).
           getScheduledExecutorService(IConcurrentFactory.ScheduledExecServices.ApplicationSession.name());
+      if (this.scheduler instanceof ISessionAffineExecutor) {
+        // keep events of this session on one lane, in order
+        this.scheduler = ((ISessionAffineExecutor) this.scheduler).getSessionExecutor(this.appSessionData.getSessionId());
+      }
       this.timerFacility = assembler.getComponentInstance(ITimerFacility.class);
       this.session = this.sf.getNewSession(this.appSessionData.getSessionId());
-      //annoying ;[
-      ArrayList<Session> list = new ArrayList<Session>();
-      list.add(this.session);
-      this.sessions = Collections.unmodifiableList(list);
+      // immutable single element list, no backing array and wrapper per session
+      this.sessions = Collections.singletonList(this.session);
     }
     catch (Exception e) {
       throw new IllegalArgumentException(e);
@@ -136,6 +156,101 @@ public abstract class AppSessionImpl implements AppSession {
     this.session.setRequestListener(null);
     this.session.release();
     this.appSessionData.remove();
+    ConcurrentHashMap<Long, CompletableFuture<AppAnswerEvent>> pending = this.pendingAnswers;
+    if (pending != null) {
+      for (CompletableFuture<AppAnswerEvent> future : pending.values()) {
+        future.completeExceptionally(new IllegalDiameterStateException("Session released"));
+      }
+      pending.clear();
+    }
+  }
+
+  /**
+   * Tells if this instance may be dropped from heap and the session created again from its session data when it is
+   * used next, as {@link org.jdiameter.common.impl.data.OffHeapSessionDatasource} does with idle sessions. It may not
+   * while it holds state which its session data does not keep.
+   *
+   * @return false while stages of requests sent asynchronously wait for answer
+   */
+  public boolean isEvictable() {
+    ConcurrentHashMap<Long, CompletableFuture<AppAnswerEvent>> pending = this.pendingAnswers;
+    return pending == null || pending.isEmpty();
+  }
+
+  /**
+   * Runs given eviction of this instance if it is evictable. Sessions guarding their state with a lock run it
+   * holding the lock, so no event is processed by this instance meanwhile.
+   *
+   * @param eviction drops this instance, e.g. from session datasource
+   * @return true if eviction was run
+   */
+  public boolean evict(Runnable eviction) {
+    if (!isEvictable()) {
+      return false;
+    }
+    eviction.run();
+    return true;
+  }
+
+  /**
+   * Registers stage completed by answer to given request and sends it. Session implementation
+   * takes the stage with {@link #takeAsyncRequest} before its state machine processes the answer or timeout,
+   * which may release the session, and completes it after. It fails it with {@link #failAsyncRequest} on
+   * failure to send.
+   *
+   * @param request request to send
+   * @param sender sends request through session state machine
+   * @return stage completed by answer
+   */
+  @SuppressWarnings("unchecked")
+  protected <A extends AppAnswerEvent> CompletionStage<A> sendAsync(AppRequestEvent request, RequestSender sender) {
+    CompletableFuture<AppAnswerEvent> future = new CompletableFuture<>();
+    Long key = null;
+    try {
+      key = request.getMessage().getEndToEndIdentifier();
+      getPendingAnswers().put(key, future);
+      sender.send();
+    }
+    catch (Exception e) {
+      if (key != null) {
+        pendingAnswers.remove(key, future);
+      }
+      future.completeExceptionally(e);
+    }
+    return (CompletionStage<A>) (CompletionStage<?>) future;
+  }
+
+  protected void failAsyncRequest(Message request, Throwable cause) {
+    CompletableFuture<AppAnswerEvent> future = takeAsyncRequest(request);
+    if (future != null) {
+      future.completeExceptionally(cause);
+    }
+  }
+
+  /**
+   * Removes stage of given request, so that session may complete it later, e.g. once the answer has
+   * been processed by a state machine which may release the session.
+   *
+   * @param request request sent with {@link #sendAsync(AppRequestEvent, RequestSender)}
+   * @return stage of request or null if it was not sent asynchronously or is already done
+   */
+  protected CompletableFuture<AppAnswerEvent> takeAsyncRequest(Message request) {
+    ConcurrentHashMap<Long, CompletableFuture<AppAnswerEvent>> pending = this.pendingAnswers;
+    return pending != null && request != null ? pending.remove(request.getEndToEndIdentifier()) : null;
+  }
+
+  private ConcurrentHashMap<Long, CompletableFuture<AppAnswerEvent>> getPendingAnswers() {
+    ConcurrentHashMap<Long, CompletableFuture<AppAnswerEvent>> pending = this.pendingAnswers;
+    if (pending == null) {
+      synchronized (this) {
+        pending = this.pendingAnswers;
+        if (pending == null) {
+          pending = new ConcurrentHashMap<>(4);
+          this.pendingAnswers = pending;
+        }
+      }
+    }
+    return pending;
   }
 
   /*
@@ -0,0 +1,49 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2016, TeleStax Inc. and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+package org.jdiameter.common.impl.app.cca;
+
+import org.jdiameter.api.app.AppSession;
+import org.jdiameter.api.cca.ClientCCASession;
+import org.jdiameter.client.impl.app.cca.ClientCCASessionDataOffHeapImpl;
+import org.jdiameter.common.api.app.IAppSessionDataFactory;
+import org.jdiameter.common.api.app.cca.ICCASessionData;
+import org.jdiameter.common.impl.data.OffHeapSessionStore;
+
+/**
+ * Keeps client session data in given store, server session data stays local.
+ */
+public class CCAOffHeapSessionDataFactory implements IAppSessionDataFactory<ICCASessionData> {
+
+  private final OffHeapSessionStore clientStore;
+  private final CCALocalSessionDataFactory localFactory = new CCALocalSessionDataFactory();
+
+  public CCAOffHeapSessionDataFactory(OffHeapSessionStore clientStore) {
+    this.clientStore = clientStore;
+  }
+
+  @Override
+  public ICCASessionData getAppSessionData(Class<? extends AppSession> clazz, String sessionId) {
+    if (clazz.equals(ClientCCASession.class)) {
+      return new ClientCCASessionDataOffHeapImpl(sessionId, clientStore);
+    }
+    return localFactory.getAppSessionData(clazz, sessionId);
+  }
+
+}
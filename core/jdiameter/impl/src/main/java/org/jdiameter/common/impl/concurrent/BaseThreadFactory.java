@@ -42,6 +42,7 @@
 
 package org.jdiameter.common.impl.concurrent;
 
+import java.lang.reflect.Method;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.atomic.AtomicInteger;
 
@@ -57,11 +58,46 @@ class BaseThreadFactory implements ThreadFactory {
   private ThreadGroup threadGroup;
   private String threadPoolName;
   private AtomicInteger count = new AtomicInteger(0);
+  private ThreadFactory virtualThreadFactory;
 
   BaseThreadFactory(String threadPoolName) {
     this.threadPoolName = threadPoolName;
 
     this.threadGroup = new ThreadGroup("jd " + threadPoolName + " group");
+    this.virtualThreadFactory = createVirtualThreadFactory(threadPoolName + "-virtual-");
+  }
+
+  /**
+   * Looks up Thread.ofVirtual() (JDK 21+) by reflection, so the stack still builds and runs on older JDKs.
+   *
+   * @return factory of virtual threads or null if not supported
+   */
+  static ThreadFactory createVirtualThreadFactory(String namePrefix) {
+    try {
+      Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+      Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+      Method name = builderClass.getMethod("name", String.class, long.class);
+      builder = name.invoke(builder, namePrefix, 0L);
+      return (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+    }
+    catch (Exception e) {
+      // older JDK or preview feature not enabled
+      return null;
+    }
+  }
+
+  public boolean isVirtualThreadSupported() {
+    return virtualThreadFactory != null;
+  }
+
+  /**
+   * Creates unstarted virtual thread. Virtual threads do not belong to this factory thread group.
+   */
+  public Thread newVirtualThread(Runnable runnable) {
+    if (virtualThreadFactory == null) {
+      throw new UnsupportedOperationException("Virtual threads are not supported by this JVM");
+    }
+    return virtualThreadFactory.newThread(runnable);
   }
 
   @Override
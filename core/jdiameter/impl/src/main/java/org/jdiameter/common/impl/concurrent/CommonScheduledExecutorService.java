@@ -111,7 +111,7 @@ class CommonScheduledExecutorService extends ScheduledThreadPoolExecutor {
 
   @Override
   public ScheduledFuture<?> schedule(Runnable runnable, long delay, TimeUnit unit) {
-    return super.schedule(this.entityFactory.newDefaultRunnable(runnable, statistic, execTimeSumm, execTimeCount, waitTimeSumm, waitTimeCount), delay, unit);
+    return super.schedule(newTask(runnable), delay, unit);
   }
 
   @Override
@@ -121,14 +121,20 @@ class CommonScheduledExecutorService extends ScheduledThreadPoolExecutor {
 
   @Override
   public ScheduledFuture<?> scheduleAtFixedRate(Runnable runnable, long initialDelay, long period, TimeUnit unit) {
-    return super.scheduleAtFixedRate(this.entityFactory.newDefaultRunnable(runnable, statistic, execTimeSumm, execTimeCount, waitTimeSumm, waitTimeCount),
-        initialDelay, period, unit);
+    return super.scheduleAtFixedRate(newTask(runnable), initialDelay, period, unit);
   }
 
   public IStatistic getStatistic() {
     return statistic;
   }
 
+  /**
+   * Wraps task so its execution is accounted in this executor statistic.
+   */
+  Runnable newTask(Runnable runnable) {
+    return this.entityFactory.newDefaultRunnable(runnable, statistic, execTimeSumm, execTimeCount, waitTimeSumm, waitTimeCount);
+  }
+
   @Override
   public void shutdown() {
     this.statisticFactory.removeStatistic(statistic);
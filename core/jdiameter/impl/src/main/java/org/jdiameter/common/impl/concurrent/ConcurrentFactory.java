@@ -48,6 +48,7 @@ import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.ScheduledExecutorService;
 
@@ -55,9 +56,12 @@ import org.jdiameter.api.Configuration;
 import org.jdiameter.client.impl.helpers.Parameters;
 import org.jdiameter.common.api.concurrent.IConcurrentEntityFactory;
 import org.jdiameter.common.api.concurrent.IConcurrentFactory;
+import org.jdiameter.common.api.concurrent.ISessionOrderedExecutor;
 import org.jdiameter.common.api.statistic.IStatistic;
 import org.jdiameter.common.api.statistic.IStatisticManager;
 import org.jdiameter.common.api.statistic.IStatisticRecord;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
  *
@@ -66,7 +70,10 @@ import org.jdiameter.common.api.statistic.IStatisticRecord;
  */
 public class ConcurrentFactory implements IConcurrentFactory {
 
+  private static final Logger logger = LoggerFactory.getLogger(ConcurrentFactory.class);
+
   private BaseThreadFactory threadFactory;
+  private ISessionOrderedExecutor listenerExecutor;
 
   private Map<String, CommonScheduledExecutorService> scheduledExecutorServices;
   private Configuration[] config;
@@ -83,6 +90,19 @@ public class ConcurrentFactory implements IConcurrentFactory {
           (String) Parameters.ConcurrentEntityDescription.defValue();
 
     threadFactory = (BaseThreadFactory) entityFactory.newThreadFactory(defThreadGroupName);
+    if (config.getBooleanValue(Parameters.UseVirtualThreads.ordinal(), (Boolean) Parameters.UseVirtualThreads.defValue())) {
+      if (threadFactory.isVirtualThreadSupported()) {
+        listenerExecutor = new SessionOrderedExecutor(new Executor() {
+          @Override
+          public void execute(Runnable command) {
+            threadFactory.newVirtualThread(command).start();
+          }
+        });
+      }
+      else {
+        logger.warn("Virtual threads are not supported by this JVM, request listeners will run on peer threads");
+      }
+    }
 
     scheduledExecutorServices = new ConcurrentHashMap<String, CommonScheduledExecutorService>();
     IStatisticRecord threadCount = statisticFactory.newCounterRecord(
@@ -161,7 +181,15 @@ public class ConcurrentFactory implements IConcurrentFactory {
       //ZhixiaoLuo: fix StatisticManagerImpl.IllegalArgumentException if 2 sessions try to get ApplicationSession service
       synchronized (ConcurrentFactory.class) {
         if (!scheduledExecutorServices.containsKey(name)) {
-          service = new CommonScheduledExecutorService(name, getConfigByName(name), this.entityFactory, statisticFactory);
+          Configuration serviceConfig = getConfigByName(name);
+          if (serviceConfig != null && serviceConfig.getBooleanValue(Parameters.ConcurrentEntitySessionAffinity.ordinal(),
+              (Boolean) Parameters.ConcurrentEntitySessionAffinity.defValue())) {
+            int lanes = serviceConfig.getIntValue(Parameters.ConcurrentEntityPoolSize.ordinal(), (Integer) Parameters.ConcurrentEntityPoolSize.defValue());
+            service = new SessionAffineExecutorService(name, serviceConfig, this.entityFactory, statisticFactory, lanes);
+          }
+          else {
+            service = new CommonScheduledExecutorService(name, serviceConfig, this.entityFactory, statisticFactory);
+          }
           scheduledExecutorServices.put(name, service);
         }
       }
@@ -193,6 +221,11 @@ public class ConcurrentFactory implements IConcurrentFactory {
     }
   }
 
+  @Override
+  public ISessionOrderedExecutor getListenerExecutor() {
+    return listenerExecutor;
+  }
+
   @Override
   public IStatistic getStatistic() {
     return statistic;
@@ -0,0 +1,151 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2016, TeleStax Inc. and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+package org.jdiameter.common.impl.concurrent;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Object recycler meant to replace synchronized object pools on hot paths.
+ * Idle objects are kept in a set of stripes, the stripe is picked by the
+ * calling thread, and each stripe is guarded by a try-lock only: a thread
+ * which can not get hold of any stripe simply allocates a new object on
+ * {@link #get()} or drops the object on {@link #recycle(Object)}, so no
+ * caller ever blocks.
+ *
+ * @param <T> type of recycled objects
+ */
+public abstract class Recycler<T> {
+
+  private final Stripe[] stripes;
+  private final int mask;
+
+  /**
+   * @param maxIdle maximum number of idle objects kept, spread over all stripes
+   */
+  public Recycler(int maxIdle) {
+    int count = 1;
+    while (count < Runtime.getRuntime().availableProcessors() * 2) {
+      count <<= 1;
+    }
+    this.stripes = new Stripe[count];
+    this.mask = count - 1;
+    // capacities add up to maxIdle exactly
+    for (int i = 0; i < count; i++) {
+      stripes[i] = new Stripe(maxIdle / count + (i < maxIdle % count ? 1 : 0));
+    }
+  }
+
+  /**
+   * Creates a new object when no idle one is available.
+   */
+  protected abstract T newObject();
+
+  /**
+   * Clears state of an object before it is kept for reuse. Does nothing by default.
+   */
+  protected void passivate(T object) {
+  }
+
+  /**
+   * @return an idle object, or a new one if none is available without contention
+   */
+  @SuppressWarnings("unchecked")
+  public T get() {
+    int index = stripeIndex();
+    for (int i = 0; i <= mask; i++) {
+      Stripe stripe = stripes[(index + i) & mask];
+      if (stripe.size > 0 && stripe.tryLock()) {
+        try {
+          if (stripe.size > 0) {
+            Object object = stripe.items[--stripe.size];
+            stripe.items[stripe.size] = null;
+            return (T) object;
+          }
+        }
+        finally {
+          stripe.unlock();
+        }
+      }
+    }
+    return newObject();
+  }
+
+  /**
+   * Passivates the object and keeps it for reuse, unless all stripes are full or contended.
+   */
+  public void recycle(T object) {
+    if (object == null) {
+      return;
+    }
+    passivate(object);
+    int index = stripeIndex();
+    for (int i = 0; i <= mask; i++) {
+      Stripe stripe = stripes[(index + i) & mask];
+      if (stripe.size < stripe.items.length && stripe.tryLock()) {
+        try {
+          if (stripe.size < stripe.items.length) {
+            stripe.items[stripe.size++] = object;
+            return;
+          }
+        }
+        finally {
+          stripe.unlock();
+        }
+      }
+    }
+  }
+
+  /**
+   * @return approximate number of idle objects
+   */
+  public int getIdleCount() {
+    int count = 0;
+    for (Stripe stripe : stripes) {
+      count += stripe.size;
+    }
+    return count;
+  }
+
+  private int stripeIndex() {
+    long id = Thread.currentThread().getId();
+    return (int) (id ^ (id >>> 16)) & mask;
+  }
+
+  private static final class Stripe extends AtomicBoolean {
+
+    private static final long serialVersionUID = 1L;
+
+    private final Object[] items;
+    // guarded by the lock flag, read racily only as a hint before locking
+    private volatile int size;
+
+    Stripe(int capacity) {
+      this.items = new Object[capacity];
+    }
+
+    boolean tryLock() {
+      return !get() && compareAndSet(false, true);
+    }
+
+    void unlock() {
+      set(false);
+    }
+  }
+}
@@ -0,0 +1,230 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2016, TeleStax Inc. and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+package org.jdiameter.common.impl.concurrent;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import org.jdiameter.api.Configuration;
+import org.jdiameter.common.api.concurrent.IConcurrentEntityFactory;
+import org.jdiameter.common.api.concurrent.ISessionAffineExecutor;
+import org.jdiameter.common.api.statistic.IStatisticManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Scheduled executor which, in addition to its pool, owns a fixed set of lanes. Each lane is a
+ * lock-free multi-producer queue drained by a single thread, and a session is always hashed to the
+ * same lane, so events of one session run in order while different sessions run in parallel without
+ * contending on the pool work queue lock. Delayed and periodic tasks still go through the pool.
+ */
+class SessionAffineExecutorService extends CommonScheduledExecutorService implements ISessionAffineExecutor {
+
+  private static final Logger logger = LoggerFactory.getLogger(SessionAffineExecutorService.class);
+
+  private final Lane[] lanes;
+
+  SessionAffineExecutorService(String name, Configuration config, IConcurrentEntityFactory entityFactory, IStatisticManager statisticFactory,
+      int laneCount) {
+    super(name, config, entityFactory, statisticFactory);
+    this.lanes = new Lane[laneCount];
+    for (int index = 0; index < laneCount; index++) {
+      lanes[index] = new Lane();
+      lanes[index].thread = getThreadFactory().newThread(lanes[index]);
+      lanes[index].thread.start();
+    }
+  }
+
+  @Override
+  public ScheduledExecutorService getSessionExecutor(String sessionId) {
+    if (sessionId == null) {
+      return this;
+    }
+    int hash = sessionId.hashCode();
+    hash ^= hash >>> 16;
+    return lanes[(hash & 0x7FFFFFFF) % lanes.length];
+  }
+
+  @Override
+  public void shutdown() {
+    for (Lane lane : lanes) {
+      lane.stop(false);
+    }
+    super.shutdown();
+  }
+
+  @Override
+  public List<Runnable> shutdownNow() {
+    List<Runnable> pending = new ArrayList<Runnable>();
+    for (Lane lane : lanes) {
+      lane.stop(true);
+      Runnable r;
+      while ((r = lane.queue.poll()) != null) {
+        pending.add(r);
+      }
+    }
+    pending.addAll(super.shutdownNow());
+    return pending;
+  }
+
+  @Override
+  public boolean isTerminated() {
+    for (Lane lane : lanes) {
+      if (lane.thread.isAlive()) {
+        return false;
+      }
+    }
+    return super.isTerminated();
+  }
+
+  @Override
+  public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+    long deadline = System.nanoTime() + unit.toNanos(timeout);
+    for (Lane lane : lanes) {
+      long remaining = deadline - System.nanoTime();
+      if (remaining > 0) {
+        TimeUnit.NANOSECONDS.timedJoin(lane.thread, remaining);
+      }
+      if (lane.thread.isAlive()) {
+        return false;
+      }
+    }
+    return super.awaitTermination(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+  }
+
+  /**
+   * Single consumer lane. Producers only append to the queue and unpark consumer when it announced
+   * it is going to park, so handing over a task costs no lock on either side.
+   */
+  private class Lane extends AbstractExecutorService implements ScheduledExecutorService, Runnable {
+
+    private final ConcurrentLinkedQueue<Runnable> queue = new ConcurrentLinkedQueue<Runnable>();
+    private Thread thread;
+    private volatile boolean waiting;
+    private volatile boolean running = true;
+    private volatile boolean discard;
+
+    @Override
+    public void execute(Runnable command) {
+      if (command == null) {
+        throw new NullPointerException();
+      }
+      if (!running) {
+        getRejectedExecutionHandler().rejectedExecution(command, SessionAffineExecutorService.this);
+        return;
+      }
+      Runnable task = newTask(command);
+      queue.offer(task);
+      if (waiting) {
+        LockSupport.unpark(thread);
+      }
+      // lane stopped meanwhile and may have already drained its queue
+      if (!running && queue.remove(task)) {
+        getRejectedExecutionHandler().rejectedExecution(command, SessionAffineExecutorService.this);
+      }
+    }
+
+    @Override
+    public void run() {
+      while (true) {
+        Runnable task = discard ? null : queue.poll();
+        if (task != null) {
+          try {
+            task.run();
+          }
+          catch (Throwable e) {
+            logger.error("Task failed on session lane " + thread.getName(), e);
+          }
+          continue;
+        }
+        if (!running) {
+          break;
+        }
+        // announce before re-checking, so producer either sees the flag or we see its task
+        waiting = true;
+        if (queue.isEmpty() && running) {
+          LockSupport.park(this);
+        }
+        waiting = false;
+      }
+    }
+
+    void stop(boolean now) {
+      this.discard = now;
+      this.running = false;
+      LockSupport.unpark(thread);
+    }
+
+    @Override
+    public ScheduledFuture<?> schedule(Runnable command, long delay, TimeUnit unit) {
+      return SessionAffineExecutorService.this.schedule(command, delay, unit);
+    }
+
+    @Override
+    public <V> ScheduledFuture<V> schedule(Callable<V> callable, long delay, TimeUnit unit) {
+      return SessionAffineExecutorService.this.schedule(callable, delay, unit);
+    }
+
+    @Override
+    public ScheduledFuture<?> scheduleAtFixedRate(Runnable command, long initialDelay, long period, TimeUnit unit) {
+      return SessionAffineExecutorService.this.scheduleAtFixedRate(command, initialDelay, period, unit);
+    }
+
+    @Override
+    public ScheduledFuture<?> scheduleWithFixedDelay(Runnable command, long initialDelay, long delay, TimeUnit unit) {
+      return SessionAffineExecutorService.this.scheduleWithFixedDelay(command, initialDelay, delay, unit);
+    }
+
+    // lanes live as long as owning executor, which is the one to shut down
+
+    @Override
+    public void shutdown() {
+      throw new UnsupportedOperationException("Session lane is shut down with its owning executor");
+    }
+
+    @Override
+    public List<Runnable> shutdownNow() {
+      throw new UnsupportedOperationException("Session lane is shut down with its owning executor");
+    }
+
+    @Override
+    public boolean isShutdown() {
+      return !running;
+    }
+
+    @Override
+    public boolean isTerminated() {
+      return !thread.isAlive();
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+      unit.timedJoin(thread, timeout);
+      return !thread.isAlive();
+    }
+  }
+}
@@ -0,0 +1,124 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2016, TeleStax Inc. and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+package org.jdiameter.common.impl.concurrent;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+
+import org.jdiameter.common.api.concurrent.ISessionOrderedExecutor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keeps a mailbox per session with pending tasks. A mailbox is drained by a single task of the
+ * underlying executor, e.g. one virtual thread, started when its first task arrives and ending,
+ * with the mailbox removed, when none is left. So only the tasks themselves run on the executor.
+ */
+class SessionOrderedExecutor implements ISessionOrderedExecutor {
+
+  private static final Logger logger = LoggerFactory.getLogger(SessionOrderedExecutor.class);
+
+  private final Executor executor;
+  private final ConcurrentHashMap<String, Mailbox> mailboxes = new ConcurrentHashMap<String, Mailbox>();
+
+  SessionOrderedExecutor(Executor executor) {
+    this.executor = executor;
+  }
+
+  @Override
+  public void execute(String sessionId, Runnable task) {
+    if (sessionId == null) {
+      executor.execute(task);
+      return;
+    }
+    while (true) {
+      Mailbox mailbox = mailboxes.get(sessionId);
+      if (mailbox == null) {
+        Mailbox created = new Mailbox(sessionId);
+        mailbox = mailboxes.putIfAbsent(sessionId, created);
+        if (mailbox == null) {
+          mailbox = created;
+        }
+      }
+      Boolean start = mailbox.offer(task);
+      if (start != null) {
+        if (start) {
+          executor.execute(mailbox);
+        }
+        return;
+      }
+      // mailbox was drained and removed meanwhile
+    }
+  }
+
+  int getMailboxCount() {
+    return mailboxes.size();
+  }
+
+  private final class Mailbox implements Runnable {
+
+    private final String sessionId;
+    private final ArrayDeque<Runnable> tasks = new ArrayDeque<Runnable>();
+    private boolean running;
+    private boolean removed;
+
+    Mailbox(String sessionId) {
+      this.sessionId = sessionId;
+    }
+
+    /**
+     * @return true if mailbox has to be drained, false if it is already, null if it has been removed
+     */
+    synchronized Boolean offer(Runnable task) {
+      if (removed) {
+        return null;
+      }
+      tasks.add(task);
+      if (running) {
+        return Boolean.FALSE;
+      }
+      running = true;
+      return Boolean.TRUE;
+    }
+
+    private synchronized Runnable poll() {
+      Runnable task = tasks.poll();
+      if (task == null) {
+        removed = true;
+        mailboxes.remove(sessionId, this);
+      }
+      return task;
+    }
+
+    @Override
+    public void run() {
+      Runnable task;
+      while ((task = poll()) != null) {
+        try {
+          task.run();
+        }
+        catch (Throwable e) {
+          logger.warn("Error during processing task of session " + sessionId, e);
+        }
+      }
+    }
+  }
+}
@@ -51,7 +51,9 @@ import org.jdiameter.api.IllegalDiameterStateException;
 import org.jdiameter.api.InternalException;
 import org.jdiameter.api.Peer;
 import org.jdiameter.api.URI;
+import org.jdiameter.client.api.IMessage;
 import org.jdiameter.client.impl.helpers.UIDGenerator;
+import org.jdiameter.common.api.statistic.ILatencyStatistic;
 import org.jdiameter.common.api.statistic.IStatistic;
 import org.jdiameter.common.api.statistic.IStatisticManager;
 import org.jdiameter.common.api.statistic.IStatisticRecord;
@@ -73,6 +75,9 @@ public class AbstractPeer implements Comparable<Peer> {
   // Statistic
   protected IStatistic statistic;
   protected List<IStatisticRecord> perSecondRecords = new ArrayList<IStatisticRecord>();
+  // records of statistic by Counters ordinal, so message processing does not look them up by name
+  protected volatile IStatisticRecord[] counters;
+  protected volatile ILatencyStatistic latencyStatistic;
   protected URI uri;
   protected IStatisticManager statisticFactory;
 
@@ -131,6 +136,21 @@ public class AbstractPeer implements Comparable<Peer> {
           netGenResponseCounter, netGenCPSResponseCounter, netGenRejectedResponseCounter,
           sysGenResponseCounter
           );
+
+      IStatisticRecord[] counters = new IStatisticRecord[IStatisticRecord.Counters.values().length];
+      for (IStatisticRecord counter : new IStatisticRecord[] {
+          appGenRequestCounter, appGenCPSRequestCounter, appGenRejectedRequestCounter,
+          appGenResponseCounter, appGenCPSResponseCounter, appGenRejectedResponseCounter,
+          netGenRequestCounter, netGenCPSRequestCounter, netGenRejectedRequestCounter,
+          netGenResponseCounter, netGenCPSResponseCounter, netGenRejectedResponseCounter,
+          sysGenResponseCounter}) {
+        // per second records are named <counter>.<uri>
+        String name = counter.getName();
+        int dot = name.indexOf('.');
+        counters[IStatisticRecord.Counters.valueOf(dot > 0 ? name.substring(0, dot) : name).ordinal()] = counter;
+      }
+      this.counters = counters;
+      this.latencyStatistic = statisticFactory.newLatencyStatistic(uriString);
     }
     finally {
       logger.debug("Completed creating Peer Statistics for URI {}: {}", this.uri, this.statistic);
@@ -156,8 +176,13 @@ public class AbstractPeer implements Comparable<Peer> {
       }
 
       this.statisticFactory.removeStatistic(this.statistic);
+      if (this.latencyStatistic != null) {
+        this.statisticFactory.removeLatencyStatistic(this.latencyStatistic);
+        this.latencyStatistic = null;
+      }
       this.perSecondRecords.clear();
       this.statistic = null;
+      this.counters = null;
     }
     finally {
       logger.debug("Completed removing Peer Statistics for URI {}: {}", this.uri, this.statistic);
@@ -165,6 +190,51 @@ public class AbstractPeer implements Comparable<Peer> {
     }
   }
 
+  public IStatisticRecord getCounter(IStatisticRecord.Counters counter) {
+    IStatisticRecord[] counters = this.counters;
+    return counters != null ? counters[counter.ordinal()] : null;
+  }
+
+  /**
+   * Increments given record of peer statistic, if present and enabled
+   *
+   * @param counter type of record
+   */
+  protected void incCounter(IStatisticRecord.Counters counter) {
+    IStatisticRecord record = getCounter(counter);
+    if (record != null) {
+      record.inc();
+    }
+  }
+
+  public ILatencyStatistic getLatencyStatistic() {
+    return latencyStatistic;
+  }
+
+  /**
+   * Return true if latencies of this peer are recorded, so the caller needs to take start time
+   *
+   * @return true if latencies are recorded
+   */
+  protected boolean isLatencyEnabled() {
+    ILatencyStatistic latencyStatistic = this.latencyStatistic;
+    return latencyStatistic != null && latencyStatistic.isEnabled();
+  }
+
+  /**
+   * Records time elapsed since given start time for the application id and command code of the message
+   *
+   * @param latency type of latency
+   * @param message message the latency relates to
+   * @param startTime start time as given by System.nanoTime()
+   */
+  protected void recordLatency(ILatencyStatistic.Latency latency, IMessage message, long startTime) {
+    ILatencyStatistic latencyStatistic = this.latencyStatistic;
+    if (latencyStatistic != null && startTime != 0) {
+      latencyStatistic.record(latency, message.getApplicationId(), message.getCommandCode(), System.nanoTime() - startTime);
+    }
+  }
+
   @Override
   public int compareTo(Peer o) {
     return uri.compareTo(o.getUri());
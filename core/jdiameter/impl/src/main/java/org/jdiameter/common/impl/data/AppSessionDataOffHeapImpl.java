@@ -0,0 +1,123 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2016, TeleStax Inc. and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+package org.jdiameter.common.impl.data;
+
+import org.jdiameter.api.ApplicationId;
+import org.jdiameter.common.api.app.IAppSessionData;
+
+/**
+ * Base of session data kept in {@link OffHeapSessionStore}. Instance is only a handle of the session record, so it
+ * can be dropped and created again for the same session, as {@link OffHeapSessionDatasource} does for idle sessions.
+ * Record field offsets and reference slots are defined by subclasses, reference slot 0 holds application id.
+ */
+public abstract class AppSessionDataOffHeapImpl implements IAppSessionData {
+
+  protected static final int APPLICATION_ID = 0;
+
+  protected final OffHeapSessionStore store;
+  private final String sessionId;
+  private int record = -1;
+  private int generation;
+
+  protected AppSessionDataOffHeapImpl(String sessionId, OffHeapSessionStore store) {
+    this.sessionId = sessionId;
+    this.store = store;
+  }
+
+  /**
+   * Attaches to record of session, creating it when there is none.
+   *
+   * @return true if record was created, so subclass should store initial values
+   */
+  protected boolean create() {
+    int record = store.create(sessionId);
+    boolean created = record >= 0;
+    if (!created) {
+      record = store.find(sessionId);
+      if (record < 0) {
+        throw new IllegalStateException("Data of session " + sessionId + " removed while attaching to it");
+      }
+    }
+    this.generation = store.getGeneration(record);
+    this.record = record;
+    return created;
+  }
+
+  /**
+   * @return record of this session
+   * @throws IllegalStateException if data was removed
+   */
+  protected int record() {
+    int record = this.record;
+    if (record < 0 || store.getGeneration(record) != generation) {
+      throw new IllegalStateException("Data of session " + sessionId + " already removed");
+    }
+    return record;
+  }
+
+  protected boolean getFlag(int offset, int flag) {
+    return (store.getByte(record(), offset) & flag) != 0;
+  }
+
+  protected void setFlag(int offset, int flag, boolean value) {
+    int record = record();
+    int flags = store.getByte(record, offset);
+    store.putByte(record, offset, (byte) (value ? flags | flag : flags & ~flag));
+  }
+
+  @Override
+  public String getSessionId() {
+    return sessionId;
+  }
+
+  @Override
+  public ApplicationId getApplicationId() {
+    return (ApplicationId) store.getReference(record(), APPLICATION_ID);
+  }
+
+  @Override
+  public void setApplicationId(ApplicationId applicationId) {
+    store.setReference(record(), APPLICATION_ID, applicationId);
+  }
+
+  @Override
+  public boolean remove() {
+    if (record >= 0) {
+      store.release(record, generation);
+    }
+    return true;
+  }
+
+  @Override
+  public int hashCode() {
+    return sessionId.hashCode();
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    if (this == obj) {
+      return true;
+    }
+    if (obj == null || getClass() != obj.getClass()) {
+      return false;
+    }
+    return sessionId.equals(((AppSessionDataOffHeapImpl) obj).sessionId);
+  }
+}
@@ -43,7 +43,6 @@
 package org.jdiameter.common.impl.data;
 
 import java.util.HashMap;
-import java.util.concurrent.ConcurrentHashMap;
 
 import org.jdiameter.api.BaseSession;
 import org.jdiameter.api.NetworkReqListener;
@@ -89,7 +88,8 @@ public class LocalDataSource implements ISessionDatasource {
   protected HashMap<Class<? extends IAppSessionData>, IAppSessionDataFactory<? extends IAppSessionData>> appSessionDataFactories =
       new HashMap<Class<? extends IAppSessionData>, IAppSessionDataFactory<? extends IAppSessionData>>();
 
-  private ConcurrentHashMap<String, SessionEntry> sessionIdToEntry = new ConcurrentHashMap<String, LocalDataSource.SessionEntry>();
+  // one inline entry per session id, see SessionTable
+  private final SessionTable sessionIdToEntry = new SessionTable();
 
   private static final Logger logger = LoggerFactory.getLogger(LocalDataSource.class);
 
@@ -120,70 +120,49 @@ public class LocalDataSource implements ISessionDatasource {
   public void setSessionListener(String sessionId, NetworkReqListener data) {
     logger.debug("setSessionListener({}, {})", sessionId, data);
 
-    SessionEntry se = sessionIdToEntry.get(sessionId);
-    if (se != null) {
-      se.listener = data;
-    }
-    else {
+    if (!sessionIdToEntry.set(sessionId, SessionTable.LISTENER, data)) {
       throw new IllegalArgumentException("No Session entry for id: " + sessionId);
     }
   }
 
   @Override
   public NetworkReqListener getSessionListener(String sessionId) {
-    SessionEntry se = sessionIdToEntry.get(sessionId);
-    logger.debug("getSessionListener({}) => {}", sessionId, se);
-    return se != null ? se.listener : null;
+    NetworkReqListener lst = (NetworkReqListener) sessionIdToEntry.get(sessionId, SessionTable.LISTENER);
+    logger.debug("getSessionListener({}) => {}", sessionId, lst);
+    return lst;
   }
 
   @Override
   public NetworkReqListener removeSessionListener(String sessionId) {
-    SessionEntry se = sessionIdToEntry.get(sessionId);
-    logger.debug("removeSessionListener({}) => {}", sessionId, se);
-    if (se != null) {
-      NetworkReqListener lst = se.listener;
-      se.listener = null;
-      return lst;
-    }
-    else {
-      return null;
-    }
+    NetworkReqListener lst = (NetworkReqListener) sessionIdToEntry.replace(sessionId, SessionTable.LISTENER, null);
+    logger.debug("removeSessionListener({}) => {}", sessionId, lst);
+    return lst;
   }
 
   @Override
   public void addSession(BaseSession session) {
     logger.debug("addSession({})", session);
-    SessionEntry se = null;
-
     String sessionId = session.getSessionId();
     //FIXME: check here replicable vs not replicable?
-    if (this.sessionIdToEntry.containsKey(sessionId)) {
-      se = this.sessionIdToEntry.get(sessionId);
-      if ( !(se.session instanceof ISession) || se.session.isReplicable()) { //must be not replicable so we can "overwrite"
-        throw new IllegalArgumentException("Sessin with id: " + sessionId + ", already exists!");
-      }
-      else {
-        this.sessionIdToEntry.put(sessionId, se);
-      }
-    }
-    else {
-      se = new SessionEntry();
+    BaseSession existing = (BaseSession) this.sessionIdToEntry.get(sessionId, SessionTable.SESSION);
+    if (existing != null && (!(existing instanceof ISession) || existing.isReplicable())) { //must be not replicable so we can "overwrite"
+      throw new IllegalArgumentException("Sessin with id: " + sessionId + ", already exists!");
     }
-    se.session = session;
-    this.sessionIdToEntry.put(session.getSessionId(), se);
+    // keeps listener of overwritten session
+    this.sessionIdToEntry.putSession(sessionId, session);
   }
 
   @Override
   public BaseSession getSession(String sessionId) {
-    SessionEntry se = sessionIdToEntry.get(sessionId);
-    logger.debug("getSession({}) => {}", sessionId, se);
-    return se != null ? se.session : null;
+    BaseSession session = (BaseSession) sessionIdToEntry.get(sessionId, SessionTable.SESSION);
+    logger.debug("getSession({}) => {}", sessionId, session);
+    return session;
   }
 
   @Override
   public void removeSession(String sessionId) {
-    SessionEntry se = this.sessionIdToEntry.remove(sessionId);
-    logger.debug("removeSession({}) => {}", sessionId, se);
+    Object session = this.sessionIdToEntry.remove(sessionId);
+    logger.debug("removeSession({}) => {}", sessionId, session);
   }
 
 
@@ -216,17 +195,6 @@ public class LocalDataSource implements ISessionDatasource {
     return "LocalDataSource [sessionIdToEntry=" + sessionIdToEntry + "]";
   }
 
-  //simple class to reduce collections overhead.
-  private class SessionEntry {
-    BaseSession session;
-    NetworkReqListener listener;
-
-    @Override
-    public String toString() {
-      return "SessionEntry [session=" + session + ", listener=" + listener + "]";
-    }
-  }
-
   /*
    * (non-Javadoc)
    *
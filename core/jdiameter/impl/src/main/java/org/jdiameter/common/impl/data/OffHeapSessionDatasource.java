@@ -0,0 +1,284 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2016, TeleStax Inc. and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+package org.jdiameter.common.impl.data;
+
+import static org.jdiameter.client.impl.helpers.Parameters.OffHeapSessionIdleTimeout;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.jdiameter.api.BaseSession;
+import org.jdiameter.api.IllegalDiameterStateException;
+import org.jdiameter.api.NetworkReqListener;
+import org.jdiameter.api.cca.ClientCCASession;
+import org.jdiameter.api.gx.ServerGxSession;
+import org.jdiameter.client.api.IContainer;
+import org.jdiameter.client.api.ISessionFactory;
+import org.jdiameter.client.impl.app.cca.ClientCCASessionDataOffHeapImpl;
+import org.jdiameter.common.api.app.IAppSessionData;
+import org.jdiameter.common.api.app.IAppSessionDataFactory;
+import org.jdiameter.common.api.app.IAppSessionFactory;
+import org.jdiameter.common.api.app.cca.ICCASessionData;
+import org.jdiameter.common.api.app.gx.IGxSessionData;
+import org.jdiameter.common.api.concurrent.IConcurrentFactory;
+import org.jdiameter.common.api.data.ISessionDatasource;
+import org.jdiameter.common.impl.app.AppSessionImpl;
+import org.jdiameter.common.impl.app.cca.CCAOffHeapSessionDataFactory;
+import org.jdiameter.common.impl.app.gx.GxOffHeapSessionDataFactory;
+import org.jdiameter.server.impl.app.gx.ServerGxSessionDataOffHeapImpl;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Session datasource which keeps state of client Credit-Control and server Gx sessions off-heap, in
+ * {@link OffHeapSessionStore}. Such sessions stay on heap, in a {@link LocalDataSource}, only while they are active.
+ * Sessions without activity for <code>OffHeapSessionIdleTimeout</code> are dropped from it and created again from
+ * their stored state when a message, timer or application refers to them, the way {@link ISessionDatasource}
+ * implementations backed by a cluster do. Data of other applications is kept on heap, as by {@link LocalDataSource}.
+ * <p>
+ * Session created again is a new instance, so only sessions whose state is all in their data are dropped, see
+ * {@link AppSessionImpl#isEvictable()}. Sessions with state change listeners besides the one of their session factory,
+ * queued events, stages of asynchronous requests waiting for answer, running Tx or Tcc timer, or an event being
+ * processed stay on heap until they are idle without them.
+ * <p>
+ * Enabled in configuration with <code>&lt;SessionDatasource value="org.jdiameter.common.impl.data.OffHeapSessionDatasource"/&gt;</code>
+ * in <code>Extensions</code>.
+ */
+public class OffHeapSessionDatasource implements ISessionDatasource {
+
+  private static final Logger logger = LoggerFactory.getLogger(OffHeapSessionDatasource.class);
+
+  // fits usual "<host>;<high>;<low>[;<optional>]" ids, longer ones are indexed on heap
+  private static final int KEY_CAPACITY = 80;
+
+  private final IContainer container;
+  private final ISessionDatasource localDataSource = new LocalDataSource();
+  private final OffHeapSessionStore[] stores;
+
+  protected HashMap<Class<? extends IAppSessionData>, IAppSessionDataFactory<? extends IAppSessionData>> appSessionDataFactories =
+      new HashMap<Class<? extends IAppSessionData>, IAppSessionDataFactory<? extends IAppSessionData>>();
+
+  // sessions with off-heap state currently on heap, checked for eviction
+  private final ConcurrentLinkedQueue<BaseSession> heapSessions = new ConcurrentLinkedQueue<BaseSession>();
+  private long idleTimeout;
+  private ScheduledFuture<?> evictionTask;
+
+  public OffHeapSessionDatasource(IContainer container) {
+    this.container = container;
+    OffHeapSessionStore clientCCAStore = new OffHeapSessionStore(ClientCCASession.class, KEY_CAPACITY,
+        ClientCCASessionDataOffHeapImpl.DATA_SIZE, ClientCCASessionDataOffHeapImpl.REFERENCE_SLOTS);
+    OffHeapSessionStore serverGxStore = new OffHeapSessionStore(ServerGxSession.class, KEY_CAPACITY,
+        ServerGxSessionDataOffHeapImpl.DATA_SIZE, ServerGxSessionDataOffHeapImpl.REFERENCE_SLOTS);
+    this.stores = new OffHeapSessionStore[] {clientCCAStore, serverGxStore};
+    appSessionDataFactories.put(ICCASessionData.class, new CCAOffHeapSessionDataFactory(clientCCAStore));
+    appSessionDataFactories.put(IGxSessionData.class, new GxOffHeapSessionDataFactory(serverGxStore));
+  }
+
+  @Override
+  public boolean exists(String sessionId) {
+    return localDataSource.exists(sessionId) || findStore(sessionId) != null;
+  }
+
+  @Override
+  public void addSession(BaseSession session) {
+    localDataSource.addSession(session);
+    for (OffHeapSessionStore store : stores) {
+      if (store.getAppSessionIface().isInstance(session)) {
+        heapSessions.offer(session);
+        break;
+      }
+    }
+  }
+
+  @Override
+  public BaseSession getSession(String sessionId) {
+    BaseSession session = localDataSource.getSession(sessionId);
+    if (session == null && makeLocal(sessionId)) {
+      session = localDataSource.getSession(sessionId);
+    }
+    return session;
+  }
+
+  @Override
+  public void removeSession(String sessionId) {
+    // off-heap state is released by session data itself, when session is released
+    localDataSource.removeSession(sessionId);
+  }
+
+  @Override
+  public void setSessionListener(String sessionId, NetworkReqListener data) {
+    if (!localDataSource.exists(sessionId)) {
+      makeLocal(sessionId);
+    }
+    localDataSource.setSessionListener(sessionId, data);
+  }
+
+  @Override
+  public NetworkReqListener getSessionListener(String sessionId) {
+    NetworkReqListener listener = localDataSource.getSessionListener(sessionId);
+    if (listener == null && !localDataSource.exists(sessionId) && makeLocal(sessionId)) {
+      listener = localDataSource.getSessionListener(sessionId);
+    }
+    return listener;
+  }
+
+  @Override
+  public NetworkReqListener removeSessionListener(String sessionId) {
+    if (!localDataSource.exists(sessionId)) {
+      makeLocal(sessionId);
+    }
+    return localDataSource.removeSessionListener(sessionId);
+  }
+
+  @Override
+  public synchronized void start() {
+    if (evictionTask != null) {
+      return;
+    }
+    idleTimeout = container.getConfiguration().getLongValue(OffHeapSessionIdleTimeout.ordinal(), (Long) OffHeapSessionIdleTimeout.defValue());
+    long period = Math.max(idleTimeout / 2, 1);
+    evictionTask = container.getAssemblerFacility().getComponentInstance(IConcurrentFactory.class).
+        getScheduledExecutorService(IConcurrentFactory.ScheduledExecServices.ApplicationSession.name()).
+        scheduleWithFixedDelay(new Runnable() {
+          @Override
+          public void run() {
+            evictIdleSessions();
+          }
+        }, period, period, TimeUnit.MILLISECONDS);
+  }
+
+  @Override
+  public synchronized void stop() {
+    if (evictionTask != null) {
+      evictionTask.cancel(false);
+      evictionTask = null;
+    }
+  }
+
+  @Override
+  public boolean isClustered() {
+    return false;
+  }
+
+  @Override
+  public IAppSessionDataFactory<? extends IAppSessionData> getDataFactory(Class<? extends IAppSessionData> x) {
+    IAppSessionDataFactory<? extends IAppSessionData> factory = this.appSessionDataFactories.get(x);
+    return factory != null ? factory : localDataSource.getDataFactory(x);
+  }
+
+  /**
+   * Drops sessions with off-heap state which were not used for idle timeout from heap, unless they hold state
+   * their data does not keep.
+   */
+  void evictIdleSessions() {
+    long idleSince = System.currentTimeMillis() - idleTimeout;
+    int evicted = 0;
+    Iterator<BaseSession> iterator = heapSessions.iterator();
+    while (iterator.hasNext()) {
+      BaseSession session = iterator.next();
+      final String sessionId = session.getSessionId();
+      if (localDataSource.getSession(sessionId) != session) {
+        // released, or already replaced by new instance
+        iterator.remove();
+      }
+      else if (session.getLastAccessedTime() < idleSince && session instanceof AppSessionImpl) {
+        boolean dropped;
+        try {
+          dropped = ((AppSessionImpl) session).evict(new Runnable() {
+            @Override
+            public void run() {
+              localDataSource.removeSession(sessionId);
+            }
+          });
+        }
+        catch (IllegalStateException e) {
+          // data removed by concurrent release, session leaves datasource by itself
+          dropped = false;
+        }
+        if (dropped) {
+          iterator.remove();
+          evicted++;
+        }
+      }
+    }
+    if (evicted > 0) {
+      logger.debug("Dropped {} idle sessions from heap, {} left", evicted, heapSessions.size());
+    }
+  }
+
+  private OffHeapSessionStore findStore(String sessionId) {
+    for (OffHeapSessionStore store : stores) {
+      if (store.find(sessionId) >= 0) {
+        return store;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Creates session again from its off-heap state. New instance has no state besides its data, as only such
+   * sessions are dropped from heap.
+   *
+   * @return true if session is on heap now
+   */
+  private boolean makeLocal(String sessionId) {
+    // unknown sessions, e.g. on initial requests, are looked up without locking datasource or stores
+    OffHeapSessionStore store = findStore(sessionId);
+    if (store == null) {
+      return false;
+    }
+    synchronized (this) {
+      return localDataSource.exists(sessionId) || makeLocal(sessionId, store);
+    }
+  }
+
+  private boolean makeLocal(String sessionId, OffHeapSessionStore store) {
+    try {
+      IAppSessionFactory factory = ((ISessionFactory) container.getSessionFactory()).getAppSessionFactory(store.getAppSessionIface());
+      if (factory == null) {
+        logger.warn("Session with id:{}, is in off-heap data source, but no Application Session Factory for:{}.", sessionId, store.getAppSessionIface());
+        return false;
+      }
+      BaseSession session = factory.getSession(sessionId, store.getAppSessionIface());
+      if (session == null) {
+        return false;
+      }
+      addSession(session);
+      localDataSource.setSessionListener(sessionId, (NetworkReqListener) session);
+      return true;
+    }
+    catch (IllegalDiameterStateException e) {
+      logger.error("Failed to obtain session factory from stack", e);
+      return false;
+    }
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder sb = new StringBuilder("OffHeapSessionDatasource [heapSessions=").append(heapSessions.size());
+    for (OffHeapSessionStore store : stores) {
+      sb.append(", ").append(store);
+    }
+    return sb.append(']').toString();
+  }
+}
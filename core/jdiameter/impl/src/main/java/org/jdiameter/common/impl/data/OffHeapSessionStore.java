@@ -0,0 +1,457 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2016, TeleStax Inc. and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+package org.jdiameter.common.impl.data;
+
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.StampedLock;
+
+import org.jdiameter.api.app.AppSession;
+
+/**
+ * Fixed size records of application session state, kept in direct memory slabs outside of the heap. A record holds
+ * Session-Id it belongs to and primitive state of one session data, see {@link AppSessionDataOffHeapImpl}. Fields
+ * pointing to live objects (timer handles, pending requests, application id) are kept as references in an on-heap
+ * array parallel to the slabs, so idle session costs a few references on heap.
+ * <p>
+ * Records are found by Session-Id through an open addressing index, also in direct memory, split in segments as
+ * {@link SessionTable} is. Session-Id is stored in the record as Latin-1 bytes, ids which are longer than key
+ * capacity or hold other characters are indexed in an on-heap map of their segment instead. Creation and release
+ * lock the segment of the Session-Id, lookups read the index optimistically and lock only when they raced with a
+ * writer of the same segment. Released records are kept on a lock-free stack for reuse; field accessors do not lock.
+ */
+public class OffHeapSessionStore {
+
+  // record header
+  private static final int HASH = 0;
+  private static final int GENERATION = 4;
+  private static final int KEY_LENGTH = 8;
+  private static final int KEY = 10;
+
+  // key length of record indexed in long key map
+  private static final short LONG_KEY = -1;
+
+  private static final int SLAB_SHIFT = 14;
+  private static final int SLAB_RECORDS = 1 << SLAB_SHIFT;
+  private static final int SLAB_MASK = SLAB_RECORDS - 1;
+
+  private static final int SEGMENT_BITS = 4;
+  private static final int MIN_INDEX_CAPACITY = 64;
+
+  private final Class<? extends AppSession> appSessionIface;
+  private final int keyCapacity;
+  private final int dataOffset;
+  private final int recordSize;
+  private final int referenceSlots;
+
+  // replaced by larger copy under lock, readers only index it with records they were given
+  private volatile ByteBuffer[] slabs = new ByteBuffer[0];
+  private volatile Object[][] references = new Object[0][];
+
+  private final Segment[] segments = new Segment[1 << SEGMENT_BITS];
+  private final AtomicInteger nextRecord = new AtomicInteger();
+  // top of released records stack: record + 1 in low half, 0 when empty, and a change count in high half against ABA;
+  // a released record links to the one below it through its hash field
+  private final AtomicLong freeRecords = new AtomicLong();
+
+  /**
+   * @param appSessionIface application session interface whose data is stored
+   * @param keyCapacity bytes reserved for Session-Id in each record
+   * @param dataSize bytes of session data in each record
+   * @param referenceSlots references of session data in each record
+   */
+  public OffHeapSessionStore(Class<? extends AppSession> appSessionIface, int keyCapacity, int dataSize, int referenceSlots) {
+    if (keyCapacity < 0 || keyCapacity > Short.MAX_VALUE || dataSize < 0 || referenceSlots < 0) {
+      throw new IllegalArgumentException("Invalid record layout: key " + keyCapacity + ", data " + dataSize + ", references " + referenceSlots);
+    }
+    this.appSessionIface = appSessionIface;
+    this.keyCapacity = keyCapacity;
+    // keep data 8 byte aligned
+    this.dataOffset = (KEY + keyCapacity + 7) & ~7;
+    this.recordSize = (dataOffset + dataSize + 7) & ~7;
+    this.referenceSlots = referenceSlots;
+    for (int i = 0; i < segments.length; i++) {
+      segments[i] = new Segment();
+    }
+  }
+
+  public Class<? extends AppSession> getAppSessionIface() {
+    return appSessionIface;
+  }
+
+  /**
+   * Creates zeroed record for session.
+   *
+   * @return record, or -1 when session already has one
+   */
+  public int create(String sessionId) {
+    int hash = sessionId.hashCode();
+    boolean fitsKey = fitsKey(sessionId);
+    Segment segment = segmentFor(hash);
+    long stamp = segment.writeLock();
+    try {
+      if (segment.find(sessionId, hash, fitsKey) >= 0) {
+        return -1;
+      }
+      int record = allocate();
+      ByteBuffer slab = slab(record);
+      int position = position(record);
+      slab.putInt(position + HASH, hash);
+      if (fitsKey) {
+        slab.putShort(position + KEY_LENGTH, (short) sessionId.length());
+        for (int i = 0; i < sessionId.length(); i++) {
+          slab.put(position + KEY + i, (byte) sessionId.charAt(i));
+        }
+        segment.add(record, hash);
+      }
+      else {
+        slab.putShort(position + KEY_LENGTH, LONG_KEY);
+        segment.longKeys.put(sessionId, record);
+      }
+      segment.size++;
+      return record;
+    }
+    finally {
+      segment.unlockWrite(stamp);
+    }
+  }
+
+  /**
+   * @return record of session, or -1
+   */
+  public int find(String sessionId) {
+    int hash = sessionId.hashCode();
+    boolean fitsKey = fitsKey(sessionId);
+    Segment segment = segmentFor(hash);
+    if (fitsKey) {
+      long stamp = segment.tryOptimisticRead();
+      int record = segment.find(sessionId, hash, true);
+      if (segment.validate(stamp)) {
+        return record;
+      }
+    }
+    // long key map is not safe to read while it is changed
+    long stamp = segment.readLock();
+    try {
+      return segment.find(sessionId, hash, fitsKey);
+    }
+    finally {
+      segment.unlockRead(stamp);
+    }
+  }
+
+  /**
+   * Releases record, unless it was already released and possibly reused since given generation.
+   */
+  public void release(int record, int generation) {
+    ByteBuffer slab = slab(record);
+    int position = position(record);
+    if (slab.getInt(position + GENERATION) != generation) {
+      return;
+    }
+    // hash of a record released meanwhile is a free stack link, generation check below then fails in any segment
+    Segment segment = segmentFor(slab.getInt(position + HASH));
+    long stamp = segment.writeLock();
+    try {
+      if (slab.getInt(position + GENERATION) != generation) {
+        return;
+      }
+      if (slab.getShort(position + KEY_LENGTH) == LONG_KEY) {
+        Iterator<Integer> records = segment.longKeys.values().iterator();
+        while (records.hasNext()) {
+          if (records.next() == record) {
+            records.remove();
+            break;
+          }
+        }
+      }
+      else {
+        segment.remove(record);
+      }
+      segment.size--;
+      // new generation makes stale handles fail, instead of reading state of session which reuses record
+      slab.putInt(position + GENERATION, generation + 1);
+      for (int i = KEY_LENGTH; i < recordSize; i++) {
+        slab.put(position + i, (byte) 0);
+      }
+    }
+    finally {
+      segment.unlockWrite(stamp);
+    }
+    Arrays.fill(references[record >>> SLAB_SHIFT], (record & SLAB_MASK) * referenceSlots, ((record & SLAB_MASK) + 1) * referenceSlots, null);
+    free(record);
+  }
+
+  public int getGeneration(int record) {
+    return slab(record).getInt(position(record) + GENERATION);
+  }
+
+  public byte getByte(int record, int offset) {
+    return slab(record).get(position(record) + dataOffset + offset);
+  }
+
+  public void putByte(int record, int offset, byte value) {
+    slab(record).put(position(record) + dataOffset + offset, value);
+  }
+
+  public int getInt(int record, int offset) {
+    return slab(record).getInt(position(record) + dataOffset + offset);
+  }
+
+  public void putInt(int record, int offset, int value) {
+    slab(record).putInt(position(record) + dataOffset + offset, value);
+  }
+
+  public Object getReference(int record, int slot) {
+    return references[record >>> SLAB_SHIFT][(record & SLAB_MASK) * referenceSlots + slot];
+  }
+
+  public void setReference(int record, int slot, Object value) {
+    references[record >>> SLAB_SHIFT][(record & SLAB_MASK) * referenceSlots + slot] = value;
+  }
+
+  /**
+   * @return number of stored records
+   */
+  public int size() {
+    int size = 0;
+    for (Segment segment : segments) {
+      long stamp = segment.readLock();
+      try {
+        size += segment.size;
+      }
+      finally {
+        segment.unlockRead(stamp);
+      }
+    }
+    return size;
+  }
+
+  /**
+   * @return bytes of direct memory held by slabs and index
+   */
+  public long getOffHeapSize() {
+    long size = (long) slabs.length * SLAB_RECORDS * recordSize;
+    for (Segment segment : segments) {
+      size += segment.index.capacity() * 4L;
+    }
+    return size;
+  }
+
+  @Override
+  public String toString() {
+    return "OffHeapSessionStore [appSessionIface=" + appSessionIface.getSimpleName() + ", size=" + size() + ", offHeapSize=" + getOffHeapSize() + "]";
+  }
+
+  private ByteBuffer slab(int record) {
+    return slabs[record >>> SLAB_SHIFT];
+  }
+
+  private int position(int record) {
+    return (record & SLAB_MASK) * recordSize;
+  }
+
+  private Segment segmentFor(int hash) {
+    // top bits of the multiply, slots use the mixed low bits
+    return segments[(hash * 0x9E3779B9) >>> (32 - SEGMENT_BITS)];
+  }
+
+  private int allocate() {
+    while (true) {
+      long top = freeRecords.get();
+      int record = (int) top - 1;
+      if (record < 0) {
+        break;
+      }
+      // link may be stale when record was taken meanwhile, change count then fails the swap
+      int next = slab(record).getInt(position(record) + HASH);
+      if (freeRecords.compareAndSet(top, (((top >>> 32) + 1) << 32) | (next & 0xFFFFFFFFL))) {
+        return record;
+      }
+    }
+    int record = nextRecord.getAndIncrement();
+    if ((record >>> SLAB_SHIFT) >= slabs.length) {
+      addSlab(record >>> SLAB_SHIFT);
+    }
+    return record;
+  }
+
+  private void free(int record) {
+    ByteBuffer slab = slab(record);
+    int position = position(record);
+    while (true) {
+      long top = freeRecords.get();
+      slab.putInt(position + HASH, (int) top);
+      if (freeRecords.compareAndSet(top, (((top >>> 32) + 1) << 32) | (record + 1))) {
+        return;
+      }
+    }
+  }
+
+  private synchronized void addSlab(int slab) {
+    int count = slabs.length;
+    if (slab < count) {
+      return;
+    }
+    Object[][] newReferences = Arrays.copyOf(references, slab + 1);
+    ByteBuffer[] newSlabs = Arrays.copyOf(slabs, slab + 1);
+    for (int i = count; i <= slab; i++) {
+      newReferences[i] = new Object[SLAB_RECORDS * referenceSlots];
+      newSlabs[i] = ByteBuffer.allocateDirect(SLAB_RECORDS * recordSize);
+    }
+    // references first, record of new slab is handed out only after both are visible
+    references = newReferences;
+    slabs = newSlabs;
+  }
+
+  private boolean fitsKey(String sessionId) {
+    if (sessionId.length() > keyCapacity) {
+      return false;
+    }
+    for (int i = 0; i < sessionId.length(); i++) {
+      if (sessionId.charAt(i) > 0xFF) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private boolean keyEquals(int record, int hash, String sessionId) {
+    ByteBuffer slab = slab(record);
+    int position = position(record);
+    if (slab.getInt(position + HASH) != hash || slab.getShort(position + KEY_LENGTH) != sessionId.length()) {
+      return false;
+    }
+    for (int i = 0; i < sessionId.length(); i++) {
+      if ((slab.get(position + KEY + i) & 0xFF) != sessionId.charAt(i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static int mix(int hash) {
+    // multiply spreads low bits up, xor brings well mixed high bits down to the slot bits
+    int h = hash * 0x9E3779B9;
+    return h ^ (h >>> 16);
+  }
+
+  private static IntBuffer newIndex(int capacity) {
+    return ByteBuffer.allocateDirect(capacity * 4).asIntBuffer();
+  }
+
+  private int homeSlot(int record, int mask) {
+    return mix(slab(record).getInt(position(record) + HASH)) & mask;
+  }
+
+  /**
+   * Part of the Session-Id index. Index holds record + 1 of each record with a Session-Id fitting the key, 0 marks
+   * a free slot.
+   */
+  @SuppressWarnings("serial")
+  private final class Segment extends StampedLock {
+
+    // replaced under write lock, volatile so an optimistic reader never sees a buffer which is not initialized
+    private volatile IntBuffer index = newIndex(MIN_INDEX_CAPACITY);
+    // guarded by write lock, read under read lock
+    private final HashMap<String, Integer> longKeys = new HashMap<String, Integer>();
+    private int size;
+
+    int find(String sessionId, int hash, boolean fitsKey) {
+      if (!fitsKey) {
+        Integer record = longKeys.get(sessionId);
+        return record != null ? record : -1;
+      }
+      IntBuffer index = this.index;
+      int capacity = index.capacity();
+      int mask = capacity - 1;
+      // bounded, index seen by an optimistic reader may be in the middle of change
+      for (int probe = 0, slot = mix(hash) & mask; probe < capacity; probe++, slot = (slot + 1) & mask) {
+        int entry = index.get(slot);
+        if (entry == 0) {
+          return -1;
+        }
+        // slab of a record added by a racing writer may not be visible yet, stamp then fails
+        if ((entry - 1) >>> SLAB_SHIFT >= slabs.length) {
+          return -1;
+        }
+        if (keyEquals(entry - 1, hash, sessionId)) {
+          return entry - 1;
+        }
+      }
+      return -1;
+    }
+
+    void add(int record, int hash) {
+      int capacity = index.capacity();
+      // keep load factor at most 1/2
+      if ((size + 1) * 2 > capacity) {
+        resize(capacity * 2);
+      }
+      IntBuffer index = this.index;
+      int mask = index.capacity() - 1;
+      int slot = mix(hash) & mask;
+      while (index.get(slot) != 0) {
+        slot = (slot + 1) & mask;
+      }
+      index.put(slot, record + 1);
+    }
+
+    void remove(int record) {
+      IntBuffer index = this.index;
+      int mask = index.capacity() - 1;
+      int gap = homeSlot(record, mask);
+      while (index.get(gap) != record + 1) {
+        gap = (gap + 1) & mask;
+      }
+      // backward shift deletion, see SessionTable
+      for (int next = (gap + 1) & mask; index.get(next) != 0; next = (next + 1) & mask) {
+        int home = homeSlot(index.get(next) - 1, mask);
+        if (((next - home) & mask) >= ((next - gap) & mask)) {
+          index.put(gap, index.get(next));
+          gap = next;
+        }
+      }
+      index.put(gap, 0);
+    }
+
+    private void resize(int capacity) {
+      IntBuffer old = index;
+      IntBuffer resized = newIndex(capacity);
+      int mask = capacity - 1;
+      for (int i = 0; i < old.capacity(); i++) {
+        int entry = old.get(i);
+        if (entry != 0) {
+          int slot = homeSlot(entry - 1, mask);
+          while (resized.get(slot) != 0) {
+            slot = (slot + 1) & mask;
+          }
+          resized.put(slot, entry);
+        }
+      }
+      index = resized;
+    }
+  }
+}
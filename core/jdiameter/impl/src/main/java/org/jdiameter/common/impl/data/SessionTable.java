@@ -0,0 +1,290 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2016, TeleStax Inc. and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+package org.jdiameter.common.impl.data;
+
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Session id keyed table used by {@link LocalDataSource}. Each segment is an open addressing table with linear
+ * probing which keeps an entry inline in a single array as three consecutive slots (session id, session, listener),
+ * so a stored session costs three references instead of a map node and an entry object. Session id is the same
+ * string instance the session holds, so it is not copied either.
+ * <p>
+ * Writers lock their segment. Readers read optimistically and take the read lock only when they raced with a
+ * writer of the same segment.
+ */
+final class SessionTable {
+
+  static final int SESSION = 1;
+  static final int LISTENER = 2;
+
+  private static final int STRIDE = 3;
+  static final int SEGMENT_BITS = 6;
+  static final int MIN_CAPACITY = 16;
+
+  // returned by segment when there is no entry for key
+  private static final Object ABSENT = new Object();
+
+  private final Segment[] segments = new Segment[1 << SEGMENT_BITS];
+
+  SessionTable() {
+    for (int i = 0; i < segments.length; i++) {
+      segments[i] = new Segment();
+    }
+  }
+
+  static int hash(String key) {
+    // golden ratio multiply, so both top bits (segment) and low bits (slot) are well mixed
+    return key.hashCode() * 0x9E3779B9;
+  }
+
+  private Segment segmentFor(int hash) {
+    return segments[hash >>> (32 - SEGMENT_BITS)];
+  }
+
+  Object get(String key, int field) {
+    int hash = hash(key);
+    return segmentFor(hash).get(key, hash, field);
+  }
+
+  boolean containsKey(String key) {
+    return get(key, 0) != null;
+  }
+
+  /**
+   * Stores session, keeping listener of existing entry.
+   *
+   * @return session previously stored under key, or null
+   */
+  Object putSession(String key, Object session) {
+    int hash = hash(key);
+    return segmentFor(hash).put(key, hash, session);
+  }
+
+  /**
+   * Sets field of existing entry.
+   *
+   * @return false when there is no entry for key
+   */
+  boolean set(String key, int field, Object value) {
+    int hash = hash(key);
+    return segmentFor(hash).replace(key, hash, field, value) != ABSENT;
+  }
+
+  /**
+   * Sets field of existing entry.
+   *
+   * @return previous value of field, or null when there is no entry for key
+   */
+  Object replace(String key, int field, Object value) {
+    int hash = hash(key);
+    Object previous = segmentFor(hash).replace(key, hash, field, value);
+    return previous != ABSENT ? previous : null;
+  }
+
+  /**
+   * @return session of removed entry, or null
+   */
+  Object remove(String key) {
+    int hash = hash(key);
+    return segmentFor(hash).remove(key, hash);
+  }
+
+  int size() {
+    int size = 0;
+    for (Segment segment : segments) {
+      long stamp = segment.readLock();
+      try {
+        size += segment.size;
+      }
+      finally {
+        segment.unlockRead(stamp);
+      }
+    }
+    return size;
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder sb = new StringBuilder("{");
+    for (Segment segment : segments) {
+      long stamp = segment.readLock();
+      try {
+        Object[] slots = segment.slots;
+        for (int i = 0; i < slots.length; i += STRIDE) {
+          if (slots[i] != null) {
+            if (sb.length() > 1) {
+              sb.append(", ");
+            }
+            sb.append(slots[i]).append("=[session=").append(slots[i + SESSION]).append(", listener=").append(slots[i + LISTENER]).append(']');
+          }
+        }
+      }
+      finally {
+        segment.unlockRead(stamp);
+      }
+    }
+    return sb.append('}').toString();
+  }
+
+  @SuppressWarnings("serial")
+  private static final class Segment extends StampedLock {
+
+    // written under write lock only; optimistic readers validate stamp before trusting what they read
+    private Object[] slots = new Object[MIN_CAPACITY * STRIDE];
+    private int size;
+
+    Object get(String key, int hash, int field) {
+      long stamp = tryOptimisticRead();
+      Object value = find(slots, key, hash, field);
+      if (!validate(stamp)) {
+        stamp = readLock();
+        try {
+          value = find(slots, key, hash, field);
+        }
+        finally {
+          unlockRead(stamp);
+        }
+      }
+      return value;
+    }
+
+    // field 0 yields key itself, which tells presence
+    private static Object find(Object[] slots, String key, int hash, int field) {
+      int capacity = slots.length / STRIDE;
+      int mask = capacity - 1;
+      // bounded, table seen by an optimistic reader may be in the middle of change
+      for (int probe = 0, index = hash & mask; probe < capacity; probe++, index = (index + 1) & mask) {
+        Object current = slots[index * STRIDE];
+        if (current == null) {
+          return null;
+        }
+        if (current == key || current.equals(key)) {
+          return slots[index * STRIDE + field];
+        }
+      }
+      return null;
+    }
+
+    private int indexOf(String key, int hash) {
+      int mask = slots.length / STRIDE - 1;
+      int index = hash & mask;
+      while (true) {
+        Object current = slots[index * STRIDE];
+        if (current == null || current == key || current.equals(key)) {
+          return index;
+        }
+        index = (index + 1) & mask;
+      }
+    }
+
+    Object put(String key, int hash, Object session) {
+      long stamp = writeLock();
+      try {
+        int index = indexOf(key, hash) * STRIDE;
+        if (slots[index] != null) {
+          Object previous = slots[index + SESSION];
+          slots[index + SESSION] = session;
+          return previous;
+        }
+        // keep load factor at most 3/4, so probe always meets a free slot
+        if ((size + 1) * 4 > slots.length / STRIDE * 3) {
+          resize(slots.length / STRIDE * 2);
+          index = indexOf(key, hash) * STRIDE;
+        }
+        slots[index] = key;
+        slots[index + SESSION] = session;
+        size++;
+        return null;
+      }
+      finally {
+        unlockWrite(stamp);
+      }
+    }
+
+    Object replace(String key, int hash, int field, Object value) {
+      long stamp = writeLock();
+      try {
+        int index = indexOf(key, hash) * STRIDE;
+        if (slots[index] == null) {
+          return ABSENT;
+        }
+        Object previous = slots[index + field];
+        slots[index + field] = value;
+        return previous;
+      }
+      finally {
+        unlockWrite(stamp);
+      }
+    }
+
+    Object remove(String key, int hash) {
+      long stamp = writeLock();
+      try {
+        int mask = slots.length / STRIDE - 1;
+        int index = indexOf(key, hash);
+        if (slots[index * STRIDE] == null) {
+          return null;
+        }
+        Object removed = slots[index * STRIDE + SESSION];
+        // backward shift deletion, moves following entries of the probe run into the gap, so no tombstones are needed
+        int gap = index;
+        int next = (gap + 1) & mask;
+        while (slots[next * STRIDE] != null) {
+          int home = hash((String) slots[next * STRIDE]) & mask;
+          // entry may move to gap only when gap lies cyclically between its home slot and its current slot
+          if (((next - home) & mask) >= ((next - gap) & mask)) {
+            System.arraycopy(slots, next * STRIDE, slots, gap * STRIDE, STRIDE);
+            gap = next;
+          }
+          next = (next + 1) & mask;
+        }
+        slots[gap * STRIDE] = null;
+        slots[gap * STRIDE + SESSION] = null;
+        slots[gap * STRIDE + LISTENER] = null;
+        size--;
+        int capacity = mask + 1;
+        if (capacity > MIN_CAPACITY && size * 8 < capacity) {
+          resize(capacity / 2);
+        }
+        return removed;
+      }
+      finally {
+        unlockWrite(stamp);
+      }
+    }
+
+    private void resize(int capacity) {
+      Object[] old = slots;
+      Object[] resized = new Object[capacity * STRIDE];
+      int mask = capacity - 1;
+      for (int i = 0; i < old.length; i += STRIDE) {
+        if (old[i] != null) {
+          int index = hash((String) old[i]) & mask;
+          while (resized[index * STRIDE] != null) {
+            index = (index + 1) & mask;
+          }
+          System.arraycopy(old, i, resized, index * STRIDE, STRIDE);
+        }
+      }
+      slots = resized;
+    }
+  }
+}
@@ -0,0 +1,124 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2016, TeleStax Inc. and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+package org.jdiameter.common.impl.statistic;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histogram of latencies in microseconds, laid out as HdrHistogram does: values up to 64 are counted
+ * exactly, above that each power of two range is split into 32 buckets, so a reported value is within
+ * about 3% of the recorded one. Values above {@link #MAX_VALUE} are counted as MAX_VALUE.
+ * <p>
+ * Recording is lock free and does not allocate. Values are recorded into one of two count arrays;
+ * a reader swaps them and drains the one not in use into the accumulated counts, so it does not
+ * contend with writers and loses no value, even one written to the array just swapped out.
+ */
+public class LatencyHistogram {
+
+  public static final long MAX_VALUE = (1L << 32) - 1;
+
+  private static final int SUB_BUCKET_BITS = 6;
+  private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+  private static final int SUB_BUCKET_HALF = SUB_BUCKET_COUNT >> 1;
+  private static final int LENGTH = indexOf(MAX_VALUE) + 1;
+
+  private volatile AtomicLongArray active = new AtomicLongArray(LENGTH);
+  private AtomicLongArray inactive = new AtomicLongArray(LENGTH);
+  private final long[] counts = new long[LENGTH];
+  private long totalCount;
+
+  public void recordValue(long micros) {
+    active.incrementAndGet(indexOf(micros < 0 ? 0 : micros > MAX_VALUE ? MAX_VALUE : micros));
+  }
+
+  public synchronized long getTotalCount() {
+    drain();
+    return totalCount;
+  }
+
+  /**
+   * @param percentile percentile, e.g. 99.9
+   * @return highest value equivalent to the one at given percentile, or 0 if nothing was recorded
+   */
+  public synchronized long getValueAtPercentile(double percentile) {
+    drain();
+    if (totalCount == 0) {
+      return 0;
+    }
+    long target = Math.max(1, (long) Math.ceil(Math.min(percentile, 100.0) / 100.0 * totalCount));
+    long count = 0;
+    for (int i = 0; i < LENGTH; i++) {
+      count += counts[i];
+      if (count >= target) {
+        return highestValueAt(i);
+      }
+    }
+    return MAX_VALUE;
+  }
+
+  public synchronized long getMaxValue() {
+    drain();
+    for (int i = LENGTH - 1; i >= 0; i--) {
+      if (counts[i] != 0) {
+        return highestValueAt(i);
+      }
+    }
+    return 0;
+  }
+
+  public synchronized void reset() {
+    drain();
+    for (int i = 0; i < LENGTH; i++) {
+      counts[i] = 0;
+    }
+    totalCount = 0;
+  }
+
+  private void drain() {
+    AtomicLongArray recorded = active;
+    active = inactive;
+    inactive = recorded;
+    for (int i = 0; i < LENGTH; i++) {
+      if (recorded.get(i) != 0) {
+        long count = recorded.getAndSet(i, 0);
+        counts[i] += count;
+        totalCount += count;
+      }
+    }
+  }
+
+  static int indexOf(long value) {
+    if (value < SUB_BUCKET_COUNT) {
+      return (int) value;
+    }
+    // value is in [2^(bucket + 5), 2^(bucket + 6)), shifting it by bucket leaves [32, 64)
+    int bucket = 64 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+    return SUB_BUCKET_COUNT + (bucket - 1) * SUB_BUCKET_HALF + (int) (value >>> bucket) - SUB_BUCKET_HALF;
+  }
+
+  static long highestValueAt(int index) {
+    if (index < SUB_BUCKET_COUNT) {
+      return index;
+    }
+    int bucket = (index - SUB_BUCKET_COUNT) / SUB_BUCKET_HALF + 1;
+    long subBucket = (index - SUB_BUCKET_COUNT) % SUB_BUCKET_HALF + SUB_BUCKET_HALF;
+    return ((subBucket + 1) << bucket) - 1;
+  }
+}
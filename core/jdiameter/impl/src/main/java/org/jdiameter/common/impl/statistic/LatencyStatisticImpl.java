@@ -0,0 +1,212 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2016, TeleStax Inc. and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+package org.jdiameter.common.impl.statistic;
+
+import java.util.concurrent.TimeUnit;
+
+import org.jdiameter.common.api.statistic.ILatencyStatistic;
+import org.jdiameter.common.api.statistic.IStatistic;
+
+/**
+ * Keeps a {@link LatencyHistogram} per latency type, application id and command code. Histograms are looked up
+ * in an open addressing table keyed by primitive long, replaced as a whole when a new pair is added, so lookups
+ * are lock free and do not box.
+ * <p>
+ * The histograms of a pair take about 64 KB, so at most {@link #MAX_PAIRS} pairs are kept. Latencies of pairs
+ * seen after that are recorded together under application id and command code {@link #OVERFLOW_ID}.
+ */
+class LatencyStatisticImpl implements ILatencyStatistic {
+
+  static final int MAX_PAIRS = 32;
+  static final int OVERFLOW_ID = -1;
+
+  private static final double[] PERCENTILES = {50, 99, 99.9};
+
+  protected volatile boolean enable = true;
+  protected String name;
+  private volatile Entry[] table = new Entry[16];
+  private volatile Entry overflow;
+  private int size;
+
+  LatencyStatisticImpl(String name) {
+    this.name = IStatistic.Groups.Latency.name() + "." + name;
+  }
+
+  @Override
+  public String getName() {
+    return name;
+  }
+
+  @Override
+  public boolean isEnabled() {
+    return enable;
+  }
+
+  @Override
+  public void enable(boolean e) {
+    enable = e;
+  }
+
+  @Override
+  public void record(Latency latency, long applicationId, int commandCode, long nanos) {
+    if (enable) {
+      getEntry(applicationId, commandCode, true).histograms[latency.ordinal()].recordValue(TimeUnit.NANOSECONDS.toMicros(nanos));
+    }
+  }
+
+  @Override
+  public long getCount(Latency latency, long applicationId, int commandCode) {
+    Entry entry = getEntry(applicationId, commandCode, false);
+    return entry != null ? entry.histograms[latency.ordinal()].getTotalCount() : 0;
+  }
+
+  @Override
+  public long getValueAtPercentile(Latency latency, long applicationId, int commandCode, double percentile) {
+    Entry entry = getEntry(applicationId, commandCode, false);
+    return entry != null ? entry.histograms[latency.ordinal()].getValueAtPercentile(percentile) : 0;
+  }
+
+  @Override
+  public void reset() {
+    for (Entry entry : table) {
+      if (entry != null) {
+        for (LatencyHistogram histogram : entry.histograms) {
+          histogram.reset();
+        }
+      }
+    }
+  }
+
+  private Entry getEntry(long applicationId, int commandCode, boolean create) {
+    long key = key(applicationId, commandCode);
+    Entry[] table = this.table;
+    int mask = table.length - 1;
+    for (int i = hash(key) & mask; table[i] != null; i = (i + 1) & mask) {
+      if (table[i].key == key) {
+        return table[i];
+      }
+    }
+    if (!create) {
+      return null;
+    }
+    // once there is an overflow entry no pair is added anymore
+    Entry overflow = this.overflow;
+    return overflow != null ? overflow : addEntry(key, applicationId, commandCode);
+  }
+
+  private synchronized Entry addEntry(long key, long applicationId, int commandCode) {
+    Entry[] table = this.table;
+    int mask = table.length - 1;
+    int i = hash(key) & mask;
+    for (; table[i] != null; i = (i + 1) & mask) {
+      if (table[i].key == key) {
+        return table[i];
+      }
+    }
+    if (size >= MAX_PAIRS) {
+      if (overflow == null) {
+        overflow = insert(new Entry(key(OVERFLOW_ID, OVERFLOW_ID), OVERFLOW_ID, OVERFLOW_ID));
+      }
+      return overflow;
+    }
+    return insert(new Entry(key, applicationId, commandCode));
+  }
+
+  private Entry insert(Entry entry) {
+    Entry[] table = this.table;
+    Entry[] newTable;
+    if ((size + 1) * 2 > table.length) {
+      newTable = new Entry[table.length * 2];
+      for (Entry e : table) {
+        if (e != null) {
+          put(newTable, e);
+        }
+      }
+      put(newTable, entry);
+    }
+    else {
+      newTable = table.clone();
+      put(newTable, entry);
+    }
+    size++;
+    this.table = newTable;
+    return entry;
+  }
+
+  private static void put(Entry[] table, Entry entry) {
+    int mask = table.length - 1;
+    int i = hash(entry.key) & mask;
+    while (table[i] != null) {
+      i = (i + 1) & mask;
+    }
+    table[i] = entry;
+  }
+
+  private static long key(long applicationId, int commandCode) {
+    return (applicationId << 32) | (commandCode & 0xFFFFFFFFL);
+  }
+
+  private static int hash(long key) {
+    long h = key * 0x9E3779B97F4A7C15L;
+    return (int) (h ^ (h >>> 32));
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder sb = new StringBuilder();
+    for (Entry entry : table) {
+      if (entry == null) {
+        continue;
+      }
+      for (Latency latency : Latency.values()) {
+        LatencyHistogram histogram = entry.histograms[latency.ordinal()];
+        long count = histogram.getTotalCount();
+        if (count == 0) {
+          continue;
+        }
+        sb.append(name).append('.').append(latency.name()).append("[appId=").append(entry.applicationId)
+        .append(", commandCode=").append(entry.commandCode).append("]: count=").append(count);
+        for (double percentile : PERCENTILES) {
+          sb.append(", p").append(String.valueOf(percentile).replace(".0", "").replace(".", "")).append('=')
+          .append(histogram.getValueAtPercentile(percentile));
+        }
+        sb.append(", max=").append(histogram.getMaxValue()).append(" us\n");
+      }
+    }
+    return sb.toString();
+  }
+
+  private static final class Entry {
+
+    private final long key;
+    private final long applicationId;
+    private final int commandCode;
+    private final LatencyHistogram[] histograms = new LatencyHistogram[Latency.values().length];
+
+    Entry(long key, long applicationId, int commandCode) {
+      this.key = key;
+      this.applicationId = applicationId;
+      this.commandCode = commandCode;
+      for (int i = 0; i < histograms.length; i++) {
+        histograms[i] = new LatencyHistogram();
+      }
+    }
+  }
+}
@@ -50,6 +50,7 @@ import java.util.concurrent.CopyOnWriteArrayList;
 
 import org.jdiameter.api.Configuration;
 import org.jdiameter.client.impl.helpers.Parameters;
+import org.jdiameter.common.api.statistic.ILatencyStatistic;
 import org.jdiameter.common.api.statistic.IStatistic;
 import org.jdiameter.common.api.statistic.IStatisticManager;
 import org.jdiameter.common.api.statistic.IStatisticRecord;
@@ -64,9 +65,11 @@ public class StatisticManagerImpl implements IStatisticManager {
   //TODO: remove CopyOnWrite....
   private List<IStatistic> allStatistic = new CopyOnWriteArrayList<IStatistic>();
   private List<IStatisticRecord> allPSStatisticRecord = new CopyOnWriteArrayList<IStatisticRecord>();
+  private List<ILatencyStatistic> allLatencyStatistic = new CopyOnWriteArrayList<ILatencyStatistic>();
 
   private List<IStatistic> frozenAllStatistic = Collections.unmodifiableList(allStatistic);
   private List<IStatisticRecord> frozenAllPSStatisticRecord = Collections.unmodifiableList(allPSStatisticRecord);
+  private List<ILatencyStatistic> frozenAllLatencyStatistic = Collections.unmodifiableList(allLatencyStatistic);
 
   private boolean enabled;
   private long pause, delay;
@@ -156,6 +159,19 @@ public class StatisticManagerImpl implements IStatisticManager {
     return statistic;
   }
 
+  @Override
+  public ILatencyStatistic newLatencyStatistic(String name) {
+    ILatencyStatistic statistic = new LatencyStatisticImpl(name);
+    statistic.enable(this.isEnabled(statistic.getName()));
+    for (ILatencyStatistic s : allLatencyStatistic) {
+      if (s.getName().equals(statistic.getName())) {
+        throw new IllegalArgumentException("Statistic already defined: " + statistic.getName());
+      }
+    }
+    allLatencyStatistic.add(statistic);
+    return statistic;
+  }
+
 //  public IStatistic newStatistic(String name, String description, IStatisticRecord... rec) {
 //    //FIXME: remove this?
 //    IStatistic statistic = new StatisticImpl(name, description, rec);
@@ -192,6 +208,11 @@ public class StatisticManagerImpl implements IStatisticManager {
     this.allStatistic.remove(stat);
   }
 
+  @Override
+  public void removeLatencyStatistic(ILatencyStatistic stat) {
+    this.allLatencyStatistic.remove(stat);
+  }
+
   private boolean isEnabled(String name) {
 
     if (this.activeRecords.contains(name)) {
@@ -239,4 +260,9 @@ public class StatisticManagerImpl implements IStatisticManager {
     return this.frozenAllStatistic;
   }
 
+  @Override
+  public List<ILatencyStatistic> getLatencyStatistic() {
+    return this.frozenAllLatencyStatistic;
+  }
+
 }
@@ -44,7 +44,7 @@ package org.jdiameter.common.impl.statistic;
 
 import java.util.Arrays;
 import java.util.concurrent.ConcurrentLinkedQueue;
-import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 
 import org.jdiameter.api.StatisticRecord;
 import org.jdiameter.common.api.statistic.IStatisticRecord;
@@ -61,13 +61,13 @@ class StatisticRecordImpl implements IStatisticRecord {
   protected String description;
   protected Counters counter;
 
-  protected AtomicLong value;
+  protected LongAdder value;
   protected ConcurrentLinkedQueue<StatisticRecord> childs = new ConcurrentLinkedQueue<StatisticRecord>();
   protected ValueHolder valueHolder;
 
   StatisticRecordImpl(String name) {
     this.name = name;
-    this.value = new AtomicLong(0);
+    this.value = new LongAdder();
   }
 
   StatisticRecordImpl(String name, String description) {
@@ -98,7 +98,8 @@ class StatisticRecordImpl implements IStatisticRecord {
 
   StatisticRecordImpl(String name, String description,  long value) {
     this(name, description);
-    this.value = new AtomicLong(value);
+    this.value = new LongAdder();
+    this.value.add(value);
   }
 
   @Override
@@ -113,53 +114,53 @@ class StatisticRecordImpl implements IStatisticRecord {
 
   @Override
   public int getValueAsInt() {
-    return valueHolder != null ? ((IntegerValueHolder) valueHolder).getValueAsInt() : (int) value.get();
+    return valueHolder != null ? ((IntegerValueHolder) valueHolder).getValueAsInt() : (int) value.sum();
   }
 
   @Override
   public double getValueAsDouble() {
     return valueHolder != null ? ((DoubleValueHolder) valueHolder).getValueAsDouble() :
-      Double.longBitsToDouble(value.get());
+      Double.longBitsToDouble(value.sum());
   }
 
   @Override
   public long getValueAsLong() {
-    return valueHolder != null ? ((LongValueHolder) valueHolder).getValueAsLong() : value.get();
+    return valueHolder != null ? ((LongValueHolder) valueHolder).getValueAsLong() : value.sum();
   }
 
 
   @Override
   public void inc() {
     if (enable) {
-      this.value.incrementAndGet();
+      this.value.add(1);
     }
   }
 
   @Override
   public void inc(long delta) {
     if (enable) {
-      this.value.addAndGet(delta);
+      this.value.add(delta);
     }
   }
 
   @Override
   public void setDoubleValue(double value) {
     if (enable) {
-      this.value.set(Double.doubleToLongBits(value));
+      setValue(Double.doubleToLongBits(value));
     }
   }
 
   @Override
   public void setLongValue(long value) {
     if (enable) {
-      this.value.set(value);
+      setValue(value);
     }
   }
 
   @Override
   public void dec() {
     if (enable) {
-      value.decrementAndGet();
+      value.add(-1);
     }
   }
 
@@ -170,7 +171,13 @@ class StatisticRecordImpl implements IStatisticRecord {
 
   @Override
   public void reset() {
-    value.set(0);
+    value.reset();
+  }
+
+  // not atomic in regard to concurrent updates, which may get lost
+  private void setValue(long value) {
+    this.value.reset();
+    this.value.add(value);
   }
 
   @Override
@@ -188,7 +195,7 @@ class StatisticRecordImpl implements IStatisticRecord {
 
   @Override
   public String toString() {
-    return String.valueOf(valueHolder != null ? valueHolder.getValueAsString() : value.get());
+    return String.valueOf(valueHolder != null ? valueHolder.getValueAsString() : value.sum());
   }
 
   @Override
@@ -0,0 +1,555 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2016, TeleStax Inc. and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+package org.jdiameter.common.impl.timer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RunnableScheduledFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jdiameter.common.api.concurrent.IConcurrentFactory;
+import org.jdiameter.common.api.statistic.IStatistic;
+import org.jdiameter.common.api.statistic.IStatisticManager;
+import org.jdiameter.common.api.statistic.IStatisticRecord;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * {@link ScheduledExecutorService} keeping its tasks in a hashed timing wheel, so scheduling and cancelling are O(1)
+ * whatever the number of pending tasks. A single thread advances the wheel once per tick and hands the expired tasks
+ * to the task executor, tasks are never run early and at most about one tick late.
+ * <p>
+ * The wheel has a single level. Tasks further away than one revolution stay in their bucket with a count of the
+ * remaining rounds, which is decremented each time the wheel passes the bucket. A tick therefore walks all the tasks
+ * of one bucket, about n / wheelSize of n pending tasks, and not only the expiring ones. Hierarchical wheels would
+ * avoid these visits but have to cascade tasks between levels; the session timers and request timeouts of a stack lie
+ * seconds to minutes ahead, a few dozen revolutions of the default wheel, so the visits stay cheap.
+ * <p>
+ * The wheel stops with {@link #shutdown()}, or on its own once the task executor is shut down. Pending tasks are
+ * then dropped.
+ */
+public class HashedWheelTimer extends AbstractExecutorService implements ScheduledExecutorService {
+
+  private static final Logger logger = LoggerFactory.getLogger(HashedWheelTimer.class);
+
+  private static final int STATE_INIT = 0;
+  private static final int STATE_STARTED = 1;
+  private static final int STATE_SHUTDOWN = 2;
+
+  // bounds the time a tick spends on timeouts scheduled since the previous one
+  private static final int MAX_TRANSFERS_PER_TICK = 100000;
+
+  private final String name;
+  private final IConcurrentFactory concurrentFactory;
+  private final Executor taskExecutor;
+  private final long tickDuration;
+  private final Bucket[] wheel;
+  private final int mask;
+
+  private final Queue<WheelTimeout<?>> pendingTimeouts = new ConcurrentLinkedQueue<WheelTimeout<?>>();
+  private final Queue<WheelTimeout<?>> cancelledTimeouts = new ConcurrentLinkedQueue<WheelTimeout<?>>();
+  private final AtomicInteger state = new AtomicInteger(STATE_INIT);
+  private final CountDownLatch startLatch = new CountDownLatch(1);
+  private volatile long startTime;
+  private volatile Thread workerThread;
+
+  // written by the worker thread only
+  private volatile long expiredCount;
+  private volatile long latenessSum;
+  private volatile long maxLateness;
+
+  private IStatisticManager statisticManager;
+  private IStatistic statistic;
+
+  /**
+   * @param name name of the worker thread and of the statistic
+   * @param concurrentFactory factory of the worker thread
+   * @param taskExecutor runs the expired tasks
+   * @param tickDuration duration of one tick, the resolution of the timer
+   * @param unit unit of the tick duration
+   * @param wheelSize number of buckets, rounded up to a power of two
+   * @param statisticManager registers the lateness statistic, may be null
+   */
+  public HashedWheelTimer(String name, IConcurrentFactory concurrentFactory, Executor taskExecutor, long tickDuration, TimeUnit unit,
+      int wheelSize, IStatisticManager statisticManager) {
+    if (tickDuration <= 0) {
+      throw new IllegalArgumentException("Tick duration must be greater than 0: " + tickDuration);
+    }
+    if (wheelSize <= 0 || wheelSize > 1 << 30) {
+      throw new IllegalArgumentException("Wheel size must be between 1 and 2^30: " + wheelSize);
+    }
+    this.name = name;
+    this.concurrentFactory = concurrentFactory;
+    this.taskExecutor = taskExecutor;
+    this.tickDuration = unit.toNanos(tickDuration);
+    int size = Integer.highestOneBit(wheelSize);
+    if (size < wheelSize) {
+      size <<= 1;
+    }
+    this.wheel = new Bucket[size];
+    for (int i = 0; i < size; i++) {
+      wheel[i] = new Bucket();
+    }
+    this.mask = size - 1;
+    if (statisticManager != null) {
+      this.statisticManager = statisticManager;
+      this.statistic = statisticManager.newStatistic(name, IStatistic.Groups.Timer,
+          statisticManager.newCounterRecord(IStatisticRecord.Counters.ExpiredTimers, new IStatisticRecord.LongValueHolder() {
+            @Override
+            public long getValueAsLong() {
+              return getExpiredCount();
+            }
+
+            @Override
+            public String getValueAsString() {
+              return String.valueOf(getValueAsLong());
+            }
+          }),
+          statisticManager.newCounterRecord(IStatisticRecord.Counters.TimerLateness, new IStatisticRecord.DoubleValueHolder() {
+            @Override
+            public double getValueAsDouble() {
+              return getAverageLateness();
+            }
+
+            @Override
+            public String getValueAsString() {
+              return String.valueOf(getValueAsDouble());
+            }
+          }),
+          statisticManager.newCounterRecord(IStatisticRecord.Counters.MaxTimerLateness, new IStatisticRecord.LongValueHolder() {
+            @Override
+            public long getValueAsLong() {
+              return getMaxLateness();
+            }
+
+            @Override
+            public String getValueAsString() {
+              return String.valueOf(getValueAsLong());
+            }
+          }));
+    }
+  }
+
+  /**
+   * @return number of tasks handed to the task executor so far
+   */
+  public long getExpiredCount() {
+    return expiredCount;
+  }
+
+  /**
+   * @return average time in milliseconds between the scheduled and the actual expiry of tasks
+   */
+  public double getAverageLateness() {
+    long count = expiredCount;
+    return count == 0 ? 0 : latenessSum / (double) count / 1000000;
+  }
+
+  /**
+   * @return greatest time in milliseconds between the scheduled and the actual expiry of a task
+   */
+  public long getMaxLateness() {
+    return TimeUnit.NANOSECONDS.toMillis(maxLateness);
+  }
+
+  @Override
+  public ScheduledFuture<?> schedule(Runnable command, long delay, TimeUnit unit) {
+    return schedule(new WheelTimeout<Void>(command, null, deadline(delay, unit), 0));
+  }
+
+  @Override
+  public <V> ScheduledFuture<V> schedule(Callable<V> callable, long delay, TimeUnit unit) {
+    return schedule(new WheelTimeout<V>(callable, deadline(delay, unit)));
+  }
+
+  @Override
+  public ScheduledFuture<?> scheduleAtFixedRate(Runnable command, long initialDelay, long period, TimeUnit unit) {
+    if (period <= 0) {
+      throw new IllegalArgumentException("Period must be greater than 0: " + period);
+    }
+    return schedule(new WheelTimeout<Void>(command, null, deadline(initialDelay, unit), unit.toNanos(period)));
+  }
+
+  @Override
+  public ScheduledFuture<?> scheduleWithFixedDelay(Runnable command, long initialDelay, long delay, TimeUnit unit) {
+    if (delay <= 0) {
+      throw new IllegalArgumentException("Delay must be greater than 0: " + delay);
+    }
+    return schedule(new WheelTimeout<Void>(command, null, deadline(initialDelay, unit), -unit.toNanos(delay)));
+  }
+
+  @Override
+  public void execute(Runnable command) {
+    if (state.get() == STATE_SHUTDOWN) {
+      throw new RejectedExecutionException("Timer " + name + " is shut down");
+    }
+    taskExecutor.execute(command);
+  }
+
+  @Override
+  public void shutdown() {
+    if (state.getAndSet(STATE_SHUTDOWN) != STATE_SHUTDOWN) {
+      Thread worker = workerThread;
+      if (worker != null) {
+        worker.interrupt();
+      }
+      if (statistic != null) {
+        statisticManager.removeStatistic(statistic);
+      }
+    }
+  }
+
+  @Override
+  public List<Runnable> shutdownNow() {
+    shutdown();
+    Thread worker = workerThread;
+    if (worker != null && worker != Thread.currentThread()) {
+      boolean interrupted = false;
+      while (worker.isAlive()) {
+        try {
+          worker.join();
+        }
+        catch (InterruptedException e) {
+          interrupted = true;
+        }
+      }
+      if (interrupted) {
+        Thread.currentThread().interrupt();
+      }
+    }
+    List<Runnable> unprocessed = new ArrayList<Runnable>();
+    for (Bucket bucket : wheel) {
+      bucket.clear(unprocessed);
+    }
+    WheelTimeout<?> timeout;
+    while ((timeout = pendingTimeouts.poll()) != null) {
+      if (!timeout.isCancelled()) {
+        unprocessed.add(timeout);
+      }
+    }
+    cancelledTimeouts.clear();
+    return unprocessed;
+  }
+
+  @Override
+  public boolean isShutdown() {
+    return state.get() == STATE_SHUTDOWN;
+  }
+
+  @Override
+  public boolean isTerminated() {
+    Thread worker = workerThread;
+    return isShutdown() && (worker == null || !worker.isAlive());
+  }
+
+  @Override
+  public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+    Thread worker = workerThread;
+    if (worker != null) {
+      TimeUnit.NANOSECONDS.timedJoin(worker, unit.toNanos(timeout));
+    }
+    return isTerminated();
+  }
+
+  @Override
+  public String toString() {
+    return "HashedWheelTimer{" + "name=" + name + ", tickDuration=" + TimeUnit.NANOSECONDS.toMillis(tickDuration) +
+        "ms, wheelSize=" + wheel.length + '}';
+  }
+
+  private <V> WheelTimeout<V> schedule(WheelTimeout<V> timeout) {
+    start();
+    pendingTimeouts.add(timeout);
+    return timeout;
+  }
+
+  private long deadline(long delay, TimeUnit unit) {
+    start();
+    long deadline = System.nanoTime() - startTime + unit.toNanos(Math.max(delay, 0));
+    // guard against overflow of very long delays
+    return deadline < 0 ? Long.MAX_VALUE : deadline;
+  }
+
+  private void start() {
+    switch (state.get()) {
+      case STATE_INIT:
+        if (state.compareAndSet(STATE_INIT, STATE_STARTED)) {
+          Thread worker = concurrentFactory.getThread(name, new Worker());
+          worker.setDaemon(true);
+          workerThread = worker;
+          worker.start();
+        }
+        break;
+      case STATE_STARTED:
+        break;
+      default:
+        throw new RejectedExecutionException("Timer " + name + " is shut down");
+    }
+    while (startTime == 0) {
+      try {
+        startLatch.await();
+      }
+      catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new RejectedExecutionException("Interrupted while starting timer " + name);
+      }
+    }
+  }
+
+  private void expire(WheelTimeout<?> timeout, long now) {
+    if (timeout.isCancelled()) {
+      return;
+    }
+    long lateness = now - timeout.deadline;
+    expiredCount++;
+    latenessSum += lateness;
+    if (lateness > maxLateness) {
+      maxLateness = lateness;
+    }
+    try {
+      taskExecutor.execute(timeout);
+    }
+    catch (RejectedExecutionException e) {
+      logger.debug("Expired task of timer {} rejected", name, e);
+    }
+  }
+
+  private final class Worker implements Runnable {
+
+    private long tick;
+
+    @Override
+    public void run() {
+      long now = System.nanoTime();
+      // 0 means not yet started
+      startTime = now == 0 ? 1 : now;
+      startLatch.countDown();
+      while (state.get() == STATE_STARTED) {
+        long current = waitForNextTick();
+        if (current < 0) {
+          break;
+        }
+        if (taskExecutor instanceof ExecutorService && ((ExecutorService) taskExecutor).isShutdown()) {
+          logger.debug("Task executor of timer {} is shut down, stopping", name);
+          shutdown();
+          break;
+        }
+        removeCancelledTimeouts();
+        transferTimeouts();
+        wheel[(int) (tick & mask)].expireTimeouts(current);
+        tick++;
+      }
+    }
+
+    /**
+     * @return current time relative to the start, or -1 when the timer is shut down meanwhile
+     */
+    private long waitForNextTick() {
+      long deadline = tickDuration * (tick + 1);
+      for (;;) {
+        long current = System.nanoTime() - startTime;
+        long sleepMillis = (deadline - current + 999999) / 1000000;
+        if (sleepMillis <= 0) {
+          return current;
+        }
+        try {
+          Thread.sleep(sleepMillis);
+        }
+        catch (InterruptedException e) {
+          if (state.get() == STATE_SHUTDOWN) {
+            return -1;
+          }
+        }
+      }
+    }
+
+    private void removeCancelledTimeouts() {
+      WheelTimeout<?> timeout;
+      while ((timeout = cancelledTimeouts.poll()) != null) {
+        if (timeout.bucket != null) {
+          timeout.bucket.remove(timeout);
+        }
+      }
+    }
+
+    private void transferTimeouts() {
+      for (int i = 0; i < MAX_TRANSFERS_PER_TICK; i++) {
+        WheelTimeout<?> timeout = pendingTimeouts.poll();
+        if (timeout == null) {
+          break;
+        }
+        if (timeout.isCancelled()) {
+          continue;
+        }
+        long calculated = timeout.deadline / tickDuration;
+        timeout.remainingRounds = (calculated - tick) / wheel.length;
+        // already late ones expire with the current tick
+        long ticks = Math.max(calculated, tick);
+        wheel[(int) (ticks & mask)].add(timeout);
+      }
+    }
+  }
+
+  /**
+   * Doubly linked list of the timeouts of one slot of the wheel, only accessed by the worker thread.
+   */
+  private final class Bucket {
+
+    private WheelTimeout<?> head;
+    private WheelTimeout<?> tail;
+
+    void add(WheelTimeout<?> timeout) {
+      timeout.bucket = this;
+      if (head == null) {
+        head = timeout;
+        tail = timeout;
+      }
+      else {
+        tail.next = timeout;
+        timeout.prev = tail;
+        tail = timeout;
+      }
+    }
+
+    void remove(WheelTimeout<?> timeout) {
+      WheelTimeout<?> next = timeout.next;
+      if (timeout.prev != null) {
+        timeout.prev.next = next;
+      }
+      if (next != null) {
+        next.prev = timeout.prev;
+      }
+      if (timeout == head) {
+        head = next;
+      }
+      if (timeout == tail) {
+        tail = timeout.prev;
+      }
+      timeout.prev = null;
+      timeout.next = null;
+      timeout.bucket = null;
+    }
+
+    void expireTimeouts(long now) {
+      WheelTimeout<?> timeout = head;
+      while (timeout != null) {
+        WheelTimeout<?> next = timeout.next;
+        if (timeout.remainingRounds <= 0) {
+          remove(timeout);
+          expire(timeout, now);
+        }
+        else {
+          timeout.remainingRounds--;
+        }
+        timeout = next;
+      }
+    }
+
+    void clear(List<Runnable> unprocessed) {
+      WheelTimeout<?> timeout = head;
+      while (timeout != null) {
+        WheelTimeout<?> next = timeout.next;
+        remove(timeout);
+        if (!timeout.isCancelled()) {
+          unprocessed.add(timeout);
+        }
+        timeout = next;
+      }
+    }
+  }
+
+  private final class WheelTimeout<V> extends FutureTask<V> implements RunnableScheduledFuture<V> {
+
+    // nanoseconds since the start of the timer
+    private long deadline;
+    // 0 for one-shot tasks, positive for fixed rate and negative for fixed delay
+    private final long period;
+
+    private long remainingRounds;
+    private WheelTimeout<?> prev;
+    private WheelTimeout<?> next;
+    private Bucket bucket;
+
+    WheelTimeout(Runnable runnable, V result, long deadline, long period) {
+      super(runnable, result);
+      this.deadline = deadline;
+      this.period = period;
+    }
+
+    WheelTimeout(Callable<V> callable, long deadline) {
+      super(callable);
+      this.deadline = deadline;
+      this.period = 0;
+    }
+
+    @Override
+    public long getDelay(TimeUnit unit) {
+      return unit.convert(deadline - (System.nanoTime() - startTime), TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public int compareTo(Delayed other) {
+      if (other == this) {
+        return 0;
+      }
+      long diff = getDelay(TimeUnit.NANOSECONDS) - other.getDelay(TimeUnit.NANOSECONDS);
+      return diff < 0 ? -1 : (diff > 0 ? 1 : 0);
+    }
+
+    @Override
+    public boolean isPeriodic() {
+      return period != 0;
+    }
+
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+      boolean cancelled = super.cancel(mayInterruptIfRunning);
+      if (cancelled) {
+        // unlinked from its bucket by the worker with the next tick
+        cancelledTimeouts.add(this);
+      }
+      return cancelled;
+    }
+
+    @Override
+    public void run() {
+      if (!isPeriodic()) {
+        super.run();
+      }
+      else if (runAndReset() && state.get() == STATE_STARTED) {
+        deadline = period > 0 ? deadline + period : System.nanoTime() - startTime - period;
+        pendingTimeouts.add(this);
+      }
+    }
+  }
+}
@@ -51,14 +51,13 @@ import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 
-import org.apache.commons.pool.BasePoolableObjectFactory;
-import org.apache.commons.pool.impl.GenericObjectPool;
 import org.jdiameter.api.BaseSession;
 import org.jdiameter.client.api.IContainer;
 import org.jdiameter.common.api.concurrent.IConcurrentFactory;
 import org.jdiameter.common.api.data.ISessionDatasource;
 import org.jdiameter.common.api.timer.ITimerFacility;
 import org.jdiameter.common.impl.app.AppSessionImpl;
+import org.jdiameter.common.impl.concurrent.Recycler;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -76,8 +75,9 @@ public class LocalTimerFacilityImpl implements ITimerFacility {
   private ISessionDatasource sessionDataSource;
 
   // TimerTaskHandle pooling to minimize impact on Eden space and avoid too
-  // much GC, consequently not loosing time during GC
-  private final GenericObjectPool pool = new GenericObjectPool(new TimerTaskHandleFactory(), 100000, GenericObjectPool.WHEN_EXHAUSTED_GROW, 10, 20000);
+  // much GC, consequently not loosing time during GC. The recycler never
+  // blocks, so scheduling from many threads does not serialize on the pool
+  private final Recycler<TimerTaskHandle> pool = new TimerTaskHandleRecycler(20000);
 
   public LocalTimerFacilityImpl(IContainer container) {
     super();
@@ -121,34 +121,26 @@ public class LocalTimerFacilityImpl implements ITimerFacility {
   }
 
   protected void returnTimerTaskHandle(TimerTaskHandle timerTaskHandle) {
-    try {
-      pool.returnObject(timerTaskHandle);
-    }
-    catch (Exception e) {
-      logger.warn(e.getMessage());
-    }
+    pool.recycle(timerTaskHandle);
   }
 
   protected TimerTaskHandle borrowTimerTaskHandle() {
-    try {
-      TimerTaskHandle timerTaskHandle = (TimerTaskHandle) pool.borrowObject();
-      return timerTaskHandle;
-    }
-    catch (Exception e) {
-      logger.error("", e);
-    }
-    return null;
+    return pool.get();
   }
 
-  class TimerTaskHandleFactory extends BasePoolableObjectFactory {
+  class TimerTaskHandleRecycler extends Recycler<TimerTaskHandle> {
+
+    TimerTaskHandleRecycler(int maxIdle) {
+      super(maxIdle);
+    }
+
     @Override
-    public Object makeObject() throws Exception {
+    protected TimerTaskHandle newObject() {
       return new TimerTaskHandle();
     }
 
     @Override
-    public void passivateObject(Object obj) throws Exception {
-      TimerTaskHandle timerTaskHandle = (TimerTaskHandle) obj;
+    protected void passivate(TimerTaskHandle timerTaskHandle) {
       timerTaskHandle.id = null;
       timerTaskHandle.sessionId = null;
       timerTaskHandle.timerName = null;
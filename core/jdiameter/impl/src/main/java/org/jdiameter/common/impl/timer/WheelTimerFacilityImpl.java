@@ -0,0 +1,142 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2016, TeleStax Inc. and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+package org.jdiameter.common.impl.timer;
+
+import static org.jdiameter.client.impl.helpers.Parameters.TimerWheelSize;
+import static org.jdiameter.client.impl.helpers.Parameters.TimerWheelTickDuration;
+
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.io.Serializable;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.jdiameter.api.BaseSession;
+import org.jdiameter.api.Configuration;
+import org.jdiameter.client.api.IContainer;
+import org.jdiameter.common.api.concurrent.IConcurrentFactory;
+import org.jdiameter.common.api.data.ISessionDatasource;
+import org.jdiameter.common.api.statistic.IStatisticManager;
+import org.jdiameter.common.api.timer.ITimerFacility;
+import org.jdiameter.common.impl.app.AppSessionImpl;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Local implementation of timer facility for {@link ITimerFacility} keeping the session timers in a
+ * {@link HashedWheelTimer}, for stacks with very many concurrent session timers. Expired timers run on the
+ * ApplicationSession executor, as with {@link LocalTimerFacilityImpl}.
+ * Selected with <code>&lt;TimerFacility value="org.jdiameter.common.impl.timer.WheelTimerFacilityImpl"/&gt;</code>
+ * in the <code>Extensions</code> section of the configuration.
+ */
+public class WheelTimerFacilityImpl implements ITimerFacility {
+
+  private static final Logger logger = LoggerFactory.getLogger(WheelTimerFacilityImpl.class);
+
+  private HashedWheelTimer timer;
+  private ISessionDatasource sessionDataSource;
+
+  public WheelTimerFacilityImpl(IContainer container) {
+    super();
+    Configuration config = container.getConfiguration();
+    IConcurrentFactory concurrentFactory = container.getConcurrentFactory();
+    this.timer = new HashedWheelTimer("SessionTimer", concurrentFactory,
+        concurrentFactory.getScheduledExecutorService(IConcurrentFactory.ScheduledExecServices.ApplicationSession.name()),
+        config.getIntValue(TimerWheelTickDuration.ordinal(), (Integer) TimerWheelTickDuration.defValue()), TimeUnit.MILLISECONDS,
+        config.getIntValue(TimerWheelSize.ordinal(), (Integer) TimerWheelSize.defValue()),
+        container.getAssemblerFacility().getComponentInstance(IStatisticManager.class));
+    this.sessionDataSource = container.getAssemblerFacility().getComponentInstance(ISessionDatasource.class);
+  }
+
+  /*
+   * (non-Javadoc)
+   *
+   * @see org.jdiameter.common.api.timer.ITimerFacility#cancel(java.io.Serializable)
+   */
+  @Override
+  public void cancel(Serializable f) {
+    if (f instanceof TimerTaskHandle) {
+      TimerTaskHandle timerTaskHandle = (TimerTaskHandle) f;
+      if (timerTaskHandle.future != null) {
+        timerTaskHandle.future.cancel(false);
+      }
+    }
+  }
+
+  /*
+   * (non-Javadoc)
+   * @see org.jdiameter.common.api.timer.ITimerFacility#schedule(java.lang.String, java.lang.String, long)
+   */
+  @Override
+  public Serializable schedule(String sessionId, String timerName, long milliseconds) throws IllegalArgumentException {
+    TimerTaskHandle handle = new TimerTaskHandle(sessionId, timerName);
+    logger.debug("Scheduling timer with id [{}/{}]", sessionId, timerName);
+    handle.future = timer.schedule(handle, milliseconds, TimeUnit.MILLISECONDS);
+    return handle;
+  }
+
+  private final class TimerTaskHandle implements Runnable, Externalizable {
+
+    private static final long serialVersionUID = 1L;
+
+    // its not really serializable;
+    private final String sessionId;
+    private final String timerName;
+    private transient Future<?> future;
+
+    TimerTaskHandle(String sessionId, String timerName) {
+      this.sessionId = sessionId;
+      this.timerName = timerName;
+    }
+
+    @Override
+    public void run() {
+      try {
+        BaseSession bSession = sessionDataSource.getSession(sessionId);
+        if (bSession == null || !bSession.isAppSession()) {
+          logger.error("Base Session is null for sessionId: {}", sessionId);
+          return;
+        }
+        try {
+          AppSessionImpl impl = (AppSessionImpl) bSession;
+          impl.onTimer(timerName);
+        }
+        catch (Exception e) {
+          logger.error("Caught exception from app session object!", e);
+        }
+      }
+      catch (Exception e) {
+        logger.error("Failure executing timer task with id: " + sessionId + "/" + timerName, e);
+      }
+    }
+
+    @Override
+    public void writeExternal(ObjectOutput out) throws IOException {
+      throw new IOException("Failed to serialize local timer!");
+    }
+
+    @Override
+    public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException {
+      throw new IOException("Failed to deserialize local timer!");
+    }
+  }
+}
@@ -574,12 +574,15 @@ public class MutablePeerTableImpl extends PeerTableImpl implements IMutablePeerT
       for (String k : peerTable.keySet()) {
         Peer p = peerTable.get(k);
         if (p != null && p.getState(PeerState.class) == PeerState.DOWN) {
-          peerTable.remove(k, p);
+          if (peerTable.remove(k, p)) {
+            router.peerRemoved((IPeer) p);
+          }
         }
       }
     }
 
     peerTable.put(peer.getUri().getFQDN(), peer);
+    router.getRealmTable().invalidateRoutes();
     if (peerTableListener != null) {
       peerTableListener.peerAccepted(peer);
     }
@@ -664,6 +667,7 @@ public class MutablePeerTableImpl extends PeerTableImpl implements IMutablePeerT
       for (Realm r : realms) {
         if (r.getName().equals(realm)) {
           ((IRealm) r).addPeerName(peerURI.toString());
+          this.router.getRealmTable().invalidateRoutes();
           found = true;
           break;
         }
@@ -699,6 +703,10 @@ public class MutablePeerTableImpl extends PeerTableImpl implements IMutablePeerT
       if (fqdn != null) {
         predefinedPeerTable.remove(fqdn);
         Peer removedPeer = peerTable.remove(fqdn);
+        router.getRealmTable().invalidateRoutes();
+        if (removedPeer != null) {
+          router.peerRemoved((IPeer) removedPeer);
+        }
         if (peerTableListener != null) {
           peerTableListener.peerRemoved(removedPeer);
         }
@@ -73,6 +73,7 @@ import org.jdiameter.client.api.io.TransportException;
 import org.jdiameter.client.api.parser.IMessageParser;
 import org.jdiameter.common.api.concurrent.IConcurrentFactory;
 import org.jdiameter.common.api.data.ISessionDatasource;
+import org.jdiameter.common.api.statistic.ILatencyStatistic;
 import org.jdiameter.common.api.statistic.IStatisticManager;
 import org.jdiameter.common.api.statistic.IStatisticRecord;
 import org.jdiameter.server.api.IFsmFactory;
@@ -537,7 +538,9 @@ public class PeerImpl extends org.jdiameter.client.impl.controller.PeerImpl impl
       else {
         try {
           router.registerRequestRouteInfo(message);
+          long startTime = isLatencyEnabled() ? System.nanoTime() : 0;
           IMessage answer = (IMessage) matched.getAgent().processRequest(req, matched);
+          recordLatency(ILatencyStatistic.Latency.ListenerTime, message, startTime);
           if (isDuplicateProtection && answer != null) {
             peerTable.saveToDuplicate(message.getDuplicationKey(), answer);
           }
@@ -545,9 +548,7 @@ public class PeerImpl extends org.jdiameter.client.impl.controller.PeerImpl impl
           if (answer != null) {
             sendMessage(answer);
           }
-          if (statistic.isEnabled()) {
-            statistic.getRecordByName(IStatisticRecord.Counters.SysGenResponse.name()).inc();
-          }
+          incCounter(IStatisticRecord.Counters.SysGenResponse);
         }
         catch (Exception exc) {
           // TODO: check this!!
@@ -558,13 +559,40 @@ public class PeerImpl extends org.jdiameter.client.impl.controller.PeerImpl impl
       }
       if (isProcessed) {
         // NOTE: done to inc stat which informs on net work request consumption :)
-        if (statistic.isEnabled()) {
-          statistic.getRecordByName(IStatisticRecord.Counters.NetGenRequest.name()).inc();
-        }
+        incCounter(IStatisticRecord.Counters.NetGenRequest);
       }
       return isProcessed;
     }
 
+    /**
+     * Passes request to application listener and sends its answer, if any.
+     *
+     * @return false if listener failed and error answer was sent instead
+     */
+    private boolean processNetworkRequest(NetworkReqListener listener, IMessage message) {
+      try {
+        router.registerRequestRouteInfo(message);
+        long startTime = isLatencyEnabled() ? System.nanoTime() : 0;
+        IMessage answer = (IMessage) listener.processRequest(message);
+        recordLatency(ILatencyStatistic.Latency.ListenerTime, message, startTime);
+        if (isDuplicateProtection && answer != null) {
+          peerTable.saveToDuplicate(message.getDuplicationKey(), answer);
+        }
+        if (answer != null) {
+          answer.setPeer(message.getPeer());
+          sendMessage(answer);
+        }
+        incCounter(IStatisticRecord.Counters.AppGenResponse);
+        return true;
+      }
+      catch (Exception exc) {
+        // listener failed or its answer could not be sent, the request is answered with an error instead
+        logger.warn("Error during processing message by listener", exc);
+        sendErrorAnswer(message, "Unable to process", ResultCode.UNABLE_TO_COMPLY);
+        return false;
+      }
+    }
+
     /**
      * @param message
      * @return
@@ -577,9 +605,10 @@ public class PeerImpl extends org.jdiameter.client.impl.controller.PeerImpl impl
       IMessage answer = null;
       // this will process if session exists.
       if (!isProcessed) {
-        if (statistic.isEnabled()) {
-          // Decrement what we have incremented in super.receiveMessage(message) since it wasn't processed
-          statistic.getRecordByName(IStatisticRecord.Counters.NetGenRejectedRequest.name()).dec();
+        // Decrement what we have incremented in super.receiveMessage(message) since it wasn't processed
+        IStatisticRecord netGenRejectedRequest = getCounter(IStatisticRecord.Counters.NetGenRejectedRequest);
+        if (netGenRejectedRequest != null) {
+          netGenRejectedRequest.dec();
         }
 
         NetworkReqListener listener = network.getListener(message);
@@ -603,9 +632,7 @@ public class PeerImpl extends org.jdiameter.client.impl.controller.PeerImpl impl
             isProcessed = true;
             try {
               sendMessage(answer);
-              if (statistic.isEnabled()) {
-                statistic.getRecordByName(IStatisticRecord.Counters.SysGenResponse.name()).inc();
-              }
+              incCounter(IStatisticRecord.Counters.SysGenResponse);
             }
             catch (Exception e) {
               // TODO: check this!!
@@ -620,29 +647,22 @@ public class PeerImpl extends org.jdiameter.client.impl.controller.PeerImpl impl
               sendErrorAnswer(message, "Overloaded", ResultCode.TOO_BUSY);
               return true;
             }
-            else {
-              try {
-                router.registerRequestRouteInfo(message);
-                answer = (IMessage) listener.processRequest(message);
-                if (isDuplicateProtection && answer != null) {
-                  peerTable.saveToDuplicate(message.getDuplicationKey(), answer);
-                }
-                isProcessed = true;
-                if (isProcessed && answer != null) {
-                  logger.info("PeerImpl::consumeMessage::answer.setPeer(message.getPeer())");
-                  answer.setPeer(message.getPeer());
-                  sendMessage(answer);
+            else if (listenerExecutor != null) {
+              final NetworkReqListener networkListener = listener;
+              final IMessage request = message;
+              listenerExecutor.execute(message.getSessionId(), new Runnable() {
+                @Override
+                public void run() {
+                  processNetworkRequest(networkListener, request);
                 }
-                if (statistic.isEnabled()) {
-                  statistic.getRecordByName(IStatisticRecord.Counters.AppGenResponse.name()).inc();
-                }
-              }
-              catch (Exception exc) {
-                // TODO: check this!!
-                logger.warn("Error during processing message by listener", exc);
-                sendErrorAnswer(message, "Unable to process", ResultCode.UNABLE_TO_COMPLY);
+              });
+              isProcessed = true;
+            }
+            else {
+              if (!processNetworkRequest(listener, message)) {
                 return true;
               }
+              isProcessed = true;
             }
           }
         }
@@ -656,9 +676,7 @@ public class PeerImpl extends org.jdiameter.client.impl.controller.PeerImpl impl
 
       if (isProcessed) {
         // NOTE: done to inc stat which informs on net work request consumption :)...
-        if (statistic.isEnabled()) {
-          statistic.getRecordByName(IStatisticRecord.Counters.NetGenRequest.name()).inc();
-        }
+        incCounter(IStatisticRecord.Counters.NetGenRequest);
       }
       return isProcessed;
     }
@@ -0,0 +1,86 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2016, TeleStax Inc. and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+package org.jdiameter.server.impl.app.gx;
+
+import java.io.Serializable;
+
+import org.jdiameter.api.gx.ServerGxSession;
+import org.jdiameter.common.api.app.gx.ServerGxSessionState;
+import org.jdiameter.common.impl.data.AppSessionDataOffHeapImpl;
+import org.jdiameter.common.impl.data.OffHeapSessionStore;
+
+/**
+ * Server Gx session data kept in {@link OffHeapSessionStore}.
+ */
+public class ServerGxSessionDataOffHeapImpl extends AppSessionDataOffHeapImpl implements IServerGxSessionData {
+
+  // record layout
+  private static final int FLAGS = 0;
+  private static final int STATE = 1;
+  public static final int DATA_SIZE = 2;
+
+  private static final int STATELESS = 0x01;
+
+  private static final int TCC_TIMER_ID = 1;
+  public static final int REFERENCE_SLOTS = 2;
+
+  private static final ServerGxSessionState[] STATES = ServerGxSessionState.values();
+
+  public ServerGxSessionDataOffHeapImpl(String sessionId, OffHeapSessionStore store) {
+    super(sessionId, store);
+    if (store.getAppSessionIface() != ServerGxSession.class) {
+      throw new IllegalArgumentException("Store holds data of " + store.getAppSessionIface());
+    }
+    if (super.create()) {
+      setStateless(true);
+      setServerGxSessionState(ServerGxSessionState.IDLE);
+    }
+  }
+
+  @Override
+  public boolean isStateless() {
+    return getFlag(FLAGS, STATELESS);
+  }
+
+  @Override
+  public void setStateless(boolean stateless) {
+    setFlag(FLAGS, STATELESS, stateless);
+  }
+
+  @Override
+  public ServerGxSessionState getServerGxSessionState() {
+    return STATES[store.getByte(record(), STATE)];
+  }
+
+  @Override
+  public void setServerGxSessionState(ServerGxSessionState state) {
+    store.putByte(record(), STATE, (byte) state.ordinal());
+  }
+
+  @Override
+  public Serializable getTccTimerId() {
+    return (Serializable) store.getReference(record(), TCC_TIMER_ID);
+  }
+
+  @Override
+  public void setTccTimerId(Serializable tccTimerId) {
+    store.setReference(record(), TCC_TIMER_ID, tccTimerId);
+  }
+}
@@ -97,6 +97,8 @@ public class ServerGxSessionImpl extends AppGxSessionImpl implements ServerGxSes
   protected transient IGxMessageFactory factory = null;
   protected transient IServerGxSessionContext context = null;
   protected transient ServerGxSessionListener listener = null;
+  // given by session factory, also to an instance created again from session data
+  private final transient StateChangeListener<AppSession> factoryStateListener;
 
   protected static final String TCC_TIMER_NAME = "TCC_GxSERVER_TIMER";
 
@@ -120,6 +122,7 @@ public class ServerGxSessionImpl extends AppGxSessionImpl implements ServerGxSes
     listener = lst;
     factory = fct;
     this.sessionData = sessionData;
+    this.factoryStateListener = stLst;
     super.addStateChangeNotification(stLst);
   }
 
@@ -476,6 +479,31 @@ public class ServerGxSessionImpl extends AppGxSessionImpl implements ServerGxSes
     }
   }
 
+  @Override
+  public boolean isEvictable() {
+    // state change listeners added later are kept by this instance only
+    for (StateChangeListener stateListener : stateListeners) {
+      if (stateListener != factoryStateListener) {
+        return false;
+      }
+    }
+    return this.sessionData.getTccTimerId() == null && super.isEvictable();
+  }
+
+  @Override
+  public boolean evict(Runnable eviction) {
+    // instance processing an event is not idle
+    if (!sendAndStateLock.tryLock()) {
+      return false;
+    }
+    try {
+      return super.evict(eviction);
+    }
+    finally {
+      sendAndStateLock.unlock();
+    }
+  }
+
   protected void send(Event.Type type, AppRequestEvent request, AppAnswerEvent answer) throws InternalException {
     try {
       sendAndStateLock.lock();
@@ -93,6 +93,44 @@ public class PeerFSMImpl extends org.jdiameter.client.impl.fsm.PeerFSMImpl imple
     return true;
   }
 
+  /**
+   * Answers a DPR, then disconnects as asked by its Disconnect-Cause.
+   */
+  private abstract class SendDpa extends PeerIo {
+
+    private final IMessage dpr;
+
+    SendDpa(IMessage dpr) {
+      this.dpr = dpr;
+    }
+
+    @Override
+    protected void execute() throws Exception {
+      int code = context.processDprMessage(dpr);
+      context.sendDpaMessage(dpr, code, null);
+    }
+
+    @Override
+    protected void done() {
+      try {
+        Avp discCause = dpr.getAvps().getAvp(Avp.DISCONNECT_CAUSE);
+        disconnect(discCause != null && discCause.getInteger32() == DisconnectCause.REBOOTING);
+      }
+      catch (AvpDataException ade) {
+        logger.warn("Disconnect cause is bad.", ade);
+        disconnect(false);
+      }
+    }
+
+    @Override
+    protected void failed(Throwable e) {
+      logger.debug("Can not send DPA", e);
+      done();
+    }
+
+    protected abstract void disconnect(boolean willReconnect);
+  }
+
   @Override
   protected State[] getStates() {
     if (states == null) {
@@ -111,43 +149,56 @@ public class PeerFSMImpl extends org.jdiameter.client.impl.fsm.PeerFSMImpl imple
                   doEndConnection();
                   break;
                 case TIMEOUT_EVENT:
-                  try {
-                    context.sendDwrMessage();
-                    setTimer(DWA_TIMEOUT);
-                    if (watchdogSent) {
-                      switchToNextState(SUSPECT);
+                  io(new PeerIo() {
+                    @Override
+                    protected void execute() throws Exception {
+                      context.sendDwrMessage();
                     }
-                    else {
-                      watchdogSent = true;
+
+                    @Override
+                    protected void done() {
+                      setTimer(DWA_TIMEOUT);
+                      if (watchdogSent) {
+                        switchToNextState(SUSPECT);
+                      }
+                      else {
+                        watchdogSent = true;
+                      }
                     }
-                  }
-                  catch (Throwable e) {
-                    logger.debug("Can not send DWR", e);
-                    doDisconnect();
-                    doEndConnection();
-                  }
+
+                    @Override
+                    protected void failed(Throwable e) {
+                      logger.debug("Can not send DWR", e);
+                      doDisconnect();
+                      doEndConnection();
+                    }
+                  });
                   break;
                 case STOP_EVENT:
-                  try {
-                    if (event.getData() == null) {
-                      context.sendDprMessage(DisconnectCause.BUSY);
+                  final Integer disconnectCause = (Integer) event.getData();
+                  io(new PeerIo() {
+                    @Override
+                    protected void execute() throws Exception {
+                      context.sendDprMessage(disconnectCause == null ? DisconnectCause.BUSY : disconnectCause);
                     }
-                    else {
-                      Integer disconnectCause = (Integer) event.getData();
-                      context.sendDprMessage(disconnectCause);
+
+                    @Override
+                    protected void done() {
+                      setTimer(DPA_TIMEOUT);
+                      switchToNextState(STOPPING);
                     }
-                    setTimer(DPA_TIMEOUT);
-                    switchToNextState(STOPPING);
-                  }
-                  catch (Throwable e) {
-                    logger.debug("Can not send DPR", e);
-                    doDisconnect();
-                    switchToNextState(DOWN);
-                  }
+
+                    @Override
+                    protected void failed(Throwable e) {
+                      logger.debug("Can not send DPR", e);
+                      doDisconnect();
+                      switchToNextState(DOWN);
+                    }
+                  });
                   break;
                 case RECEIVE_MSG_EVENT:
                   setInActiveTimer();
-                  context.receiveMessage(message(event));
+                  receive(message(event));
                   break;
                 case CEA_EVENT:
                   setInActiveTimer();
@@ -159,67 +210,71 @@ public class PeerFSMImpl extends org.jdiameter.client.impl.fsm.PeerFSMImpl imple
                 case CER_EVENT:
                   // setInActiveTimer();
                   logger.debug("Rejecting CER in OKAY state. Answering with UNABLE_TO_COMPLY (5012)");
-                  try {
-                    context.sendCeaMessage(ResultCode.UNABLE_TO_COMPLY, message(event), "Unable to receive CER in OPEN state.");
-                  }
-                  catch (Exception e) {
-                    logger.debug("Failed to send CEA.", e);
-                    doDisconnect();  // !
-                    doEndConnection();
-                  }
-                  break;
-                case DPR_EVENT:
-                  try {
-                    int code = context.processDprMessage((IMessage) event.getData());
-                    context.sendDpaMessage(message(event), code, null);
-                  }
-                  catch (Throwable e) {
-                    logger.debug("Can not send DPA", e);
-                  }
-                  IMessage message = (IMessage) event.getData();
-                  try {
-                    Avp discCause = message.getAvps().getAvp(Avp.DISCONNECT_CAUSE);
-                    boolean willReconnect = (discCause != null) ? (discCause.getInteger32() == DisconnectCause.REBOOTING) : false;
-                    if (willReconnect) {
-                      doDisconnect();
+                  final IMessage cer = message(event);
+                  io(new PeerIo() {
+                    @Override
+                    protected void execute() throws Exception {
+                      context.sendCeaMessage(ResultCode.UNABLE_TO_COMPLY, cer, "Unable to receive CER in OPEN state.");
+                    }
+
+                    @Override
+                    protected void failed(Throwable e) {
+                      logger.debug("Failed to send CEA.", e);
+                      doDisconnect();  // !
                       doEndConnection();
                     }
-                    else {
+                  });
+                  break;
+                case DPR_EVENT:
+                  io(new SendDpa(message(event)) {
+                    @Override
+                    protected void disconnect(boolean willReconnect) {
                       doDisconnect();
-                      switchToNextState(DOWN);
+                      if (willReconnect) {
+                        doEndConnection();
+                      }
+                      else {
+                        switchToNextState(DOWN);
+                      }
                     }
-                  }
-                  catch (AvpDataException ade) {
-                    logger.warn("Disconnect cause is bad.", ade);
-                    doDisconnect();
-                    switchToNextState(DOWN);
-                  }
-
+                  });
                   break;
                 case DWR_EVENT:
                   setInActiveTimer();
-                  try {
-                    context.sendDwaMessage(message(event), ResultCode.SUCCESS, null);
-                  }
-                  catch (Throwable e) {
-                    logger.debug("Can not send DWA, reconnecting", e);
-                    doDisconnect();
-                    doEndConnection();
-                  }
+                  final IMessage dwr = message(event);
+                  io(new PeerIo() {
+                    @Override
+                    protected void execute() throws Exception {
+                      context.sendDwaMessage(dwr, ResultCode.SUCCESS, null);
+                    }
+
+                    @Override
+                    protected void failed(Throwable e) {
+                      logger.debug("Can not send DWA, reconnecting", e);
+                      doDisconnect();
+                      doEndConnection();
+                    }
+                  });
                   break;
                 case DWA_EVENT:
                   setInActiveTimer();
                   watchdogSent = false;
                   break;
                 case SEND_MSG_EVENT:
-                  try {
-                    context.sendMessage(message(event));
-                  }
-                  catch (Throwable e) {
-                    logger.debug("Can not send message", e);
-                    doDisconnect();
-                    doEndConnection();
-                  }
+                  final IMessage message = message(event);
+                  write(new PeerIo() {
+                    @Override
+                    protected void execute() throws Exception {
+                      context.sendMessage(message);
+                    }
+
+                    @Override
+                    protected void failed(Throwable e) {
+                      logger.debug("Can not send message", e);
+                      doDisconnect();
+                      doEndConnection();
+                    }
+                  });
                   break;
                 default:
                   logger.debug("Unknown event type {} in state {}", type(event), state);
@@ -240,22 +295,26 @@ public class PeerFSMImpl extends org.jdiameter.client.impl.fsm.PeerFSMImpl imple
                   doEndConnection();
                   break;
                 case STOP_EVENT:
-                  try {
-                    if (event.getData() == null) {
-                      context.sendDprMessage(DisconnectCause.REBOOTING);
+                  final Integer disconnectCause = (Integer) event.getData();
+                  io(new PeerIo() {
+                    @Override
+                    protected void execute() throws Exception {
+                      context.sendDprMessage(disconnectCause == null ? DisconnectCause.REBOOTING : disconnectCause);
+                    }
+
+                    @Override
+                    protected void done() {
+                      setInActiveTimer();
+                      switchToNextState(STOPPING);
                     }
-                    else {
-                      Integer disconnectCause = (Integer) event.getData();
-                      context.sendDprMessage(disconnectCause);
+
+                    @Override
+                    protected void failed(Throwable e) {
+                      logger.debug("Can not send DPR", e);
+                      doDisconnect();
+                      switchToNextState(DOWN);
                     }
-                    setInActiveTimer();
-                    switchToNextState(STOPPING);
-                  }
-                  catch (Throwable e) {
-                    logger.debug("Can not send DPR", e);
-                    doDisconnect();
-                    switchToNextState(DOWN);
-                  }
+                  });
                   break;
                 case CER_EVENT:
                 case CEA_EVENT:
@@ -264,45 +323,44 @@ public class PeerFSMImpl extends org.jdiameter.client.impl.fsm.PeerFSMImpl imple
                   switchToNextState(OKAY);
                   break;
                 case DPR_EVENT:
-                  try {
-                    int code = context.processDprMessage((IMessage) event.getData());
-                    context.sendDpaMessage(message(event), code, null);
-                  }
-                  catch (Throwable e) {
-                    logger.debug("Can not send DPA", e);
-                  }
-                  IMessage message = (IMessage) event.getData();
-                  try {
-                    if (message.getAvps().getAvp(Avp.DISCONNECT_CAUSE) != null &&
-                        message.getAvps().getAvp(Avp.DISCONNECT_CAUSE).getInteger32() == DisconnectCause.REBOOTING) {
+                  io(new SendDpa(message(event)) {
+                    @Override
+                    protected void disconnect(boolean willReconnect) {
                       doDisconnect();
-                      doEndConnection();
+                      if (willReconnect) {
+                        doEndConnection();
+                      }
+                      else {
+                        switchToNextState(DOWN);
+                      }
+                    }
+                  });
+                  break;
+                case DWR_EVENT:
+                  final IMessage dwr = message(event);
+                  io(new PeerIo() {
+                    @Override
+                    protected void execute() throws Exception {
+                      int code = context.processDwrMessage(dwr);
+                      context.sendDwaMessage(dwr, code, null);
                     }
-                    else {
+
+                    @Override
+                    protected void done() {
+                      switchToNextState(OKAY);
+                    }
+
+                    @Override
+                    protected void failed(Throwable e) {
+                      logger.debug("Can not send DWA", e);
                       doDisconnect();
                       switchToNextState(DOWN);
                     }
-                  } catch (AvpDataException e1) {
-                    logger.warn("Disconnect cause is bad.", e1);
-                    doDisconnect();
-                    switchToNextState(DOWN);
-                  }
-                  break;
-                case DWR_EVENT:
-                  try {
-                    int code = context.processDwrMessage((IMessage) event.getData());
-                    context.sendDwaMessage(message(event), code, null);
-                    switchToNextState(OKAY);
-                  }
-                  catch (Throwable e) {
-                    logger.debug("Can not send DWA", e);
-                    doDisconnect();
-                    switchToNextState(DOWN);
-                  }
+                  });
                   break;
                 case RECEIVE_MSG_EVENT:
                   clearTimer();
-                  context.receiveMessage(message(event));
+                  receive(message(event));
                   switchToNextState(OKAY);
                   break;
                 case SEND_MSG_EVENT: // todo buffering
@@ -332,44 +390,57 @@ public class PeerFSMImpl extends org.jdiameter.client.impl.fsm.PeerFSMImpl imple
             public boolean processEvent(StateEvent event) {
               switch (type(event)) {
                 case START_EVENT:
-                  try {
-                    context.createStatistics();
-                    if (!context.isConnected()) {
-                      context.connect();
+                  io(new PeerIo() {
+                    @Override
+                    protected void execute() throws Exception {
+                      context.createStatistics();
+                      if (!context.isConnected()) {
+                        context.connect();
+                      }
+                      context.sendCerMessage();
                     }
-                    context.sendCerMessage();
-                    setTimer(CEA_TIMEOUT);
-                    switchToNextState(INITIAL);
-                  }
-                  catch (Throwable e) {
-                    logger.debug("Connect error", e);
-                    doEndConnection();
-                  }
+
+                    @Override
+                    protected void done() {
+                      setTimer(CEA_TIMEOUT);
+                      switchToNextState(INITIAL);
+                    }
+
+                    @Override
+                    protected void failed(Throwable e) {
+                      logger.debug("Connect error", e);
+                      doEndConnection();
+                    }
+                  });
                   break;
                 case CER_EVENT:
                   context.createStatistics();
-                  int resultCode = context.processCerMessage(key(event), message(event));
-                  if (resultCode == ResultCode.SUCCESS) {
-                    try {
-                      context.sendCeaMessage(resultCode, message(event), null);
-                      switchToNextState(OKAY);
+                  final IMessage cer = message(event);
+                  final int resultCode = context.processCerMessage(key(event), cer);
+                  io(new PeerIo() {
+                    @Override
+                    protected void execute() throws Exception {
+                      context.sendCeaMessage(resultCode, cer, null);
+                    }
+
+                    @Override
+                    protected void done() {
+                      if (resultCode == ResultCode.SUCCESS) {
+                        switchToNextState(OKAY);
+                      }
+                      else {
+                        doDisconnect(); // !
+                        doEndConnection();
+                      }
                     }
-                    catch (Exception e) {
+
+                    @Override
+                    protected void failed(Throwable e) {
                       logger.debug("Failed to send CEA.", e);
                       doDisconnect();  // !
                       doEndConnection();
                     }
-                  }
-                  else {
-                    try {
-                      context.sendCeaMessage(resultCode, message(event),  null);
-                    }
-                    catch (Exception e) {
-                      logger.debug("Failed to send CEA.", e);
-                    }
-                    doDisconnect(); // !
-                    doEndConnection();
-                  }
+                  });
                   break;
                 case SEND_MSG_EVENT:
                   // todo buffering
@@ -391,24 +462,38 @@ public class PeerFSMImpl extends org.jdiameter.client.impl.fsm.PeerFSMImpl imple
             public boolean processEvent(StateEvent event) {
               switch (type(event)) {
                 case CONNECT_EVENT:
-                  try {
-                    context.sendCerMessage();
-                    setTimer(CEA_TIMEOUT);
-                    switchToNextState(INITIAL);
-                  }
-                  catch (Throwable e) {
-                    logger.debug("Can not send CER", e);
-                    setTimer(REC_TIMEOUT);
-                  }
+                  io(new PeerIo() {
+                    @Override
+                    protected void execute() throws Exception {
+                      context.sendCerMessage();
+                    }
+
+                    @Override
+                    protected void done() {
+                      setTimer(CEA_TIMEOUT);
+                      switchToNextState(INITIAL);
+                    }
+
+                    @Override
+                    protected void failed(Throwable e) {
+                      logger.debug("Can not send CER", e);
+                      setTimer(REC_TIMEOUT);
+                    }
+                  });
                   break;
                 case TIMEOUT_EVENT:
-                  try {
-                    context.connect();
-                  }
-                  catch (Exception e) {
-                    logger.debug("Can not connect to remote peer", e);
-                    setTimer(REC_TIMEOUT);
-                  }
+                  io(new PeerIo() {
+                    @Override
+                    protected void execute() throws Exception {
+                      context.connect();
+                    }
+
+                    @Override
+                    protected void failed(Throwable e) {
+                      logger.debug("Can not connect to remote peer", e);
+                      setTimer(REC_TIMEOUT);
+                    }
+                  });
                   break;
                 case STOP_EVENT:
                   setTimer(0);
@@ -462,15 +547,25 @@ public class PeerFSMImpl extends org.jdiameter.client.impl.fsm.PeerFSMImpl imple
                 case CER_EVENT:
                   int resultCode = context.processCerMessage(key(event), message(event));
                   if (resultCode == ResultCode.SUCCESS) {
-                    try {
-                      context.sendCeaMessage(resultCode, message(event), null);
-                      switchToNextState(OKAY); // if other connection is win
-                    }
-                    catch (Exception e) {
-                      logger.debug("Can not send CEA", e);
-                      doDisconnect();
-                      doEndConnection();
-                    }
+                    final IMessage cer = message(event);
+                    io(new PeerIo() {
+                      @Override
+                      protected void execute() throws Exception {
+                        context.sendCeaMessage(ResultCode.SUCCESS, cer, null);
+                      }
+
+                      @Override
+                      protected void done() {
+                        switchToNextState(OKAY); // if other connection is win
+                      }
+
+                      @Override
+                      protected void failed(Throwable e) {
+                        logger.debug("Can not send CEA", e);
+                        doDisconnect();
+                        doEndConnection();
+                      }
+                    });
                   }
                   else if (resultCode == -1 || resultCode == ResultCode.NO_COMMON_APPLICATION) {
                     doDisconnect();
@@ -496,7 +591,7 @@ public class PeerFSMImpl extends org.jdiameter.client.impl.fsm.PeerFSMImpl imple
                   switchToNextState(DOWN);
                   break;
                 case RECEIVE_MSG_EVENT:
-                  context.receiveMessage(message(event));
+                  receive(message(event));
                   break;
                 case SEND_MSG_EVENT:
                   throw new IllegalStateException("Stack now is stopping");
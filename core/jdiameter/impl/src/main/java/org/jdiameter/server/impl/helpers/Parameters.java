@@ -92,6 +92,14 @@ public class Parameters extends org.jdiameter.client.impl.helpers.Parameters {
    *  Realm EntryExpTime
    */
   public static final Parameters RealmEntryExpTime = new Parameters("RealmEntryExpTime", Long.class, 0);
+  /**
+   *  Realm EntryLatencyDecayTime, time in milliseconds over which answer latency and error rate of peers are averaged
+   */
+  public static final Parameters RealmEntryLatencyDecayTime = new Parameters("RealmEntryLatencyDecayTime", Long.class, 10000L);
+  /**
+   *  Realm EntryErrorPenalty, factor by which error rate of peers raises their cost
+   */
+  public static final Parameters RealmEntryErrorPenalty = new Parameters("RealmEntryErrorPenalty", Double.class, 10.0);
   /**
    * Overload monitor property
    */
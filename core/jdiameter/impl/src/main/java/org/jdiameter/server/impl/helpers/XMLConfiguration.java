@@ -70,6 +70,7 @@ import static org.jdiameter.client.impl.helpers.Parameters.Concurrent;
 import static org.jdiameter.client.impl.helpers.Parameters.ConcurrentEntityDescription;
 import static org.jdiameter.client.impl.helpers.Parameters.ConcurrentEntityName;
 import static org.jdiameter.client.impl.helpers.Parameters.ConcurrentEntityPoolSize;
+import static org.jdiameter.client.impl.helpers.Parameters.ConcurrentEntitySessionAffinity;
 import static org.jdiameter.client.impl.helpers.Parameters.Dictionary;
 import static org.jdiameter.client.impl.helpers.Parameters.DictionaryClass;
 import static org.jdiameter.client.impl.helpers.Parameters.DictionaryEnabled;
@@ -83,7 +84,13 @@ import static org.jdiameter.client.impl.helpers.Parameters.KDManager;
 import static org.jdiameter.client.impl.helpers.Parameters.KDPwd;
 import static org.jdiameter.client.impl.helpers.Parameters.KDStore;
 import static org.jdiameter.client.impl.helpers.Parameters.KeyData;
+import static org.jdiameter.client.impl.helpers.Parameters.MaxMessageSize;
 import static org.jdiameter.client.impl.helpers.Parameters.MessageTimeOut;
+import static org.jdiameter.client.impl.helpers.Parameters.MessageTimerWheel;
+import static org.jdiameter.client.impl.helpers.Parameters.NettyHandlerThreadCount;
+import static org.jdiameter.client.impl.helpers.Parameters.NettyIoThreadCount;
+import static org.jdiameter.client.impl.helpers.Parameters.NettyUseEpoll;
+import static org.jdiameter.client.impl.helpers.Parameters.OffHeapSessionIdleTimeout;
 import static org.jdiameter.client.impl.helpers.Parameters.OwnDiameterURI;
 import static org.jdiameter.client.impl.helpers.Parameters.OwnFirmwareRevision;
 import static org.jdiameter.client.impl.helpers.Parameters.OwnIPAddress;
@@ -115,6 +122,7 @@ import static org.jdiameter.client.impl.helpers.Parameters.StatisticsEnabled;
 import static org.jdiameter.client.impl.helpers.Parameters.StatisticsLoggerDelay;
 import static org.jdiameter.client.impl.helpers.Parameters.StatisticsLoggerPause;
 import static org.jdiameter.client.impl.helpers.Parameters.StopTimeOut;
+import static org.jdiameter.client.impl.helpers.Parameters.TCPSelectorThreadCount;
 import static org.jdiameter.client.impl.helpers.Parameters.TDFile;
 import static org.jdiameter.client.impl.helpers.Parameters.TDManager;
 import static org.jdiameter.client.impl.helpers.Parameters.TDPwd;
@@ -122,9 +130,14 @@ import static org.jdiameter.client.impl.helpers.Parameters.TDStore;
 import static org.jdiameter.client.impl.helpers.Parameters.ThreadPool;
 import static org.jdiameter.client.impl.helpers.Parameters.ThreadPoolPriority;
 import static org.jdiameter.client.impl.helpers.Parameters.ThreadPoolSize;
+import static org.jdiameter.client.impl.helpers.Parameters.TimerWheelSize;
+import static org.jdiameter.client.impl.helpers.Parameters.TimerWheelTickDuration;
 import static org.jdiameter.client.impl.helpers.Parameters.TrustData;
 import static org.jdiameter.client.impl.helpers.Parameters.UseUriAsFqdn;
+import static org.jdiameter.client.impl.helpers.Parameters.UseVirtualThreads;
 import static org.jdiameter.client.impl.helpers.Parameters.VendorId;
+import static org.jdiameter.client.impl.helpers.Parameters.WriteBatchDelay;
+import static org.jdiameter.client.impl.helpers.Parameters.WriteBatchSize;
 import static org.jdiameter.server.impl.helpers.ExtensionPoint.InternalNetWork;
 import static org.jdiameter.server.impl.helpers.ExtensionPoint.InternalNetworkGuard;
 import static org.jdiameter.server.impl.helpers.ExtensionPoint.InternalOverloadManager;
@@ -139,8 +152,10 @@ import static org.jdiameter.server.impl.helpers.Parameters.OverloadEntrylowThres
 import static org.jdiameter.server.impl.helpers.Parameters.OverloadMonitor;
 import static org.jdiameter.server.impl.helpers.Parameters.OwnIPAddresses;
 import static org.jdiameter.server.impl.helpers.Parameters.PeerAttemptConnection;
+import static org.jdiameter.server.impl.helpers.Parameters.RealmEntryErrorPenalty;
 import static org.jdiameter.server.impl.helpers.Parameters.RealmEntryExpTime;
 import static org.jdiameter.server.impl.helpers.Parameters.RealmEntryIsDynamic;
+import static org.jdiameter.server.impl.helpers.Parameters.RealmEntryLatencyDecayTime;
 import static org.jdiameter.server.impl.helpers.Parameters.RealmHosts;
 import static org.jdiameter.server.impl.helpers.Parameters.RealmLocalAction;
 import static org.jdiameter.server.impl.helpers.Parameters.RealmName;
@@ -373,6 +388,42 @@ public class XMLConfiguration extends EmptyConfiguration {
       else if (nodeName.equals("PeerFSMThreadCount")) {
         add(PeerFSMThreadCount, getIntValue(c.item(i)));
       }
+      else if (nodeName.equals("UseVirtualThreads")) {
+        add(UseVirtualThreads, Boolean.valueOf(getValue(c.item(i))));
+      }
+      else if (nodeName.equals("OffHeapSessionIdleTimeout")) {
+        add(OffHeapSessionIdleTimeout, getLongValue(c.item(i)));
+      }
+      else if (nodeName.equals("TCPSelectorThreadCount")) {
+        add(TCPSelectorThreadCount, getIntValue(c.item(i)));
+      }
+      else if (nodeName.equals("NettyIoThreadCount")) {
+        add(NettyIoThreadCount, getIntValue(c.item(i)));
+      }
+      else if (nodeName.equals("NettyHandlerThreadCount")) {
+        add(NettyHandlerThreadCount, getIntValue(c.item(i)));
+      }
+      else if (nodeName.equals("NettyUseEpoll")) {
+        add(NettyUseEpoll, Boolean.valueOf(getValue(c.item(i))));
+      }
+      else if (nodeName.equals("WriteBatchSize")) {
+        add(WriteBatchSize, getIntValue(c.item(i)));
+      }
+      else if (nodeName.equals("WriteBatchDelay")) {
+        add(WriteBatchDelay, getLongValue(c.item(i)));
+      }
+      else if (nodeName.equals("MaxMessageSize")) {
+        add(MaxMessageSize, getIntValue(c.item(i)));
+      }
+      else if (nodeName.equals("TimerWheelTickDuration")) {
+        add(TimerWheelTickDuration, getIntValue(c.item(i)));
+      }
+      else if (nodeName.equals("TimerWheelSize")) {
+        add(TimerWheelSize, getIntValue(c.item(i)));
+      }
+      else if (nodeName.equals("MessageTimerWheel")) {
+        add(MessageTimerWheel, Boolean.valueOf(getValue(c.item(i))));
+      }
       else if (nodeName.equals("Statistics")) {
         addStatisticLogger(Statistics, c.item(i));
       }
@@ -442,6 +493,10 @@ public class XMLConfiguration extends EmptyConfiguration {
       String size = node.getAttributes().getNamedItem("size").getNodeValue();
       cfg.add(ConcurrentEntityPoolSize, Integer.parseInt(size));
     }
+    if (node.getAttributes().getNamedItem("session_affinity") != null) {
+      String affinity = node.getAttributes().getNamedItem("session_affinity").getNodeValue();
+      cfg.add(ConcurrentEntitySessionAffinity, Boolean.valueOf(affinity));
+    }
     items.add(cfg);
   }
 
@@ -696,6 +751,12 @@ public class XMLConfiguration extends EmptyConfiguration {
       add(RealmLocalAction,    getAttrValue(node, "local_action")).
       add(RealmEntryIsDynamic, Boolean.valueOf(getAttrValue(node, "dynamic"))).
       add(RealmEntryExpTime,   Long.valueOf(getAttrValue(node, "exp_time")));
+    if (node.getAttributes().getNamedItem("latency_decay_time") != null) {
+      realmEntry.add(RealmEntryLatencyDecayTime, Long.valueOf(getAttrValue(node, "latency_decay_time")));
+    }
+    if (node.getAttributes().getNamedItem("error_penalty") != null) {
+      realmEntry.add(RealmEntryErrorPenalty, Double.valueOf(getAttrValue(node, "error_penalty")));
+    }
 
     NodeList childNodes = node.getChildNodes();
     for (int i = 0; i < childNodes.getLength(); i++) {
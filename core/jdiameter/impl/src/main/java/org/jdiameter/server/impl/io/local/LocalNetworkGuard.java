@@ -0,0 +1,100 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2016, TeleStax Inc. and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+package org.jdiameter.server.impl.io.local;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.jdiameter.client.api.io.TransportException;
+import org.jdiameter.client.api.parser.IMessageParser;
+import org.jdiameter.client.impl.transport.local.LocalConnection;
+import org.jdiameter.client.impl.transport.local.LocalTransport;
+import org.jdiameter.common.api.concurrent.IConcurrentFactory;
+import org.jdiameter.server.api.io.INetworkConnectionListener;
+import org.jdiameter.server.api.io.INetworkGuard;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Network guard accepting in-process connections on the configured addresses and port.
+ */
+public class LocalNetworkGuard implements INetworkGuard, LocalTransport.Acceptor {
+
+  private static final Logger logger = LoggerFactory.getLogger(LocalNetworkGuard.class);
+
+  protected IConcurrentFactory concurrentFactory;
+  protected IMessageParser parser;
+  protected final List<InetSocketAddress> boundAddresses = new ArrayList<InetSocketAddress>();
+  protected final CopyOnWriteArrayList<INetworkConnectionListener> listeners = new CopyOnWriteArrayList<INetworkConnectionListener>();
+
+  public LocalNetworkGuard(InetAddress[] inetAddresses, int port, IConcurrentFactory concurrentFactory, IMessageParser parser)
+      throws TransportException {
+    this.concurrentFactory = concurrentFactory;
+    this.parser = parser;
+    try {
+      for (InetAddress address : inetAddresses) {
+        InetSocketAddress bindAddress = new InetSocketAddress(address, port);
+        LocalTransport.bind(bindAddress, this);
+        boundAddresses.add(bindAddress);
+        logger.info("Accepting local connections on {}", bindAddress);
+      }
+    }
+    catch (TransportException e) {
+      destroy();
+      throw e;
+    }
+  }
+
+  @Override
+  public LocalConnection accept(InetSocketAddress localAddress, InetSocketAddress remoteAddress) {
+    logger.info("Open incomming local connection from {}", remoteAddress);
+    LocalConnection connection = new LocalConnection(concurrentFactory, parser, localAddress, remoteAddress);
+    for (INetworkConnectionListener listener : listeners) {
+      listener.newNetworkConnection(connection);
+    }
+    return connection;
+  }
+
+  @Override
+  public void addListener(INetworkConnectionListener listener) {
+    listeners.addIfAbsent(listener);
+  }
+
+  @Override
+  public void remListener(INetworkConnectionListener listener) {
+    listeners.remove(listener);
+  }
+
+  @Override
+  public void destroy() {
+    for (InetSocketAddress address : boundAddresses) {
+      LocalTransport.unbind(address, this);
+    }
+    boundAddresses.clear();
+  }
+
+  @Override
+  public String toString() {
+    return "LocalNetworkGuard:" + boundAddresses;
+  }
+}
@@ -0,0 +1,69 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2016, TeleStax Inc. and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+package org.jdiameter.server.impl.io.local;
+
+import java.net.InetAddress;
+
+import org.jdiameter.api.Configuration;
+import org.jdiameter.client.api.io.TransportException;
+import org.jdiameter.client.api.parser.IMessageParser;
+import org.jdiameter.common.api.concurrent.IConcurrentFactory;
+import org.jdiameter.server.api.io.INetworkConnectionListener;
+import org.jdiameter.server.api.io.INetworkGuard;
+import org.jdiameter.server.api.io.ITransportLayerFactory;
+
+/**
+ * Server side of the in-process transport, it also creates {@link LocalNetworkGuard}s for incoming connections.
+ * Selected with
+ * <code>&lt;TransportFactory value="org.jdiameter.server.impl.io.local.LocalTransportLayerFactory"/&gt;</code>
+ * in the <code>Extensions</code> section of the configuration.
+ */
+public class LocalTransportLayerFactory extends org.jdiameter.client.impl.transport.local.LocalTransportLayerFactory
+    implements ITransportLayerFactory {
+
+  private final IConcurrentFactory concurrentFactory;
+
+  public LocalTransportLayerFactory(Configuration conf, IConcurrentFactory concurrentFactory, IMessageParser parser) {
+    super(conf, parser);
+    this.concurrentFactory = concurrentFactory;
+  }
+
+  @Override
+  public INetworkGuard createNetworkGuard(InetAddress inetAddress, int port) throws TransportException {
+    return createNetworkGuard(new InetAddress[] {inetAddress}, port);
+  }
+
+  @Override
+  public INetworkGuard createNetworkGuard(InetAddress inetAddress, int port, INetworkConnectionListener listener) throws TransportException {
+    return createNetworkGuard(new InetAddress[] {inetAddress}, port, listener);
+  }
+
+  @Override
+  public INetworkGuard createNetworkGuard(InetAddress[] inetAddress, int port) throws TransportException {
+    return new LocalNetworkGuard(inetAddress, port, concurrentFactory, parser);
+  }
+
+  @Override
+  public INetworkGuard createNetworkGuard(InetAddress[] inetAddress, int port, INetworkConnectionListener listener) throws TransportException {
+    INetworkGuard guard = createNetworkGuard(inetAddress, port);
+    guard.addListener(listener);
+    return guard;
+  }
+}
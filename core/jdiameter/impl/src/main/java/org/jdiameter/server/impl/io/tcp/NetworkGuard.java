@@ -62,6 +62,7 @@ import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 
+import org.jdiameter.api.Configuration;
 import org.jdiameter.client.api.parser.IMessageParser;
 import org.jdiameter.client.impl.transport.tcp.TCPClientConnection;
 import org.jdiameter.common.api.concurrent.DummyConcurrentFactory;
@@ -84,6 +85,7 @@ public class NetworkGuard implements INetworkGuard {
 
   protected IMessageParser parser;
   protected IConcurrentFactory concurrentFactory;
+  protected Configuration config;
   protected int port;
   protected long bindDelay;
   protected CopyOnWriteArrayList<INetworkConnectionListener> listeners = new CopyOnWriteArrayList<INetworkConnectionListener>();
@@ -114,7 +116,8 @@ public class NetworkGuard implements INetworkGuard {
     this.parser = parser;
     this.concurrentFactory = concurrentFactory == null ? new DummyConcurrentFactory() : concurrentFactory;
     //this.thread = this.concurrentFactory.getThread("NetworkGuard", this);
-    this.bindDelay = data.getConfiguration().getLongValue(BindDelay.ordinal(), (Long) BindDelay.defValue());
+    this.config = data.getConfiguration();
+    this.bindDelay = config.getLongValue(BindDelay.ordinal(), (Long) BindDelay.defValue());
 
     try {
       for (int addrIdx = 0; addrIdx < inetAddress.length; addrIdx++) {
@@ -222,7 +225,7 @@ public class NetworkGuard implements INetworkGuard {
                 try {
                   Socket s = serverSocket.accept();
                   logger.info("Open incomming connection {}", s);
-                  TCPClientConnection client = new TCPClientConnection(null, concurrentFactory, s, parser,
+                  TCPClientConnection client = new TCPClientConnection(config, concurrentFactory, s, parser,
                       null);
                   // PCB added logging
                   logger.debug("Finished initialising TCPClientConnection for {}", s);
@@ -289,4 +292,4 @@ public class NetworkGuard implements INetworkGuard {
     }
 
   }
-}
\ No newline at end of file
+}
\ No newline at end of file
@@ -30,6 +30,7 @@ import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 
 import org.jdiameter.client.api.parser.IMessageParser;
+import org.jdiameter.client.impl.transport.NettyTransportRuntime;
 import org.jdiameter.client.impl.transport.tcp.netty.TCPClientConnection;
 import org.jdiameter.common.api.concurrent.IConcurrentFactory;
 import org.jdiameter.server.api.IMetaData;
@@ -40,14 +41,15 @@ import org.slf4j.LoggerFactory;
 
 import io.netty.bootstrap.ServerBootstrap;
 import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelInboundHandlerAdapter;
 import io.netty.channel.ChannelInitializer;
 import io.netty.channel.ChannelOption;
-import io.netty.channel.EventLoopGroup;
-import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.group.ChannelGroup;
+import io.netty.channel.group.DefaultChannelGroup;
 import io.netty.channel.socket.SocketChannel;
-import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.util.concurrent.GlobalEventExecutor;
 
 /**
  * TCP implementation of {@link org.jdiameter.server.api.io.INetworkGuard}.
@@ -64,9 +66,10 @@ public class NetworkGuard implements INetworkGuard {
   protected InetAddress[] localAddresses;
   protected long bindDelay;
 
-  protected final EventLoopGroup bossGroup = new NioEventLoopGroup();
-  protected final EventLoopGroup workerGroup = new NioEventLoopGroup();
+  protected NettyTransportRuntime runtime;
   protected List<Channel> channels = new CopyOnWriteArrayList<Channel>();
+  // accepted connections, closed with the guard as the event loops they run on outlive it
+  protected ChannelGroup acceptedChannels = new DefaultChannelGroup(GlobalEventExecutor.INSTANCE);
 
   protected final ScheduledExecutorService binderExecutor = Executors.newSingleThreadScheduledExecutor();
 
@@ -85,7 +88,7 @@ public class NetworkGuard implements INetworkGuard {
   private void bind(InetSocketAddress localAddress) {
     logger.debug("Binding to socket [{}]", localAddress);
     ServerBootstrap bootstrap = new ServerBootstrap();
-    bootstrap.group(bossGroup, workerGroup).channel(NioServerSocketChannel.class)
+    bootstrap.group(runtime.getIoGroup()).channel(runtime.getServerChannelClass())
         .childHandler(new ChannelInitializer<SocketChannel>() {
           @Override
           public void initChannel(SocketChannel ch) throws Exception {
@@ -112,8 +115,9 @@ public class NetworkGuard implements INetworkGuard {
     @Override
     public void channelActive(final ChannelHandlerContext ctx) {
       logger.debug("Received connection on socket [{}] from [{}]", ctx.channel().localAddress(), ctx.channel().remoteAddress());
+      acceptedChannels.add(ctx.channel());
 
-      TCPClientConnection client = new TCPClientConnection(ctx.channel(), parser);
+      TCPClientConnection client = new TCPClientConnection(ctx.channel(), parser, runtime);
       for (INetworkConnectionListener listener : listeners) {
         listener.newNetworkConnection(client);
       }
@@ -141,6 +145,7 @@ public class NetworkGuard implements INetworkGuard {
     this.localAddresses = inetAddress;
     this.port = port;
     this.bindDelay = data.getConfiguration().getLongValue(BindDelay.ordinal(), (Long) BindDelay.defValue());
+    this.runtime = NettyTransportRuntime.acquire(data.getConfiguration());
     this.binderExecutor.schedule(binderTask, bindDelay, TimeUnit.MILLISECONDS);
   }
 
@@ -162,34 +167,21 @@ public class NetworkGuard implements INetworkGuard {
   public void destroy() {
     logger.debug("Destroying network guard");
     closeChannels();
-    closeWorkerGroup();
-    closeBossGroup();
-    binderExecutor.shutdown();
-  }
-
-  private void closeWorkerGroup() {
-    try {
-      workerGroup.shutdownGracefully().sync();
-    } catch (InterruptedException e) {
-      logger.error(e.getMessage(), e);
-    }
-  }
-
-  private void closeBossGroup() {
-    try {
-      bossGroup.shutdownGracefully().sync();
-    } catch (InterruptedException e) {
-      logger.error(e.getMessage(), e);
+    acceptedChannels.close().awaitUninterruptibly();
+    if (runtime != null) {
+      runtime.release();
+      runtime = null;
     }
+    binderExecutor.shutdown();
   }
 
   private void closeChannels() {
     for (Channel channel : channels) {
-      try {
-        logger.debug("Closing channel on socket [{}]", channel.localAddress());
-        channel.close().sync();
-      } catch (InterruptedException e) {
-        logger.error(e.getMessage(), e);
+      logger.debug("Closing channel on socket [{}]", channel.localAddress());
+      ChannelFuture future = channel.close();
+      // the guard may be destroyed from one of the shared event loops, which must not wait on itself
+      if (!channel.eventLoop().inEventLoop()) {
+        future.awaitUninterruptibly();
       }
     }
   }
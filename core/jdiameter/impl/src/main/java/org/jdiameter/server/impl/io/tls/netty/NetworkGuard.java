@@ -31,6 +31,7 @@ import java.util.concurrent.TimeUnit;
 
 import org.jdiameter.api.Configuration;
 import org.jdiameter.client.api.parser.IMessageParser;
+import org.jdiameter.client.impl.transport.NettyTransportRuntime;
 import org.jdiameter.client.impl.transport.tls.TLSUtils;
 import org.jdiameter.client.impl.transport.tls.netty.TLSClientConnection;
 import org.jdiameter.common.api.concurrent.DummyConcurrentFactory;
@@ -44,14 +45,15 @@ import org.slf4j.LoggerFactory;
 
 import io.netty.bootstrap.ServerBootstrap;
 import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelInboundHandlerAdapter;
 import io.netty.channel.ChannelInitializer;
 import io.netty.channel.ChannelOption;
-import io.netty.channel.EventLoopGroup;
-import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.group.ChannelGroup;
+import io.netty.channel.group.DefaultChannelGroup;
 import io.netty.channel.socket.SocketChannel;
-import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.util.concurrent.GlobalEventExecutor;
 
 /**
  *
@@ -69,9 +71,10 @@ public class NetworkGuard implements INetworkGuard {
   private IConcurrentFactory concurrentFactory;
   protected long bindDelay;
 
-  protected final EventLoopGroup bossGroup = new NioEventLoopGroup();
-  protected final EventLoopGroup workerGroup = new NioEventLoopGroup();
+  protected NettyTransportRuntime runtime;
   protected List<Channel> channels = new CopyOnWriteArrayList<Channel>();
+  // accepted connections, closed with the guard as the event loops they run on outlive it
+  protected ChannelGroup acceptedChannels = new DefaultChannelGroup(GlobalEventExecutor.INSTANCE);
 
   protected final ScheduledExecutorService binderExecutor = Executors.newSingleThreadScheduledExecutor();
 
@@ -90,7 +93,7 @@ public class NetworkGuard implements INetworkGuard {
   private void bind(InetSocketAddress localAddress) {
     logger.debug("Binding to socket [{}]", localAddress);
     ServerBootstrap bootstrap = new ServerBootstrap();
-    bootstrap.group(bossGroup, workerGroup).channel(NioServerSocketChannel.class)
+    bootstrap.group(runtime.getIoGroup()).channel(runtime.getServerChannelClass())
         .childHandler(new ChannelInitializer<SocketChannel>() {
           @Override
           public void initChannel(SocketChannel ch) throws Exception {
@@ -110,6 +113,7 @@ public class NetworkGuard implements INetworkGuard {
     @Override
     public void channelActive(final ChannelHandlerContext ctx) throws Exception {
       logger.debug("Received connection on socket [{}] from [{}]", ctx.channel().localAddress(), ctx.channel().remoteAddress());
+      acceptedChannels.add(ctx.channel());
 
       TLSClientConnection client = new TLSClientConnection(null, NetworkGuard.this.localPeerSSLConfig,
           NetworkGuard.this.concurrentFactory, parser, ctx.channel());
@@ -158,6 +162,7 @@ public class NetworkGuard implements INetworkGuard {
     }
 
     this.bindDelay = data.getConfiguration().getLongValue(BindDelay.ordinal(), (Long) BindDelay.defValue());
+    this.runtime = NettyTransportRuntime.acquire(data.getConfiguration());
     this.binderExecutor.schedule(binderTask, bindDelay, TimeUnit.MILLISECONDS);
   }
 
@@ -179,34 +184,21 @@ public class NetworkGuard implements INetworkGuard {
   public void destroy() {
     logger.debug("Destroying network guard");
     closeChannels();
-    closeWorkerGroup();
-    closeBossGroup();
-    binderExecutor.shutdown();
-  }
-
-  private void closeWorkerGroup() {
-    try {
-      workerGroup.shutdownGracefully().sync();
-    } catch (InterruptedException e) {
-      logger.error(e.getMessage(), e);
-    }
-  }
-
-  private void closeBossGroup() {
-    try {
-      bossGroup.shutdownGracefully().sync();
-    } catch (InterruptedException e) {
-      logger.error(e.getMessage(), e);
+    acceptedChannels.close().awaitUninterruptibly();
+    if (runtime != null) {
+      runtime.release();
+      runtime = null;
     }
+    binderExecutor.shutdown();
   }
 
   private void closeChannels() {
     for (Channel channel : channels) {
-      try {
-        logger.debug("Closing channel on socket [{}]", channel.localAddress());
-        channel.close().sync();
-      } catch (InterruptedException e) {
-        logger.error(e.getMessage(), e);
+      logger.debug("Closing channel on socket [{}]", channel.localAddress());
+      ChannelFuture future = channel.close();
+      // the guard may be destroyed from one of the shared event loops, which must not wait on itself
+      if (!channel.eventLoop().inEventLoop()) {
+        future.awaitUninterruptibly();
       }
     }
   }
@@ -0,0 +1,221 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2016, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+package org.jdiameter.client.impl.app.rx;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertFalse;
+import static org.testng.AssertJUnit.assertTrue;
+import static org.testng.AssertJUnit.fail;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.jdiameter.api.Answer;
+import org.jdiameter.api.Request;
+import org.jdiameter.api.RouteException;
+import org.jdiameter.api.Session;
+import org.jdiameter.api.app.AppSession;
+import org.jdiameter.api.app.StateChangeListener;
+import org.jdiameter.api.rx.ClientRxSessionListener;
+import org.jdiameter.api.rx.events.RxAAAnswer;
+import org.jdiameter.api.rx.events.RxSessionTermAnswer;
+import org.jdiameter.client.api.IAssembler;
+import org.jdiameter.client.api.IContainer;
+import org.jdiameter.client.api.IMessage;
+import org.jdiameter.client.api.ISessionFactory;
+import org.jdiameter.client.impl.parser.MessageParser;
+import org.jdiameter.common.api.app.rx.ClientRxSessionState;
+import org.jdiameter.common.api.app.rx.IRxMessageFactory;
+import org.jdiameter.common.api.concurrent.DummyConcurrentFactory;
+import org.jdiameter.common.api.concurrent.IConcurrentFactory;
+import org.jdiameter.common.impl.app.rx.RxAAAnswerImpl;
+import org.jdiameter.common.impl.app.rx.RxAARequestImpl;
+import org.jdiameter.common.impl.app.rx.RxSessionTermAnswerImpl;
+import org.jdiameter.common.impl.app.rx.RxSessionTermRequestImpl;
+import org.testng.annotations.Test;
+
+/**
+ * Testcases for stages returned by send*Async methods of {@link ClientRxSessionImpl}
+ */
+public class TestClientRxSessionAsync {
+
+    private static final long RX_APPLICATION_ID = 16777236;
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+    private final IConcurrentFactory concurrentFactory = new DummyConcurrentFactory() {
+        @Override
+        public ScheduledExecutorService getScheduledExecutorService(String name) {
+            return scheduler;
+        }
+    };
+
+    private final MessageParser parser = new MessageParser();
+    private ISessionFactory sessionFactory;
+    private boolean valid = true;
+    private Exception sendFailure;
+
+    @Test
+    public void testSessionBasedStages() throws Exception {
+        try {
+            ClientRxSessionImpl session = newSession();
+            Request aar = newRequest(RxAAAnswer.code, 1);
+            CompletableFuture<ClientRxSessionState> stateOnAAA = session.sendAARequestAsync(new RxAARequestImpl(aar))
+                    .thenApply(answer -> session.getState(ClientRxSessionState.class)).toCompletableFuture();
+            session.receivedSuccessMessage(aar, aar.createAnswer(2001));
+            assertEquals(ClientRxSessionState.OPEN, stateOnAAA.get(5, TimeUnit.SECONDS));
+
+            Request str = newRequest(RxSessionTermAnswer.code, 2);
+            CompletableFuture<ClientRxSessionState> stateOnSTA = session.sendSessionTermRequestAsync(new RxSessionTermRequestImpl(str))
+                    .thenApply(answer -> session.getState(ClientRxSessionState.class)).toCompletableFuture();
+            session.receivedSuccessMessage(str, str.createAnswer(2001));
+            assertEquals(ClientRxSessionState.IDLE, stateOnSTA.get(5, TimeUnit.SECONDS));
+        }
+        finally {
+            scheduler.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testStageCompletedOnFailedAnswer() throws Exception {
+        try {
+            ClientRxSessionImpl session = newSession();
+            Request aar = newRequest(RxAAAnswer.code, 1);
+            CompletableFuture<RxAAAnswer> stage = session.sendAARequestAsync(new RxAARequestImpl(aar)).toCompletableFuture();
+
+            // failed answer releases the session, its stage is completed all the same
+            session.receivedSuccessMessage(aar, aar.createAnswer(5030));
+            assertEquals(5030, stage.get(5, TimeUnit.SECONDS).getResultCodeAvp().getUnsigned32());
+            assertEquals(ClientRxSessionState.IDLE, session.getState(ClientRxSessionState.class));
+            assertFalse("Session was not released", session.isValid());
+        }
+        finally {
+            scheduler.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testStageFailedOnSendFailure() throws Exception {
+        try {
+            ClientRxSessionImpl session = newSession();
+            sendFailure = new RouteException("No route");
+            Request aar = newRequest(RxAAAnswer.code, 1);
+            CompletableFuture<RxAAAnswer> stage = session.sendAARequestAsync(new RxAARequestImpl(aar)).toCompletableFuture();
+
+            try {
+                stage.get(5, TimeUnit.SECONDS);
+                fail("Stage was completed normally");
+            }
+            catch (ExecutionException e) {
+                assertTrue("Stage failed with " + e.getCause(), e.getCause() == sendFailure);
+            }
+        }
+        finally {
+            scheduler.shutdownNow();
+        }
+    }
+
+    private Request newRequest(int commandCode, long endToEndId) {
+        IMessage request = parser.createEmptyMessage(commandCode, RX_APPLICATION_ID);
+        request.setRequest(true);
+        request.setEndToEndIdentifier(endToEndId);
+        return request;
+    }
+
+    @SuppressWarnings("unchecked")
+    private ClientRxSessionImpl newSession() {
+        sessionFactory = stub(ISessionFactory.class);
+        ClientRxSessionDataLocalImpl data = new ClientRxSessionDataLocalImpl();
+        data.setSessionId("rx;1");
+        return new ClientRxSessionImpl(data, stub(IRxMessageFactory.class), sessionFactory, stub(ClientRxSessionListener.class), null,
+                stub(StateChangeListener.class));
+    }
+
+    /**
+     * Stub of stack components session is created with, message factory wraps messages in event implementations
+     */
+    @SuppressWarnings("unchecked")
+    private <T> T stub(Class<T> iface) {
+        return (T) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] {iface}, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                switch (method.getName()) {
+                    case "getContainer":
+                        return stub(IContainer.class);
+                    case "getAssemblerFacility":
+                        return stub(IAssembler.class);
+                    case "getComponentInstance":
+                        return args[0] == IConcurrentFactory.class ? concurrentFactory : null;
+                    case "getNewSession":
+                        return stubSession((String) args[0]);
+                    case "getApplicationIds":
+                        return new long[] {RX_APPLICATION_ID};
+                    case "createAARequest":
+                        return new RxAARequestImpl((Request) args[0]);
+                    case "createAAAnswer":
+                        return new RxAAAnswerImpl((Answer) args[0]);
+                    case "createSessionTermRequest":
+                        return new RxSessionTermRequestImpl((Request) args[0]);
+                    case "createSessionTermAnswer":
+                        return new RxSessionTermAnswerImpl((Answer) args[0]);
+                    case "hashCode":
+                        return System.identityHashCode(proxy);
+                    case "equals":
+                        return proxy == args[0];
+                    default:
+                        return null;
+                }
+            }
+        });
+    }
+
+    private Session stubSession(final String sessionId) {
+        return (Session) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] {Session.class}, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Exception {
+                switch (method.getName()) {
+                    case "getSessionId":
+                        return sessionId;
+                    case "send":
+                        if (sendFailure != null) {
+                            throw sendFailure;
+                        }
+                        return null;
+                    case "isValid":
+                        return valid;
+                    case "release":
+                        valid = false;
+                        return null;
+                    case "hashCode":
+                        return System.identityHashCode(proxy);
+                    case "equals":
+                        return proxy == args[0];
+                    default:
+                        return null;
+                }
+            }
+        });
+    }
+}
@@ -0,0 +1,218 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2016, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+package org.jdiameter.client.impl.app.s6a;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertFalse;
+import static org.testng.AssertJUnit.assertTrue;
+import static org.testng.AssertJUnit.fail;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.jdiameter.api.Answer;
+import org.jdiameter.api.Request;
+import org.jdiameter.api.Session;
+import org.jdiameter.api.s6a.ClientS6aSessionListener;
+import org.jdiameter.api.s6a.events.JAuthenticationInformationAnswer;
+import org.jdiameter.api.s6a.events.JUpdateLocationAnswer;
+import org.jdiameter.client.api.IAssembler;
+import org.jdiameter.client.api.IContainer;
+import org.jdiameter.client.api.IMessage;
+import org.jdiameter.client.api.ISessionFactory;
+import org.jdiameter.client.impl.parser.MessageParser;
+import org.jdiameter.common.api.app.s6a.IS6aMessageFactory;
+import org.jdiameter.common.api.app.s6a.S6aSessionState;
+import org.jdiameter.common.api.concurrent.DummyConcurrentFactory;
+import org.jdiameter.common.api.concurrent.IConcurrentFactory;
+import org.jdiameter.common.impl.app.s6a.JAuthenticationInformationAnswerImpl;
+import org.jdiameter.common.impl.app.s6a.JAuthenticationInformationRequestImpl;
+import org.jdiameter.common.impl.app.s6a.JUpdateLocationAnswerImpl;
+import org.jdiameter.common.impl.app.s6a.JUpdateLocationRequestImpl;
+import org.testng.annotations.Test;
+
+/**
+ * Testcases for stages returned by send*Async methods of {@link S6aClientSessionImpl}
+ */
+public class TestS6aClientSessionAsync {
+
+    private static final long S6A_APPLICATION_ID = 16777251;
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+    private final IConcurrentFactory concurrentFactory = new DummyConcurrentFactory() {
+        @Override
+        public ScheduledExecutorService getScheduledExecutorService(String name) {
+            return scheduler;
+        }
+    };
+
+    private final MessageParser parser = new MessageParser();
+    private ISessionFactory sessionFactory;
+    private boolean valid = true;
+    private Exception sendFailure;
+
+    @Test
+    public void testStageCompletedAfterTermination() throws Exception {
+        try {
+            S6aClientSessionImpl session = newSession();
+            Request request = newRequest(JUpdateLocationAnswer.code, 1);
+            CompletableFuture<S6aSessionState> stateOnAnswer = session.sendUpdateLocationRequestAsync(new JUpdateLocationRequestImpl(request))
+                    .thenApply(answer -> session.getState(S6aSessionState.class)).toCompletableFuture();
+
+            // answer terminates and releases the session, its stage is completed all the same
+            session.receivedSuccessMessage(request, request.createAnswer(2001));
+            assertEquals(S6aSessionState.TERMINATED, stateOnAnswer.get(5, TimeUnit.SECONDS));
+            assertFalse("Session was not released", session.isValid());
+        }
+        finally {
+            scheduler.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testStageFailedOnTimeout() throws Exception {
+        try {
+            S6aClientSessionImpl session = newSession();
+            Request request = newRequest(JAuthenticationInformationAnswer.code, 2);
+            CompletableFuture<JAuthenticationInformationAnswer> stage =
+                    session.sendAuthenticationInformationRequestAsync(new JAuthenticationInformationRequestImpl(request)).toCompletableFuture();
+
+            session.timeoutExpired(request);
+            assertFailedWith(TimeoutException.class, stage);
+            assertEquals(S6aSessionState.TIMEDOUT, session.getState(S6aSessionState.class));
+        }
+        finally {
+            scheduler.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testStageFailedOnSendFailure() throws Exception {
+        try {
+            S6aClientSessionImpl session = newSession();
+            sendFailure = new IllegalStateException("No connection");
+            Request request = newRequest(JUpdateLocationAnswer.code, 3);
+            CompletableFuture<JUpdateLocationAnswer> stage =
+                    session.sendUpdateLocationRequestAsync(new JUpdateLocationRequestImpl(request)).toCompletableFuture();
+
+            assertFailedWith(Exception.class, stage);
+        }
+        finally {
+            scheduler.shutdownNow();
+        }
+    }
+
+    private void assertFailedWith(Class<? extends Throwable> cause, CompletableFuture<?> stage) throws Exception {
+        try {
+            stage.get(5, TimeUnit.SECONDS);
+            fail("Stage was completed normally");
+        }
+        catch (ExecutionException e) {
+            assertTrue("Stage failed with " + e.getCause(), cause.isInstance(e.getCause()));
+        }
+    }
+
+    private Request newRequest(int commandCode, long endToEndId) {
+        IMessage request = parser.createEmptyMessage(commandCode, S6A_APPLICATION_ID);
+        request.setRequest(true);
+        request.setEndToEndIdentifier(endToEndId);
+        return request;
+    }
+
+    private S6aClientSessionImpl newSession() {
+        sessionFactory = stub(ISessionFactory.class);
+        ClientS6aSessionDataLocalImpl data = new ClientS6aSessionDataLocalImpl();
+        data.setSessionId("s6a;1");
+        return new S6aClientSessionImpl(data, stub(IS6aMessageFactory.class), sessionFactory, stub(ClientS6aSessionListener.class));
+    }
+
+    /**
+     * Stub of stack components session is created with, message factory wraps messages in event implementations
+     */
+    @SuppressWarnings("unchecked")
+    private <T> T stub(Class<T> iface) {
+        return (T) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] {iface}, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                switch (method.getName()) {
+                    case "getContainer":
+                        return stub(IContainer.class);
+                    case "getAssemblerFacility":
+                        return stub(IAssembler.class);
+                    case "getComponentInstance":
+                        return args[0] == IConcurrentFactory.class ? concurrentFactory : null;
+                    case "getNewSession":
+                        return stubSession((String) args[0]);
+                    case "getApplicationId":
+                        return S6A_APPLICATION_ID;
+                    case "createUpdateLocationRequest":
+                        return new JUpdateLocationRequestImpl((Request) args[0]);
+                    case "createUpdateLocationAnswer":
+                        return new JUpdateLocationAnswerImpl((Answer) args[0]);
+                    case "createAuthenticationInformationRequest":
+                        return new JAuthenticationInformationRequestImpl((Request) args[0]);
+                    case "createAuthenticationInformationAnswer":
+                        return new JAuthenticationInformationAnswerImpl((Answer) args[0]);
+                    case "hashCode":
+                        return System.identityHashCode(proxy);
+                    case "equals":
+                        return proxy == args[0];
+                    default:
+                        return null;
+                }
+            }
+        });
+    }
+
+    private Session stubSession(final String sessionId) {
+        return (Session) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] {Session.class}, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Exception {
+                switch (method.getName()) {
+                    case "getSessionId":
+                        return sessionId;
+                    case "send":
+                        if (sendFailure != null) {
+                            throw sendFailure;
+                        }
+                        return null;
+                    case "isValid":
+                        return valid;
+                    case "release":
+                        valid = false;
+                        return null;
+                    case "hashCode":
+                        return System.identityHashCode(proxy);
+                    case "equals":
+                        return proxy == args[0];
+                    default:
+                        return null;
+                }
+            }
+        });
+    }
+}
@@ -0,0 +1,468 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2016, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+package org.jdiameter.client.impl.fsm;
+
+import static org.jdiameter.client.impl.helpers.Parameters.CeaTimeOut;
+import static org.jdiameter.client.impl.helpers.Parameters.PeerFSMThreadCount;
+import static org.jdiameter.client.impl.helpers.Parameters.RecTimeOut;
+import static org.jdiameter.common.api.concurrent.IConcurrentFactory.ScheduledExecServices.ApplicationSession;
+import static org.jdiameter.common.api.concurrent.IConcurrentFactory.ScheduledExecServices.PeerIO;
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.jdiameter.api.Configuration;
+import org.jdiameter.api.Message;
+import org.jdiameter.api.PeerState;
+import org.jdiameter.api.app.StateChangeListener;
+import org.jdiameter.client.api.IMessage;
+import org.jdiameter.client.api.fsm.EventTypes;
+import org.jdiameter.client.api.fsm.FsmEvent;
+import org.jdiameter.client.api.fsm.IContext;
+import org.jdiameter.client.api.io.TransportError;
+import org.jdiameter.client.api.io.TransportException;
+import org.jdiameter.client.impl.helpers.EmptyConfiguration;
+import org.jdiameter.client.impl.parser.MessageParser;
+import org.jdiameter.common.api.concurrent.DummyConcurrentFactory;
+import org.jdiameter.common.api.statistic.ILatencyStatistic;
+import org.jdiameter.common.impl.statistic.StatisticManagerImpl;
+import org.testng.annotations.Test;
+
+/**
+ * Testcases for the peer FSM processed by the shared executor (PeerFSMThreadCount 0)
+ */
+public class TestPeerFSM {
+
+    @Test
+    public void testEventsOfPeerAreProcessedInOrder() throws Exception {
+        SmallPoolConcurrentFactory concurrentFactory = new SmallPoolConcurrentFactory();
+        Configuration config = sharedModeConfig();
+        ContextTest context = new ContextTest("peer1", null);
+        PeerFSMImpl fsm = new PeerFSMImpl(context, concurrentFactory, config, new StatisticManagerImpl(config));
+        try {
+            open(fsm);
+
+            MessageParser parser = new MessageParser();
+            int count = 500;
+            for (int i = 0; i < count; i++) {
+                IMessage message = parser.createEmptyMessage(271, 300);
+                message.setHopByHopIdentifier(i);
+                fsm.handleEvent(new FsmEvent(EventTypes.SEND_MSG_EVENT, message));
+            }
+            assertTrue("Messages were not sent", context.sent.await(5, TimeUnit.SECONDS, count));
+            List<Long> sent = context.getSent();
+            for (int i = 0; i < count; i++) {
+                assertEquals("Message sent out of order", i, sent.get(i).longValue());
+            }
+        }
+        finally {
+            concurrentFactory.shutdownAllNow();
+        }
+    }
+
+    @Test
+    public void testBlockedConnectDoesNotDelayOtherPeers() throws Exception {
+        SmallPoolConcurrentFactory concurrentFactory = new SmallPoolConcurrentFactory();
+        Configuration config = sharedModeConfig();
+        CountDownLatch connectRelease = new CountDownLatch(1);
+        ContextTest blocked = new ContextTest("blocked", connectRelease);
+        ContextTest other = new ContextTest("other", null);
+        ContextTest silent = new ContextTest("silent", null);
+        PeerFSMImpl blockedFsm = new PeerFSMImpl(blocked, concurrentFactory, config, new StatisticManagerImpl(config));
+        PeerFSMImpl otherFsm = new PeerFSMImpl(other, concurrentFactory, config, new StatisticManagerImpl(config));
+        PeerFSMImpl silentFsm = new PeerFSMImpl(silent, concurrentFactory, config, new StatisticManagerImpl(config));
+        try {
+            blockedFsm.handleEvent(new FsmEvent(EventTypes.START_EVENT));
+            assertTrue("Connect was not called", blocked.connecting.await(5, TimeUnit.SECONDS));
+
+            // events of other peers are processed while the first one is stuck in connect
+            open(otherFsm);
+
+            // and so are their timeouts, no CEA is sent to this one
+            silentFsm.handleEvent(new FsmEvent(EventTypes.START_EVENT));
+            assertTrue("CEA timeout was not processed", silent.disconnected.await(5, TimeUnit.SECONDS));
+            assertEquals(PeerState.DOWN, blockedFsm.getState(PeerState.class));
+        }
+        finally {
+            connectRelease.countDown();
+            concurrentFactory.shutdownAllNow();
+        }
+    }
+
+    @Test
+    @SuppressWarnings("rawtypes")
+    public void testListenersSeeNewState() throws Exception {
+        SmallPoolConcurrentFactory concurrentFactory = new SmallPoolConcurrentFactory();
+        Configuration config = sharedModeConfig();
+        ContextTest context = new ContextTest("peer1", null);
+        final PeerFSMImpl fsm = new PeerFSMImpl(context, concurrentFactory, config, new StatisticManagerImpl(config));
+        final List<String> changes = Collections.synchronizedList(new ArrayList<String>());
+        fsm.addStateChangeNotification(new StateChangeListener() {
+            @Override
+            public void stateChanged(Enum oldState, Enum newState) {
+                changes.add(oldState + "->" + newState + ":" + fsm.getState(PeerState.class));
+            }
+
+            @Override
+            public void stateChanged(Object source, Enum oldState, Enum newState) {
+                stateChanged(oldState, newState);
+            }
+        });
+        try {
+            open(fsm);
+            // state of the FSM is the new one when listeners are called
+            assertEquals(Arrays.asList("DOWN->INITIAL:INITIAL", "INITIAL->OKAY:OKAY"), changes);
+        }
+        finally {
+            concurrentFactory.shutdownAllNow();
+        }
+    }
+
+    @Test
+    public void testBlockedWriteDoesNotDelayEvents() throws Exception {
+        SmallPoolConcurrentFactory concurrentFactory = new SmallPoolConcurrentFactory();
+        Configuration config = sharedModeConfig();
+        ContextTest blocked = new ContextTest("blocked", null);
+        ContextTest other = new ContextTest("other", null);
+        PeerFSMImpl blockedFsm = new PeerFSMImpl(blocked, concurrentFactory, config, new StatisticManagerImpl(config));
+        PeerFSMImpl otherFsm = new PeerFSMImpl(other, concurrentFactory, config, new StatisticManagerImpl(config));
+        blocked.sendRelease = new CountDownLatch(1);
+        try {
+            open(blockedFsm);
+            open(otherFsm);
+
+            MessageParser parser = new MessageParser();
+            blockedFsm.handleEvent(new FsmEvent(EventTypes.SEND_MSG_EVENT, parser.createEmptyMessage(271, 300)));
+            assertTrue("Write was not called", blocked.sending.await(5, TimeUnit.SECONDS));
+
+            // the peer stuck in a write still receives, and other peers still send
+            blockedFsm.handleEvent(new FsmEvent(EventTypes.RECEIVE_MSG_EVENT, parser.createEmptyMessage(271, 300)));
+            assertTrue("Message was not received", blocked.received.await(5, TimeUnit.SECONDS, 1));
+            otherFsm.handleEvent(new FsmEvent(EventTypes.SEND_MSG_EVENT, parser.createEmptyMessage(271, 300)));
+            assertTrue("Message was not sent", other.sent.await(5, TimeUnit.SECONDS, 1));
+        }
+        finally {
+            blocked.sendRelease.countDown();
+            concurrentFactory.shutdownAllNow();
+        }
+    }
+
+    @Test
+    public void testBlockedListenerDoesNotDelayEvents() throws Exception {
+        SmallPoolConcurrentFactory concurrentFactory = new SmallPoolConcurrentFactory();
+        Configuration config = sharedModeConfig();
+        ContextTest blocked = new ContextTest("blocked", null);
+        ContextTest other = new ContextTest("other", null);
+        ContextTest silent = new ContextTest("silent", null);
+        PeerFSMImpl blockedFsm = new PeerFSMImpl(blocked, concurrentFactory, config, new StatisticManagerImpl(config));
+        PeerFSMImpl otherFsm = new PeerFSMImpl(other, concurrentFactory, config, new StatisticManagerImpl(config));
+        PeerFSMImpl silentFsm = new PeerFSMImpl(silent, concurrentFactory, config, new StatisticManagerImpl(config));
+        blocked.receiveRelease = new CountDownLatch(1);
+        try {
+            open(blockedFsm);
+
+            MessageParser parser = new MessageParser();
+            int count = 100;
+            for (int i = 0; i < count; i++) {
+                IMessage message = parser.createEmptyMessage(271, 300);
+                message.setHopByHopIdentifier(i);
+                blockedFsm.handleEvent(new FsmEvent(EventTypes.RECEIVE_MSG_EVENT, message));
+            }
+            assertTrue("Listener was not called", blocked.receiving.await(5, TimeUnit.SECONDS));
+
+            // events and timeouts of all peers are processed while a listener is stuck
+            open(otherFsm);
+            silentFsm.handleEvent(new FsmEvent(EventTypes.START_EVENT));
+            assertTrue("CEA timeout was not processed", silent.disconnected.await(5, TimeUnit.SECONDS));
+            blockedFsm.handleEvent(new FsmEvent(EventTypes.SEND_MSG_EVENT, parser.createEmptyMessage(271, 300)));
+            assertTrue("Message was not sent", blocked.sent.await(5, TimeUnit.SECONDS, 1));
+
+            // and messages are passed on in order once it returns
+            blocked.receiveRelease.countDown();
+            assertTrue("Messages were not received", blocked.received.await(5, TimeUnit.SECONDS, count));
+            List<Long> received = blocked.getReceived();
+            for (int i = 0; i < count; i++) {
+                assertEquals("Message received out of order", i, received.get(i).longValue());
+            }
+        }
+        finally {
+            blocked.receiveRelease.countDown();
+            concurrentFactory.shutdownAllNow();
+        }
+    }
+
+    @Test
+    public void testFailedWriteReopensConnection() throws Exception {
+        SmallPoolConcurrentFactory concurrentFactory = new SmallPoolConcurrentFactory();
+        Configuration config = sharedModeConfig();
+        ContextTest context = new ContextTest("peer1", null);
+        PeerFSMImpl fsm = new PeerFSMImpl(context, concurrentFactory, config, new StatisticManagerImpl(config));
+        try {
+            open(fsm);
+            context.sendFailure = true;
+            MessageParser parser = new MessageParser();
+            for (int i = 0; i < 10; i++) {
+                fsm.handleEvent(new FsmEvent(EventTypes.SEND_MSG_EVENT, parser.createEmptyMessage(271, 300)));
+            }
+            assertTrue("Connection was not closed", context.disconnected.await(5, TimeUnit.SECONDS));
+            long deadline = System.currentTimeMillis() + 5000;
+            while (fsm.getState(PeerState.class) != PeerState.REOPEN && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertEquals(PeerState.REOPEN, fsm.getState(PeerState.class));
+        }
+        finally {
+            concurrentFactory.shutdownAllNow();
+        }
+    }
+
+    private void open(PeerFSMImpl fsm) throws Exception {
+        fsm.handleEvent(new FsmEvent(EventTypes.START_EVENT));
+        fsm.handleEvent(new FsmEvent(EventTypes.CEA_EVENT));
+        long deadline = System.currentTimeMillis() + 5000;
+        while (fsm.getState(PeerState.class) != PeerState.OKAY && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals("Peer is not open", PeerState.OKAY, fsm.getState(PeerState.class));
+    }
+
+    private Configuration sharedModeConfig() {
+        return EmptyConfiguration.getInstance()
+                .add(PeerFSMThreadCount, 0)
+                .add(CeaTimeOut, 200L)
+                .add(RecTimeOut, 60000L);
+    }
+
+    /**
+     * Events and timeouts of all peers are processed on a single thread, their connects and writes on two,
+     * received messages are passed on by another single thread
+     */
+    private static class SmallPoolConcurrentFactory extends DummyConcurrentFactory {
+
+        private final ScheduledExecutorService fsm = Executors.newSingleThreadScheduledExecutor();
+        private final ScheduledExecutorService io = Executors.newScheduledThreadPool(2);
+        private final ScheduledExecutorService application = Executors.newSingleThreadScheduledExecutor();
+
+        @Override
+        public ScheduledExecutorService getScheduledExecutorService(String name) {
+            if (ApplicationSession.name().equals(name)) {
+                return application;
+            }
+            return PeerIO.name().equals(name) ? io : fsm;
+        }
+
+        @Override
+        public void shutdownAllNow() {
+            super.shutdownAllNow();
+            fsm.shutdownNow();
+            io.shutdownNow();
+            application.shutdownNow();
+        }
+    }
+
+    private static class CountLatch {
+
+        private int count;
+
+        synchronized void countUp() {
+            count++;
+            notifyAll();
+        }
+
+        synchronized boolean await(long timeout, TimeUnit unit, int expected) throws InterruptedException {
+            long deadline = System.currentTimeMillis() + unit.toMillis(timeout);
+            while (count < expected) {
+                long left = deadline - System.currentTimeMillis();
+                if (left <= 0) {
+                    return false;
+                }
+                wait(left);
+            }
+            return true;
+        }
+    }
+
+    private static class ContextTest implements IContext {
+
+        private final String description;
+        private final CountDownLatch connectRelease;
+        private final List<Long> sentIds = new ArrayList<Long>();
+        private final List<Long> receivedIds = new ArrayList<Long>();
+        final CountLatch sent = new CountLatch();
+        final CountLatch received = new CountLatch();
+        final CountDownLatch connecting = new CountDownLatch(1);
+        final CountDownLatch sending = new CountDownLatch(1);
+        final CountDownLatch receiving = new CountDownLatch(1);
+        final CountDownLatch disconnected = new CountDownLatch(1);
+        volatile CountDownLatch sendRelease;
+        volatile CountDownLatch receiveRelease;
+        volatile boolean sendFailure;
+
+        ContextTest(String description, CountDownLatch connectRelease) {
+            this.description = description;
+            this.connectRelease = connectRelease;
+        }
+
+        synchronized List<Long> getSent() {
+            return new ArrayList<Long>(sentIds);
+        }
+
+        synchronized List<Long> getReceived() {
+            return new ArrayList<Long>(receivedIds);
+        }
+
+        @Override
+        public void connect() {
+            connecting.countDown();
+            if (connectRelease != null) {
+                try {
+                    connectRelease.await();
+                }
+                catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+
+        @Override
+        public void disconnect() {
+            disconnected.countDown();
+        }
+
+        @Override
+        public boolean sendMessage(IMessage message) throws TransportException {
+            sending.countDown();
+            if (sendFailure) {
+                throw new TransportException("Connection is broken", TransportError.Internal);
+            }
+            if (sendRelease != null) {
+                try {
+                    sendRelease.await();
+                }
+                catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            synchronized (this) {
+                sentIds.add(message.getHopByHopIdentifier());
+            }
+            sent.countUp();
+            return true;
+        }
+
+        @Override
+        public void sendCerMessage() {
+        }
+
+        @Override
+        public void sendCeaMessage(int resultCode, Message cer, String errMessage) {
+        }
+
+        @Override
+        public void sendDwrMessage() {
+        }
+
+        @Override
+        public void sendDwaMessage(IMessage dwr, int resultCode, String errorMessage) {
+        }
+
+        @Override
+        public void sendDprMessage(int disconnectCause) {
+        }
+
+        @Override
+        public void sendDpaMessage(IMessage dpr, int resultCode, String errorMessage) {
+        }
+
+        @Override
+        public boolean receiveMessage(IMessage iMessage) {
+            receiving.countDown();
+            if (receiveRelease != null) {
+                try {
+                    receiveRelease.await();
+                }
+                catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            synchronized (this) {
+                receivedIds.add(iMessage.getHopByHopIdentifier());
+            }
+            received.countUp();
+            return true;
+        }
+
+        @Override
+        public int processDwrMessage(IMessage iMessage) {
+            return 2001;
+        }
+
+        @Override
+        public int processDprMessage(IMessage iMessage) {
+            return 2001;
+        }
+
+        @Override
+        public boolean processCeaMessage(String key, IMessage message) {
+            return true;
+        }
+
+        @Override
+        public int processCerMessage(String key, IMessage message) {
+            return 2001;
+        }
+
+        @Override
+        public boolean isRestoreConnection() {
+            return false;
+        }
+
+        @Override
+        public boolean isConnected() {
+            return true;
+        }
+
+        @Override
+        public String getPeerDescription() {
+            return description;
+        }
+
+        @Override
+        public void removeStatistics() {
+        }
+
+        @Override
+        public void createStatistics() {
+        }
+
+        @Override
+        public ILatencyStatistic getLatencyStatistic() {
+            return null;
+        }
+    }
+}
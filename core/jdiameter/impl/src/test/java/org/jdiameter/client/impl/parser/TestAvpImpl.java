@@ -0,0 +1,82 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2016, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+package org.jdiameter.client.impl.parser;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertNotNull;
+import static org.testng.AssertJUnit.assertNull;
+import static org.testng.AssertJUnit.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import org.jdiameter.api.Avp;
+import org.jdiameter.api.AvpSet;
+import org.jdiameter.client.api.IMessage;
+import org.testng.annotations.Test;
+
+/**
+ * Testcases for {@link AvpImpl}
+ */
+public class TestAvpImpl {
+
+    private final MessageParser parser = new MessageParser();
+
+    @Test
+    public void testCopyOfReceivedAvpDoesNotShareFrame() throws Exception {
+        IMessage received = receive();
+        AvpImpl avp = (AvpImpl) received.getAvps().getAvp(Avp.SESSION_ID);
+        assertNotNull(avp.frame);
+
+        AvpImpl copy = new AvpImpl(avp);
+        assertNull(copy.frame);
+        assertEquals("host;1;2", copy.getUTF8String());
+        assertTrue(Arrays.equals(avp.getRaw(), copy.getRaw()));
+    }
+
+    @Test
+    public void testCopyOfDecodedGroupedAvpDoesNotShareFrame() throws Exception {
+        IMessage received = receive();
+        Avp proxyInfo = received.getAvps().getAvp(Avp.PROXY_INFO);
+        // decodes the children as views into the frame
+        assertEquals(2, proxyInfo.getGrouped().size());
+
+        AvpImpl copy = new AvpImpl(proxyInfo);
+        AvpSet children = copy.getGrouped();
+        assertEquals(2, children.size());
+        for (Avp child : children) {
+            assertNull(((AvpImpl) child).frame);
+        }
+        assertEquals("proxy.host", children.getAvp(Avp.PROXY_HOST).getDiameterIdentity());
+        assertEquals("state", children.getAvp(Avp.PROXY_STATE).getUTF8String());
+    }
+
+    private IMessage receive() throws Exception {
+        IMessage message = parser.createEmptyMessage(272, 4);
+        message.getAvps().addAvp(Avp.SESSION_ID, "host;1;2", false);
+        AvpSet proxyInfo = message.getAvps().addGroupedAvp(Avp.PROXY_INFO);
+        proxyInfo.addAvp(Avp.PROXY_HOST, "proxy.host", true);
+        proxyInfo.addAvp(Avp.PROXY_STATE, "state", false);
+        ByteBuffer encoded = parser.encodeMessage(message);
+        byte[] bytes = new byte[encoded.remaining()];
+        encoded.get(bytes);
+        return parser.createMessage(ByteBuffer.wrap(bytes));
+    }
+}
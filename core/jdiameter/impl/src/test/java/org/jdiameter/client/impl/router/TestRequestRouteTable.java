@@ -0,0 +1,131 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2016, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+package org.jdiameter.client.impl.router;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertNotNull;
+import static org.testng.AssertJUnit.assertNull;
+
+import java.util.concurrent.TimeUnit;
+
+import org.testng.annotations.Test;
+
+/**
+ * Testcases for {@link RequestRouteTable}
+ */
+public class TestRequestRouteTable {
+
+    @Test
+    public void testPutGetRemove() {
+        RequestRouteTable table = new RequestRouteTable(1024, 60, TimeUnit.SECONDS);
+        assertEquals(2048, table.getCapacity());
+
+        table.put(1, 2, "session;1", "host1", "realm1");
+        RequestRouteTable.Entry entry = table.get(1, 2, "session;1");
+        assertNotNull(entry);
+        assertEquals("host1", entry.getHost());
+        assertEquals("realm1", entry.getRealm());
+        assertEquals(1, table.getHits());
+
+        // same request is replaced
+        table.put(1, 2, "session;1", "host2", "realm2");
+        assertEquals("host2", table.get(1, 2, "session;1").getHost());
+
+        assertEquals("host2", table.remove(1, 2, "session;1").getHost());
+        assertNull(table.get(1, 2, "session;1"));
+        assertNull(table.remove(1, 2, "session;1"));
+        assertEquals(1, table.getMisses());
+    }
+
+    @Test
+    public void testAllIdentifiersAreCompared() {
+        RequestRouteTable table = new RequestRouteTable(1024, 60, TimeUnit.SECONDS);
+        table.put(1, 2, "session;1", "host1", "realm1");
+        table.put(1, 2, "session;2", "host2", "realm2");
+        table.put(1, 2, null, "host3", "realm3");
+        table.put(2, 1, "session;1", "host4", "realm4");
+        // identifiers whose combined key and hash equal those of (1, 2)
+        table.put(1L << 32 | 1, 2, "session;1", "host5", "realm5");
+
+        assertEquals("host1", table.get(1, 2, "session;1").getHost());
+        assertEquals("host2", table.get(1, 2, "session;2").getHost());
+        assertEquals("host3", table.get(1, 2, null).getHost());
+        assertEquals("host4", table.get(2, 1, "session;1").getHost());
+        assertEquals("host5", table.get(1L << 32 | 1, 2, "session;1").getHost());
+        assertNull(table.get(1, 3, "session;1"));
+
+        table.remove(1, 2, "session;1");
+        assertNull(table.get(1, 2, "session;1"));
+        assertEquals("host2", table.get(1, 2, "session;2").getHost());
+        assertEquals("host5", table.get(1L << 32 | 1, 2, "session;1").getHost());
+    }
+
+    @Test
+    public void testOldestIsEvictedWhenProbeWindowIsFull() throws Exception {
+        // 8 slots, all of them in the probe window of every request
+        RequestRouteTable table = new RequestRouteTable(1, 60, TimeUnit.SECONDS);
+        assertEquals(8, table.getCapacity());
+        for (int i = 0; i < 8; i++) {
+            table.put(i, i, "session", "host" + i, "realm");
+            // distinct creation times
+            Thread.sleep(1);
+        }
+        for (int i = 0; i < 8; i++) {
+            assertEquals("host" + i, table.get(i, i, "session").getHost());
+        }
+        assertEquals(0, table.getEvictions());
+
+        table.put(8, 8, "session", "host8", "realm");
+        assertEquals(1, table.getEvictions());
+        assertNull("Oldest entry was not evicted", table.get(0, 0, "session"));
+        for (int i = 1; i <= 8; i++) {
+            assertEquals("host" + i, table.get(i, i, "session").getHost());
+        }
+
+        // a removed entry leaves room without eviction
+        table.remove(4, 4, "session");
+        table.put(9, 9, "session", "host9", "realm");
+        assertEquals(1, table.getEvictions());
+        assertEquals("host1", table.get(1, 1, "session").getHost());
+        assertEquals("host9", table.get(9, 9, "session").getHost());
+    }
+
+    @Test
+    public void testExpiredEntriesAreDropped() throws Exception {
+        RequestRouteTable table = new RequestRouteTable(1, 50, TimeUnit.MILLISECONDS);
+        for (int i = 0; i < 8; i++) {
+            table.put(i, i, null, "host" + i, "realm");
+        }
+        Thread.sleep(100);
+        assertNull(table.get(0, 0, null));
+
+        // expired slots are reused, nothing live is evicted
+        for (int i = 8; i < 16; i++) {
+            table.put(i, i, null, "host" + i, "realm");
+        }
+        assertEquals(0, table.getEvictions());
+        for (int i = 8; i < 16; i++) {
+            assertEquals("host" + i, table.get(i, i, null).getHost());
+        }
+
+        table.clear();
+        assertNull(table.get(8, 8, null));
+    }
+}
@@ -22,32 +22,53 @@ package org.jdiameter.client.impl.router;
 import org.jdiameter.api.*;
 import org.jdiameter.api.app.StateChangeListener;
 import org.jdiameter.client.api.IAnswer;
+import org.jdiameter.client.api.IContainer;
 import org.jdiameter.client.api.IMessage;
 import org.jdiameter.client.api.IRequest;
 import org.jdiameter.client.api.controller.IPeer;
+import org.jdiameter.client.api.controller.IPeerTable;
+import org.jdiameter.client.api.controller.IRealm;
 import org.jdiameter.client.api.controller.IRealmTable;
 import org.jdiameter.client.api.fsm.EventTypes;
 import org.jdiameter.client.api.io.IConnectionListener;
 import org.jdiameter.client.api.io.TransportException;
+import org.jdiameter.client.impl.controller.RealmImpl;
+import org.jdiameter.client.impl.controller.RealmTableImpl;
 import org.jdiameter.client.impl.helpers.XMLConfiguration;
+import org.jdiameter.common.api.concurrent.DummyConcurrentFactory;
 import org.jdiameter.common.api.statistic.IStatistic;
 import org.jdiameter.common.api.statistic.IStatisticManager;
 import org.jdiameter.common.api.statistic.IStatisticRecord;
 import org.jdiameter.common.impl.controller.AbstractPeer;
 import org.jdiameter.common.impl.statistic.StatisticManagerImpl;
+import org.jdiameter.common.impl.timer.HashedWheelTimer;
 import org.jdiameter.server.api.agent.IAgentConfiguration;
 import org.testng.annotations.Test;
 
 import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
 import java.net.InetAddress;
 import java.net.URISyntaxException;
 import java.net.UnknownServiceException;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertFalse;
+import static org.testng.AssertJUnit.assertNotNull;
+import static org.testng.AssertJUnit.assertNull;
+import static org.testng.AssertJUnit.assertTrue;
 
 /**
  * Various testcases for Router implementations
@@ -243,6 +264,304 @@ public class TestRouter {
 
     }
 
+    @Test
+    public void testWeightedLeastOutstandingRequests() throws Exception {
+
+        Configuration config = new XMLConfiguration("src/test/resources/jdiameter-weightedleastoutstandingrequests-config.xml");
+        WeightedLeastOutstandingRequestsRouter router = new WeightedLeastOutstandingRequestsRouter(new RealmTableTest(), config);
+
+        IStatisticManager manager = new StatisticManagerImpl(config);
+        PeerTest p1 = new PeerTest(1, 1, true, manager);
+        PeerTest p2 = new PeerTest(2, 1, true, manager);
+        PeerTest p3 = new PeerTest(3, 1, true, manager);
+
+        List<IPeer> peers = new ArrayList<IPeer>(3);
+        peers.add(p1);
+        peers.add(p2);
+        peers.add(p3);
+
+        // Test idle peers with equal weight take turns
+        assertEquals(p1.toString(), router.selectPeer(peers).toString());
+        assertEquals(p2.toString(), router.selectPeer(peers).toString());
+        assertEquals(p3.toString(), router.selectPeer(peers).toString());
+
+        // p2 is the only peer without pending requests
+        p1.setPendingRequests(2);
+        p3.setPendingRequests(1);
+        assertEquals(p2.toString(), router.selectPeer(peers).toString());
+        assertEquals(p2.toString(), router.selectPeer(peers).toString());
+
+        // p2 and p3 have equal load, so both are selected
+        p2.setPendingRequests(1);
+        Set<String> selected = new HashSet<String>();
+        for (int i = 0; i < 3; i++) {
+            selected.add(router.selectPeer(peers).toString());
+        }
+        assertEquals(2, selected.size());
+        assertFalse(selected.contains(p1.toString()));
+
+        // (2 + 1) / 3 is less than (1 + 1) / 1
+        p1.setRating(3);
+        assertEquals(p1.toString(), router.selectPeer(peers).toString());
+        assertEquals(p1.toString(), router.selectPeer(peers).toString());
+
+        // peers with zero weight are skipped
+        p1.setRating(0);
+        p2.setPendingRequests(10);
+        assertEquals(p3.toString(), router.selectPeer(peers).toString());
+        assertEquals(p3.toString(), router.selectPeer(peers).toString());
+
+        // statistics are not used
+        p3.getStatistic().getRecordByName(IStatisticRecord.Counters.AppGenRequestPerSecond.name()+'.'+p3.getUri()).inc();
+        assertEquals(p3.toString(), router.selectPeer(peers).toString());
+    }
+
+    @Test
+    public void testWeightedPeakEwma() throws Exception {
+
+        Configuration config = new XMLConfiguration("src/test/resources/jdiameter-weightedpeakewma-config.xml");
+        IStatisticManager manager = new StatisticManagerImpl(config);
+        WeightedPeakEwmaRouter router = new WeightedPeakEwmaRouter(new RealmTableTest(), config, manager);
+
+        // realm attributes are loaded, other realms use defaults
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(5000), router.getLatencyDecayTime("remotepeer.2scale.net"));
+        assertEquals(4.5, router.getErrorPenalty("remotepeer.2scale.net"), 0);
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(10000), router.getLatencyDecayTime(null));
+        assertEquals(10.0, router.getErrorPenalty(null), 0);
+
+        PeerTest p1 = new PeerTest(1, 1, true, manager);
+        PeerTest p2 = new PeerTest(2, 1, true, manager);
+        PeerTest p3 = new PeerTest(3, 1, true, manager);
+
+        List<IPeer> peers = new ArrayList<IPeer>(3);
+        peers.add(p1);
+        peers.add(p2);
+        peers.add(p3);
+
+        // Test peers without answers take turns
+        assertEquals(p1.toString(), router.selectPeer(peers).toString());
+        assertEquals(p2.toString(), router.selectPeer(peers).toString());
+        assertEquals(p3.toString(), router.selectPeer(peers).toString());
+
+        long now = System.nanoTime();
+        router.addSample(p1, TimeUnit.MILLISECONDS.toNanos(10), false, now);
+        router.addSample(p2, TimeUnit.MILLISECONDS.toNanos(20), false, now);
+
+        // p3 is idle and has no answers yet
+        assertEquals(p3.toString(), router.selectPeer(peers).toString());
+        assertEquals(p3.toString(), router.selectPeer(peers).toString());
+
+        // p3 waits for its first answer, p1 answers fastest
+        p3.setPendingRequests(1);
+        assertEquals(p1.toString(), router.selectPeer(peers).toString());
+        assertEquals(p1.toString(), router.selectPeer(peers).toString());
+
+        // 10 * (2 + 1) is more than 20
+        p1.setPendingRequests(2);
+        assertEquals(p2.toString(), router.selectPeer(peers).toString());
+        assertEquals(p2.toString(), router.selectPeer(peers).toString());
+
+        // latency peak is taken at once, lower samples pull average down only gradually
+        router.addSample(p2, TimeUnit.MILLISECONDS.toNanos(100), false, now);
+        assertEquals(p1.toString(), router.selectPeer(peers).toString());
+        router.addSample(p2, TimeUnit.MILLISECONDS.toNanos(1), false, now + TimeUnit.MILLISECONDS.toNanos(10));
+        assertTrue(router.getAnswerTime(p2) > 90);
+        assertEquals(p1.toString(), router.selectPeer(peers).toString());
+
+        // errors raise cost of p1, 10 * (1 + 10 * 0.271) is less than 50, 10 * (1 + 10 * 0.469) is not
+        p1.setPendingRequests(0);
+        p3.setPendingRequests(0);
+        router.addSample(p3, TimeUnit.MILLISECONDS.toNanos(50), false, now);
+        for (int i = 0; i < 3; i++) {
+            router.addSample(p1, TimeUnit.MILLISECONDS.toNanos(10), true, now);
+        }
+        assertEquals(p1.toString(), router.selectPeer(peers).toString());
+        for (int i = 0; i < 3; i++) {
+            router.addSample(p1, TimeUnit.MILLISECONDS.toNanos(10), true, now);
+        }
+        assertEquals(p3.toString(), router.selectPeer(peers).toString());
+        assertEquals(p3.toString(), router.selectPeer(peers).toString());
+
+        // peers with zero weight are skipped
+        p3.setRating(0);
+        assertEquals(p1.toString(), router.selectPeer(peers).toString());
+
+        // averages are reported through statistics
+        IStatistic statistic = null;
+        for (IStatistic s : manager.getStatistic()) {
+            if (s.getName().equals(IStatistic.Groups.Router.name() + '.' + p1.getUri())) {
+                statistic = s;
+            }
+        }
+        assertEquals(0.469, statistic.getRecordByName(IStatisticRecord.Counters.ErrorRateEwma).getValueAsDouble(), 0.01);
+        assertEquals(10.0, statistic.getRecordByName(IStatisticRecord.Counters.AnswerTimeEwma).getValueAsDouble(), 0.1);
+
+        // averages and statistic of a removed peer are dropped
+        router.peerRemoved(p1);
+        assertEquals(0.0, router.getAnswerTime(p1), 0);
+        assertEquals(0.0, router.getErrorRate(p1), 0);
+        for (IStatistic s : manager.getStatistic()) {
+            assertFalse(s.getName().equals(IStatistic.Groups.Router.name() + '.' + p1.getUri()));
+        }
+        assertTrue(router.getAnswerTime(p2) > 0);
+    }
+
+    @Test
+    public void testRedirectCache() throws Exception {
+
+        RedirectCache cache = new RedirectCache(3, null);
+        ApplicationId appId = ApplicationId.createByAuthAppId(10415, 4);
+
+        // nothing cached
+        assertNull(cache.get("session", "user", "host", "realm", appId));
+        assertEquals(0, cache.getMisses());
+
+        // most specific usage wins
+        cache.put(RouterImpl.ALL_REALM, "realm", new String[] {"realm-host"}, 60);
+        cache.put(RouterImpl.REALM_AND_APPLICATION, RedirectCache.realmAndApplicationKey("realm", appId), new String[] {"app-host"}, 60);
+        cache.put(RouterImpl.ALL_SESSION, "session", new String[] {"first", "session-host"}, 60);
+        assertEquals("session-host", cache.get("session", "user", "host", "realm", appId).getRedirectHost());
+        assertEquals("app-host", cache.get("other", "user", "host", "realm", appId).getRedirectHost());
+        assertEquals("realm-host", cache.get("other", "user", "host", "realm", null).getRedirectHost());
+        assertNull(cache.get("other", "user", "host", "other", appId));
+        assertEquals(3, cache.getHits());
+        assertEquals(1, cache.getMisses());
+
+        // full cache only replaces existing entries
+        assertNull(cache.put(RouterImpl.ALL_USER, "user", new String[] {"user-host"}, 60));
+        assertNotNull(cache.put(RouterImpl.ALL_REALM, "realm", new String[] {"new-realm-host"}, 60));
+        assertEquals("new-realm-host", cache.get(null, null, null, "realm", null).getRedirectHost());
+        assertEquals(3, cache.size());
+
+        // expired entries are dropped on lookup and make room for new ones
+        cache.put(RouterImpl.ALL_SESSION, "session", new String[] {"session-host"}, 0);
+        assertEquals("app-host", cache.get("session", "user", "host", "realm", appId).getRedirectHost());
+        assertEquals(2, cache.size());
+        cache.put(RouterImpl.ALL_HOST, "host", new String[] {"expired-host"}, 0);
+        assertNotNull(cache.put(RouterImpl.ALL_USER, "user", new String[] {"user-host"}, 60));
+        assertEquals("user-host", cache.get("session", "user", "host", "realm", appId).getRedirectHost());
+
+        cache.clear();
+        assertEquals(0, cache.size());
+        assertNull(cache.get("session", "user", "host", "realm", appId));
+    }
+
+    @Test
+    public void testRedirectCacheExpiryTasks() throws Exception {
+
+        ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1);
+        scheduler.setRemoveOnCancelPolicy(true);
+        try {
+            RedirectCache cache = new RedirectCache(10, null);
+            cache.setExpiryScheduler(scheduler);
+
+            // replacing an entry cancels the task of the replaced one
+            for (int i = 0; i < 5; i++) {
+                cache.put(RouterImpl.ALL_REALM, "realm", new String[] {"realm-host-" + i}, 3600);
+            }
+            assertEquals(1, cache.size());
+            assertEquals(1, scheduler.getQueue().size());
+
+            cache.put(RouterImpl.ALL_HOST, "host", new String[] {"host"}, 3600);
+            assertEquals(2, scheduler.getQueue().size());
+
+            // entry removed by its own task
+            cache.put(RouterImpl.ALL_SESSION, "session", new String[] {"session-host"}, 0);
+            Thread.sleep(50);
+            assertEquals(2, cache.size());
+            assertEquals(2, scheduler.getQueue().size());
+
+            cache.clear();
+            assertEquals(0, cache.size());
+            assertEquals(0, scheduler.getQueue().size());
+        }
+        finally {
+            scheduler.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testRedirectCacheExpiryOnTimerWheel() throws Exception {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        HashedWheelTimer timer = new HashedWheelTimer("TestRedirectTimer", new DummyConcurrentFactory(), executor, 10, TimeUnit.MILLISECONDS,
+                64, null);
+        try {
+            RedirectCache cache = new RedirectCache(10, null);
+            cache.setExpiryScheduler(timer);
+            cache.put(RouterImpl.ALL_HOST, "host", new String[] {"host"}, 1);
+            cache.clear();
+            for (int i = 0; i < 5; i++) {
+                cache.put(RouterImpl.ALL_REALM, "realm", new String[] {"realm-host-" + i}, 1);
+            }
+            cache.put(RouterImpl.ALL_SESSION, "session", new String[] {"session-host"}, 1);
+            assertEquals(2, cache.size());
+
+            long deadline = System.currentTimeMillis() + 5000;
+            while (cache.size() > 0 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(20);
+            }
+            assertEquals(0, cache.size());
+            Thread.sleep(100);
+            // tasks of replaced and removed entries were dropped from the wheel, only the last two ran
+            assertEquals(2, timer.getExpiredCount());
+        }
+        finally {
+            timer.shutdownNow();
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testRealmRouteCache() throws Exception {
+        Configuration config = new XMLConfiguration("src/test/resources/jdiameter-weightedroundrobin-config.xml");
+        IStatisticManager manager = new StatisticManagerImpl(config);
+        PeerTest p1 = new PeerTest(1, 1, true, manager);
+        PeerTest p2 = new PeerTest(2, 1, true, manager);
+        final Map<String, IPeer> peers = new HashMap<String, IPeer>();
+        peers.put("aaa://1", p1);
+        IPeerTable peerTable = (IPeerTable) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] {IPeerTable.class},
+                new InvocationHandler() {
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) {
+                        return method.getName().equals("getPeer") ? peers.get(args[0]) : null;
+                    }
+                });
+        IContainer container = (IContainer) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] {IContainer.class},
+                new InvocationHandler() {
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) {
+                        return null;
+                    }
+                });
+        RealmTableImpl realmTable = new RealmTableImpl(container);
+        IRealm realm = new RealmImpl("realm", ApplicationId.createByAuthAppId(4), LocalAction.LOCAL, null, null, false, 0,
+                "aaa://1", "aaa://2");
+
+        List<IPeer> available = realmTable.getAvailablePeers(realm, peerTable);
+        assertEquals(1, available.size());
+        assertTrue("Resolved peers are not cached", available == realmTable.getAvailablePeers(realm, peerTable));
+
+        // peers added to peer table are seen once routes are invalidated
+        peers.put("aaa://2", p2);
+        assertEquals(1, realmTable.getAvailablePeers(realm, peerTable).size());
+        realmTable.invalidateRoutes();
+        available = realmTable.getAvailablePeers(realm, peerTable);
+        assertEquals(2, available.size());
+
+        // a change of state invalidates routes
+        p1.setState(PeerState.DOWN);
+        available = realmTable.getAvailablePeers(realm, peerTable);
+        assertEquals(1, available.size());
+        assertEquals(p2, available.get(0));
+        p1.setState(PeerState.OKAY);
+        available = realmTable.getAvailablePeers(realm, peerTable);
+        assertEquals(2, available.size());
+
+        // connection is left to router, which checks it on the selected peer only
+        p1.setConnected(false);
+        assertTrue("Available peers are not cached", available == realmTable.getAvailablePeers(realm, peerTable));
+    }
+
     private static class RealmTableTest implements IRealmTable {
 
         public Realm matchRealm(IRequest request) {
@@ -289,6 +608,14 @@ public class TestRouter {
 
         }
 
+        public List<IPeer> getAvailablePeers(IRealm realm, IPeerTable peerTable) {
+            return null;
+        }
+
+        public void invalidateRoutes() {
+
+        }
+
         public Realm addRealm(String name, ApplicationId appId, LocalAction locAction, IAgentConfiguration agentConfImpl, boolean isDynamic, long expirationTime, String[] hosts) throws InternalException {
             return null;
         }
@@ -319,12 +646,16 @@ public class TestRouter {
         private int id;
         private int rating;
         private boolean connected;
+        private PeerState state;
+        private int pendingRequests;
+        private final List<StateChangeListener> listeners = new ArrayList<StateChangeListener>();
 
         public PeerTest(int id, int rating, boolean connected, IStatisticManager manager) throws URISyntaxException, UnknownServiceException {
             super(new URI("aaa://"+id), manager);
             this.id = id;
             this.rating = rating;
             this.connected = connected;
+            this.state = connected ? PeerState.OKAY : PeerState.DOWN;
             createPeerStatistics();
         }
 
@@ -332,6 +663,18 @@ public class TestRouter {
             this.rating = rating;
         }
 
+        public void setConnected(boolean connected) {
+            this.connected = connected;
+        }
+
+        public void setState(PeerState state) {
+            PeerState oldState = this.state;
+            this.state = state;
+            for (StateChangeListener listener : listeners) {
+                listener.stateChanged(oldState, state);
+            }
+        }
+
         public int getRating() {
             return rating;
         }
@@ -352,6 +695,14 @@ public class TestRouter {
             return new IMessage[0];
         }
 
+        public void setPendingRequests(int pendingRequests) {
+            this.pendingRequests = pendingRequests;
+        }
+
+        public int getPendingRequests() {
+            return pendingRequests;
+        }
+
         public boolean handleMessage(EventTypes type, IMessage message, String key) throws TransportException, OverloadException, InternalException {
             return false;
         }
@@ -369,11 +720,13 @@ public class TestRouter {
         }
 
         public void addStateChangeListener(StateChangeListener listener) {
-
+            if (!listeners.contains(listener)) {
+                listeners.add(listener);
+            }
         }
 
         public void remStateChangeListener(StateChangeListener listener) {
-
+            listeners.remove(listener);
         }
 
         public void addConnectionListener(IConnectionListener listener) {
@@ -401,8 +754,9 @@ public class TestRouter {
 
         }
 
+        @SuppressWarnings("unchecked")
         public <E> E getState(Class<E> enumc) {
-            return null;
+            return (E) state;
         }
 
         public URI getUri() {
@@ -0,0 +1,408 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2016, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+
+package org.jdiameter.client.impl.transport.tcp;
+
+import static org.jdiameter.client.impl.helpers.Parameters.MaxMessageSize;
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertFalse;
+import static org.testng.AssertJUnit.assertNotNull;
+import static org.testng.AssertJUnit.assertNull;
+import static org.testng.AssertJUnit.assertSame;
+import static org.testng.AssertJUnit.assertTrue;
+import static org.testng.AssertJUnit.fail;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.jdiameter.api.Configuration;
+import org.jdiameter.client.impl.helpers.EmptyConfiguration;
+import org.jdiameter.common.api.concurrent.DummyConcurrentFactory;
+import org.testng.annotations.Test;
+
+/**
+ * Testcases for {@link TCPTransportClient}, against a peer on a loopback socket
+ */
+public class TestTCPTransportClient {
+
+    private static final Object CONNECTED = "connected";
+    private static final Object DISCONNECTED = "disconnected";
+
+    @Test
+    public void testConnectAndPartialReads() throws Exception {
+        ServerSocketChannel server = listen();
+        TestConnection connection = new TestConnection(null);
+        TCPTransportClient client = connection.getClient();
+        try {
+            client.setDestAddress((InetSocketAddress) server.socket().getLocalSocketAddress());
+            client.initialize();
+            client.start();
+            SocketChannel peer = server.accept();
+            assertSame(CONNECTED, next(connection));
+            assertTrue(client.isConnected());
+
+            // received a few bytes at a time, so that headers and messages are split across reads
+            ByteBuffer stream = ByteBuffer.allocate(100 + 20 + 300);
+            stream.put(message(0, 100)).put(message(1, 20)).put(message(2, 300)).flip();
+            int[] chunks = {2, 1, 5, 7};
+            for (int i = 0; stream.hasRemaining(); i++) {
+                ByteBuffer chunk = stream.slice();
+                chunk.limit(Math.min(chunk.remaining(), chunks[i % chunks.length]));
+                stream.position(stream.position() + chunk.remaining());
+                write(peer, chunk);
+                Thread.sleep(1);
+            }
+            assertMessage(0, 100, next(connection));
+            assertMessage(1, 20, next(connection));
+            assertMessage(2, 300, next(connection));
+
+            for (int i = 0; i < 3; i++) {
+                client.sendMessage(ByteBuffer.wrap(message(i, 64)));
+            }
+            ByteBuffer sent = ByteBuffer.allocate(3 * 64);
+            while (sent.hasRemaining()) {
+                assertTrue(peer.read(sent) > 0);
+            }
+            sent.flip();
+            for (int i = 0; i < 3; i++) {
+                ByteBuffer frame = sent.slice();
+                frame.limit(64);
+                sent.position(sent.position() + 64);
+                assertMessage(i, 64, frame);
+            }
+            peer.close();
+        }
+        finally {
+            client.stop();
+            server.close();
+        }
+    }
+
+    @Test
+    public void testReadingIsSuspendedUntilMessagesAreDelivered() throws Exception {
+        ServerSocketChannel server = listen();
+        TestConnection connection = new TestConnection(null);
+        TCPTransportClient client = connection.getClient();
+        SocketChannel channel = SocketChannel.open();
+        try {
+            // small socket buffers, so that the peer notices quickly once it is no longer read from
+            channel.socket().setReceiveBufferSize(4096);
+            channel.connect(server.socket().getLocalSocketAddress());
+            client.initialize(channel.socket());
+            SocketChannel peer = server.accept();
+            peer.socket().setSendBufferSize(4096);
+            peer.configureBlocking(false);
+            connection.release = new CountDownLatch(1);
+            client.start();
+
+            int count = 1000;
+            int length = 1000;
+            ByteBuffer stream = ByteBuffer.allocate(count * length);
+            for (int i = 0; i < count; i++) {
+                stream.put(message(i, length));
+            }
+            stream.flip();
+            long progress = System.currentTimeMillis();
+            while (stream.hasRemaining() && System.currentTimeMillis() - progress < 500) {
+                if (peer.write(stream) > 0) {
+                    progress = System.currentTimeMillis();
+                }
+                else {
+                    Thread.sleep(5);
+                }
+            }
+            // the first message is still being delivered, the rest waits in the socket
+            assertTrue("Peer was not blocked, sent " + stream.position() + " bytes", stream.hasRemaining());
+            assertTrue("Peer sent " + stream.position() + " bytes", stream.position() < count * length / 4);
+            assertEquals(1, connection.events.size());
+
+            connection.release.countDown();
+            peer.configureBlocking(true);
+            write(peer, stream);
+            for (int i = 0; i < count; i++) {
+                assertMessage(i, length, next(connection));
+            }
+            peer.close();
+            assertSame(DISCONNECTED, next(connection));
+        }
+        finally {
+            connection.release.countDown();
+            client.stop();
+            server.close();
+        }
+    }
+
+    @Test
+    public void testCloseByPeerIsReportedAfterLastMessage() throws Exception {
+        ServerSocketChannel server = listen();
+        TestConnection connection = new TestConnection(null);
+        TCPTransportClient client = connection.getClient();
+        try {
+            client.setDestAddress((InetSocketAddress) server.socket().getLocalSocketAddress());
+            client.initialize();
+            client.start();
+            SocketChannel peer = server.accept();
+            assertSame(CONNECTED, next(connection));
+
+            ByteBuffer stream = ByteBuffer.allocate(3 * 200);
+            for (int i = 0; i < 3; i++) {
+                stream.put(message(i, 200));
+            }
+            stream.flip();
+            write(peer, stream);
+            peer.close();
+
+            for (int i = 0; i < 3; i++) {
+                assertMessage(i, 200, next(connection));
+            }
+            assertSame(DISCONNECTED, next(connection));
+            assertFalse(client.isConnected());
+            try {
+                client.sendMessage(ByteBuffer.wrap(message(3, 20)));
+                fail("Message sent on a closed connection");
+            }
+            catch (IOException e) {
+                // expected
+            }
+            // stopping a closed transport does not report the disconnection again
+            client.stop();
+            assertNull(connection.events.poll(200, TimeUnit.MILLISECONDS));
+        }
+        finally {
+            client.stop();
+            server.close();
+        }
+    }
+
+    @Test
+    public void testStopClosesConnectionOnce() throws Exception {
+        ServerSocketChannel server = listen();
+        TestConnection connection = new TestConnection(null);
+        TCPTransportClient client = connection.getClient();
+        try {
+            client.setDestAddress((InetSocketAddress) server.socket().getLocalSocketAddress());
+            client.initialize();
+            client.start();
+            SocketChannel peer = server.accept();
+            assertSame(CONNECTED, next(connection));
+
+            client.stop();
+            client.stop();
+            assertSame(DISCONNECTED, next(connection));
+            assertNull(connection.events.poll(200, TimeUnit.MILLISECONDS));
+            assertFalse(client.isConnected());
+            assertEquals(-1, peer.read(ByteBuffer.allocate(1)));
+            peer.close();
+        }
+        finally {
+            server.close();
+        }
+    }
+
+    @Test
+    public void testFramesSplitAcrossStorages() throws Exception {
+        ServerSocketChannel server = listen();
+        TestConnection connection = new TestConnection(null);
+        TCPTransportClient client = connection.getClient();
+        try {
+            client.setDestAddress((InetSocketAddress) server.socket().getLocalSocketAddress());
+            client.initialize();
+            client.start();
+            SocketChannel peer = server.accept();
+            assertSame(CONNECTED, next(connection));
+
+            // the second message runs past the end of the storage, the third is larger than the storage
+            int[] lengths = {10000, 12000, 40000, 100, TCPTransportClient.DEFAULT_STORAGE_SIZE, 20};
+            int total = 0;
+            for (int length : lengths) {
+                total += length;
+            }
+            ByteBuffer stream = ByteBuffer.allocate(total);
+            for (int i = 0; i < lengths.length; i++) {
+                stream.put(message(i, lengths[i]));
+            }
+            stream.flip();
+            while (stream.hasRemaining()) {
+                ByteBuffer chunk = stream.slice();
+                chunk.limit(Math.min(chunk.remaining(), 3001));
+                stream.position(stream.position() + chunk.remaining());
+                write(peer, chunk);
+                Thread.sleep(1);
+            }
+            for (int i = 0; i < lengths.length; i++) {
+                assertMessage(i, lengths[i], next(connection));
+            }
+            peer.close();
+            assertSame(DISCONNECTED, next(connection));
+        }
+        finally {
+            client.stop();
+            server.close();
+        }
+    }
+
+    @Test
+    public void testMessageOverMaxMessageSizeClosesConnection() throws Exception {
+        ServerSocketChannel server = listen();
+        TestConnection connection = new TestConnection(EmptyConfiguration.getInstance().add(MaxMessageSize, 4096));
+        TCPTransportClient client = connection.getClient();
+        try {
+            client.setDestAddress((InetSocketAddress) server.socket().getLocalSocketAddress());
+            client.initialize();
+            client.start();
+            SocketChannel peer = server.accept();
+            assertSame(CONNECTED, next(connection));
+
+            write(peer, ByteBuffer.wrap(message(0, 4096)));
+            assertMessage(0, 4096, next(connection));
+
+            // rejected on its header, before the rest of it is waited for
+            ByteBuffer header = ByteBuffer.wrap(message(1, 4097));
+            header.limit(20);
+            write(peer, header);
+            assertSame(DISCONNECTED, next(connection));
+            assertFalse(client.isConnected());
+            assertEquals(-1, peer.read(ByteBuffer.allocate(1)));
+            assertNull(connection.events.poll(200, TimeUnit.MILLISECONDS));
+            peer.close();
+        }
+        finally {
+            client.stop();
+            server.close();
+        }
+    }
+
+    @Test
+    public void testInvalidFramesAreDiscarded() throws Exception {
+        ServerSocketChannel server = listen();
+        TestConnection connection = new TestConnection(null);
+        TCPTransportClient client = connection.getClient();
+        try {
+            client.setDestAddress((InetSocketAddress) server.socket().getLocalSocketAddress());
+            client.initialize();
+            client.start();
+            SocketChannel peer = server.accept();
+            assertSame(CONNECTED, next(connection));
+
+            byte[] wrongVersion = message(100, 40);
+            wrongVersion[0] = 2;
+            byte[] tooShort = message(101, 20);
+            tooShort[3] = 19;
+            int index = 0;
+            for (byte[] invalid : new byte[][] {wrongVersion, tooShort}) {
+                write(peer, ByteBuffer.wrap(invalid));
+                // the stream can not be resynchronized, so whatever came with the frame is dropped too
+                Thread.sleep(200);
+                assertNull(connection.events.poll());
+                write(peer, ByteBuffer.wrap(message(index, 60)));
+                assertMessage(index++, 60, next(connection));
+            }
+            assertTrue(client.isConnected());
+            peer.close();
+            assertSame(DISCONNECTED, next(connection));
+        }
+        finally {
+            client.stop();
+            server.close();
+        }
+    }
+
+    private static ServerSocketChannel listen() throws IOException {
+        ServerSocketChannel server = ServerSocketChannel.open();
+        server.socket().bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        return server;
+    }
+
+    private static void write(SocketChannel channel, ByteBuffer data) throws IOException {
+        while (data.hasRemaining()) {
+            channel.write(data);
+        }
+    }
+
+    /**
+     * Creates a message of the given length, with its index in the hop-by-hop and end-to-end identifiers.
+     */
+    static byte[] message(int index, int length) {
+        byte[] data = new byte[length];
+        ByteBuffer buffer = ByteBuffer.wrap(data);
+        buffer.putInt(1 << 24 | length);
+        buffer.putInt(0x80 << 24 | 257);
+        buffer.putInt(0);
+        buffer.putInt(index);
+        buffer.putInt(index);
+        for (int i = 20; i < length; i++) {
+            data[i] = (byte) (index + i);
+        }
+        return data;
+    }
+
+    private static void assertMessage(int index, int length, Object event) {
+        assertTrue("Not a message: " + event, event instanceof ByteBuffer);
+        assertEquals(ByteBuffer.wrap(message(index, length)), event);
+    }
+
+    private static Object next(TestConnection connection) throws InterruptedException {
+        Object event = connection.events.poll(10, TimeUnit.SECONDS);
+        assertNotNull("No event received", event);
+        return event;
+    }
+
+    /**
+     * Records what the transport passes on, delivery of messages can be held back.
+     */
+    static class TestConnection extends TCPClientConnection {
+
+        final BlockingQueue<Object> events = new LinkedBlockingQueue<Object>();
+        volatile CountDownLatch release = new CountDownLatch(0);
+
+        TestConnection(Configuration config) {
+            super(config, new DummyConcurrentFactory(), null);
+        }
+
+        @Override
+        protected void onConnected() {
+            events.add(CONNECTED);
+        }
+
+        @Override
+        protected void onMessageReceived(ByteBuffer message) {
+            events.add(message);
+            try {
+                release.await();
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        @Override
+        protected void onDisconnect() {
+            events.add(DISCONNECTED);
+        }
+    }
+}
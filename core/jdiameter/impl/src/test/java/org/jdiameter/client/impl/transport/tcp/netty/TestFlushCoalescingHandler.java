@@ -0,0 +1,172 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2016, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+
+package org.jdiameter.client.impl.transport.tcp.netty;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertFalse;
+import static org.testng.AssertJUnit.assertNull;
+import static org.testng.AssertJUnit.assertTrue;
+
+import java.io.IOException;
+
+import org.testng.annotations.Test;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelOutboundHandlerAdapter;
+import io.netty.channel.ChannelPromise;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.util.ReferenceCountUtil;
+
+/**
+ * Testcases for {@link FlushCoalescingHandler}
+ */
+public class TestFlushCoalescingHandler {
+
+    @Test
+    public void testFlushesAreDeferredToEventLoop() {
+        FlushCounter counter = new FlushCounter();
+        EmbeddedChannel channel = new EmbeddedChannel(counter, new FlushCoalescingHandler(4, 0));
+        for (int i = 0; i < 3; i++) {
+            channel.writeAndFlush(message(i));
+        }
+        assertEquals(0, counter.flushes);
+        assertNull(channel.readOutbound());
+
+        channel.runPendingTasks();
+        assertEquals(1, counter.flushes);
+        for (int i = 0; i < 3; i++) {
+            assertMessage(i, channel.readOutbound());
+        }
+        assertNull(channel.readOutbound());
+        assertFalse(channel.finish());
+    }
+
+    @Test
+    public void testFlushIsPassedOnAtMaxBatchSize() {
+        FlushCounter counter = new FlushCounter();
+        EmbeddedChannel channel = new EmbeddedChannel(counter, new FlushCoalescingHandler(4, 0));
+        for (int i = 0; i < 10; i++) {
+            channel.writeAndFlush(message(i));
+        }
+        // every fourth flush goes out at once, the rest waits for the event loop
+        assertEquals(2, counter.flushes);
+        for (int i = 0; i < 8; i++) {
+            assertMessage(i, channel.readOutbound());
+        }
+        assertNull(channel.readOutbound());
+
+        channel.runPendingTasks();
+        assertEquals(3, counter.flushes);
+        assertMessage(8, channel.readOutbound());
+        assertMessage(9, channel.readOutbound());
+
+        // nothing pending, the deferred flush is not passed on
+        channel.runPendingTasks();
+        assertEquals(3, counter.flushes);
+        assertFalse(channel.finish());
+    }
+
+    @Test
+    public void testFlushIsDelayed() throws Exception {
+        FlushCounter counter = new FlushCounter();
+        EmbeddedChannel channel = new EmbeddedChannel(counter, new FlushCoalescingHandler(4, 1000));
+        channel.writeAndFlush(message(0));
+        channel.writeAndFlush(message(1));
+        assertEquals(0, counter.flushes);
+
+        Thread.sleep(10);
+        channel.runPendingTasks();
+        assertEquals(1, counter.flushes);
+        assertMessage(0, channel.readOutbound());
+        assertMessage(1, channel.readOutbound());
+        assertFalse(channel.finish());
+    }
+
+    @Test
+    public void testCloseFlushesPendingMessages() {
+        FlushCounter counter = new FlushCounter();
+        EmbeddedChannel channel = new EmbeddedChannel(counter, new FlushCoalescingHandler(4, 0));
+        channel.writeAndFlush(message(0));
+        channel.writeAndFlush(message(1));
+        channel.close();
+        assertEquals(1, counter.flushes);
+        assertMessage(0, channel.readOutbound());
+        assertMessage(1, channel.readOutbound());
+        assertFalse(channel.isOpen());
+    }
+
+    @Test
+    public void testChannelClosesOnWriteFailure() {
+        FlushCounter counter = new FlushCounter();
+        counter.failure = new IOException("Broken pipe");
+        EmbeddedChannel channel = new EmbeddedChannel(counter, new FlushCoalescingHandler(4, 0));
+        ChannelFuture future = channel.writeAndFlush(message(0));
+        assertTrue(future.isDone());
+        assertFalse(future.isSuccess());
+        // the messages flushed with it are gone too, so the connection is closed rather than used on
+        assertFalse(channel.isOpen());
+    }
+
+    private static ByteBuf message(int index) {
+        return Unpooled.wrappedBuffer(new byte[] {(byte) index});
+    }
+
+    private static void assertMessage(int index, Object message) {
+        assertTrue("Not a message: " + message, message instanceof ByteBuf);
+        ByteBuf buffer = (ByteBuf) message;
+        try {
+            assertEquals(1, buffer.readableBytes());
+            assertEquals(index, buffer.getByte(buffer.readerIndex()));
+        }
+        finally {
+            buffer.release();
+        }
+    }
+
+    /**
+     * Counts the flushes passed on towards the socket, writes can be failed.
+     */
+    private static class FlushCounter extends ChannelOutboundHandlerAdapter {
+
+        int flushes;
+        Exception failure;
+
+        @Override
+        public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) throws Exception {
+            if (failure != null) {
+                ReferenceCountUtil.release(msg);
+                promise.setFailure(failure);
+            }
+            else {
+                ctx.write(msg, promise);
+            }
+        }
+
+        @Override
+        public void flush(ChannelHandlerContext ctx) throws Exception {
+            flushes++;
+            ctx.flush();
+        }
+    }
+}
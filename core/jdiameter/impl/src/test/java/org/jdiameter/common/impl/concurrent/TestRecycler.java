@@ -0,0 +1,164 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2016, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+package org.jdiameter.common.impl.concurrent;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertNotNull;
+import static org.testng.AssertJUnit.assertNull;
+import static org.testng.AssertJUnit.assertSame;
+import static org.testng.AssertJUnit.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.testng.annotations.Test;
+
+/**
+ * Testcases for {@link Recycler}
+ */
+public class TestRecycler {
+
+    @Test
+    public void testRecycledObjectIsReusedAndPassivated() {
+        TestObjectRecycler recycler = new TestObjectRecycler(10);
+        TestObject object = recycler.get();
+        object.value = 42;
+        recycler.recycle(object);
+        assertEquals(1, recycler.getIdleCount());
+
+        TestObject reused = recycler.get();
+        assertSame(object, reused);
+        assertEquals(0, reused.value);
+        assertEquals(1, recycler.created.get());
+        assertEquals(0, recycler.getIdleCount());
+
+        recycler.recycle(null);
+        assertEquals(0, recycler.getIdleCount());
+    }
+
+    @Test
+    public void testMaxIdleIsNotExceeded() {
+        for (int maxIdle : new int[] {0, 1, 3, 100, 1000}) {
+            TestObjectRecycler recycler = new TestObjectRecycler(maxIdle);
+            List<TestObject> objects = new ArrayList<TestObject>();
+            for (int i = 0; i < maxIdle * 2 + 10; i++) {
+                objects.add(recycler.get());
+            }
+            for (TestObject object : objects) {
+                recycler.recycle(object);
+            }
+            // a single thread never contends, so every stripe is filled up
+            assertEquals("maxIdle " + maxIdle, maxIdle, recycler.getIdleCount());
+
+            for (int i = 0; i < maxIdle; i++) {
+                assertNotNull(recycler.get());
+            }
+            assertEquals(0, recycler.getIdleCount());
+            assertEquals(objects.size(), recycler.created.get());
+        }
+    }
+
+    @Test
+    public void testConcurrentGetAndRecycle() throws Exception {
+        final int threads = 8;
+        final int iterations = 50000;
+        final int maxIdle = 64;
+        final TestObjectRecycler recycler = new TestObjectRecycler(maxIdle);
+        final CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<Throwable>> results = new ArrayList<Future<Throwable>>();
+            for (int t = 0; t < threads; t++) {
+                results.add(executor.submit(new Callable<Throwable>() {
+                    @Override
+                    public Throwable call() throws Exception {
+                        start.await();
+                        List<TestObject> held = new ArrayList<TestObject>();
+                        try {
+                            for (int i = 0; i < iterations; i++) {
+                                TestObject object = recycler.get();
+                                // an object is handed out to one caller at a time
+                                assertTrue("Object handed out twice", object.inUse.compareAndSet(false, true));
+                                assertEquals(0, object.value);
+                                object.value = i + 1;
+                                held.add(object);
+                                if (held.size() == 4 || i == iterations - 1) {
+                                    for (TestObject h : held) {
+                                        h.inUse.set(false);
+                                        recycler.recycle(h);
+                                    }
+                                    held.clear();
+                                }
+                            }
+                            return null;
+                        }
+                        catch (Throwable e) {
+                            return e;
+                        }
+                    }
+                }));
+            }
+            start.countDown();
+            for (Future<Throwable> result : results) {
+                assertNull(result.get(30, TimeUnit.SECONDS));
+            }
+            assertTrue(recycler.getIdleCount() <= maxIdle);
+            // contended stripes are skipped rather than waited for, so only part of the objects is reused
+            assertTrue("Created " + recycler.created.get(), recycler.created.get() < threads * iterations);
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static class TestObject {
+
+        final AtomicBoolean inUse = new AtomicBoolean();
+        int value;
+    }
+
+    private static class TestObjectRecycler extends Recycler<TestObject> {
+
+        final AtomicInteger created = new AtomicInteger();
+
+        TestObjectRecycler(int maxIdle) {
+            super(maxIdle);
+        }
+
+        @Override
+        protected TestObject newObject() {
+            created.incrementAndGet();
+            return new TestObject();
+        }
+
+        @Override
+        protected void passivate(TestObject object) {
+            object.value = 0;
+        }
+    }
+}
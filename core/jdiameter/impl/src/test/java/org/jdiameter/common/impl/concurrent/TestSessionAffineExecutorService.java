@@ -0,0 +1,271 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2016, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+package org.jdiameter.common.impl.concurrent;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertNotSame;
+import static org.testng.AssertJUnit.assertSame;
+import static org.testng.AssertJUnit.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jdiameter.client.impl.helpers.XMLConfiguration;
+import org.jdiameter.common.api.statistic.IStatisticRecord;
+import org.jdiameter.common.impl.statistic.StatisticManagerImpl;
+import org.testng.annotations.Test;
+
+/**
+ * Testcases for {@link SessionAffineExecutorService}
+ */
+public class TestSessionAffineExecutorService {
+
+    private static final int LANES = 4;
+
+    private final AtomicInteger rejected = new AtomicInteger();
+
+    @Test
+    public void testTasksOfSessionRunInOrder() throws Exception {
+        SessionAffineExecutorService executor = newExecutor();
+        try {
+            int sessions = 16;
+            final int tasks = 5000;
+            final CountDownLatch done = new CountDownLatch(sessions);
+            final List<String> errors = Collections.synchronizedList(new ArrayList<String>());
+            ExecutorService producers = Executors.newFixedThreadPool(sessions);
+            for (int s = 0; s < sessions; s++) {
+                final String sessionId = "host;" + s;
+                final ScheduledExecutorService lane = executor.getSessionExecutor(sessionId);
+                assertSame(lane, executor.getSessionExecutor(new String(sessionId)));
+                producers.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        final int[] next = new int[1];
+                        final Thread[] thread = new Thread[1];
+                        for (int i = 0; i < tasks; i++) {
+                            final int sequence = i;
+                            lane.execute(new Runnable() {
+                                @Override
+                                public void run() {
+                                    if (next[0] != sequence) {
+                                        errors.add(sessionId + ": expected " + next[0] + " got " + sequence);
+                                    }
+                                    if (thread[0] == null) {
+                                        thread[0] = Thread.currentThread();
+                                    }
+                                    else if (thread[0] != Thread.currentThread()) {
+                                        errors.add(sessionId + ": changed thread");
+                                    }
+                                    next[0] = sequence + 1;
+                                    if (sequence == tasks - 1) {
+                                        done.countDown();
+                                    }
+                                }
+                            });
+                        }
+                    }
+                });
+            }
+            assertTrue("Tasks did not complete", done.await(30, TimeUnit.SECONDS));
+            assertEquals(Collections.emptyList(), errors);
+            producers.shutdown();
+        }
+        finally {
+            executor.shutdownNow();
+        }
+        assertEquals(0, rejected.get());
+    }
+
+    @Test
+    public void testSessionsOnDifferentLanesRunInParallel() throws Exception {
+        SessionAffineExecutorService executor = newExecutor();
+        try {
+            String first = "host;0";
+            String second = null;
+            for (int i = 1; second == null; i++) {
+                if (executor.getSessionExecutor("host;" + i) != executor.getSessionExecutor(first)) {
+                    second = "host;" + i;
+                }
+            }
+            assertNotSame(executor.getSessionExecutor(first), executor.getSessionExecutor(second));
+
+            // task of first session waits for one of second session, which would dead lock on a shared lane
+            final CountDownLatch secondRan = new CountDownLatch(1);
+            final CountDownLatch firstDone = new CountDownLatch(1);
+            executor.getSessionExecutor(first).execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        if (secondRan.await(5, TimeUnit.SECONDS)) {
+                            firstDone.countDown();
+                        }
+                    }
+                    catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            });
+            executor.getSessionExecutor(second).execute(new Runnable() {
+                @Override
+                public void run() {
+                    secondRan.countDown();
+                }
+            });
+            assertTrue("Lanes did not run in parallel", firstDone.await(10, TimeUnit.SECONDS));
+
+            // no session id, task goes to the pool
+            assertSame(executor, executor.getSessionExecutor(null));
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testExecuteDuringShutdownRunsOrRejectsEveryTask() throws Exception {
+        for (int round = 0; round < 20; round++) {
+            final SessionAffineExecutorService executor = newExecutor();
+            rejected.set(0);
+            final AtomicInteger ran = new AtomicInteger();
+            final AtomicInteger submitted = new AtomicInteger();
+            final CountDownLatch start = new CountDownLatch(1);
+            int producers = 4;
+            ExecutorService pool = Executors.newFixedThreadPool(producers);
+            List<Future<?>> results = new ArrayList<Future<?>>();
+            for (int p = 0; p < producers; p++) {
+                final String sessionId = "host;" + p;
+                results.add(pool.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        ScheduledExecutorService lane = executor.getSessionExecutor(sessionId);
+                        start.await();
+                        Runnable task = new Runnable() {
+                            @Override
+                            public void run() {
+                                ran.incrementAndGet();
+                            }
+                        };
+                        while (!lane.isShutdown()) {
+                            submitted.incrementAndGet();
+                            lane.execute(task);
+                        }
+                        // these are rejected
+                        for (int i = 0; i < 10; i++) {
+                            submitted.incrementAndGet();
+                            lane.execute(task);
+                        }
+                        return null;
+                    }
+                }));
+            }
+            start.countDown();
+            Thread.sleep(2);
+            executor.shutdown();
+            for (Future<?> result : results) {
+                result.get(30, TimeUnit.SECONDS);
+            }
+            assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+            assertTrue(executor.isTerminated());
+            // a task is never lost, it is either run or rejected
+            assertEquals("round " + round, submitted.get(), ran.get() + rejected.get());
+            assertTrue(rejected.get() >= producers * 10);
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void testShutdownNowReturnsPendingTasks() throws Exception {
+        SessionAffineExecutorService executor = newExecutor();
+        final CountDownLatch blocked = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger ran = new AtomicInteger();
+        ScheduledExecutorService lane = executor.getSessionExecutor("host;0");
+        lane.execute(new Runnable() {
+            @Override
+            public void run() {
+                blocked.countDown();
+                try {
+                    release.await();
+                }
+                catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        assertTrue(blocked.await(5, TimeUnit.SECONDS));
+        int pending = 100;
+        for (int i = 0; i < pending; i++) {
+            lane.execute(new Runnable() {
+                @Override
+                public void run() {
+                    ran.incrementAndGet();
+                }
+            });
+        }
+
+        List<Runnable> drained = executor.shutdownNow();
+        assertEquals(pending, drained.size());
+        assertTrue(lane.isShutdown());
+        release.countDown();
+        assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+        // drained tasks were not run by the lane
+        assertEquals(0, ran.get());
+        for (Runnable task : drained) {
+            task.run();
+        }
+        assertEquals(pending, ran.get());
+
+        lane.execute(new Runnable() {
+            @Override
+            public void run() {
+                ran.incrementAndGet();
+            }
+        });
+        assertEquals(1, rejected.get());
+        assertEquals(pending, ran.get());
+    }
+
+    private SessionAffineExecutorService newExecutor() throws Exception {
+        StatisticManagerImpl statisticManager = new StatisticManagerImpl(new XMLConfiguration("src/test/resources/jdiameter-weightedroundrobin-config.xml"));
+        ConcurrentEntityFactory entityFactory = new ConcurrentEntityFactory() {
+            @Override
+            public RejectedExecutionHandler newRejectedExecutionHandler(IStatisticRecord rejectedCount) {
+                return new RejectedExecutionHandler() {
+                    @Override
+                    public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
+                        rejected.incrementAndGet();
+                    }
+                };
+            }
+        };
+        return new SessionAffineExecutorService("TestLanes", null, entityFactory, statisticManager, LANES);
+    }
+}
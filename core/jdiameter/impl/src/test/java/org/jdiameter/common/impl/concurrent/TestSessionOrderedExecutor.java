@@ -0,0 +1,142 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2016, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+package org.jdiameter.common.impl.concurrent;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.testng.annotations.Test;
+
+/**
+ * Testcases for {@link SessionOrderedExecutor}
+ */
+public class TestSessionOrderedExecutor {
+
+    // starts a thread per task, as the virtual thread executor does
+    private final AtomicInteger started = new AtomicInteger();
+    private final Executor threadPerTask = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            started.incrementAndGet();
+            new Thread(command).start();
+        }
+    };
+
+    @Test
+    public void testTasksOfSessionRunInOrder() throws Exception {
+        final SessionOrderedExecutor executor = new SessionOrderedExecutor(threadPerTask);
+        int sessions = 8;
+        final int tasks = 2000;
+        final CountDownLatch done = new CountDownLatch(sessions);
+        final List<String> errors = Collections.synchronizedList(new ArrayList<String>());
+        List<Thread> producers = new ArrayList<Thread>();
+        for (int s = 0; s < sessions; s++) {
+            final String sessionId = "host;" + s;
+            final AtomicInteger next = new AtomicInteger();
+            Thread producer = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < tasks; i++) {
+                        final int sequence = i;
+                        executor.execute(sessionId, new Runnable() {
+                            @Override
+                            public void run() {
+                                if (next.getAndIncrement() != sequence) {
+                                    errors.add(sessionId + ": out of order at " + sequence);
+                                }
+                                if (sequence == tasks - 1) {
+                                    done.countDown();
+                                }
+                            }
+                        });
+                        if (i % 100 == 0) {
+                            Thread.yield();
+                        }
+                    }
+                }
+            });
+            producers.add(producer);
+            producer.start();
+        }
+        assertTrue("Tasks did not complete", done.await(30, TimeUnit.SECONDS));
+        assertEquals(Collections.emptyList(), errors);
+
+        // drained mailboxes are removed
+        long deadline = System.currentTimeMillis() + 5000;
+        while (executor.getMailboxCount() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(0, executor.getMailboxCount());
+    }
+
+    @Test
+    public void testBlockedSessionDoesNotDelayOthers() throws Exception {
+        SessionOrderedExecutor executor = new SessionOrderedExecutor(threadPerTask);
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch otherRan = new CountDownLatch(1);
+        final AtomicInteger blockedRan = new AtomicInteger();
+        executor.execute("host;blocked", new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    release.await();
+                }
+                catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        // queued behind the blocked task of its session
+        executor.execute("host;blocked", new Runnable() {
+            @Override
+            public void run() {
+                blockedRan.incrementAndGet();
+            }
+        });
+        executor.execute("host;other", new Runnable() {
+            @Override
+            public void run() {
+                otherRan.countDown();
+            }
+        });
+        try {
+            assertTrue("Other session was delayed", otherRan.await(5, TimeUnit.SECONDS));
+            assertEquals(0, blockedRan.get());
+        }
+        finally {
+            release.countDown();
+        }
+        long deadline = System.currentTimeMillis() + 5000;
+        while (blockedRan.get() == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(1, blockedRan.get());
+        // one thread per mailbox, not per task
+        assertEquals(2, started.get());
+    }
+}
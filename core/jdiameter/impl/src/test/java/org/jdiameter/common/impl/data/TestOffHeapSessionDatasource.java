@@ -0,0 +1,185 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2016, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+package org.jdiameter.common.impl.data;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertNotNull;
+import static org.testng.AssertJUnit.assertTrue;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+import org.jdiameter.api.BaseSession;
+import org.jdiameter.api.Session;
+import org.jdiameter.api.app.AppSession;
+import org.jdiameter.api.app.StateChangeListener;
+import org.jdiameter.api.cca.ClientCCASession;
+import org.jdiameter.api.cca.ClientCCASessionListener;
+import org.jdiameter.client.api.IAssembler;
+import org.jdiameter.client.api.IContainer;
+import org.jdiameter.client.api.ISessionFactory;
+import org.jdiameter.client.impl.app.cca.ClientCCASessionImpl;
+import org.jdiameter.client.impl.app.cca.IClientCCASessionData;
+import org.jdiameter.common.api.app.IAppSessionFactory;
+import org.jdiameter.common.api.app.cca.ClientCCASessionState;
+import org.jdiameter.common.api.app.cca.ICCAMessageFactory;
+import org.jdiameter.common.api.app.cca.ICCASessionData;
+import org.jdiameter.common.api.concurrent.DummyConcurrentFactory;
+import org.jdiameter.common.api.concurrent.IConcurrentFactory;
+import org.testng.annotations.Test;
+
+/**
+ * Testcases for {@link OffHeapSessionDatasource}
+ */
+public class TestOffHeapSessionDatasource {
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+    private final IConcurrentFactory concurrentFactory = new DummyConcurrentFactory() {
+        @Override
+        public ScheduledExecutorService getScheduledExecutorService(String name) {
+            return scheduler;
+        }
+    };
+
+    private IContainer container;
+    private ISessionFactory sessionFactory;
+    private OffHeapSessionDatasource datasource;
+    private final StateChangeListener<?> factoryStateListener = stub(StateChangeListener.class);
+
+    @Test
+    public void testEvictionKeepsSessionState() throws Exception {
+        try {
+            container = stub(IContainer.class);
+            sessionFactory = stub(ISessionFactory.class);
+            datasource = new OffHeapSessionDatasource(container);
+
+            ClientCCASessionImpl idle = addSession("idle");
+            data("idle").setClientCCASessionState(ClientCCASessionState.OPEN);
+            data("idle").setGatheredRequestedAction(2);
+            ClientCCASessionImpl listened = addSession("listened");
+            StateChangeListener<?> listener = stub(StateChangeListener.class);
+            listened.addStateChangeNotification(listener);
+            ClientCCASessionImpl timed = addSession("timed");
+            data("timed").setTxTimerId("tx");
+
+            datasource.evictIdleSessions();
+
+            // created again with state it had
+            BaseSession recreated = datasource.getSession("idle");
+            assertNotNull(recreated);
+            assertTrue("Idle session was not dropped", recreated != idle);
+            assertEquals(ClientCCASessionState.OPEN, ((ClientCCASession) recreated).getState(ClientCCASessionState.class));
+            assertEquals(2, data("idle").getGatheredRequestedAction());
+            assertTrue(recreated == datasource.getSessionListener("idle"));
+
+            // listener and running Tx are not in session data, those instances stay
+            assertTrue("Session with state listener was dropped", listened == datasource.getSession("listened"));
+            assertTrue("Session with running Tx was dropped", timed == datasource.getSession("timed"));
+
+            listened.removeStateChangeNotification(listener);
+            data("timed").setTxTimerId(null);
+            datasource.evictIdleSessions();
+            assertTrue(listened != datasource.getSession("listened"));
+            assertTrue(timed != datasource.getSession("timed"));
+        }
+        finally {
+            scheduler.shutdownNow();
+        }
+    }
+
+    private ClientCCASessionImpl addSession(String sessionId) {
+        ClientCCASessionImpl session = newSession(sessionId);
+        datasource.addSession(session);
+        datasource.setSessionListener(sessionId, session);
+        return session;
+    }
+
+    private IClientCCASessionData data(String sessionId) {
+        return (IClientCCASessionData) datasource.getDataFactory(ICCASessionData.class).getAppSessionData(ClientCCASession.class, sessionId);
+    }
+
+    @SuppressWarnings("unchecked")
+    private ClientCCASessionImpl newSession(String sessionId) {
+        return new ClientCCASessionImpl(data(sessionId), stub(ICCAMessageFactory.class), sessionFactory, stub(ClientCCASessionListener.class),
+                null, (StateChangeListener<AppSession>) factoryStateListener);
+    }
+
+    /**
+     * Stub of stack components sessions are created with
+     */
+    @SuppressWarnings("unchecked")
+    private <T> T stub(Class<T> iface) {
+        return (T) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] {iface}, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                switch (method.getName()) {
+                    case "getSessionFactory":
+                        return sessionFactory;
+                    case "getContainer":
+                        return container;
+                    case "getAssemblerFacility":
+                        return stub(IAssembler.class);
+                    case "getComponentInstance":
+                        return args[0] == IConcurrentFactory.class ? concurrentFactory : null;
+                    case "getNewSession":
+                        return stubSession((String) args[0]);
+                    case "getAppSessionFactory":
+                        return stub(IAppSessionFactory.class);
+                    case "getSession":
+                        return newSession((String) args[0]);
+                    case "getApplicationIds":
+                        return new long[] {4};
+                    case "hashCode":
+                        return System.identityHashCode(proxy);
+                    case "equals":
+                        return proxy == args[0];
+                    default:
+                        return null;
+                }
+            }
+        });
+    }
+
+    private Session stubSession(final String sessionId) {
+        return (Session) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] {Session.class}, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                switch (method.getName()) {
+                    case "getSessionId":
+                        return sessionId;
+                    case "getLastAccessedTime":
+                    case "getCreationTime":
+                        return 0L;
+                    case "isValid":
+                        return true;
+                    case "hashCode":
+                        return System.identityHashCode(proxy);
+                    case "equals":
+                        return proxy == args[0];
+                    default:
+                        return null;
+                }
+            }
+        });
+    }
+}
@@ -0,0 +1,231 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2016, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+package org.jdiameter.common.impl.data;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertNull;
+import static org.testng.AssertJUnit.assertTrue;
+import static org.testng.AssertJUnit.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.jdiameter.api.cca.ClientCCASession;
+import org.jdiameter.client.impl.app.cca.ClientCCASessionDataOffHeapImpl;
+import org.jdiameter.common.api.app.cca.ClientCCASessionState;
+import org.testng.annotations.Test;
+
+/**
+ * Testcases for {@link OffHeapSessionStore} and {@link AppSessionDataOffHeapImpl} handles
+ */
+public class TestOffHeapSessionStore {
+
+    private static final int KEY_CAPACITY = 80;
+
+    @Test
+    public void testCreateFindRelease() {
+        OffHeapSessionStore store = newStore();
+        int record = store.create("session;1");
+        assertTrue(record >= 0);
+        assertEquals(-1, store.create("session;1"));
+        assertEquals(record, store.find("session;1"));
+        assertEquals(-1, store.find("session;2"));
+        assertEquals(1, store.size());
+
+        store.putInt(record, 4, 42);
+        store.setReference(record, 1, "reference");
+        int generation = store.getGeneration(record);
+        store.release(record, generation);
+        assertEquals(-1, store.find("session;1"));
+        assertEquals(0, store.size());
+
+        // record is reused zeroed, with new generation
+        assertEquals(record, store.create("session;2"));
+        assertEquals(0, store.getInt(record, 4));
+        assertNull(store.getReference(record, 1));
+        assertEquals(generation + 1, store.getGeneration(record));
+
+        // release with stale generation is ignored
+        store.release(record, generation);
+        assertEquals(record, store.find("session;2"));
+    }
+
+    @Test
+    public void testReleaseKeepsOtherRecordsFound() {
+        OffHeapSessionStore store = newStore();
+        // enough to resize index and make probe runs, released ones leave gaps closed by backward shift
+        List<String> ids = new ArrayList<String>();
+        for (int i = 0; i < 5000; i++) {
+            ids.add("127.0.0.1;1342992100;" + i);
+        }
+        List<Integer> records = new ArrayList<Integer>();
+        for (String id : ids) {
+            records.add(store.create(id));
+        }
+        for (int i = 0; i < ids.size(); i += 3) {
+            store.release(records.get(i), store.getGeneration(records.get(i)));
+        }
+        for (int i = 0; i < ids.size(); i++) {
+            assertEquals(ids.get(i), i % 3 == 0 ? -1 : records.get(i).intValue(), store.find(ids.get(i)));
+        }
+
+        for (int i = 0; i < ids.size(); i += 3) {
+            store.create(ids.get(i));
+        }
+        for (String id : ids) {
+            assertTrue(id, store.find(id) >= 0);
+        }
+        assertEquals(ids.size(), store.size());
+    }
+
+    @Test
+    public void testConcurrentCreateFindRelease() throws Exception {
+        final OffHeapSessionStore store = newStore();
+        final int threads = 8;
+        final int sessions = 2000;
+        final CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<Void>> results = new ArrayList<Future<Void>>();
+            for (int t = 0; t < threads; t++) {
+                final String prefix = (t % 2 == 0 ? "127.0.0.1;" : "хост;") + t + ";";
+                results.add(executor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        start.await();
+                        int[] records = new int[sessions];
+                        for (int round = 0; round < 3; round++) {
+                            for (int i = 0; i < sessions; i++) {
+                                records[i] = store.create(prefix + i);
+                                assertTrue(records[i] >= 0);
+                                store.putInt(records[i], 0, i);
+                            }
+                            for (int i = 0; i < sessions; i++) {
+                                assertEquals(records[i], store.find(prefix + i));
+                                assertEquals(i, store.getInt(records[i], 0));
+                            }
+                            for (int i = 0; i < sessions; i += 2) {
+                                store.release(records[i], store.getGeneration(records[i]));
+                            }
+                            for (int i = 0; i < sessions; i++) {
+                                assertEquals(i % 2 == 0 ? -1 : records[i], store.find(prefix + i));
+                            }
+                            for (int i = 1; i < sessions; i += 2) {
+                                store.release(records[i], store.getGeneration(records[i]));
+                                assertEquals(-1, store.find(prefix + i));
+                            }
+                        }
+                        return null;
+                    }
+                }));
+            }
+            start.countDown();
+            for (Future<Void> result : results) {
+                result.get(60, TimeUnit.SECONDS);
+            }
+        }
+        finally {
+            executor.shutdownNow();
+        }
+        assertEquals(0, store.size());
+    }
+
+    @Test
+    public void testIdsIndexedOnHeap() {
+        OffHeapSessionStore store = newStore();
+        StringBuilder sb = new StringBuilder("127.0.0.1;1342992100;");
+        while (sb.length() < KEY_CAPACITY) {
+            sb.append('x');
+        }
+        String fits = sb.toString();
+        String tooLong = sb.append(";optional").toString();
+        String latin1 = "hôte;1342992100;1";
+        String nonLatin1 = "хост;1342992100;1";
+        // same low byte of each character as id above
+        String truncated = "E>AB;1342992100;1";
+        String[] ids = {fits, tooLong, latin1, nonLatin1};
+
+        List<Integer> records = new ArrayList<Integer>();
+        for (String id : ids) {
+            records.add(store.create(id));
+        }
+        for (int i = 0; i < ids.length; i++) {
+            assertEquals(ids[i], records.get(i).intValue(), store.find(ids[i]));
+            assertEquals(-1, store.create(ids[i]));
+        }
+        assertEquals(-1, store.find(truncated));
+        assertEquals(-1, store.find(fits.substring(1)));
+
+        for (int i = 0; i < ids.length; i++) {
+            store.release(records.get(i), store.getGeneration(records.get(i)));
+            assertEquals(-1, store.find(ids[i]));
+        }
+        assertEquals(0, store.size());
+    }
+
+    @Test
+    public void testStaleHandle() {
+        OffHeapSessionStore store = newStore();
+        ClientCCASessionDataOffHeapImpl released = new ClientCCASessionDataOffHeapImpl("session;1", store);
+        released.setClientCCASessionState(ClientCCASessionState.OPEN);
+        released.remove();
+
+        // new session reuses the record, handle of released one must not see or release it
+        ClientCCASessionDataOffHeapImpl data = new ClientCCASessionDataOffHeapImpl("session;2", store);
+        try {
+            released.getClientCCASessionState();
+            fail("State of released session read");
+        }
+        catch (IllegalStateException e) {
+            // expected
+        }
+        released.remove();
+        assertTrue(store.find("session;2") >= 0);
+        assertEquals(ClientCCASessionState.IDLE, data.getClientCCASessionState());
+    }
+
+    @Test
+    public void testHandleCreatedAgainKeepsState() {
+        OffHeapSessionStore store = newStore();
+        ClientCCASessionDataOffHeapImpl data = new ClientCCASessionDataOffHeapImpl("session;1", store);
+        data.setClientCCASessionState(ClientCCASessionState.OPEN);
+        data.setEventBased(false);
+        data.setGatheredRequestedAction(2);
+        data.setTxTimerId("tx");
+
+        ClientCCASessionDataOffHeapImpl again = new ClientCCASessionDataOffHeapImpl("session;1", store);
+        assertEquals(ClientCCASessionState.OPEN, again.getClientCCASessionState());
+        assertEquals(false, again.isEventBased());
+        assertEquals(2, again.getGatheredRequestedAction());
+        assertEquals("tx", again.getTxTimerId());
+        assertEquals(1, store.size());
+    }
+
+    private OffHeapSessionStore newStore() {
+        return new OffHeapSessionStore(ClientCCASession.class, KEY_CAPACITY, ClientCCASessionDataOffHeapImpl.DATA_SIZE,
+                ClientCCASessionDataOffHeapImpl.REFERENCE_SLOTS);
+    }
+}
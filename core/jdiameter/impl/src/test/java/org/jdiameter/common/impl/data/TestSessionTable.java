@@ -0,0 +1,192 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2016, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+package org.jdiameter.common.impl.data;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertFalse;
+import static org.testng.AssertJUnit.assertNull;
+import static org.testng.AssertJUnit.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.testng.annotations.Test;
+
+/**
+ * Testcases for {@link SessionTable}
+ */
+public class TestSessionTable {
+
+    @Test
+    public void testPutGetRemove() {
+        SessionTable table = new SessionTable();
+        assertNull(table.putSession("session;1", "session1"));
+        assertTrue(table.set("session;1", SessionTable.LISTENER, "listener1"));
+        assertFalse(table.set("session;2", SessionTable.LISTENER, "listener2"));
+        assertEquals(1, table.size());
+
+        // listener of existing entry is kept
+        assertEquals("session1", table.putSession("session;1", "session2"));
+        assertEquals("session2", table.get("session;1", SessionTable.SESSION));
+        assertEquals("listener1", table.replace("session;1", SessionTable.LISTENER, null));
+        assertNull(table.get("session;1", SessionTable.LISTENER));
+        assertTrue(table.containsKey(new String("session;1")));
+
+        assertEquals("session2", table.remove("session;1"));
+        assertFalse(table.containsKey("session;1"));
+        assertNull(table.remove("session;1"));
+        assertNull(table.replace("session;1", SessionTable.LISTENER, "listener1"));
+        assertEquals(0, table.size());
+    }
+
+    @Test
+    public void testProbeRunWrapsAround() {
+        SessionTable table = new SessionTable();
+        int last = SessionTable.MIN_CAPACITY - 1;
+        // three keys at home in last slot fill it and wrap to slots 0 and 1, fourth one is at home in slot 0
+        List<String> keys = keys(last, SessionTable.MIN_CAPACITY, 3);
+        keys.addAll(keys(0, SessionTable.MIN_CAPACITY, 1));
+        for (String key : keys) {
+            table.putSession(key, "session-" + key);
+        }
+        assertAll(table, keys);
+
+        // removing head of the run shifts wrapped entries back, entry at home in slot 0 goes back to it
+        table.remove(keys.remove(0));
+        assertAll(table, keys);
+        table.remove(keys.remove(keys.size() - 1));
+        assertAll(table, keys);
+
+        // a freed slot is reused by entry put next
+        keys.addAll(keys(last, SessionTable.MIN_CAPACITY, 1, keys));
+        table.putSession(keys.get(keys.size() - 1), "session-" + keys.get(keys.size() - 1));
+        assertAll(table, keys);
+        assertEquals(keys.size(), table.size());
+    }
+
+    @Test
+    public void testResize() {
+        SessionTable table = new SessionTable();
+        // all in one segment and crowded in its last slots, so runs wrap before and after resizes
+        List<String> keys = keys(SessionTable.MIN_CAPACITY * 8 - 2, SessionTable.MIN_CAPACITY * 8, 200);
+        for (String key : keys) {
+            table.putSession(key, "session-" + key);
+            table.set(key, SessionTable.LISTENER, "listener-" + key);
+        }
+        assertAll(table, keys);
+        for (String key : keys) {
+            assertEquals("listener-" + key, table.get(key, SessionTable.LISTENER));
+        }
+
+        // shrinks back as entries are removed
+        while (keys.size() > 1) {
+            assertEquals("session-" + keys.get(0), table.remove(keys.remove(0)));
+            assertAll(table, keys);
+        }
+        assertEquals(1, table.size());
+    }
+
+    @Test
+    public void testReadersDuringRemoval() throws Exception {
+        int capacity = SessionTable.MIN_CAPACITY * 4;
+        final List<String> stable = keys(capacity - 1, capacity, 20);
+        final List<String> removed = keys(capacity - 1, capacity, 20, stable);
+        final AtomicReference<SessionTable> current = new AtomicReference<SessionTable>(new SessionTable());
+        for (String key : stable) {
+            current.get().putSession(key, "session-" + key);
+        }
+
+        final AtomicReference<String> failure = new AtomicReference<String>();
+        final CountDownLatch done = new CountDownLatch(1);
+        List<Thread> readers = new ArrayList<Thread>();
+        for (int i = 0; i < 4; i++) {
+            Thread reader = new Thread() {
+                @Override
+                public void run() {
+                    while (done.getCount() > 0 && failure.get() == null) {
+                        SessionTable table = current.get();
+                        for (String key : stable) {
+                            Object session = table.get(key, SessionTable.SESSION);
+                            if (!("session-" + key).equals(session)) {
+                                failure.compareAndSet(null, key + " read as " + session);
+                            }
+                        }
+                    }
+                }
+            };
+            reader.start();
+            readers.add(reader);
+        }
+
+        try {
+            for (int round = 0; round < 20000 && failure.get() == null; round++) {
+                // stable entries are put behind the others of their run, each removal shifts them back while being read
+                SessionTable table = new SessionTable();
+                for (String key : removed) {
+                    table.putSession(key, "session-" + key);
+                }
+                for (String key : stable) {
+                    table.putSession(key, "session-" + key);
+                }
+                current.set(table);
+                for (String key : removed) {
+                    table.remove(key);
+                }
+            }
+        }
+        finally {
+            done.countDown();
+            for (Thread reader : readers) {
+                reader.join(TimeUnit.SECONDS.toMillis(5));
+            }
+        }
+        assertNull(failure.get());
+        assertAll(current.get(), stable);
+    }
+
+    private void assertAll(SessionTable table, List<String> keys) {
+        for (String key : keys) {
+            assertEquals("Entry not found: " + key, "session-" + key, table.get(key, SessionTable.SESSION));
+        }
+        assertEquals(keys.size(), table.size());
+    }
+
+    private List<String> keys(int home, int capacity, int count) {
+        return keys(home, capacity, count, new ArrayList<String>());
+    }
+
+    /**
+     * @return keys of the first segment whose home is given slot in a segment of given capacity
+     */
+    private List<String> keys(int home, int capacity, int count, List<String> excluded) {
+        List<String> keys = new ArrayList<String>();
+        for (int i = 0; keys.size() < count; i++) {
+            String key = "127.0.0.1;" + i;
+            int hash = SessionTable.hash(key);
+            if (hash >>> (32 - SessionTable.SEGMENT_BITS) == 0 && (hash & (capacity - 1)) == home && !excluded.contains(key)) {
+                keys.add(key);
+            }
+        }
+        return keys;
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2016, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+package org.jdiameter.common.impl.statistic;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.jdiameter.common.api.statistic.ILatencyStatistic.Latency;
+import org.testng.annotations.Test;
+
+/**
+ * Testcases for {@link LatencyHistogram} and {@link LatencyStatisticImpl}
+ */
+public class TestLatencyHistogram {
+
+    @Test
+    public void testSmallValuesAreExact() {
+        for (int value = 0; value < 64; value++) {
+            assertEquals(value, LatencyHistogram.indexOf(value));
+            assertEquals(value, LatencyHistogram.highestValueAt(value));
+        }
+    }
+
+    @Test
+    public void testBucketsAreContiguous() {
+        int last = LatencyHistogram.indexOf(LatencyHistogram.MAX_VALUE);
+        assertEquals(LatencyHistogram.MAX_VALUE, LatencyHistogram.highestValueAt(last));
+        for (int index = 0; index < last; index++) {
+            long highest = LatencyHistogram.highestValueAt(index);
+            assertEquals("Highest value of bucket " + index, index, LatencyHistogram.indexOf(highest));
+            assertEquals("Value following bucket " + index, index + 1, LatencyHistogram.indexOf(highest + 1));
+        }
+    }
+
+    @Test
+    public void testPrecision() {
+        for (long value = 1; value <= LatencyHistogram.MAX_VALUE; value = value * 3 / 2 + 1) {
+            long reported = LatencyHistogram.highestValueAt(LatencyHistogram.indexOf(value));
+            assertTrue("Value " + value + " reported lower: " + reported, reported >= value);
+            assertTrue("Value " + value + " reported as " + reported, reported - value <= value / 32);
+        }
+    }
+
+    @Test
+    public void testPercentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.getValueAtPercentile(50));
+        for (int value = 1; value <= 1000; value++) {
+            histogram.recordValue(value);
+        }
+        assertEquals(1000, histogram.getTotalCount());
+        assertWithin(500, histogram.getValueAtPercentile(50));
+        assertWithin(990, histogram.getValueAtPercentile(99));
+        assertWithin(1000, histogram.getValueAtPercentile(100));
+        assertWithin(1000, histogram.getMaxValue());
+
+        // out of range values are clamped
+        histogram.recordValue(-5);
+        histogram.recordValue(Long.MAX_VALUE);
+        assertEquals(0, histogram.getValueAtPercentile(0.01));
+        assertEquals(LatencyHistogram.MAX_VALUE, histogram.getMaxValue());
+
+        histogram.reset();
+        assertEquals(0, histogram.getTotalCount());
+        assertEquals(0, histogram.getMaxValue());
+    }
+
+    @Test
+    public void testPairsAboveLimitAreFoldedIntoOverflow() {
+        LatencyStatisticImpl statistic = new LatencyStatisticImpl("test");
+        long micros = TimeUnit.MICROSECONDS.toNanos(100);
+        for (int commandCode = 0; commandCode < LatencyStatisticImpl.MAX_PAIRS; commandCode++) {
+            statistic.record(Latency.AnswerTime, 4, commandCode, micros);
+        }
+        for (int commandCode = 0; commandCode < 10; commandCode++) {
+            statistic.record(Latency.AnswerTime, 16777255, 8388620 + commandCode, micros);
+        }
+        statistic.record(Latency.AnswerTime, 4, 0, micros);
+
+        assertEquals(2, statistic.getCount(Latency.AnswerTime, 4, 0));
+        assertEquals(1, statistic.getCount(Latency.AnswerTime, 4, LatencyStatisticImpl.MAX_PAIRS - 1));
+        assertEquals(0, statistic.getCount(Latency.AnswerTime, 16777255, 8388620));
+        int overflow = LatencyStatisticImpl.OVERFLOW_ID;
+        assertEquals(10, statistic.getCount(Latency.AnswerTime, overflow, overflow));
+        assertWithin(100, statistic.getValueAtPercentile(Latency.AnswerTime, overflow, overflow, 50));
+        assertEquals(0, statistic.getCount(Latency.ListenerTime, overflow, overflow));
+    }
+
+    private void assertWithin(long expected, long actual) {
+        assertTrue("Expected about " + expected + " but was " + actual, actual >= expected && actual - expected <= expected / 32);
+    }
+}
@@ -0,0 +1,231 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2016, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+package org.jdiameter.common.impl.timer;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertFalse;
+import static org.testng.AssertJUnit.assertTrue;
+import static org.testng.AssertJUnit.fail;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jdiameter.common.api.concurrent.DummyConcurrentFactory;
+import org.testng.annotations.Test;
+
+/**
+ * Testcases for {@link HashedWheelTimer}
+ */
+public class TestHashedWheelTimer {
+
+    // 4 buckets of 5 ms, most of the tasks below are several revolutions away
+    private static final int TICK = 5;
+    private static final int WHEEL_SIZE = 4;
+
+    @Test
+    public void testTasksExpireInDeadlineOrder() throws Exception {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        HashedWheelTimer timer = newTimer(executor);
+        try {
+            int count = 20;
+            List<Integer> delays = new ArrayList<Integer>();
+            for (int i = 0; i < count; i++) {
+                delays.add(i * 4 * TICK);
+            }
+            Collections.shuffle(delays);
+
+            final List<Integer> expired = Collections.synchronizedList(new ArrayList<Integer>());
+            final CountDownLatch done = new CountDownLatch(count);
+            final long start = System.nanoTime();
+            for (final int delay : delays) {
+                timer.schedule(new Runnable() {
+                    @Override
+                    public void run() {
+                        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+                        assertTrue("Task ran early: " + elapsed + " < " + delay, elapsed >= delay);
+                        expired.add(delay);
+                        done.countDown();
+                    }
+                }, delay, TimeUnit.MILLISECONDS);
+            }
+            assertTrue("Tasks did not expire", done.await(5, TimeUnit.SECONDS));
+            List<Integer> sorted = new ArrayList<Integer>(delays);
+            Collections.sort(sorted);
+            assertEquals(sorted, expired);
+            assertEquals(count, timer.getExpiredCount());
+        }
+        finally {
+            timer.shutdownNow();
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testCallableResult() throws Exception {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        HashedWheelTimer timer = newTimer(executor);
+        try {
+            ScheduledFuture<String> future = timer.schedule(new Callable<String>() {
+                @Override
+                public String call() {
+                    return "expired";
+                }
+            }, 3 * TICK, TimeUnit.MILLISECONDS);
+            assertEquals("expired", future.get(5, TimeUnit.SECONDS));
+            assertTrue(future.isDone());
+        }
+        finally {
+            timer.shutdownNow();
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testCancelledTaskDoesNotRun() throws Exception {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        HashedWheelTimer timer = newTimer(executor);
+        try {
+            final AtomicInteger runs = new AtomicInteger();
+            Runnable task = new Runnable() {
+                @Override
+                public void run() {
+                    runs.incrementAndGet();
+                }
+            };
+            ScheduledFuture<?> cancelled = timer.schedule(task, 10 * TICK, TimeUnit.MILLISECONDS);
+            // already in its bucket when cancelled
+            Thread.sleep(3 * TICK);
+            ScheduledFuture<?> other = timer.schedule(task, 10 * TICK, TimeUnit.MILLISECONDS);
+            assertTrue(cancelled.cancel(false));
+            assertTrue(cancelled.isCancelled());
+            assertFalse("Cancelled twice", cancelled.cancel(false));
+
+            other.get(5, TimeUnit.SECONDS);
+            Thread.sleep(10 * TICK);
+            assertEquals("Cancelled task ran", 1, runs.get());
+            assertEquals(1, timer.getExpiredCount());
+        }
+        finally {
+            timer.shutdownNow();
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testPeriodicTasks() throws Exception {
+        ExecutorService executor = Executors.newCachedThreadPool();
+        HashedWheelTimer timer = newTimer(executor);
+        try {
+            final CountDownLatch fixedRateRuns = new CountDownLatch(5);
+            final CountDownLatch fixedDelayRuns = new CountDownLatch(5);
+            ScheduledFuture<?> fixedRate = timer.scheduleAtFixedRate(new Runnable() {
+                @Override
+                public void run() {
+                    fixedRateRuns.countDown();
+                }
+            }, 0, 3 * TICK, TimeUnit.MILLISECONDS);
+            ScheduledFuture<?> fixedDelay = timer.scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    fixedDelayRuns.countDown();
+                }
+            }, TICK, 3 * TICK, TimeUnit.MILLISECONDS);
+            assertTrue("Fixed rate task did not repeat", fixedRateRuns.await(5, TimeUnit.SECONDS));
+            assertTrue("Fixed delay task did not repeat", fixedDelayRuns.await(5, TimeUnit.SECONDS));
+            assertFalse(fixedRate.isDone());
+
+            // a cancelled periodic task is not rescheduled
+            fixedRate.cancel(false);
+            fixedDelay.cancel(false);
+            Thread.sleep(3 * TICK);
+            long expired = timer.getExpiredCount();
+            Thread.sleep(20 * TICK);
+            assertEquals("Cancelled periodic task ran", expired, timer.getExpiredCount());
+        }
+        finally {
+            timer.shutdownNow();
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testShutdown() throws Exception {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        HashedWheelTimer timer = newTimer(executor);
+        try {
+            final AtomicInteger runs = new AtomicInteger();
+            Runnable task = new Runnable() {
+                @Override
+                public void run() {
+                    runs.incrementAndGet();
+                }
+            };
+            ScheduledFuture<?> pending = timer.schedule(task, 1000, TimeUnit.MILLISECONDS);
+            ScheduledFuture<?> cancelled = timer.schedule(task, 1000, TimeUnit.MILLISECONDS);
+            cancelled.cancel(false);
+            Thread.sleep(3 * TICK);
+
+            List<Runnable> unprocessed = timer.shutdownNow();
+            assertEquals("Pending tasks not returned", 1, unprocessed.size());
+            assertTrue(unprocessed.contains(pending));
+            assertTrue(timer.isShutdown());
+            assertTrue(timer.awaitTermination(5, TimeUnit.SECONDS));
+            assertTrue(timer.isTerminated());
+            try {
+                timer.schedule(task, TICK, TimeUnit.MILLISECONDS);
+                fail("Task accepted after shutdown");
+            }
+            catch (RejectedExecutionException e) {
+                // expected
+            }
+            assertEquals(0, runs.get());
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testStopsWithTaskExecutor() throws Exception {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        HashedWheelTimer timer = newTimer(executor);
+        timer.schedule(new Runnable() {
+            @Override
+            public void run() {
+            }
+        }, 1000, TimeUnit.MILLISECONDS);
+        executor.shutdown();
+        assertTrue("Timer did not stop", timer.awaitTermination(5, TimeUnit.SECONDS));
+        assertTrue(timer.isShutdown());
+    }
+
+    private HashedWheelTimer newTimer(ExecutorService executor) {
+        return new HashedWheelTimer("TestTimer", new DummyConcurrentFactory(), executor, TICK, TimeUnit.MILLISECONDS, WHEEL_SIZE, null);
+    }
+}
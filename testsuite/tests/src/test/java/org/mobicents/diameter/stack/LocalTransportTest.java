@@ -0,0 +1,205 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2016, TeleStax Inc. and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+package org.mobicents.diameter.stack;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.jdiameter.api.Answer;
+import org.jdiameter.api.ApplicationId;
+import org.jdiameter.api.Avp;
+import org.jdiameter.api.Configuration;
+import org.jdiameter.api.DisconnectCause;
+import org.jdiameter.api.Message;
+import org.jdiameter.api.Mode;
+import org.jdiameter.api.Network;
+import org.jdiameter.api.NetworkReqListener;
+import org.jdiameter.api.OverloadException;
+import org.jdiameter.api.Peer;
+import org.jdiameter.api.PeerState;
+import org.jdiameter.api.PeerTable;
+import org.jdiameter.api.Request;
+import org.jdiameter.api.ResultCode;
+import org.jdiameter.api.Session;
+import org.jdiameter.client.api.IMessage;
+import org.jdiameter.client.api.io.IConnectionListener;
+import org.jdiameter.client.api.io.TransportException;
+import org.jdiameter.client.impl.parser.MessageParser;
+import org.jdiameter.client.impl.transport.local.LocalConnection;
+import org.jdiameter.client.impl.transport.local.LocalTransport;
+import org.jdiameter.common.api.concurrent.DummyConcurrentFactory;
+import org.jdiameter.server.impl.StackImpl;
+import org.junit.Test;
+
+/**
+ * Tests of the in-process transport, connecting stacks of the same JVM without sockets.
+ */
+public class LocalTransportTest {
+
+  private static final ApplicationId ACC_APP_ID = ApplicationId.createByAccAppId(0, 300);
+  private static final int ACR_COMMAND_CODE = 271;
+
+  @Test
+  public void testCapabilitiesExchangeAndRequest() throws Exception {
+    StackImpl server = new StackImpl();
+    StackImpl client = new StackImpl();
+    try {
+      server.init(loadConfiguration("config-server.xml"));
+      server.unwrap(Network.class).addNetworkReqListener(new NetworkReqListener() {
+        @Override
+        public Answer processRequest(Request request) {
+          return request.createAnswer(ResultCode.SUCCESS);
+        }
+      }, ACC_APP_ID);
+      server.start();
+
+      client.init(loadConfiguration("config-client.xml"));
+      client.unwrap(Network.class).addNetworkReqListener(new NetworkReqListener() {
+        @Override
+        public Answer processRequest(Request request) {
+          return null;
+        }
+      }, ACC_APP_ID);
+      // returns once CER/CEA have been exchanged with the server
+      client.start(Mode.ALL_PEERS, 10000, TimeUnit.MILLISECONDS);
+
+      List<Peer> peers = client.unwrap(PeerTable.class).getPeerTable();
+      assertEquals("Wrong number of peers on client", 1, peers.size());
+      assertEquals("Server peer is not connected", PeerState.OKAY, peers.get(0).getState(PeerState.class));
+      assertEquals("Server peer has wrong realm", "server.mobicents.org", peers.get(0).getRealmName());
+
+      Session session = client.getSessionFactory().getNewSession();
+      Request request = session.createRequest(ACR_COMMAND_CODE, ACC_APP_ID, "server.mobicents.org", "127.0.0.1");
+      Future<Message> future = session.send(request);
+      Message answer = future.get(10, TimeUnit.SECONDS);
+      assertNotNull("No answer received", answer);
+      assertEquals("Answer does not match request", request.getEndToEndIdentifier(), answer.getEndToEndIdentifier());
+      assertEquals("Wrong Result-Code", ResultCode.SUCCESS, answer.getAvps().getAvp(Avp.RESULT_CODE).getUnsigned32());
+      session.release();
+    }
+    finally {
+      stop(client);
+      stop(server);
+    }
+  }
+
+  @Test
+  public void testOverloadWhenReceiverQueueIsFull() throws Exception {
+    final MessageParser parser = new MessageParser();
+    final CountDownLatch release = new CountDownLatch(1);
+    final InetSocketAddress serverAddress = new InetSocketAddress(InetAddress.getLoopbackAddress(), 23868);
+    LocalTransport.Acceptor acceptor = new LocalTransport.Acceptor() {
+      @Override
+      public LocalConnection accept(InetSocketAddress localAddress, InetSocketAddress remoteAddress) {
+        LocalConnection accepted = new LocalConnection(new DummyConcurrentFactory(), parser, localAddress, remoteAddress);
+        // the receiving end stops consuming at the first message, so its queue fills up
+        accepted.addConnectionListener(new BlockingListener(release));
+        return accepted;
+      }
+    };
+    LocalTransport.bind(serverAddress, acceptor);
+    LocalConnection connection = new LocalConnection(new DummyConcurrentFactory(), parser,
+        new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), serverAddress);
+    try {
+      connection.connect();
+      assertTrue("Connection is not established", connection.isConnected());
+      try {
+        for (int i = 0; i <= LocalConnection.RECEIVE_QUEUE_CAPACITY + 1; i++) {
+          IMessage message = parser.createEmptyMessage(ACR_COMMAND_CODE, ACC_APP_ID.getAcctAppId());
+          message.setRequest(true);
+          message.setEndToEndIdentifier(i);
+          message.setHopByHopIdentifier(i);
+          connection.sendMessage(message);
+        }
+        fail("Sending to a full receive queue did not raise OverloadException");
+      }
+      catch (OverloadException e) {
+        // expected, the sender is not blocked
+      }
+    }
+    finally {
+      release.countDown();
+      connection.release();
+      LocalTransport.unbind(serverAddress, acceptor);
+    }
+  }
+
+  private Configuration loadConfiguration(String name) throws Exception {
+    InputStream is = LocalTransportTest.class.getClassLoader().getResourceAsStream("configurations/local/" + name);
+    try {
+      return new org.jdiameter.server.impl.helpers.XMLConfiguration(is);
+    }
+    finally {
+      is.close();
+    }
+  }
+
+  private void stop(StackImpl stack) {
+    try {
+      stack.stop(DisconnectCause.REBOOTING);
+      stack.destroy();
+    }
+    catch (Exception e) {
+      e.printStackTrace();
+    }
+  }
+
+  private static class BlockingListener implements IConnectionListener {
+
+    private final CountDownLatch release;
+
+    BlockingListener(CountDownLatch release) {
+      this.release = release;
+    }
+
+    @Override
+    public void connectionOpened(String connKey) {
+    }
+
+    @SuppressWarnings("rawtypes")
+    @Override
+    public void connectionClosed(String connKey, List notSent) {
+    }
+
+    @Override
+    public void messageReceived(String connKey, IMessage message) {
+      try {
+        release.await(30, TimeUnit.SECONDS);
+      }
+      catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+
+    @Override
+    public void internalError(String connKey, IMessage message, TransportException cause) {
+    }
+  }
+}
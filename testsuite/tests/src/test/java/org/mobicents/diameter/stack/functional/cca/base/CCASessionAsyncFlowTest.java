@@ -0,0 +1,142 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2016, TeleStax Inc. and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+package org.mobicents.diameter.stack.functional.cca.base;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
+
+import org.jdiameter.api.DisconnectCause;
+import org.jdiameter.api.Mode;
+import org.jdiameter.api.cca.ClientCCASession;
+import org.jdiameter.api.cca.events.JCreditControlAnswer;
+import org.jdiameter.common.api.app.cca.ClientCCASessionState;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Stages returned by {@link ClientCCASession#sendCreditControlRequestAsync} are completed with the answer
+ * once the session state machine has processed it, whichever transition it took.
+ */
+public class CCASessionAsyncFlowTest {
+
+  private static final int DIRECT_DEBITING = 0;
+  private static final int REFUND_ACCOUNT = 1;
+
+  private Client clientNode;
+  private Server serverNode1;
+
+  @Before
+  public void setUp() throws Exception {
+    this.clientNode = new Client();
+    this.serverNode1 = new Server();
+
+    ClassLoader classLoader = CCASessionAsyncFlowTest.class.getClassLoader();
+    this.serverNode1.init(classLoader.getResourceAsStream("configurations/functional-cca/config-server-node1.xml"), "SERVER1");
+    this.serverNode1.start();
+
+    this.clientNode.init(classLoader.getResourceAsStream("configurations/functional-cca/config-client.xml"), "CLIENT");
+    this.clientNode.start(Mode.ANY_PEER, 10, TimeUnit.SECONDS);
+  }
+
+  @After
+  public void tearDown() {
+    if (this.clientNode != null) {
+      try {
+        this.clientNode.stop(DisconnectCause.REBOOTING);
+      }
+      catch (Exception e) {
+
+      }
+      this.clientNode = null;
+    }
+
+    if (this.serverNode1 != null) {
+      try {
+        this.serverNode1.stop(DisconnectCause.REBOOTING);
+      }
+      catch (Exception e) {
+
+      }
+      this.serverNode1 = null;
+    }
+  }
+
+  @Test
+  public void testSessionBasedStages() throws Exception {
+    CompletionStage<JCreditControlAnswer> initial = clientNode.sendInitialAsync();
+    CompletableFuture<ClientCCASessionState> stateOnInitial = stateOnCompletion(initial);
+    waitForMessage();
+    serverNode1.sendInitial();
+
+    assertEquals(2001, initial.toCompletableFuture().get(10, TimeUnit.SECONDS).getResultCodeAvp().getUnsigned32());
+    assertEquals(ClientCCASessionState.OPEN, stateOnInitial.get(10, TimeUnit.SECONDS));
+
+    // final answer releases the session, its stage is completed all the same
+    CompletionStage<JCreditControlAnswer> termination = clientNode.sendTerminationAsync();
+    CompletableFuture<ClientCCASessionState> stateOnTermination = stateOnCompletion(termination);
+    waitForMessage();
+    serverNode1.sendTermination();
+
+    assertEquals(2001, termination.toCompletableFuture().get(10, TimeUnit.SECONDS).getResultCodeAvp().getUnsigned32());
+    assertEquals(ClientCCASessionState.IDLE, stateOnTermination.get(10, TimeUnit.SECONDS));
+    assertFalse("Session was not released", clientNode.getSession().isValid());
+  }
+
+  @Test
+  public void testEventStageOnFailedAnswer() throws Exception {
+    // DIRECT_DEBITING denied while Tx runs: service is terminated and session released
+    CompletionStage<JCreditControlAnswer> event = clientNode.sendEventAsync(DIRECT_DEBITING);
+    CompletableFuture<ClientCCASessionState> stateOnEvent = stateOnCompletion(event);
+    waitForMessage();
+    serverNode1.sendEvent(5030);
+
+    assertEquals(5030, event.toCompletableFuture().get(10, TimeUnit.SECONDS).getResultCodeAvp().getUnsigned32());
+    assertEquals(ClientCCASessionState.IDLE, stateOnEvent.get(10, TimeUnit.SECONDS));
+  }
+
+  @Test
+  public void testEventStageOnTemporaryError() throws Exception {
+    CompletionStage<JCreditControlAnswer> event = clientNode.sendEventAsync(REFUND_ACCOUNT);
+    waitForMessage();
+    serverNode1.sendEvent(3004);
+
+    assertEquals(3004, event.toCompletableFuture().get(10, TimeUnit.SECONDS).getResultCodeAvp().getUnsigned32());
+  }
+
+  private CompletableFuture<ClientCCASessionState> stateOnCompletion(CompletionStage<JCreditControlAnswer> stage) {
+    // as seen by a request chained on the stage
+    return stage.thenApply(answer -> clientNode.getSession().getState(ClientCCASessionState.class)).toCompletableFuture();
+  }
+
+  private void waitForMessage() {
+    try {
+      Thread.sleep(2000);
+    }
+    catch (InterruptedException e) {
+      e.printStackTrace();
+    }
+  }
+
+}
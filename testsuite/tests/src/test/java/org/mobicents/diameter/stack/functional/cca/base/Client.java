@@ -21,6 +21,9 @@
  */
 package org.mobicents.diameter.stack.functional.cca.base;
 
+import java.util.concurrent.CompletionStage;
+
+import org.jdiameter.api.Avp;
 import org.jdiameter.api.IllegalDiameterStateException;
 import org.jdiameter.api.InternalException;
 import org.jdiameter.api.OverloadException;
@@ -98,6 +101,42 @@ public class Client extends AbstractClient {
     this.sentEVENT = true;
   }
 
+  public CompletionStage<JCreditControlAnswer> sendInitialAsync() throws Exception {
+    JCreditControlRequest initialRequest = createAsyncCCR(CC_REQUEST_TYPE_INITIAL);
+    CompletionStage<JCreditControlAnswer> stage = super.clientCCASession.sendCreditControlRequestAsync(initialRequest);
+    Utils.printMessage(log, super.stack.getDictionary(), initialRequest.getMessage(), true);
+    this.sentINITIAL = true;
+    return stage;
+  }
+
+  public CompletionStage<JCreditControlAnswer> sendTerminationAsync() throws Exception {
+    if (!receiveINITIAL) {
+      throw new Exception();
+    }
+    JCreditControlRequest terminateRequest = createAsyncCCR(CC_REQUEST_TYPE_TERMINATE);
+    CompletionStage<JCreditControlAnswer> stage = super.clientCCASession.sendCreditControlRequestAsync(terminateRequest);
+    Utils.printMessage(log, super.stack.getDictionary(), terminateRequest.getMessage(), true);
+    this.sentTERMINATE = true;
+    return stage;
+  }
+
+  public CompletionStage<JCreditControlAnswer> sendEventAsync(int requestedAction) throws Exception {
+    JCreditControlRequest eventRequest = createAsyncCCR(CC_REQUEST_TYPE_EVENT);
+    eventRequest.getMessage().getAvps().addAvp(Avp.REQUESTED_ACTION, requestedAction);
+    CompletionStage<JCreditControlAnswer> stage = super.clientCCASession.sendCreditControlRequestAsync(eventRequest);
+    Utils.printMessage(log, super.stack.getDictionary(), eventRequest.getMessage(), true);
+    this.sentEVENT = true;
+    return stage;
+  }
+
+  private JCreditControlRequest createAsyncCCR(int ccRequestType) throws Exception {
+    JCreditControlRequest request = super.createCCR(ccRequestType, this.ccRequestNumber, super.clientCCASession);
+    // addressed to server host, so it is processed locally by the server stack
+    request.getMessage().getAvps().addAvp(Avp.DESTINATION_HOST, serverHost, true);
+    this.ccRequestNumber++;
+    return request;
+  }
+
   /*
    * (non-Javadoc)
    *
@@ -127,11 +127,15 @@ public class Server extends AbstractServer {
   }
 
   public void sendEvent() throws Exception {
+    sendEvent(2001);
+  }
+
+  public void sendEvent(long resultCode) throws Exception {
     if (!this.receiveEVENT || this.request == null) {
       fail("Did not receive EVENT or answer already sent.", null);
       throw new Exception("Request: " + this.request);
     }
-    JCreditControlAnswerImpl answer = new JCreditControlAnswerImpl((Request) request.getMessage(), 2001);
+    JCreditControlAnswerImpl answer = new JCreditControlAnswerImpl((Request) request.getMessage(), resultCode);
 
     AvpSet reqSet = request.getMessage().getAvps();
 
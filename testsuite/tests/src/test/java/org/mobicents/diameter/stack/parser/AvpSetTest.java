@@ -59,5 +59,42 @@ public class AvpSetTest {
 
   }
 
+  @Test
+  public void indexedLookupTest() throws IOException, AvpDataException {
+    AvpSet set = elementParser.decodeAvpSet(new byte[0], 1);
+    // enough AVPs for the set to build its lookup index
+    for (int i = 0; i < 20; i++) {
+      set.addAvp(_CODE + (i % 5), i);
+    }
+    set.addAvp(_CODE, 100, _VENDOR, true, true);
+    Assert.assertEquals("Wrong first avp", 0, set.getAvp(_CODE).getInteger32());
+    Assert.assertEquals("Wrong vendor avp", 100, set.getAvp(_CODE, _VENDOR).getInteger32());
+    Assert.assertNull("Unexpected avp", set.getAvp(_CODE - 1));
+    AvpSet found = set.getAvps(_CODE + 1);
+    Assert.assertEquals("Wrong set size", 4, found.size());
+    Assert.assertEquals("Wrong avp order", 6, found.getAvpByIndex(1).getInteger32());
+    Assert.assertEquals("Wrong set size", 5, set.getAvps(_CODE).size());
+    Assert.assertEquals("Wrong set size", 4, set.getAvps(_CODE, 0).size());
+    Assert.assertEquals("Wrong set size", 0, set.getAvps(_CODE - 1).size());
+
+    // mutations must be visible to the following lookups
+    set.insertAvp(0, _CODE, -1);
+    Assert.assertEquals("Wrong first avp", -1, set.getAvp(_CODE).getInteger32());
+    set.removeAvp(_CODE);
+    Assert.assertEquals("Wrong first avp", 1, set.getAvp(_CODE + 1).getInteger32());
+    Assert.assertNull("Unexpected avp", set.getAvp(_CODE, 0));
+    Assert.assertEquals("Wrong vendor avp", 100, set.getAvp(_CODE, _VENDOR).getInteger32());
+    set.removeAvpByIndex(0);
+    Assert.assertEquals("Wrong first avp", 6, set.getAvp(_CODE + 1).getInteger32());
+  }
+
+  @Test(expected = UnsupportedOperationException.class)
+  public void readOnlyGetAvpsTest() throws IOException, AvpDataException {
+    AvpSet set = elementParser.decodeAvpSet(new byte[0], 1);
+    set.addAvp(_CODE, 1);
+    set.addAvp(_CODE, 2);
+    set.getAvps(_CODE).addAvp(_CODE, 3);
+  }
+
 
 }
@@ -0,0 +1,156 @@
+package org.mobicents.diameter.stack.parser;
+
+import java.nio.ByteBuffer;
+import java.util.Date;
+
+import org.jdiameter.api.Avp;
+import org.jdiameter.api.AvpDataException;
+import org.jdiameter.api.AvpSet;
+import org.jdiameter.client.api.IMessage;
+import org.jdiameter.client.api.parser.ParseException;
+import org.jdiameter.client.impl.parser.MessageParser;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class MessageParserTest {
+
+  private MessageParser parser = new MessageParser();
+  private static final int _COMMAND = 272;
+  private static final long _APP_ID = 4;
+  private static final long _VENDOR = 10415;
+
+  private IMessage createMessage() {
+    IMessage message = parser.createEmptyMessage(_COMMAND, _APP_ID);
+    message.setRequest(true);
+    AvpSet avps = message.getAvps();
+    avps.addAvp(Avp.SESSION_ID, "host.example.org;1;2;3", false);
+    avps.addAvp(Avp.ORIGIN_HOST, "host.example.org", true);
+    avps.addAvp(Avp.CC_REQUEST_NUMBER, 7L, true);
+    avps.addAvp(Avp.CC_REQUEST_TYPE, 2);
+    AvpSet mscc = avps.addGroupedAvp(Avp.MULTIPLE_SERVICES_CREDIT_CONTROL, _VENDOR, true, false);
+    mscc.addAvp(Avp.RATING_GROUP, 100L, true);
+    AvpSet used = mscc.addGroupedAvp(Avp.USED_SERVICE_UNIT);
+    used.addAvp(Avp.CC_TOTAL_OCTETS, 1234567890123L);
+    // odd length, so padding is exercised
+    avps.addAvp(Avp.USER_NAME, "abc", false);
+    return message;
+  }
+
+  private void assertDecoded(IMessage decoded) throws AvpDataException {
+    Assert.assertEquals("Wrong command code", _COMMAND, decoded.getCommandCode());
+    Assert.assertEquals("Wrong application id", _APP_ID, decoded.getApplicationId());
+    Assert.assertTrue("Should be request", decoded.isRequest());
+    Assert.assertEquals("Wrong set size", 6, decoded.getAvps().size());
+    Assert.assertEquals("Wrong session id", "host.example.org;1;2;3", decoded.getAvps().getAvp(Avp.SESSION_ID).getUTF8String());
+    Assert.assertEquals("Wrong origin host", "host.example.org", decoded.getAvps().getAvp(Avp.ORIGIN_HOST).getDiameterIdentity());
+    Assert.assertEquals("Wrong request number", 7L, decoded.getAvps().getAvp(Avp.CC_REQUEST_NUMBER).getUnsigned32());
+    Assert.assertEquals("Wrong request type", 2, decoded.getAvps().getAvp(Avp.CC_REQUEST_TYPE).getInteger32());
+    Avp mscc = decoded.getAvps().getAvp(Avp.MULTIPLE_SERVICES_CREDIT_CONTROL, _VENDOR);
+    Assert.assertNotNull("Missing grouped avp", mscc);
+    Assert.assertEquals("Wrong rating group", 100L, mscc.getGrouped().getAvp(Avp.RATING_GROUP).getUnsigned32());
+    Assert.assertEquals("Wrong total octets", 1234567890123L,
+        mscc.getGrouped().getAvp(Avp.USED_SERVICE_UNIT).getGrouped().getAvp(Avp.CC_TOTAL_OCTETS).getUnsigned64());
+    Assert.assertEquals("Wrong user name", "abc", decoded.getAvps().getAvp(Avp.USER_NAME).getUTF8String());
+  }
+
+  @Test
+  public void heapBufferTest() throws ParseException, AvpDataException {
+    ByteBuffer encoded = parser.encodeMessage(createMessage());
+    assertDecoded(parser.createMessage(encoded));
+  }
+
+  @Test
+  public void directBufferTest() throws ParseException, AvpDataException {
+    ByteBuffer encoded = parser.encodeMessage(createMessage());
+    ByteBuffer direct = ByteBuffer.allocateDirect(encoded.remaining());
+    direct.put(encoded);
+    direct.flip();
+    assertDecoded(parser.createMessage(direct));
+  }
+
+  @Test
+  public void offsetBufferTest() throws ParseException, AvpDataException {
+    ByteBuffer encoded = parser.encodeMessage(createMessage());
+    int length = encoded.remaining();
+    byte[] frame = new byte[length + 16];
+    encoded.get(frame, 8, length);
+    ByteBuffer slice = ByteBuffer.wrap(frame, 8, length);
+    assertDecoded(parser.createMessage(slice));
+  }
+
+  @Test
+  public void reEncodeTest() throws ParseException, AvpDataException {
+    ByteBuffer encoded = parser.encodeMessage(createMessage());
+    byte[] expected = new byte[encoded.remaining()];
+    encoded.duplicate().get(expected);
+    // AVPs still hold views only, encoding must materialize them
+    ByteBuffer reEncoded = parser.encodeMessage(parser.createMessage(encoded));
+    byte[] actual = new byte[reEncoded.remaining()];
+    reEncoded.get(actual);
+    Assert.assertArrayEquals("Re-encoded message differs", expected, actual);
+  }
+
+  @Test
+  public void encodeIntoBufferTest() throws ParseException, AvpDataException {
+    IMessage message = createMessage();
+    ByteBuffer expected = parser.encodeMessage(message);
+    int length = parser.getMessageLength(message);
+    Assert.assertEquals("Wrong message length", expected.remaining(), length);
+
+    // write after some leading data, as when appending to a shared outbound buffer
+    ByteBuffer out = ByteBuffer.allocateDirect(length + 8);
+    out.putLong(-1L);
+    parser.encodeMessage(message, out);
+    Assert.assertEquals("Wrong position after encode", length + 8, out.position());
+    out.flip();
+    out.position(8);
+    Assert.assertEquals("Encoded message differs", expected, out);
+    assertDecoded(parser.createMessage(out));
+  }
+
+  @Test
+  public void fixedWidthTest() throws ParseException, AvpDataException {
+    Date time = new Date(1476000000000L);
+    IMessage message = parser.createEmptyMessage(_COMMAND, _APP_ID);
+    AvpSet avps = message.getAvps();
+    avps.addAvp(1, -5);
+    avps.addAvp(2, -6L);
+    avps.addAvp(3, 4000000000L, true);
+    avps.addAvp(4, 0xFFFFFFFFFFFFFFFEL, false);
+    avps.addAvp(5, 1.5f);
+    avps.addAvp(6, -2.25d);
+    avps.addAvp(7, time);
+
+    ByteBuffer encoded = parser.encodeMessage(message);
+    byte[] data = new byte[encoded.remaining()];
+    encoded.duplicate().get(data);
+    // values built in place and values decoded from the frame view must read the same
+    for (AvpSet set : new AvpSet[] {avps, parser.createMessage(encoded).getAvps(), parser.createMessage(data).getAvps()}) {
+      Assert.assertEquals("Wrong integer32", -5, set.getAvp(1).getInteger32());
+      Assert.assertEquals("Wrong integer64", -6L, set.getAvp(2).getInteger64());
+      Assert.assertEquals("Wrong unsigned32", 4000000000L, set.getAvp(3).getUnsigned32());
+      Assert.assertEquals("Wrong unsigned64", 0xFFFFFFFFFFFFFFFEL, set.getAvp(4).getUnsigned64());
+      Assert.assertEquals("Wrong float32", 1.5f, set.getAvp(5).getFloat32(), 0);
+      Assert.assertEquals("Wrong float64", -2.25d, set.getAvp(6).getFloat64(), 0);
+      Assert.assertEquals("Wrong time", time, set.getAvp(7).getTime());
+      Assert.assertArrayEquals("Wrong raw data", new byte[] {-1, -1, -1, -1, -1, -1, -1, -6}, set.getAvp(2).getRaw());
+    }
+  }
+
+  @Test(expected = AvpDataException.class)
+  public void fixedWidthTooShortTest() throws AvpDataException {
+    IMessage message = parser.createEmptyMessage(_COMMAND, _APP_ID);
+    message.getAvps().addAvp(1, 7);
+    message.getAvps().getAvp(1).getUnsigned64();
+  }
+
+  @Test(expected = AvpDataException.class)
+  public void truncatedAvpTest() throws ParseException, AvpDataException {
+    ByteBuffer encoded = parser.encodeMessage(createMessage());
+    byte[] data = new byte[encoded.remaining()];
+    encoded.get(data);
+    // corrupt length of first AVP so it overflows the message
+    data[20 + 5] = (byte) 0x7F;
+    parser.createMessage(data);
+  }
+}